@@ -1,5 +1,7 @@
 package se.ltu.workflow.executor;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -13,6 +15,7 @@ import javax.annotation.PostConstruct;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
 
@@ -29,6 +32,7 @@ import eu.arrowhead.common.exception.ArrowheadException;
 import eu.arrowhead.common.exception.InvalidParameterException;
 
 import se.ltu.workflow.executor.dto.WorkflowDTO;
+import se.ltu.workflow.executor.definition.WorkflowDefinitions;
 import se.ltu.workflow.executor.demo.FischertechnikWorkflow;
 import se.ltu.workflow.executor.dto.QueuedWorkflowDTO;
 import se.ltu.workflow.executor.service.Workflow;
@@ -73,6 +77,25 @@ public class InitialWorkflows {
     @Autowired
     private FischertechnikWorkflow factoryWorkflows;
     
+    /**
+     * Loader of the Workflows defined in JSON files, whose actions are registered
+     * before it is injected
+     */
+    @Autowired
+    private WorkflowDefinitions workflowDefinitions;
+    
+    /**
+     * Directory of the Workflows defined in JSON files, none are loaded if empty
+     */
+    @Value("${workflow.definitions.directory:}")
+    private String definitionsDirectory;
+    
+    /**
+     * Cache of the compiled definitions, by default in the directory of the definitions
+     */
+    @Value("${workflow.definitions.cache:}")
+    private String definitionsCache;
+    
     private final Logger logger = LogManager.getLogger(InitialWorkflows.class);
     
     /**
@@ -92,6 +115,24 @@ public class InitialWorkflows {
         workflowsInput.add(factoryWorkflows.milling());
         workflowsInput.add(factoryWorkflows.drilling());
         workflowsInput.add(factoryWorkflows.millingAndDrilling());
+        
+        if (!definitionsDirectory.isBlank()) {
+            Path directory = Path.of(definitionsDirectory);
+            Path cache = definitionsCache.isBlank()
+                    ? directory.resolve("definitions.cache")
+                    : Path.of(definitionsCache);
+            try {
+                for (Workflow w : workflowDefinitions.load(directory, cache)) {
+                    if (!workflowsInput.add(w)) {
+                        logger.warn("Workflow definition " + w.getWorkflowName() 
+                                + " ignored, a Workflow with the same name already exists");
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Workflow definitions could not be loaded from " + definitionsDirectory
+                        + ": " + e.getMessage());
+            }
+        }
     }
     
     public Set<Workflow> getWorkflows() {
@@ -28,7 +28,17 @@ public class WExecutorConstants {
     public static final String REQUEST_OBJECT_KEY_WORKFLOW = "request-object";
     public static final String REQUEST_OBJECT_WORKFLOW = "workflow";
     
-    public static final int TIME_TO_RETRY_WORKFLOW_MILIS = 2;
+    public static final String POST_WORKFLOW_EVENTS_SERVICE_DEFINITION = "post-workflow-events";
+    public static final String POST_WORKFLOW_EVENTS_URI = "/workflows/execution/{id}/events";
+    public static final String REQUEST_OBJECT_WORKFLOW_EVENTS = "workflow-events";
+    
+    public static final String PROVIDE_WORKFLOW_METRICS_SERVICE_DEFINITION = "provide-workflows-metrics";
+    public static final String PROVIDE_WORKFLOW_METRICS_URI = "/workflows/metrics";
+    
+    // Maximum time a Workflow waits for changes in its State Machine, before checking again its transitions
+    public static final int TIME_TO_RETRY_WORKFLOW_MILIS = 1000;
+    // Maximum transitions executed by a Workflow in one run, before checking again its State Machine
+    public static final int MAX_STEPS_PER_WORKFLOW_RUN = 100;
 
     // Workflow Manager constants
     public static final String WMANAGER_RESULT_SERVICE_DEFINITION = "wmanager-operation-results";
@@ -152,6 +152,28 @@ public class WExecutorApplicationListener extends ApplicationInitListener{
                 forceRegisterServiceToServiceRegistry(executeWorkflowServiceRequest);
         validateRegistration(SRResponseExecuteWorkflow);
         
+        // This service allows a consumer to notify events to the workflows in execution
+        final ServiceRegistryRequestDTO postWorkflowEventsServiceRequest = createServiceRegistryRequest(
+                WExecutorConstants.POST_WORKFLOW_EVENTS_SERVICE_DEFINITION, 
+                WExecutorConstants.WEXECUTOR_URI + WExecutorConstants.POST_WORKFLOW_EVENTS_URI, 
+                HttpMethod.POST,
+                Map.of(WExecutorConstants.REQUEST_OBJECT_KEY_WORKFLOW, WExecutorConstants.REQUEST_OBJECT_WORKFLOW_EVENTS));
+        
+        ServiceRegistryResponseDTO SRResponsePostWorkflowEvents = arrowheadService.
+                forceRegisterServiceToServiceRegistry(postWorkflowEventsServiceRequest);
+        validateRegistration(SRResponsePostWorkflowEvents);
+        
+        // This service provides the latencies of the states and transitions of each workflow type
+        final ServiceRegistryRequestDTO provideWorkflowMetricsServiceRequest = createServiceRegistryRequest(
+                WExecutorConstants.PROVIDE_WORKFLOW_METRICS_SERVICE_DEFINITION, 
+                WExecutorConstants.WEXECUTOR_URI + WExecutorConstants.PROVIDE_WORKFLOW_METRICS_URI, 
+                HttpMethod.GET,
+                null);
+        
+        ServiceRegistryResponseDTO SRResponseWorkflowMetrics = arrowheadService.
+                forceRegisterServiceToServiceRegistry(provideWorkflowMetricsServiceRequest);
+        validateRegistration(SRResponseWorkflowMetrics);
+        
         // The initial workflows to be preloaded in this system are written in the InitialWorkflows
         // class, that will be injected in the WExecutorService which contains the business logic
         
@@ -171,6 +193,12 @@ public class WExecutorApplicationListener extends ApplicationInitListener{
         
         arrowheadService.unregisterServiceFromServiceRegistry(WExecutorConstants.EXECUTE_WORKFLOW_SERVICE_DEFINITION);
         logger.info("Unregistering Service: " + WExecutorConstants.EXECUTE_WORKFLOW_SERVICE_DEFINITION);
+        
+        arrowheadService.unregisterServiceFromServiceRegistry(WExecutorConstants.POST_WORKFLOW_EVENTS_SERVICE_DEFINITION);
+        logger.info("Unregistering Service: " + WExecutorConstants.POST_WORKFLOW_EVENTS_SERVICE_DEFINITION);
+        
+        arrowheadService.unregisterServiceFromServiceRegistry(WExecutorConstants.PROVIDE_WORKFLOW_METRICS_SERVICE_DEFINITION);
+        logger.info("Unregistering Service: " + WExecutorConstants.PROVIDE_WORKFLOW_METRICS_SERVICE_DEFINITION);
     }
 
     //=================================================================================================
@@ -10,6 +10,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -22,6 +23,8 @@ import se.ltu.workflow.executor.dto.FinishWorkflowDTO;
 import se.ltu.workflow.executor.dto.QueuedWorkflowDTO;
 import se.ltu.workflow.executor.dto.StartWorkflowDTO;
 import se.ltu.workflow.executor.dto.WorkflowDTO;
+import se.ltu.workflow.executor.dto.WorkflowEventsDTO;
+import se.ltu.workflow.executor.dto.WorkflowMetricsDTO;
 import se.ltu.workflow.executor.service.QueuedWorkflow;
 import se.ltu.workflow.executor.service.WExecutorService;
 import se.ltu.workflow.executor.service.Workflow;
@@ -81,6 +84,23 @@ public class WExecutorController {
         return inExecutionWorkflowsDTO;
     }
 	
+	//-------------------------------------------------------------------------------------------------
+    @GetMapping(path = WExecutorConstants.PROVIDE_WORKFLOW_METRICS_URI)
+    public List<WorkflowMetricsDTO> getWorkflowMetrics() {
+        logger.info("Receiving request for service: " + WExecutorConstants.PROVIDE_WORKFLOW_METRICS_SERVICE_DEFINITION);
+        
+        List<WorkflowMetricsDTO> workflowMetricsDTO = new ArrayList<>();
+        
+        for (Workflow w : executorService.getWorkflowTypes()) {
+            // Only the Workflow types with metrics enabled are included
+            WorkflowMetricsDTO metrics = WorkflowMetricsDTO.fromWorkflow(w);
+            if (metrics != null) {
+                workflowMetricsDTO.add(metrics);
+            }
+        }
+        return workflowMetricsDTO;
+    }
+	
 	//-------------------------------------------------------------------------------------------------
     @PostMapping(path = WExecutorConstants.EXECUTE_WORKFLOW_URI, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     // It only allows one HTTP status(if there are no exceptions) @ResponseStatus(org.springframework.http.HttpStatus.CREATED)
@@ -101,4 +121,17 @@ public class WExecutorController {
 
     }
     
+    //-------------------------------------------------------------------------------------------------
+    @PostMapping(path = WExecutorConstants.POST_WORKFLOW_EVENTS_URI, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Void> postWorkflowEvents(@PathVariable("id") final int id,
+                                                   @RequestBody final WorkflowEventsDTO workflowEvents){
+        logger.info("Receiving request for service: " + WExecutorConstants.POST_WORKFLOW_EVENTS_SERVICE_DEFINITION);
+        
+        if (!executorService.postToWorkflow(id, workflowEvents.getEvents(), workflowEvents.getVariables())) {
+            return ResponseEntity.notFound().build();
+        }
+        // The events are received by the Workflow in its next run
+        return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+    }
+    
 }
@@ -0,0 +1,23 @@
+package se.ltu.workflow.executor.definition;
+
+/**
+ * A provider of actions for the declarative Workflow definitions.
+ * <p>
+ * The Spring beans implementing this interface are collected by the
+ * {@link ActionRegistry} when it is created, so all their actions are registered
+ * before any component receiving the registry, like the one loading the
+ * definitions, can use it.
+ */
+public interface ActionRegistrar {
+
+    /**
+     * Registers the actions of this provider, under names that do not change
+     * between versions of the Workflow Executor
+     *
+     * @param registry  The registry of the actions
+     *
+     * @throws IllegalArgumentException if an action is already registered with
+     * the same name
+     */
+    void registerActions(ActionRegistry registry);
+}
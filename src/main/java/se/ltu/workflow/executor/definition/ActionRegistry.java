@@ -0,0 +1,109 @@
+package se.ltu.workflow.executor.definition;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import se.ltu.workflow.executor.state_machine.Action;
+import se.ltu.workflow.executor.state_machine.AsyncAction;
+
+/**
+ * The actions that the declarative Workflow definitions can reference by name.
+ * <p>
+ * The code providing the actions, like the components creating the Workflows in
+ * Java, implements {@link ActionRegistrar}, and its actions are registered when
+ * the registry is created, before the definitions are loaded. The names are
+ * usually qualified by the component, like {@code "factory.startMilling"}.
+ */
+@Component
+public class ActionRegistry {
+
+    private final Map<String, Action> actions = new ConcurrentHashMap<>();
+    private final Map<String, AsyncAction> asyncActions = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty registry
+     */
+    public ActionRegistry() {
+    }
+
+    /**
+     * Constructs a registry with the actions of all the registrars, in their order
+     *
+     * @param registrars  The registrars, usually all the Spring beans implementing
+     * {@link ActionRegistrar}
+     *
+     * @throws IllegalArgumentException if two actions are registered with the same name
+     */
+    @Autowired
+    public ActionRegistry(final ObjectProvider<ActionRegistrar> registrars) {
+        registrars.orderedStream().forEach(registrar -> registrar.registerActions(this));
+    }
+
+    /**
+     * Registers an action
+     *
+     * @param name  The name used by the definitions
+     * @param action  The action
+     *
+     * @throws IllegalArgumentException if an action is already registered with that name
+     */
+    public void register(final String name, final Action action) {
+        checkFree(name);
+        actions.put(name, action);
+    }
+
+    /**
+     * Registers an asynchronous action
+     *
+     * @param name  The name used by the definitions
+     * @param action  The asynchronous action
+     *
+     * @throws IllegalArgumentException if an action is already registered with that name
+     */
+    public void registerAsync(final String name, final AsyncAction action) {
+        checkFree(name);
+        asyncActions.put(name, action);
+    }
+
+    private void checkFree(final String name) {
+        if (actions.containsKey(name) || asyncActions.containsKey(name)) {
+            throw new IllegalArgumentException("Action " + name + " is already registered");
+        }
+    }
+
+    /**
+     * Finds an action by its name
+     *
+     * @param name  The name of the action
+     * @return The action
+     *
+     * @throws IllegalArgumentException if no action is registered with that name
+     */
+    public Action action(final String name) {
+        final Action action = actions.get(name);
+        if (action == null) {
+            throw new IllegalArgumentException("Action " + name + " is not registered");
+        }
+        return action;
+    }
+
+    /**
+     * Finds an asynchronous action by its name
+     *
+     * @param name  The name of the asynchronous action
+     * @return The asynchronous action
+     *
+     * @throws IllegalArgumentException if no asynchronous action is registered with that name
+     */
+    public AsyncAction asyncAction(final String name) {
+        final AsyncAction action = asyncActions.get(name);
+        if (action == null) {
+            throw new IllegalArgumentException("Asynchronous action " + name + " is not registered");
+        }
+        return action;
+    }
+}
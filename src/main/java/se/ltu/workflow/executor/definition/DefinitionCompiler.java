@@ -0,0 +1,353 @@
+package se.ltu.workflow.executor.definition;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import se.ltu.workflow.executor.state_machine.NumericGuard.Comparison;
+import se.ltu.workflow.executor.state_machine.StateMachine.EventConsumption;
+
+/**
+ * Compiles the JSON of a Workflow definition into its binary form, the one
+ * stored in the cache of definitions and decoded by {@link WorkflowDefinitions}.
+ * <p>
+ * All the checks of the format are done here, so a definition that compiles is
+ * decoded without parsing or validating its text again. The binary form is:
+ * <pre>
+ * UTF name, int configCount, configCount * (UTF key, int n, n * UTF value),
+ * int regionCount, regionCount * int initialState,
+ * int stateCount, stateCount * (UTF name, int n, n * int transition),
+ * int transitionCount, transitionCount * (byte kind, UTF action, int target, condition or timeout,
+ * and UTF failureEvent, UTF errorVariable if the action is asynchronous),
+ * int compositeCount, compositeCount * (UTF name, int n, n * int state, int m, m * int transition,
+ * UTF entryAction, UTF exitAction),
+ * byte eventConsumption
+ * </pre>
+ * where a condition is written in prefix order, each node starting with its opcode.
+ */
+final class DefinitionCompiler {
+
+    static final byte TRANSITION_SYNC = 0;
+    static final byte TRANSITION_ASYNC = 1;
+    static final byte TRANSITION_TIMEOUT = 2;
+
+    static final byte CONDITION_NONE = 0;
+    static final byte CONDITION_EVENT = 1;
+    static final byte CONDITION_GUARD = 2;
+    static final byte CONDITION_NUMERIC_LONG = 3;
+    static final byte CONDITION_NUMERIC_DOUBLE = 4;
+    static final byte CONDITION_AND = 5;
+    static final byte CONDITION_OR = 6;
+    static final byte CONDITION_NOT = 7;
+    static final byte CONDITION_XOR = 8;
+    static final byte CONDITION_CONSTANT = 9;
+
+    static final byte VALUE_NULL = 0;
+    static final byte VALUE_STRING = 1;
+    static final byte VALUE_LONG = 2;
+    static final byte VALUE_DOUBLE = 3;
+    static final byte VALUE_BOOLEAN = 4;
+
+    /**
+     * Do not create an instance of a class used to hold static methods
+     */
+    private DefinitionCompiler() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Compiles a Workflow definition
+     *
+     * @param root  The JSON object of the definition
+     * @return The binary form of the definition
+     *
+     * @throws IllegalArgumentException if the definition does not follow the format
+     */
+    static byte[] compile(final JsonNode root) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeUTF(text(root, "name"));
+
+            final JsonNode config = root.path("config");
+            if (!config.isMissingNode() && !config.isObject()) {
+                throw new IllegalArgumentException("The config must be an object of lists of parameters");
+            }
+            out.writeInt(config.size());
+            for (final Iterator<Map.Entry<String, JsonNode>> parameters = config.fields(); parameters.hasNext();) {
+                final Map.Entry<String, JsonNode> parameter = parameters.next();
+                out.writeUTF(parameter.getKey());
+                final JsonNode values = parameter.getValue();
+                if (!values.isArray()) {
+                    throw new IllegalArgumentException("The parameter " + parameter.getKey()
+                            + " of the config must be a list");
+                }
+                out.writeInt(values.size());
+                for (final JsonNode value : values) {
+                    out.writeUTF(value.asText());
+                }
+            }
+
+            final JsonNode states = array(root, "states");
+            if (states.size() == 0) {
+                throw new IllegalArgumentException("A Workflow must have at least one state");
+            }
+            final JsonNode initialStates = root.path("initialStates");
+            if (initialStates.isMissingNode()) {
+                out.writeInt(1);
+                out.writeInt(0);
+            }
+            else {
+                out.writeInt(initialStates.size());
+                for (final JsonNode initial : array(root, "initialStates")) {
+                    out.writeInt(index(initial, "initialStates"));
+                }
+            }
+
+            out.writeInt(states.size());
+            for (final JsonNode state : states) {
+                out.writeUTF(text(state, "name"));
+                final JsonNode transitions = state.path("transitions");
+                out.writeInt(transitions.size());
+                for (final JsonNode transition : transitions) {
+                    out.writeInt(index(transition, "transitions of state " + state.path("name").asText()));
+                }
+            }
+
+            final JsonNode transitions = root.path("transitions");
+            out.writeInt(transitions.size());
+            int t = 0;
+            for (final JsonNode transition : transitions) {
+                try {
+                    compileTransition(transition, out);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Transition " + t + ": " + e.getMessage(), e);
+                }
+                t++;
+            }
+
+            final JsonNode composites = root.path("composites");
+            if (!composites.isMissingNode() && !composites.isArray()) {
+                throw new IllegalArgumentException("The composites must be a list");
+            }
+            out.writeInt(composites.size());
+            for (final JsonNode composite : composites) {
+                final String compositeName = text(composite, "name");
+                out.writeUTF(compositeName);
+                final JsonNode substates = array(composite, "states");
+                out.writeInt(substates.size());
+                for (final JsonNode substate : substates) {
+                    out.writeInt(index(substate, "states of composite " + compositeName));
+                }
+                final JsonNode shared = composite.path("transitions");
+                out.writeInt(shared.size());
+                for (final JsonNode transition : shared) {
+                    out.writeInt(index(transition, "transitions of composite " + compositeName));
+                }
+                out.writeUTF(composite.has("entry") ? text(composite, "entry") : "");
+                out.writeUTF(composite.has("exit") ? text(composite, "exit") : "");
+            }
+
+            EventConsumption eventConsumption = EventConsumption.CLEAR_ALL;
+            if (root.has("eventConsumption")) {
+                try {
+                    eventConsumption = EventConsumption.valueOf(text(root, "eventConsumption"));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown event consumption "
+                            + root.path("eventConsumption").asText());
+                }
+            }
+            out.writeByte(eventConsumption.ordinal());
+            out.flush();
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void compileTransition(final JsonNode transition, final DataOutputStream out)
+            throws IOException {
+        final JsonNode action = transition.path("action");
+        final JsonNode asyncAction = transition.path("asyncAction");
+        final JsonNode after = transition.path("after");
+        if (!action.isMissingNode() && !asyncAction.isMissingNode()) {
+            throw new IllegalArgumentException("A transition can not have an action and an asynchronous action");
+        }
+        if (!after.isMissingNode() && (!asyncAction.isMissingNode() || transition.has("condition"))) {
+            throw new IllegalArgumentException("A transition with timeout can only have an action");
+        }
+        if (asyncAction.isMissingNode() && (transition.has("failureEvent") || transition.has("errorVariable"))) {
+            throw new IllegalArgumentException("Only a transition with an asynchronous action can fail");
+        }
+
+        if (!after.isMissingNode()) {
+            out.writeByte(TRANSITION_TIMEOUT);
+            out.writeUTF(action.isMissingNode() ? "" : action.asText());
+            out.writeInt(index(transition.path("target"), "target"));
+            final JsonNode timeout = after.path("timeout");
+            if (!timeout.isIntegralNumber() || timeout.longValue() <= 0) {
+                throw new IllegalArgumentException("The timeout must be a positive number of milliseconds");
+            }
+            out.writeLong(timeout.longValue());
+            out.writeUTF(text(after, "event"));
+            return;
+        }
+        out.writeByte(asyncAction.isMissingNode() ? TRANSITION_SYNC : TRANSITION_ASYNC);
+        out.writeUTF(asyncAction.isMissingNode()
+                ? (action.isMissingNode() ? "" : action.asText())
+                : asyncAction.asText());
+        out.writeInt(index(transition.path("target"), "target"));
+        final JsonNode condition = transition.path("condition");
+        if (condition.isMissingNode() || condition.isNull()) {
+            out.writeByte(CONDITION_NONE);
+        }
+        else {
+            compileCondition(condition, out);
+        }
+        if (!asyncAction.isMissingNode()) {
+            out.writeUTF(transition.has("failureEvent") ? text(transition, "failureEvent") : "");
+            out.writeUTF(transition.has("errorVariable") ? text(transition, "errorVariable") : "");
+        }
+    }
+
+    /**
+     * Compiles a condition, an object with a single field naming the kind of node
+     */
+    private static void compileCondition(final JsonNode node, final DataOutputStream out) throws IOException {
+        if (!node.isObject() || node.size() != 1) {
+            throw new IllegalArgumentException("A condition must be an object with one field, but it is " + node);
+        }
+        final Map.Entry<String, JsonNode> field = node.fields().next();
+        final JsonNode operand = field.getValue();
+        switch (field.getKey()) {
+        case "event":
+            out.writeByte(CONDITION_EVENT);
+            out.writeUTF(textValue(operand, "event"));
+            break;
+        case "guard":
+            out.writeByte(CONDITION_GUARD);
+            out.writeUTF(text(operand, "variable"));
+            compileValue(operand.path("value"), out);
+            break;
+        case "numeric":
+            compileNumeric(operand, out);
+            break;
+        case "and":
+        case "or":
+            if (!operand.isArray() || operand.size() == 0) {
+                throw new IllegalArgumentException("The operands of " + field.getKey() + " must be a list");
+            }
+            out.writeByte("and".equals(field.getKey()) ? CONDITION_AND : CONDITION_OR);
+            out.writeInt(operand.size());
+            for (final JsonNode child : operand) {
+                compileCondition(child, out);
+            }
+            break;
+        case "not":
+            out.writeByte(CONDITION_NOT);
+            compileCondition(operand, out);
+            break;
+        case "xor":
+            if (!operand.isArray() || operand.size() != 2) {
+                throw new IllegalArgumentException("The operands of xor must be a list of two conditions");
+            }
+            out.writeByte(CONDITION_XOR);
+            compileCondition(operand.get(0), out);
+            compileCondition(operand.get(1), out);
+            break;
+        case "constant":
+            if (!operand.isBoolean()) {
+                throw new IllegalArgumentException("A constant condition must be true or false");
+            }
+            out.writeByte(CONDITION_CONSTANT);
+            out.writeBoolean(operand.booleanValue());
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown condition " + field.getKey());
+        }
+    }
+
+    private static void compileNumeric(final JsonNode numeric, final DataOutputStream out) throws IOException {
+        final String variable = text(numeric, "variable");
+        final Comparison comparison;
+        try {
+            comparison = Comparison.valueOf(text(numeric, "comparison"));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown comparison " + numeric.path("comparison").asText());
+        }
+        final JsonNode low = numeric.path(comparison == Comparison.BETWEEN ? "min" : "value");
+        final JsonNode high = comparison == Comparison.BETWEEN ? numeric.path("max") : low;
+        if (!low.isNumber() || !high.isNumber()) {
+            throw new IllegalArgumentException("The numeric guard of " + variable + " needs numbers to compare");
+        }
+        final boolean integral = low.isIntegralNumber() && high.isIntegralNumber();
+        out.writeByte(integral ? CONDITION_NUMERIC_LONG : CONDITION_NUMERIC_DOUBLE);
+        out.writeUTF(variable);
+        out.writeByte(comparison.ordinal());
+        if (integral) {
+            out.writeLong(low.longValue());
+            out.writeLong(high.longValue());
+        }
+        else {
+            out.writeDouble(low.doubleValue());
+            out.writeDouble(high.doubleValue());
+        }
+    }
+
+    private static void compileValue(final JsonNode value, final DataOutputStream out) throws IOException {
+        if (value.isMissingNode() || value.isNull()) {
+            out.writeByte(VALUE_NULL);
+        }
+        else if (value.isTextual()) {
+            out.writeByte(VALUE_STRING);
+            out.writeUTF(value.textValue());
+        }
+        else if (value.isIntegralNumber()) {
+            out.writeByte(VALUE_LONG);
+            out.writeLong(value.longValue());
+        }
+        else if (value.isNumber()) {
+            out.writeByte(VALUE_DOUBLE);
+            out.writeDouble(value.doubleValue());
+        }
+        else if (value.isBoolean()) {
+            out.writeByte(VALUE_BOOLEAN);
+            out.writeBoolean(value.booleanValue());
+        }
+        else {
+            throw new IllegalArgumentException("The value of a guard must be a text, number, boolean or null");
+        }
+    }
+
+    private static String text(final JsonNode node, final String field) {
+        return textValue(node.path(field), field);
+    }
+
+    private static String textValue(final JsonNode value, final String field) {
+        if (!value.isTextual()) {
+            throw new IllegalArgumentException("The " + field + " must be a text");
+        }
+        return value.textValue();
+    }
+
+    private static JsonNode array(final JsonNode node, final String field) {
+        final JsonNode value = node.path(field);
+        if (!value.isArray()) {
+            throw new IllegalArgumentException("The " + field + " must be a list");
+        }
+        return value;
+    }
+
+    private static int index(final JsonNode value, final String field) {
+        if (!value.isIntegralNumber() || value.intValue() < 0) {
+            throw new IllegalArgumentException("The " + field + " must be indexes, not negative");
+        }
+        return value.intValue();
+    }
+}
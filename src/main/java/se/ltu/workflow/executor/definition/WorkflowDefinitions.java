@@ -0,0 +1,406 @@
+package se.ltu.workflow.executor.definition;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import se.ltu.workflow.executor.service.Workflow;
+import se.ltu.workflow.executor.state_machine.CompositeState;
+import se.ltu.workflow.executor.state_machine.Conditions;
+import se.ltu.workflow.executor.state_machine.Context;
+import se.ltu.workflow.executor.state_machine.Evaluable;
+import se.ltu.workflow.executor.state_machine.Event;
+import se.ltu.workflow.executor.state_machine.Guard;
+import se.ltu.workflow.executor.state_machine.NumericGuard;
+import se.ltu.workflow.executor.state_machine.NumericGuard.Comparison;
+import se.ltu.workflow.executor.state_machine.State;
+import se.ltu.workflow.executor.state_machine.StateMachine;
+import se.ltu.workflow.executor.state_machine.StateMachine.EventConsumption;
+import se.ltu.workflow.executor.state_machine.StateMachineDefinition;
+import se.ltu.workflow.executor.state_machine.Transition;
+
+/**
+ * Loads the Workflows defined declaratively in JSON files, so new Workflows can be
+ * added without building the Workflow Executor again.
+ * <p>
+ * A definition holds the name and configuration of the Workflow, its states and
+ * its transitions, whose actions are referenced by their name in the
+ * {@link ActionRegistry}. For example:
+ * <pre>{@code
+ * {
+ *   "name": "sorting",
+ *   "config": { "color": ["String"] },
+ *   "states": [
+ *     { "name": "Idle", "transitions": [0] },
+ *     { "name": "Sorting", "transitions": [1, 2] },
+ *     { "name": "Done" }
+ *   ],
+ *   "transitions": [
+ *     { "condition": { "and": [ { "event": "start" }, { "guard": { "variable": "mode", "value": "auto" } } ] },
+ *       "action": "sorter.start", "target": 1 },
+ *     { "condition": { "numeric": { "variable": "count", "comparison": "GREATER_OR_EQUAL", "value": 10 } },
+ *       "target": 2 },
+ *     { "after": { "timeout": 5000, "event": "sorting-timeout" }, "action": "sorter.stop", "target": 2 }
+ *   ]
+ * }
+ * }</pre>
+ * The conditions can also use {@code "or"}, {@code "not"}, {@code "xor"} and
+ * {@code "constant"}, and a transition can have an {@code "asyncAction"}
+ * instead of an action, with the {@code "failureEvent"} and {@code "errorVariable"}
+ * added when it fails. Optionally, {@code "initialStates"} lists the initial
+ * state of each region, {@code "eventConsumption"} can be {@code "QUEUE"}, so the
+ * events not read by a transition are kept for the next ones instead of being
+ * cleared, and {@code "composites"} lists the composite states, whose
+ * transitions apply to all their substates:
+ * <pre>{@code
+ *   "composites": [
+ *     { "name": "Working", "states": [1], "transitions": [2], "entry": "sorter.lamp-on", "exit": "sorter.lamp-off" }
+ *   ]
+ * }</pre>
+ * <p>
+ * Each definition is first compiled into a binary form, which is kept in a cache
+ * file together with the size and modification time of its source. When the
+ * source has not changed, the binary form is decoded directly from the cache,
+ * without parsing the JSON again, so many definitions load in milliseconds.
+ * <p>
+ * As a Spring bean, it receives the {@link ActionRegistry} once all the
+ * {@link ActionRegistrar registrars} have registered their actions.
+ */
+@Component
+public final class WorkflowDefinitions {
+
+    private static final Logger logger = LogManager.getLogger(WorkflowDefinitions.class);
+
+    private static final int CACHE_MAGIC = 0x57444546;
+    private static final int CACHE_VERSION = 4;
+    private static final String DEFINITION_SUFFIX = ".json";
+
+    private static final Comparison[] COMPARISONS = Comparison.values();
+    private static final EventConsumption[] EVENT_CONSUMPTIONS = EventConsumption.values();
+
+    /**
+     * The actions referenced by the definitions
+     */
+    private final ActionRegistry actions;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public WorkflowDefinitions(final ActionRegistry actions) {
+        this.actions = actions;
+    }
+
+    /**
+     * Loads the Workflows defined in the JSON files of a directory.
+     * <p>
+     * A definition that can not be loaded, because it does not follow the format
+     * or references an action that is not registered, is logged and skipped. The
+     * cache is written again when any definition had to be compiled.
+     *
+     * @param directory  The directory of the definitions
+     * @param cacheFile  The cache of the compiled definitions, created if it does not exist
+     * @return The Workflows defined, to be used as templates
+     *
+     * @throws IOException if the directory can not be read
+     */
+    public List<Workflow> load(final Path directory, final Path cacheFile) throws IOException {
+        final Map<String, CachedDefinition> cache = readCache(cacheFile);
+        final Map<String, CachedDefinition> compiled = new LinkedHashMap<>();
+        boolean changed = false;
+
+        final List<Path> sources;
+        try (Stream<Path> files = Files.list(directory)) {
+            sources = files.filter(f -> f.getFileName().toString().endsWith(DEFINITION_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        final List<Workflow> workflows = new ArrayList<>(sources.size());
+        for (final Path source : sources) {
+            final String name = source.getFileName().toString();
+            try {
+                final long size = Files.size(source);
+                final long modified = Files.getLastModifiedTime(source).toMillis();
+                CachedDefinition definition = cache.get(name);
+                if (definition == null || definition.size != size || definition.modified != modified) {
+                    definition = new CachedDefinition(size, modified,
+                            DefinitionCompiler.compile(mapper.readTree(source.toFile())));
+                    changed = true;
+                    logger.debug("Workflow definition " + name + " compiled");
+                }
+                compiled.put(name, definition);
+                workflows.add(decode(definition.binary));
+            } catch (IOException | IllegalArgumentException e) {
+                logger.error("Workflow definition " + name + " could not be loaded: " + e.getMessage());
+            }
+        }
+
+        if (changed || !compiled.keySet().equals(cache.keySet())) {
+            try {
+                writeCache(cacheFile, compiled);
+            } catch (IOException e) {
+                logger.warn("The cache of Workflow definitions could not be written: " + e.getMessage());
+            }
+        }
+        logger.info("Loaded " + workflows.size() + " Workflow definitions from " + directory);
+        return workflows;
+    }
+
+    /**
+     * Creates a Workflow from the binary form of its definition
+     *
+     * @param binary  The definition compiled by the {@link DefinitionCompiler}
+     * @return The Workflow, with its State Machine created
+     *
+     * @throws IOException if the binary form is not complete
+     * @throws IllegalArgumentException if an action is not registered, or the
+     * definition does not form a valid State Machine
+     */
+    Workflow decode(final byte[] binary) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(binary));
+        final String name = in.readUTF();
+
+        final int parameters = in.readInt();
+        final Map<String, List<String>> config = new HashMap<>();
+        for (int p = 0; p < parameters; p++) {
+            final String key = in.readUTF();
+            final int count = in.readInt();
+            final List<String> values = new ArrayList<>(count);
+            for (int v = 0; v < count; v++) {
+                values.add(in.readUTF());
+            }
+            config.put(key, values);
+        }
+
+        final int regions = in.readInt();
+        final List<Integer> initialStates = new ArrayList<>(regions);
+        for (int r = 0; r < regions; r++) {
+            initialStates.add(in.readInt());
+        }
+
+        final int stateCount = in.readInt();
+        final List<State> states = new ArrayList<>(stateCount);
+        for (int s = 0; s < stateCount; s++) {
+            final String stateName = in.readUTF();
+            final int count = in.readInt();
+            final List<Integer> transitions = new ArrayList<>(count);
+            for (int t = 0; t < count; t++) {
+                transitions.add(in.readInt());
+            }
+            states.add(new State(stateName, transitions));
+        }
+
+        final int transitionCount = in.readInt();
+        final List<Transition> transitions = new ArrayList<>(transitionCount);
+        for (int t = 0; t < transitionCount; t++) {
+            final byte kind = in.readByte();
+            final String action = in.readUTF();
+            final int target = in.readInt();
+            switch (kind) {
+            case DefinitionCompiler.TRANSITION_TIMEOUT:
+                final long timeout = in.readLong();
+                transitions.add(Transition.after(timeout, TimeUnit.MILLISECONDS, new Event(in.readUTF()),
+                        action.isEmpty() ? null : actions.action(action), target));
+                break;
+            case DefinitionCompiler.TRANSITION_ASYNC:
+                final Evaluable<Context> condition = readCondition(in);
+                final String failureEvent = in.readUTF();
+                final String errorVariable = in.readUTF();
+                transitions.add(Transition.async(condition, actions.asyncAction(action), target,
+                        failureEvent.isEmpty() ? Transition.ASYNC_FAILURE_EVENT : new Event(failureEvent),
+                        errorVariable.isEmpty() ? Transition.ASYNC_ERROR_VARIABLE : errorVariable));
+                break;
+            default:
+                transitions.add(new Transition(readCondition(in),
+                        action.isEmpty() ? null : actions.action(action), target));
+            }
+        }
+
+        final int compositeCount = in.readInt();
+        final List<CompositeState> composites = new ArrayList<>(compositeCount);
+        for (int c = 0; c < compositeCount; c++) {
+            final String compositeName = in.readUTF();
+            final int substateCount = in.readInt();
+            final List<Integer> substates = new ArrayList<>(substateCount);
+            for (int s = 0; s < substateCount; s++) {
+                substates.add(in.readInt());
+            }
+            final int count = in.readInt();
+            final List<Integer> shared = new ArrayList<>(count);
+            for (int t = 0; t < count; t++) {
+                shared.add(in.readInt());
+            }
+            final String entry = in.readUTF();
+            final String exit = in.readUTF();
+            composites.add(new CompositeState(compositeName, substates, shared,
+                    entry.isEmpty() ? null : actions.action(entry), exit.isEmpty() ? null : actions.action(exit)));
+        }
+
+        final EventConsumption eventConsumption = EVENT_CONSUMPTIONS[in.readByte()];
+
+        return new Workflow(name, config, new StateMachine(
+                new StateMachineDefinition(states, transitions, initialStates, composites, eventConsumption)));
+    }
+
+    /**
+     * Creates a condition from its prefix form
+     */
+    @SuppressWarnings("unchecked")
+    private static Evaluable<Context> readCondition(final DataInputStream in) throws IOException {
+        final byte opcode = in.readByte();
+        switch (opcode) {
+        case DefinitionCompiler.CONDITION_NONE:
+            return null;
+        case DefinitionCompiler.CONDITION_EVENT:
+            return Conditions.event(new Event(in.readUTF()));
+        case DefinitionCompiler.CONDITION_GUARD:
+            return Conditions.guard(new Guard(in.readUTF(), readValue(in)));
+        case DefinitionCompiler.CONDITION_NUMERIC_LONG: {
+            final String variable = in.readUTF();
+            final Comparison comparison = COMPARISONS[in.readByte()];
+            final long low = in.readLong();
+            final long high = in.readLong();
+            return Conditions.guard(comparison == Comparison.BETWEEN
+                    ? NumericGuard.between(variable, low, high)
+                    : new NumericGuard(variable, comparison, low));
+        }
+        case DefinitionCompiler.CONDITION_NUMERIC_DOUBLE: {
+            final String variable = in.readUTF();
+            final Comparison comparison = COMPARISONS[in.readByte()];
+            final double low = in.readDouble();
+            final double high = in.readDouble();
+            return Conditions.guard(comparison == Comparison.BETWEEN
+                    ? NumericGuard.between(variable, low, high)
+                    : new NumericGuard(variable, comparison, low));
+        }
+        case DefinitionCompiler.CONDITION_AND:
+        case DefinitionCompiler.CONDITION_OR:
+            @SuppressWarnings("rawtypes")
+            final Evaluable<Context>[] operands = new Evaluable[in.readInt()];
+            for (int o = 0; o < operands.length; o++) {
+                operands[o] = readCondition(in);
+            }
+            return opcode == DefinitionCompiler.CONDITION_AND ? Conditions.and(operands) : Conditions.or(operands);
+        case DefinitionCompiler.CONDITION_NOT:
+            return Conditions.not(readCondition(in));
+        case DefinitionCompiler.CONDITION_XOR:
+            return Conditions.xor(readCondition(in), readCondition(in));
+        case DefinitionCompiler.CONDITION_CONSTANT:
+            return Conditions.constant(in.readBoolean());
+        default:
+            throw new IOException("Unknown condition opcode " + opcode);
+        }
+    }
+
+    private static Object readValue(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+        case DefinitionCompiler.VALUE_NULL:
+            return null;
+        case DefinitionCompiler.VALUE_STRING:
+            return in.readUTF();
+        case DefinitionCompiler.VALUE_LONG:
+            final long value = in.readLong();
+            // The guards compare with equals, so the values that fit keep the usual type
+            return value == (int) value ? (Object) (int) value : (Object) value;
+        case DefinitionCompiler.VALUE_DOUBLE:
+            return in.readDouble();
+        case DefinitionCompiler.VALUE_BOOLEAN:
+            return in.readBoolean();
+        default:
+            throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Reads the cache of compiled definitions, by the name of their source file.
+     * A cache missing, or that can not be read, is empty
+     */
+    private static Map<String, CachedDefinition> readCache(final Path cacheFile) {
+        final Map<String, CachedDefinition> cache = new HashMap<>();
+        if (!Files.isRegularFile(cacheFile)) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(cacheFile)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) {
+                return cache;
+            }
+            final int entries = in.readInt();
+            for (int e = 0; e < entries; e++) {
+                final String name = in.readUTF();
+                final long size = in.readLong();
+                final long modified = in.readLong();
+                final byte[] binary = new byte[in.readInt()];
+                in.readFully(binary);
+                cache.put(name, new CachedDefinition(size, modified, binary));
+            }
+        } catch (IOException e) {
+            logger.warn("The cache of Workflow definitions could not be read, compiling them again: "
+                    + e.getMessage());
+            cache.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Writes the cache of compiled definitions, replacing the previous one atomically
+     */
+    private static void writeCache(final Path cacheFile, final Map<String, CachedDefinition> compiled)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CACHE_MAGIC);
+        out.writeInt(CACHE_VERSION);
+        out.writeInt(compiled.size());
+        for (final Map.Entry<String, CachedDefinition> entry : compiled.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().size);
+            out.writeLong(entry.getValue().modified);
+            out.writeInt(entry.getValue().binary.length);
+            out.write(entry.getValue().binary);
+        }
+        out.flush();
+
+        final Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temporary)) {
+            bytes.writeTo(file);
+        }
+        Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A compiled definition, with the size and modification time of its source
+     */
+    private static final class CachedDefinition {
+
+        final long size;
+        final long modified;
+        final byte[] binary;
+
+        CachedDefinition(final long size, final long modified, final byte[] binary) {
+            this.size = size;
+            this.modified = modified;
+            this.binary = binary;
+        }
+    }
+}
@@ -26,7 +26,10 @@ import eu.arrowhead.common.dto.shared.OrchestrationFormRequestDTO.Builder;
 import eu.arrowhead.common.exception.ArrowheadException;
 import eu.arrowhead.common.exception.InvalidParameterException;
 import se.ltu.workflow.executor.WExecutorConstants;
+import se.ltu.workflow.executor.definition.ActionRegistrar;
+import se.ltu.workflow.executor.definition.ActionRegistry;
 import se.ltu.workflow.executor.service.Workflow;
+import se.ltu.workflow.executor.state_machine.Action;
 import se.ltu.workflow.executor.state_machine.Event;
 import se.ltu.workflow.executor.state_machine.LogicExpression;
 import se.ltu.workflow.executor.state_machine.LogicOperator;
@@ -36,8 +39,17 @@ import se.ltu.workflow.executor.state_machine.Transition;
 
 
 
+/**
+ * Creates the Workflows that operate the Fischertechnik factory, and provides their
+ * actions to the declarative Workflow definitions.
+ * <p>
+ * The action of each transition is registered as
+ * {@code "fischertechnik.<workflow>.<step>"}, like {@code "fischertechnik.milling.mill"}
+ * for the milling step of the milling Workflow, so the names do not depend on the
+ * order of the transitions.
+ */
 @Component
-public class FischertechnikWorkflow {
+public class FischertechnikWorkflow implements ActionRegistrar {
     
     /**
      * Utility field to use the Arrowhead Client Library functionality, like contacting the
@@ -113,8 +125,68 @@ public class FischertechnikWorkflow {
     private static final String NDRILLING = "numberOfDrilling";
     private static final String TIMEDRILLING = "timeOfDrillingInSec";
     
+    /**
+     * Prefix of the names of the actions registered by this class
+     */
+    private static final String ACTION_PREFIX = "fischertechnik.";
+    
     private final Logger logger = LogManager.getLogger(FischertechnikWorkflow.class);
     
+    @Override
+    public void registerActions(final ActionRegistry registry) {
+        register(registry, WORKFLOW_NAME_MILL, "checkInput", this::millingCheckInput);
+        register(registry, WORKFLOW_NAME_MILL, "startFeedConveyor", this::millingStartFeedConveyor);
+        register(registry, WORKFLOW_NAME_MILL, "stopFeedConveyor", this::millingStopFeedConveyor);
+        register(registry, WORKFLOW_NAME_MILL, "leaveSlider1", this::millingLeaveSlider1);
+        register(registry, WORKFLOW_NAME_MILL, "arriveAtMilling", this::millingArriveAtMilling);
+        register(registry, WORKFLOW_NAME_MILL, "returnSlider1", this::millingReturnSlider1);
+        register(registry, WORKFLOW_NAME_MILL, "readyForMilling", this::millingReadyForMilling);
+        register(registry, WORKFLOW_NAME_MILL, "mill", this::millingMill);
+        register(registry, WORKFLOW_NAME_MILL, "leaveStations", this::millingLeaveStations);
+        register(registry, WORKFLOW_NAME_MILL, "leaveSlider2", this::millingLeaveSlider2);
+        register(registry, WORKFLOW_NAME_MILL, "arriveAtOutput", this::millingArriveAtOutput);
+        register(registry, WORKFLOW_NAME_MILL, "sendSuccess", this::millingSendSuccess);
+        register(registry, WORKFLOW_NAME_MILL, "sendError", this::millingSendError);
+        
+        register(registry, WORKFLOW_NAME_DRILL, "checkInput", this::drillingCheckInput);
+        register(registry, WORKFLOW_NAME_DRILL, "startFeedConveyor", this::drillingStartFeedConveyor);
+        register(registry, WORKFLOW_NAME_DRILL, "stopFeedConveyor", this::drillingStopFeedConveyor);
+        register(registry, WORKFLOW_NAME_DRILL, "leaveSlider1", this::drillingLeaveSlider1);
+        register(registry, WORKFLOW_NAME_DRILL, "arriveAtDrilling", this::drillingArriveAtDrilling);
+        register(registry, WORKFLOW_NAME_DRILL, "returnSlider1", this::drillingReturnSlider1);
+        register(registry, WORKFLOW_NAME_DRILL, "readyForDrilling", this::drillingReadyForDrilling);
+        register(registry, WORKFLOW_NAME_DRILL, "drill", this::drillingDrill);
+        register(registry, WORKFLOW_NAME_DRILL, "leaveStations", this::drillingLeaveStations);
+        register(registry, WORKFLOW_NAME_DRILL, "leaveSlider2", this::drillingLeaveSlider2);
+        register(registry, WORKFLOW_NAME_DRILL, "arriveAtOutput", this::drillingArriveAtOutput);
+        register(registry, WORKFLOW_NAME_DRILL, "sendSuccess", this::drillingSendSuccess);
+        register(registry, WORKFLOW_NAME_DRILL, "sendError", this::drillingSendError);
+        
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "checkInput", this::millingAndDrillingCheckInput);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "startFeedConveyor",
+                this::millingAndDrillingStartFeedConveyor);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "stopFeedConveyor", this::millingAndDrillingStopFeedConveyor);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "leaveSlider1", this::millingAndDrillingLeaveSlider1);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "arriveAtMilling", this::millingAndDrillingArriveAtMilling);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "returnSlider1", this::millingAndDrillingReturnSlider1);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "mill", this::millingAndDrillingMill);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "arriveAtDrilling", this::millingAndDrillingArriveAtDrilling);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "drill", this::millingAndDrillingDrill);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "leaveDrilling", this::millingAndDrillingLeaveDrilling);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "leaveSlider2", this::millingAndDrillingLeaveSlider2);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "arriveAtOutput", this::millingAndDrillingArriveAtOutput);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "sendSuccess", this::millingAndDrillingSendSuccess);
+        register(registry, WORKFLOW_NAME_MILL_AND_DRILL, "sendError", this::millingAndDrillingSendError);
+    }
+    
+    /**
+     * Registers the action of a step of a Workflow, named by the Workflow and the step
+     */
+    private void register(final ActionRegistry registry, final String workflowName, final String step,
+            final Action action) {
+        registry.register(ACTION_PREFIX + workflowName + "." + step, action);
+    }
+    
     public Workflow milling() {
         String workflowName = WORKFLOW_NAME_MILL;
         
@@ -141,44 +213,7 @@ public class FischertechnikWorkflow {
                 new Transition( // Transition 0
                     null,
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 0: Examine State Machine input configuration"
-                                + " and services");
-                        
-                        // Check the input configuration
-                        if(!validateMillingConfig(env, events, 1, 1)) return;
-                        
-                        // Search services needed for State Machine
-                        events.add(findServices(env,events) ? SERVICES_OK_EV : INIT_FAIL_EV);
-                        if(events.contains(INIT_FAIL_EV)) {
-                            env.put(ERROR_MESSAGE, "Services needed for Milling not available in workstation");
-                            return;
-                        }
-                        
-                        //Check that slider motors are at starting position
-                        if(getSensor(env, 2)) {
-                            env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
-                        }else {
-                            events.clear();
-                            events.add(INIT_FAIL_EV);
-                            env.put(ERROR_MESSAGE, SLIDER_1_ORIGIN + " = FALSE ");
-                            return;
-                        }
-                        if(getSensor(env, 4)) {
-                            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
-                        }else {
-                            events.clear();
-                            events.add(INIT_FAIL_EV);
-                            env.put(ERROR_MESSAGE, SLIDER_2_ORIGIN + " = FALSE ");
-                            return;
-                        }
-                        
-                        // Setup the environment
-                        env.put(PRODUCT_READY_MILLING, Boolean.FALSE);
-                        env.put(PRODUCT_DONE_MILLING, Boolean.FALSE);
-                        env.put(PRODUCT_AT_OUTPUT, Boolean.FALSE);
-                        
-                    },
+                    this::millingCheckInput,
                     1),
                 new Transition( // Transition 1
                     new LogicExpression<Event,Set<Event>>(
@@ -186,17 +221,7 @@ public class FischertechnikWorkflow {
                             List.of(SERVICES_OK_EV,
                                     WAITING_PRODUCT_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 1: Wait for product to arrive and start conveyor");
-                        if (!getSensor(env, 7)) {
-                            logger.debug("Product detected, starting conveyor belt");
-                            events.add(PRODUCT_READY_EV);
-                            setActuator(env, 5, true);
-                        }
-                        else {
-                            events.add(WAITING_PRODUCT_EV);
-                        }
-                    },
+                    this::millingStartFeedConveyor,
                     2),
                 new Transition( // Transition 2
                     new LogicExpression<Event,Set<Event>>(
@@ -204,29 +229,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_READY_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 2: Wait for product to leave feed conveyor "
-                                + "and stop it");
-                        if (!getSensor(env, 5)) {
-                            logger.debug("Product detected at end of conveyor belt, "
-                                    + "wait a second before stopping the conveyor");
-                            try {
-                                Thread.sleep(1000);
-                            } catch (InterruptedException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                            events.add(PRODUCT_END_CONVEYOR_EV);
-                            // Stop feeding conveyor
-                            setActuator(env, 5, false);
-                            // Start slider motor 1
-                            setActuator(env, 1, true);
-                            env.put(SLIDER_1_ORIGIN, Boolean.FALSE);
-                        }
-                        else {
-                            events.add(PRODUCT_IN_CONVEYOR_EV);
-                        }
-                    },
+                    this::millingStopFeedConveyor,
                     3),
                 new Transition( // Transition 3
                     new LogicExpression<Event,Set<Event>>(
@@ -234,23 +237,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_CONVEYOR_EV,
                                     PRODUCT_IN_SLIDER_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 3: Wait for product to leave slider motor 1");
-                        if (getSensor(env, 1)) {
-                            logger.debug("Product detected at end of slider motor, star milling conveyor"
-                                    + "and push slider backwards");
-                            // Stop forward movement of slider motor 1
-                            setActuator(env, 1, false);
-                            // Start milling conveyor
-                            setActuator(env, 6, true);
-                            // Start backwards movement of slider motor 1
-                            setActuator(env, 2, true);
-                            events.add(PRODUCT_END_SLIDER_EV);
-                        }
-                        else {
-                            events.add(PRODUCT_IN_SLIDER_EV);
-                        }
-                    },
+                    this::millingLeaveSlider1,
                     4),
                 new Transition( // Transition 4
                     new LogicExpression<Event,Set<Event>>(
@@ -258,37 +245,14 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_SLIDER_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 4: Wait for product to arrive to milling station");
-                        
-                        if (!(Boolean)env.get(PRODUCT_READY_MILLING) && !getSensor(env, 6)) {
-                            logger.debug("Product detected at milling station");
-                            setActuator(env, 6, false);
-                            env.put(PRODUCT_READY_MILLING, Boolean.TRUE);
-                        }
-                        if (!(Boolean)env.get(SLIDER_1_ORIGIN) && getSensor(env, 2)) {
-                            logger.debug("Motor slider detected at starting position");
-                            events.add(MOTOR_SLIDER_ORIGIN_EV);
-                            return;
-                        }
-                        if ((Boolean)env.get(PRODUCT_READY_MILLING) && (Boolean)env.get(SLIDER_1_ORIGIN)) {
-                            events.add(PRODUCT_IN_MILLING_EV);
-                            return;
-                        }
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::millingArriveAtMilling,
                     4),
                 new Transition( // Transition 5
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(MOTOR_SLIDER_ORIGIN_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 5: Slider motor returned to starting position");
-                        setActuator(env, 2, false);
-                        env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::millingReturnSlider1,
                     4),
                 /* Transition needed to change state from 4 to 5.
                  * In the future each state will have a environment method that will solve this problem,
@@ -300,35 +264,14 @@ public class FischertechnikWorkflow {
                             null,
                             List.of(PRODUCT_IN_MILLING_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 6: Product ready for milling, change state");
-                        events.add(PRODUCT_READY_MILLING_EV);
-                    },
+                    this::millingReadyForMilling,
                     5),
                 new Transition( // Transition 7
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(PRODUCT_READY_MILLING_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 7: Mill product");
-                        for(int i = 0; i < (int)env.get(NMILLING); i++) {
-                            setActuator(env, 7, true);
-                            try {
-                                Thread.sleep((int)env.get(TIMEMILLING)*1000);
-                            } catch (InterruptedException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                            setActuator(env, 7, false);
-                        }
-                        env.put(PRODUCT_DONE_MILLING, Boolean.TRUE);
-                        events.add(PRODUCT_END_MILLING_EV);
-                        // Milling conveyor
-                        setActuator(env, 6, true);
-                        // Drilling conveyor
-                        setActuator(env, 8, true);
-                    },
+                    this::millingMill,
                     6),
                 new Transition( // Transition 8
                     new LogicExpression<Event,Set<Event>>(
@@ -336,28 +279,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_MILLING_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 8: Leave milling and drilling station");
-                        if(!getSensor(env, 8)) {
-                            setActuator(env, 6, false);
-                            logger.debug("Product detected at end of conveyor belt, "
-                                    + "wait 1,5 seconds before stopping the conveyor");
-                            try {
-                                Thread.sleep(1500);
-                            } catch (InterruptedException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                            // Stop drilling conveyor
-                            setActuator(env, 8, false);
-                            events.add(PRODUCT_END_CONVEYOR_EV);
-                            // Start slider motor 2
-                            setActuator(env, 3, true);
-                            env.put(SLIDER_2_ORIGIN, Boolean.FALSE);
-                        }else {
-                            events.add(PRODUCT_IN_CONVEYOR_EV);
-                        }
-                    },
+                    this::millingLeaveStations,
                     7),
                 new Transition( // Transition 9
                     new LogicExpression<Event,Set<Event>>(
@@ -365,23 +287,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_CONVEYOR_EV,
                                     PRODUCT_IN_SLIDER_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 9: Wait for product to leave slider motor 2");
-                        if (getSensor(env, 3)) {
-                            logger.debug("Product detected at end of slider motor, start output conveyor"
-                                    + "and push slider backwards");
-                            // Stop forward movement of slider motor 2
-                            setActuator(env, 3, false);
-                            // Start output conveyor
-                            setActuator(env, 10, true);
-                            // Start backwards movement of slider motor 2
-                            setActuator(env, 4, true);
-                            events.add(PRODUCT_END_SLIDER_EV);
-                        }
-                        else {
-                            events.add(PRODUCT_IN_SLIDER_EV);
-                        }
-                    },
+                    this::millingLeaveSlider2,
                     8),
                 new Transition( // Transition 10
                     new LogicExpression<Event,Set<Event>>(
@@ -389,38 +295,14 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_SLIDER_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 10: Wait for product to arrive "
-                                + "to the end of factory");
-                        if (!(Boolean)env.get(PRODUCT_AT_OUTPUT) && !getSensor(env, 9)) {
-                            logger.debug("Product detected at output location");
-                            setActuator(env, 10, false);
-                            env.put(PRODUCT_AT_OUTPUT, Boolean.TRUE);
-                        }
-                        if (!(Boolean)env.get(SLIDER_2_ORIGIN) && getSensor(env, 4)) {
-                            logger.debug("Motor slider 2 detected at starting position");
-                            setActuator(env, 4, false);
-                            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
-                        }
-                        if ((Boolean)env.get(PRODUCT_AT_OUTPUT) && (Boolean)env.get(SLIDER_2_ORIGIN)) {
-                            events.add(PRODUCT_DONE_EV);
-                            return;
-                        }
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::millingArriveAtOutput,
                     9),
                 new Transition( // Transition 11
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(PRODUCT_DONE_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 11: Send success results and stop factory");
-                        // Set the results to be passed to the caller of State Machine in the environment
-                        env.put(STATE_MACHINE_RESULT, SUCCESS);
-                        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
-                        storeResultsAndStopFactory(env);
-                    },
+                    this::millingSendSuccess,
                     10),
                 new Transition( // Transition 12
                     new LogicExpression<Event,Set<Event>>(
@@ -428,16 +310,7 @@ public class FischertechnikWorkflow {
                             List.of(INIT_FAIL_EV,
                                     WORK_ERROR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 12: Send error results and stop factory");
-                        
-                        env.put(STATE_MACHINE_RESULT, ERROR);
-                        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
-                        logger.debug(env.get(ERROR_MESSAGE));
-                        if(env.containsKey(SERVICES_TO_ADDRESS)) {
-                            storeResultsAndStopFactory(env);
-                        }
-                    },
+                    this::millingSendError,
                     11)
             )
         );
@@ -447,6 +320,273 @@ public class FischertechnikWorkflow {
         return millingWorkflow;
     }
     
+    /**
+     * Action of transition 0 of the milling Workflow: examine State Machine input
+     * configuration and services
+     */
+    private void millingCheckInput(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 0: Examine State Machine input configuration"
+                + " and services");
+
+        // Check the input configuration
+        if(!validateMillingConfig(env, events, 1, 1)) return;
+
+        // Search services needed for State Machine
+        events.add(findServices(env,events) ? SERVICES_OK_EV : INIT_FAIL_EV);
+        if(events.contains(INIT_FAIL_EV)) {
+            env.put(ERROR_MESSAGE, "Services needed for Milling not available in workstation");
+            return;
+        }
+
+        //Check that slider motors are at starting position
+        if(getSensor(env, 2)) {
+            env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
+        }else {
+            events.clear();
+            events.add(INIT_FAIL_EV);
+            env.put(ERROR_MESSAGE, SLIDER_1_ORIGIN + " = FALSE ");
+            return;
+        }
+        if(getSensor(env, 4)) {
+            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
+        }else {
+            events.clear();
+            events.add(INIT_FAIL_EV);
+            env.put(ERROR_MESSAGE, SLIDER_2_ORIGIN + " = FALSE ");
+            return;
+        }
+
+        // Setup the environment
+        env.put(PRODUCT_READY_MILLING, Boolean.FALSE);
+        env.put(PRODUCT_DONE_MILLING, Boolean.FALSE);
+        env.put(PRODUCT_AT_OUTPUT, Boolean.FALSE);
+
+    }
+    
+    /**
+     * Action of transition 1 of the milling Workflow: wait for product to arrive and start conveyor
+     */
+    private void millingStartFeedConveyor(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 1: Wait for product to arrive and start conveyor");
+        if (!getSensor(env, 7)) {
+            logger.debug("Product detected, starting conveyor belt");
+            events.add(PRODUCT_READY_EV);
+            setActuator(env, 5, true);
+        }
+        else {
+            events.add(WAITING_PRODUCT_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 2 of the milling Workflow: wait for product to leave feed
+     * conveyor and stop it
+     */
+    private void millingStopFeedConveyor(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 2: Wait for product to leave feed conveyor "
+                + "and stop it");
+        if (!getSensor(env, 5)) {
+            logger.debug("Product detected at end of conveyor belt, "
+                    + "wait a second before stopping the conveyor");
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            events.add(PRODUCT_END_CONVEYOR_EV);
+            // Stop feeding conveyor
+            setActuator(env, 5, false);
+            // Start slider motor 1
+            setActuator(env, 1, true);
+            env.put(SLIDER_1_ORIGIN, Boolean.FALSE);
+        }
+        else {
+            events.add(PRODUCT_IN_CONVEYOR_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 3 of the milling Workflow: wait for product to leave slider motor 1
+     */
+    private void millingLeaveSlider1(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 3: Wait for product to leave slider motor 1");
+        if (getSensor(env, 1)) {
+            logger.debug("Product detected at end of slider motor, star milling conveyor"
+                    + "and push slider backwards");
+            // Stop forward movement of slider motor 1
+            setActuator(env, 1, false);
+            // Start milling conveyor
+            setActuator(env, 6, true);
+            // Start backwards movement of slider motor 1
+            setActuator(env, 2, true);
+            events.add(PRODUCT_END_SLIDER_EV);
+        }
+        else {
+            events.add(PRODUCT_IN_SLIDER_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 4 of the milling Workflow: wait for product to arrive to milling station
+     */
+    private void millingArriveAtMilling(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 4: Wait for product to arrive to milling station");
+
+        if (!(Boolean)env.get(PRODUCT_READY_MILLING) && !getSensor(env, 6)) {
+            logger.debug("Product detected at milling station");
+            setActuator(env, 6, false);
+            env.put(PRODUCT_READY_MILLING, Boolean.TRUE);
+        }
+        if (!(Boolean)env.get(SLIDER_1_ORIGIN) && getSensor(env, 2)) {
+            logger.debug("Motor slider detected at starting position");
+            events.add(MOTOR_SLIDER_ORIGIN_EV);
+            return;
+        }
+        if ((Boolean)env.get(PRODUCT_READY_MILLING) && (Boolean)env.get(SLIDER_1_ORIGIN)) {
+            events.add(PRODUCT_IN_MILLING_EV);
+            return;
+        }
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 5 of the milling Workflow: slider motor returned to starting position
+     */
+    private void millingReturnSlider1(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 5: Slider motor returned to starting position");
+        setActuator(env, 2, false);
+        env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 6 of the milling Workflow: product ready for milling, change state
+     */
+    private void millingReadyForMilling(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 6: Product ready for milling, change state");
+        events.add(PRODUCT_READY_MILLING_EV);
+    }
+    
+    /**
+     * Action of transition 7 of the milling Workflow: mill product
+     */
+    private void millingMill(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 7: Mill product");
+        for(int i = 0; i < (int)env.get(NMILLING); i++) {
+            setActuator(env, 7, true);
+            try {
+                Thread.sleep((int)env.get(TIMEMILLING)*1000);
+            } catch (InterruptedException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            setActuator(env, 7, false);
+        }
+        env.put(PRODUCT_DONE_MILLING, Boolean.TRUE);
+        events.add(PRODUCT_END_MILLING_EV);
+        // Milling conveyor
+        setActuator(env, 6, true);
+        // Drilling conveyor
+        setActuator(env, 8, true);
+    }
+    
+    /**
+     * Action of transition 8 of the milling Workflow: leave milling and drilling station
+     */
+    private void millingLeaveStations(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 8: Leave milling and drilling station");
+        if(!getSensor(env, 8)) {
+            setActuator(env, 6, false);
+            logger.debug("Product detected at end of conveyor belt, "
+                    + "wait 1,5 seconds before stopping the conveyor");
+            try {
+                Thread.sleep(1500);
+            } catch (InterruptedException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            // Stop drilling conveyor
+            setActuator(env, 8, false);
+            events.add(PRODUCT_END_CONVEYOR_EV);
+            // Start slider motor 2
+            setActuator(env, 3, true);
+            env.put(SLIDER_2_ORIGIN, Boolean.FALSE);
+        }else {
+            events.add(PRODUCT_IN_CONVEYOR_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 9 of the milling Workflow: wait for product to leave slider motor 2
+     */
+    private void millingLeaveSlider2(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 9: Wait for product to leave slider motor 2");
+        if (getSensor(env, 3)) {
+            logger.debug("Product detected at end of slider motor, start output conveyor"
+                    + "and push slider backwards");
+            // Stop forward movement of slider motor 2
+            setActuator(env, 3, false);
+            // Start output conveyor
+            setActuator(env, 10, true);
+            // Start backwards movement of slider motor 2
+            setActuator(env, 4, true);
+            events.add(PRODUCT_END_SLIDER_EV);
+        }
+        else {
+            events.add(PRODUCT_IN_SLIDER_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 10 of the milling Workflow: wait for product to arrive to
+     * the end of factory
+     */
+    private void millingArriveAtOutput(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 10: Wait for product to arrive "
+                + "to the end of factory");
+        if (!(Boolean)env.get(PRODUCT_AT_OUTPUT) && !getSensor(env, 9)) {
+            logger.debug("Product detected at output location");
+            setActuator(env, 10, false);
+            env.put(PRODUCT_AT_OUTPUT, Boolean.TRUE);
+        }
+        if (!(Boolean)env.get(SLIDER_2_ORIGIN) && getSensor(env, 4)) {
+            logger.debug("Motor slider 2 detected at starting position");
+            setActuator(env, 4, false);
+            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
+        }
+        if ((Boolean)env.get(PRODUCT_AT_OUTPUT) && (Boolean)env.get(SLIDER_2_ORIGIN)) {
+            events.add(PRODUCT_DONE_EV);
+            return;
+        }
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 11 of the milling Workflow: send success results and stop factory
+     */
+    private void millingSendSuccess(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 11: Send success results and stop factory");
+        // Set the results to be passed to the caller of State Machine in the environment
+        env.put(STATE_MACHINE_RESULT, SUCCESS);
+        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
+        storeResultsAndStopFactory(env);
+    }
+    
+    /**
+     * Action of transition 12 of the milling Workflow: send error results and stop factory
+     */
+    private void millingSendError(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 12: Send error results and stop factory");
+
+        env.put(STATE_MACHINE_RESULT, ERROR);
+        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
+        logger.debug(env.get(ERROR_MESSAGE));
+        if(env.containsKey(SERVICES_TO_ADDRESS)) {
+            storeResultsAndStopFactory(env);
+        }
+    }
+    
     public Workflow drilling() {
         String workflowName = "drilling";
         
@@ -473,43 +613,7 @@ public class FischertechnikWorkflow {
                 new Transition( // Transition 0
                     null,
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 0: Examine State Machine input configuration"
-                                + " and services");
-                        
-                        // Check the input configuration
-                        if(!validateDrillingConfig(env, events, 1, 1)) return;
-                        
-                        // Search services needed for State Machine
-                        events.add(findServices(env,events) ? SERVICES_OK_EV : INIT_FAIL_EV);
-                        if(events.contains(INIT_FAIL_EV)) {
-                            env.put(ERROR_MESSAGE, "Services needed for Drilling not available in workstation");
-                            return;
-                        }
-                        
-                        //Check that slider motors are at starting position
-                        if(getSensor(env, 2)) {
-                            env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
-                        }else {
-                            events.clear();
-                            events.add(INIT_FAIL_EV);
-                            env.put(ERROR_MESSAGE, SLIDER_1_ORIGIN + " = FALSE ");
-                            return;
-                        }
-                        if(getSensor(env, 4)) {
-                            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
-                        }else {
-                            events.clear();
-                            events.add(INIT_FAIL_EV);
-                            env.put(ERROR_MESSAGE, SLIDER_2_ORIGIN + " = FALSE ");
-                            return;
-                        }
-                        
-                        // Setup the environment
-                        env.put(PRODUCT_READY_DRILLING, Boolean.FALSE);
-                        env.put(PRODUCT_DONE_DRILLING, Boolean.FALSE);
-                        env.put(PRODUCT_AT_OUTPUT, Boolean.FALSE);              
-                    },
+                    this::drillingCheckInput,
                     1),
                 new Transition( // Transition 1
                     new LogicExpression<Event,Set<Event>>(
@@ -517,17 +621,7 @@ public class FischertechnikWorkflow {
                             List.of(SERVICES_OK_EV,
                                     WAITING_PRODUCT_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 1: Wait for product to arrive and start conveyor");
-                        if (!getSensor(env, 7)) {
-                            logger.debug("Product detected, starting conveyor belt");
-                            events.add(PRODUCT_READY_EV);
-                            setActuator(env, 5, true);
-                        }
-                        else {
-                            events.add(WAITING_PRODUCT_EV);
-                        }
-                    },
+                    this::drillingStartFeedConveyor,
                     2),
                 new Transition( // Transition 2
                     new LogicExpression<Event,Set<Event>>(
@@ -535,29 +629,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_READY_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 2: Wait for product to leave feed conveyor "
-                                + "and stop it");
-                        if (!getSensor(env, 5)) {
-                            logger.debug("Product detected at end of conveyor belt, "
-                                    + "wait a second before stopping the conveyor");
-                            try {
-                                Thread.sleep(1000);
-                            } catch (InterruptedException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                            events.add(PRODUCT_END_CONVEYOR_EV);
-                            // Stop feeding conveyor
-                            setActuator(env, 5, false);
-                            // Start slider motor 1
-                            setActuator(env, 1, true);
-                            env.put(SLIDER_1_ORIGIN, Boolean.FALSE);
-                        }
-                        else {
-                            events.add(PRODUCT_IN_CONVEYOR_EV);
-                        }
-                    },
+                    this::drillingStopFeedConveyor,
                     3),
                 new Transition( // Transition 3
                     new LogicExpression<Event,Set<Event>>(
@@ -565,26 +637,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_CONVEYOR_EV,
                                     PRODUCT_IN_SLIDER_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 3: Wait for product to leave slider motor 1");
-                        if (getSensor(env, 1)) {
-                            logger.debug("Product detected at end of slider motor, star milling conveyor"
-                                    + "and push slider backwards");
-                            events.add(PRODUCT_END_SLIDER_EV);
-                            // Stop forward movement of slider motor 1
-                            setActuator(env, 1, false);
-                            // Start milling conveyor
-                            setActuator(env, 6, true);
-                            // Start backwards movement of slider motor 1
-                            setActuator(env, 2, true);
-                            // Start drilling conveyor
-                            setActuator(env, 8, true);
-                            
-                        }
-                        else {
-                            events.add(PRODUCT_IN_SLIDER_EV);
-                        }
-                    },
+                    this::drillingLeaveSlider1,
                     4),
                 new Transition( // Transition 4
                     new LogicExpression<Event,Set<Event>>(
@@ -592,39 +645,14 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_SLIDER_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 4: Wait for product to arrive to drilling station");
-                        if (!getSensor(env, 8) && !(Boolean)env.get(PRODUCT_READY_DRILLING)) {
-                            logger.debug("Product detected at drilling station");
-                            // Stop drilling conveyor
-                            setActuator(env, 8, false);
-                            // Stop milling conveyor
-                            setActuator(env, 6, false);
-                            env.put(PRODUCT_READY_DRILLING, Boolean.TRUE);
-                        }
-                        if (!(Boolean)env.get(SLIDER_1_ORIGIN) && getSensor(env, 2)) {
-                            logger.debug("Motor slider 1 detected at starting position");
-                            events.add(MOTOR_SLIDER_ORIGIN_EV);
-                            return;
-                        }
-                        if ((Boolean)env.get(PRODUCT_READY_DRILLING) && (Boolean)env.get(SLIDER_1_ORIGIN)) {
-                            events.add(PRODUCT_IN_DRILLING_EV);
-                            return;
-                        }
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::drillingArriveAtDrilling,
                     4),
                 new Transition( // Transition 5
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(MOTOR_SLIDER_ORIGIN_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 5: Slider motor returned to starting position");
-                        setActuator(env, 2, false);
-                        env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::drillingReturnSlider1,
                     4),
                 /* Transition needed to change state from 4 to 5.
                  * In the future each state will have a environment method that will solve this problem,
@@ -636,31 +664,14 @@ public class FischertechnikWorkflow {
                             null,
                             List.of(PRODUCT_IN_DRILLING_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 6: Product ready for drilling, change state");
-                        events.add(PRODUCT_READY_DRILLING_EV);
-                    },
+                    this::drillingReadyForDrilling,
                     5),
                 new Transition( // Transition 7
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(PRODUCT_READY_DRILLING_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 7: Drill product");
-                        for(int i = 0; i < (int)env.get(NDRILLING); i++) {
-                            setActuator(env, 9, true);
-                            try {
-                                Thread.sleep((int)env.get(TIMEDRILLING)*1000);
-                            } catch (InterruptedException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                            setActuator(env, 9, false);
-                        }
-                        env.put(PRODUCT_DONE_DRILLING, Boolean.TRUE);
-                        events.add(PRODUCT_END_DRILLING_EV);
-                    },
+                    this::drillingDrill,
                     6),
                 new Transition( // Transition 8
                     new LogicExpression<Event,Set<Event>>(
@@ -668,25 +679,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_DRILLING_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 8: Leave drilling station");
-                        // Drilling conveyor
-                        setActuator(env, 8, true);
-                        logger.debug("Product detected at end of conveyor belt, "
-                                + "wait 2 seconds before stopping the conveyor");
-                        try {
-                            Thread.sleep(2000);
-                        } catch (InterruptedException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
-                        }
-                        // Stop drilling conveyor
-                        setActuator(env, 8, false);
-                        events.add(PRODUCT_END_CONVEYOR_EV);
-                        // Start slider motor 2
-                        setActuator(env, 3, true);
-                        env.put(SLIDER_2_ORIGIN, Boolean.FALSE);
-                    },
+                    this::drillingLeaveStations,
                     7),
                 new Transition( // Transition 9
                     new LogicExpression<Event,Set<Event>>(
@@ -694,23 +687,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_CONVEYOR_EV,
                                     PRODUCT_IN_SLIDER_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 9: Wait for product to leave slider motor 2");
-                        if (getSensor(env, 3)) {
-                            logger.debug("Product detected at end of slider motor, start output conveyor"
-                                    + "and push slider backwards");
-                            // Stop forward movement of slider motor 2
-                            setActuator(env, 3, false);
-                            // Start output conveyor
-                            setActuator(env, 10, true);
-                            // Start backwards movement of slider motor 2
-                            setActuator(env, 4, true);
-                            events.add(PRODUCT_END_SLIDER_EV);
-                        }
-                        else {
-                            events.add(PRODUCT_IN_SLIDER_EV);
-                        }
-                    },
+                    this::drillingLeaveSlider2,
                     8),
                 new Transition( // Transition 10
                     new LogicExpression<Event,Set<Event>>(
@@ -718,38 +695,14 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_SLIDER_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 10: Wait for product to arrive "
-                                + "to the end of factory");
-                        if (!(Boolean)env.get(PRODUCT_AT_OUTPUT) && !getSensor(env, 9)) {
-                            logger.debug("Product detected at output location");
-                            setActuator(env, 10, false);
-                            env.put(PRODUCT_AT_OUTPUT, Boolean.TRUE);
-                        }
-                        if (!(Boolean)env.get(SLIDER_2_ORIGIN) && getSensor(env, 4)) {
-                            logger.debug("Motor slider 2 detected at starting position");
-                            setActuator(env, 4, false);
-                            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
-                        }
-                        if ((Boolean)env.get(PRODUCT_AT_OUTPUT) && (Boolean)env.get(SLIDER_2_ORIGIN)) {
-                            events.add(PRODUCT_DONE_EV);
-                            return;
-                        }
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::drillingArriveAtOutput,
                     9),
                 new Transition( // Transition 11
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(PRODUCT_DONE_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 11: Send success results and stop factory");
-                        // Set the results to be passed to the caller of State Machine in the environment
-                        env.put(STATE_MACHINE_RESULT, SUCCESS);
-                        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
-                        storeResultsAndStopFactory(env);
-                    },
+                    this::drillingSendSuccess,
                     10),
                 new Transition( // Transition 12
                     new LogicExpression<Event,Set<Event>>(
@@ -757,15 +710,7 @@ public class FischertechnikWorkflow {
                             List.of(INIT_FAIL_EV,
                                     WORK_ERROR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 12: Send error results and stop factory");
-                        env.put(STATE_MACHINE_RESULT, ERROR);
-                        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
-                        logger.debug(env.get(ERROR_MESSAGE));
-                        if(env.containsKey(SERVICES_TO_ADDRESS)) {
-                            storeResultsAndStopFactory(env);
-                        }
-                    },
+                    this::drillingSendError,
                     11)
                 )
             );
@@ -775,6 +720,271 @@ public class FischertechnikWorkflow {
         return millingWorkflow;
     }
     
+    /**
+     * Action of transition 0 of the drilling Workflow: examine State Machine input
+     * configuration and services
+     */
+    private void drillingCheckInput(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 0: Examine State Machine input configuration"
+                + " and services");
+
+        // Check the input configuration
+        if(!validateDrillingConfig(env, events, 1, 1)) return;
+
+        // Search services needed for State Machine
+        events.add(findServices(env,events) ? SERVICES_OK_EV : INIT_FAIL_EV);
+        if(events.contains(INIT_FAIL_EV)) {
+            env.put(ERROR_MESSAGE, "Services needed for Drilling not available in workstation");
+            return;
+        }
+
+        //Check that slider motors are at starting position
+        if(getSensor(env, 2)) {
+            env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
+        }else {
+            events.clear();
+            events.add(INIT_FAIL_EV);
+            env.put(ERROR_MESSAGE, SLIDER_1_ORIGIN + " = FALSE ");
+            return;
+        }
+        if(getSensor(env, 4)) {
+            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
+        }else {
+            events.clear();
+            events.add(INIT_FAIL_EV);
+            env.put(ERROR_MESSAGE, SLIDER_2_ORIGIN + " = FALSE ");
+            return;
+        }
+
+        // Setup the environment
+        env.put(PRODUCT_READY_DRILLING, Boolean.FALSE);
+        env.put(PRODUCT_DONE_DRILLING, Boolean.FALSE);
+        env.put(PRODUCT_AT_OUTPUT, Boolean.FALSE);              
+    }
+    
+    /**
+     * Action of transition 1 of the drilling Workflow: wait for product to arrive
+     * and start conveyor
+     */
+    private void drillingStartFeedConveyor(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 1: Wait for product to arrive and start conveyor");
+        if (!getSensor(env, 7)) {
+            logger.debug("Product detected, starting conveyor belt");
+            events.add(PRODUCT_READY_EV);
+            setActuator(env, 5, true);
+        }
+        else {
+            events.add(WAITING_PRODUCT_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 2 of the drilling Workflow: wait for product to leave
+     * feed conveyor and stop it
+     */
+    private void drillingStopFeedConveyor(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 2: Wait for product to leave feed conveyor "
+                + "and stop it");
+        if (!getSensor(env, 5)) {
+            logger.debug("Product detected at end of conveyor belt, "
+                    + "wait a second before stopping the conveyor");
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            events.add(PRODUCT_END_CONVEYOR_EV);
+            // Stop feeding conveyor
+            setActuator(env, 5, false);
+            // Start slider motor 1
+            setActuator(env, 1, true);
+            env.put(SLIDER_1_ORIGIN, Boolean.FALSE);
+        }
+        else {
+            events.add(PRODUCT_IN_CONVEYOR_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 3 of the drilling Workflow: wait for product to leave slider motor 1
+     */
+    private void drillingLeaveSlider1(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 3: Wait for product to leave slider motor 1");
+        if (getSensor(env, 1)) {
+            logger.debug("Product detected at end of slider motor, star milling conveyor"
+                    + "and push slider backwards");
+            events.add(PRODUCT_END_SLIDER_EV);
+            // Stop forward movement of slider motor 1
+            setActuator(env, 1, false);
+            // Start milling conveyor
+            setActuator(env, 6, true);
+            // Start backwards movement of slider motor 1
+            setActuator(env, 2, true);
+            // Start drilling conveyor
+            setActuator(env, 8, true);
+
+        }
+        else {
+            events.add(PRODUCT_IN_SLIDER_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 4 of the drilling Workflow: wait for product to arrive to
+     * drilling station
+     */
+    private void drillingArriveAtDrilling(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 4: Wait for product to arrive to drilling station");
+        if (!getSensor(env, 8) && !(Boolean)env.get(PRODUCT_READY_DRILLING)) {
+            logger.debug("Product detected at drilling station");
+            // Stop drilling conveyor
+            setActuator(env, 8, false);
+            // Stop milling conveyor
+            setActuator(env, 6, false);
+            env.put(PRODUCT_READY_DRILLING, Boolean.TRUE);
+        }
+        if (!(Boolean)env.get(SLIDER_1_ORIGIN) && getSensor(env, 2)) {
+            logger.debug("Motor slider 1 detected at starting position");
+            events.add(MOTOR_SLIDER_ORIGIN_EV);
+            return;
+        }
+        if ((Boolean)env.get(PRODUCT_READY_DRILLING) && (Boolean)env.get(SLIDER_1_ORIGIN)) {
+            events.add(PRODUCT_IN_DRILLING_EV);
+            return;
+        }
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 5 of the drilling Workflow: slider motor returned to starting position
+     */
+    private void drillingReturnSlider1(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 5: Slider motor returned to starting position");
+        setActuator(env, 2, false);
+        env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 6 of the drilling Workflow: product ready for drilling, change state
+     */
+    private void drillingReadyForDrilling(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 6: Product ready for drilling, change state");
+        events.add(PRODUCT_READY_DRILLING_EV);
+    }
+    
+    /**
+     * Action of transition 7 of the drilling Workflow: drill product
+     */
+    private void drillingDrill(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 7: Drill product");
+        for(int i = 0; i < (int)env.get(NDRILLING); i++) {
+            setActuator(env, 9, true);
+            try {
+                Thread.sleep((int)env.get(TIMEDRILLING)*1000);
+            } catch (InterruptedException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            setActuator(env, 9, false);
+        }
+        env.put(PRODUCT_DONE_DRILLING, Boolean.TRUE);
+        events.add(PRODUCT_END_DRILLING_EV);
+    }
+    
+    /**
+     * Action of transition 8 of the drilling Workflow: leave drilling station
+     */
+    private void drillingLeaveStations(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 8: Leave drilling station");
+        // Drilling conveyor
+        setActuator(env, 8, true);
+        logger.debug("Product detected at end of conveyor belt, "
+                + "wait 2 seconds before stopping the conveyor");
+        try {
+            Thread.sleep(2000);
+        } catch (InterruptedException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+        // Stop drilling conveyor
+        setActuator(env, 8, false);
+        events.add(PRODUCT_END_CONVEYOR_EV);
+        // Start slider motor 2
+        setActuator(env, 3, true);
+        env.put(SLIDER_2_ORIGIN, Boolean.FALSE);
+    }
+    
+    /**
+     * Action of transition 9 of the drilling Workflow: wait for product to leave slider motor 2
+     */
+    private void drillingLeaveSlider2(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 9: Wait for product to leave slider motor 2");
+        if (getSensor(env, 3)) {
+            logger.debug("Product detected at end of slider motor, start output conveyor"
+                    + "and push slider backwards");
+            // Stop forward movement of slider motor 2
+            setActuator(env, 3, false);
+            // Start output conveyor
+            setActuator(env, 10, true);
+            // Start backwards movement of slider motor 2
+            setActuator(env, 4, true);
+            events.add(PRODUCT_END_SLIDER_EV);
+        }
+        else {
+            events.add(PRODUCT_IN_SLIDER_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 10 of the drilling Workflow: wait for product to arrive
+     * to the end of factory
+     */
+    private void drillingArriveAtOutput(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 10: Wait for product to arrive "
+                + "to the end of factory");
+        if (!(Boolean)env.get(PRODUCT_AT_OUTPUT) && !getSensor(env, 9)) {
+            logger.debug("Product detected at output location");
+            setActuator(env, 10, false);
+            env.put(PRODUCT_AT_OUTPUT, Boolean.TRUE);
+        }
+        if (!(Boolean)env.get(SLIDER_2_ORIGIN) && getSensor(env, 4)) {
+            logger.debug("Motor slider 2 detected at starting position");
+            setActuator(env, 4, false);
+            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
+        }
+        if ((Boolean)env.get(PRODUCT_AT_OUTPUT) && (Boolean)env.get(SLIDER_2_ORIGIN)) {
+            events.add(PRODUCT_DONE_EV);
+            return;
+        }
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 11 of the drilling Workflow: send success results and stop factory
+     */
+    private void drillingSendSuccess(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 11: Send success results and stop factory");
+        // Set the results to be passed to the caller of State Machine in the environment
+        env.put(STATE_MACHINE_RESULT, SUCCESS);
+        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
+        storeResultsAndStopFactory(env);
+    }
+    
+    /**
+     * Action of transition 12 of the drilling Workflow: send error results and stop factory
+     */
+    private void drillingSendError(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 12: Send error results and stop factory");
+        env.put(STATE_MACHINE_RESULT, ERROR);
+        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
+        logger.debug(env.get(ERROR_MESSAGE));
+        if(env.containsKey(SERVICES_TO_ADDRESS)) {
+            storeResultsAndStopFactory(env);
+        }
+    }
+    
     public Workflow millingAndDrilling() {
         String workflowName = WORKFLOW_NAME_MILL_AND_DRILL;
         
@@ -804,49 +1014,7 @@ public class FischertechnikWorkflow {
                 new Transition( // Transition 0
                     null,
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 0: Examine State Machine input configuration"
-                                + " and services");
-                        
-                        // Check the input configuration
-                        if(!validateMillingConfig(env, events, 1, 1)) return;
-                        if(!validateDrillingConfig(env, events, 1, 1)) return;
-                        
-                        /* Include the logic creating the OK event after all the test have been a success,
-                         * or clear the events at every test that fail to overwrite OK event
-                         */
-                        events.add(findServices(env,events) ? SERVICES_OK_EV : INIT_FAIL_EV);
-                        if(events.contains(INIT_FAIL_EV)) {
-                            env.put(ERROR_MESSAGE, "Services needed for Drilling not available in workstation");
-                            return;
-                        }
-                        
-                        //Check that slider motors are at starting position
-                        if(getSensor(env, 2)) {
-                            env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
-                        }else {
-                            events.clear();
-                            events.add(INIT_FAIL_EV);
-                            env.put(ERROR_MESSAGE, SLIDER_1_ORIGIN + " = FALSE ");
-                            return;
-                        }
-                        if(getSensor(env, 4)) {
-                            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
-                        }else {
-                            events.clear();
-                            events.add(INIT_FAIL_EV);
-                            env.put(ERROR_MESSAGE, SLIDER_2_ORIGIN + " = FALSE ");
-                            return;
-                        }
-                        
-                        // Setup the environment
-                        env.put(PRODUCT_READY_MILLING, Boolean.FALSE);
-                        env.put(PRODUCT_DONE_MILLING, Boolean.FALSE);
-                        env.put(PRODUCT_READY_DRILLING, Boolean.FALSE);
-                        env.put(PRODUCT_DONE_DRILLING, Boolean.FALSE);
-                        env.put(PRODUCT_AT_OUTPUT, Boolean.FALSE);
-                        
-                    },
+                    this::millingAndDrillingCheckInput,
                     1),
                 new Transition( // Transition 1
                     new LogicExpression<Event,Set<Event>>(
@@ -854,17 +1022,7 @@ public class FischertechnikWorkflow {
                             List.of(SERVICES_OK_EV,
                                     WAITING_PRODUCT_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 1: Read input factory sensor and start feeding conveyor");
-                        if (!getSensor(env, 7)) {
-                            logger.debug("Product detected, starting conveyor belt");
-                            events.add(PRODUCT_READY_EV);
-                            setActuator(env, 5, true);
-                        }
-                        else {
-                            events.add(WAITING_PRODUCT_EV);
-                        }
-                    },
+                    this::millingAndDrillingStartFeedConveyor,
                     1),
                 new Transition( // Transition 2
                     new LogicExpression<Event,Set<Event>>(
@@ -872,29 +1030,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_READY_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 2: Read sensor end of feeding conveyor "
-                                + "and stop conveyor");
-                        if (!getSensor(env, 5)) {
-                            logger.debug("Product detected at end of conveyor belt, "
-                                    + "wait a second before stopping the conveyor");
-                            try {
-                                Thread.sleep(1000);
-                            } catch (InterruptedException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                            events.add(PRODUCT_END_CONVEYOR_EV);
-                            // Stop feeding conveyor
-                            setActuator(env, 5, false);
-                            // Start slider motor 1
-                            setActuator(env, 1, true);
-                            env.put(SLIDER_1_ORIGIN, Boolean.FALSE);
-                        }
-                        else {
-                            events.add(PRODUCT_IN_CONVEYOR_EV);
-                        }
-                    },
+                    this::millingAndDrillingStopFeedConveyor,
                     2),
                 new Transition( // Transition 3
                     new LogicExpression<Event,Set<Event>>(
@@ -902,23 +1038,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_CONVEYOR_EV,
                                     PRODUCT_IN_SLIDER_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 3: Read limit switch of slider motor 1 and back motor");
-                        if (getSensor(env, 1)) {
-                            logger.debug("Product detected at end of slider motor, star milling conveyor"
-                                    + "and push slider backwards");
-                            events.add(PRODUCT_END_SLIDER_EV);
-                            // Stop forward movement of slider motor 1
-                            setActuator(env, 1, false);
-                            // Start milling conveyor
-                            setActuator(env, 6, true);
-                            // Start backwards movement of slider motor 1
-                            setActuator(env, 2, true);
-                        }
-                        else {
-                            events.add(PRODUCT_IN_SLIDER_EV);
-                        }
-                    },
+                    this::millingAndDrillingLeaveSlider1,
                     3),
                 new Transition( // Transition 4
                     new LogicExpression<Event,Set<Event>>(
@@ -926,62 +1046,21 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_SLIDER_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 4: Read milling station sensor to stop milling conveyor"
-                                + " and read starting position limit switch of slider motor 1");
-                        if (!getSensor(env, 6) && !(Boolean)env.get(PRODUCT_READY_MILLING)) {
-                            logger.debug("Product detected at milling station");
-                            setActuator(env, 6, false);
-                            env.put(PRODUCT_READY_MILLING, Boolean.TRUE);
-                        }
-                        if (!(Boolean)env.get(SLIDER_1_ORIGIN) && getSensor(env, 2)) {
-                            logger.debug("Motor slider 1 detected at starting position");
-                            events.add(MOTOR_SLIDER_ORIGIN_EV);
-                            return;
-                        }
-                        if ((Boolean)env.get(PRODUCT_READY_MILLING) && (Boolean)env.get(SLIDER_1_ORIGIN)) {
-                            events.add(PRODUCT_IN_MILLING_EV);
-                            return;
-                        }
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::millingAndDrillingArriveAtMilling,
                     4),
                 new Transition( // Transition 5
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(MOTOR_SLIDER_ORIGIN_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 5: Stop slider motor 1 at starting position");
-                        setActuator(env, 2, false);
-                        env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::millingAndDrillingReturnSlider1,
                     4),
                 new Transition( // Transition 6
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(PRODUCT_IN_MILLING_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 6: Mill product");
-                        for(int i = 0; i < (int)env.get(NMILLING); i++) {
-                            setActuator(env, 7, true);
-                            try {
-                                Thread.sleep((int)env.get(TIMEMILLING)*1000);
-                            } catch (InterruptedException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                            setActuator(env, 7, false);
-                        }
-                        env.put(PRODUCT_DONE_MILLING, Boolean.TRUE);
-                        events.add(PRODUCT_END_MILLING_EV);
-                        // Milling conveyor
-                        setActuator(env, 6, true);
-                        // Drilling conveyor
-                        setActuator(env, 8, true);
-                    },
+                    this::millingAndDrillingMill,
                     5),
                 new Transition( // Transition 7
                     new LogicExpression<Event,Set<Event>>(
@@ -989,66 +1068,21 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_MILLING_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 7: Wait product arrives at drilling station");
-                        if (!getSensor(env, 8)){
-                            // Drilling conveyor
-                            setActuator(env, 8, false);
-                            // Milling conveyor
-                            setActuator(env, 6, false);
-                            events.add(PRODUCT_READY_DRILLING_EV);
-                        }else {
-                            events.add(PRODUCT_IN_CONVEYOR_EV);
-                        }
-                        
-                    },
+                    this::millingAndDrillingArriveAtDrilling,
                     6),
                 new Transition( // Transition 8
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(PRODUCT_READY_DRILLING_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 8: Drill product");
-                        for(int i = 0; i < (int)env.get(NDRILLING); i++) {
-                            setActuator(env, 9, true);
-                            try {
-                                Thread.sleep((int)env.get(TIMEDRILLING)*1000);
-                            } catch (InterruptedException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                            setActuator(env, 9, false);
-                        }
-                        env.put(PRODUCT_DONE_DRILLING, Boolean.TRUE);
-                        events.add(PRODUCT_END_DRILLING_EV);
-                    },
+                    this::millingAndDrillingDrill,
                     7),
                 new Transition( // Transition 9
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(PRODUCT_END_DRILLING_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 9: Move product out of drilling station");
-                        // Drilling conveyor
-                        setActuator(env, 8, true);
-                        logger.debug("Product leaving drilling conveyor belt, "
-                                + "wait 2 seconds before stopping the conveyor");
-                        try {
-                            Thread.sleep(2000);
-                        } catch (InterruptedException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
-                        }
-                        // Stop drilling conveyor
-                        setActuator(env, 8, false);
-                        events.add(PRODUCT_END_CONVEYOR_EV);
-                        // Start slider motor 2
-                        env.put(SLIDER_2_ORIGIN, Boolean.FALSE);
-                        setActuator(env, 3, true);
-                        
-                    },
+                    this::millingAndDrillingLeaveDrilling,
                     8),
                 new Transition( // Transition 10
                     new LogicExpression<Event,Set<Event>>(
@@ -1056,24 +1090,7 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_CONVEYOR_EV,
                                     PRODUCT_IN_SLIDER_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 10: Read limit switch of slider motor 2 and back motor"
-                                + " while activating output conveyor");
-                        if (getSensor(env, 3)) {
-                            logger.debug("Product detected at end of slider motor 2, "
-                                    + "start output conveyor and push slider 2 backwards");
-                            // Stop forward movement of slider motor 2
-                            setActuator(env, 3, false);
-                            // Start output conveyor
-                            setActuator(env, 10, true);
-                            // Start backwards movement of slider motor 2
-                            setActuator(env, 4, true);
-                            events.add(PRODUCT_END_SLIDER_EV);
-                        }
-                        else {
-                            events.add(PRODUCT_IN_SLIDER_EV);
-                        }
-                    },
+                    this::millingAndDrillingLeaveSlider2,
                     9),
                 new Transition( // Transition 11
                     new LogicExpression<Event,Set<Event>>(
@@ -1081,45 +1098,14 @@ public class FischertechnikWorkflow {
                             List.of(PRODUCT_END_SLIDER_EV,
                                     PRODUCT_IN_CONVEYOR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 11: Read sensor at the end of output conveyor");
-                        if (!(Boolean)env.get(PRODUCT_AT_OUTPUT) && !getSensor(env, 9)) {
-                            logger.debug("Product detected at output location");
-                            // TODO: Add a timer so that product reaches end of conveyor belt, instead of
-                            // being stop at the sensor (for use with ROS robot)
-                            try {
-                                Thread.sleep(2000);
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
-                            setActuator(env, 10, false);
-                            env.put(PRODUCT_AT_OUTPUT, Boolean.TRUE);
-                        }
-                        // Check that motor returned to starting position
-                        if (!(Boolean)env.get(SLIDER_2_ORIGIN) && getSensor(env, 4)) {
-                            logger.debug("Motor slider 2 detected at starting position");
-                            setActuator(env, 4, false);
-                            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
-                        }
-                        if ((Boolean)env.get(PRODUCT_AT_OUTPUT) && (Boolean)env.get(SLIDER_2_ORIGIN)) {
-                            events.add(PRODUCT_DONE_EV);
-                            return;
-                        }
-                        events.add(PRODUCT_IN_CONVEYOR_EV);
-                    },
+                    this::millingAndDrillingArriveAtOutput,
                     10),
                 new Transition( // Transition 12
                     new LogicExpression<Event,Set<Event>>(
                             null,
                             List.of(PRODUCT_DONE_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 12: Send successful results and stop factory");
-                        // Set the results to be passed to the caller of State Machine in the environment
-                        env.put(STATE_MACHINE_RESULT, SUCCESS);
-                        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
-                        storeResultsAndStopFactory(env);
-                    },
+                    this::millingAndDrillingSendSuccess,
                     11),
                 new Transition( // Transition 13
                     new LogicExpression<Event,Set<Event>>(
@@ -1127,15 +1113,7 @@ public class FischertechnikWorkflow {
                             List.of(INIT_FAIL_EV,
                                     WORK_ERROR_EV)),
                     null,
-                    (env, events) -> {
-                        logger.info("Transition 13: Send error results and stop factory");
-                        env.put(STATE_MACHINE_RESULT, ERROR);
-                        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
-                        logger.debug(env.get(ERROR_MESSAGE));
-                        if(env.containsKey(SERVICES_TO_ADDRESS)) {
-                            storeResultsAndStopFactory(env);
-                        }
-                    },
+                    this::millingAndDrillingSendError,
                     12)
                 )
             );
@@ -1145,6 +1123,321 @@ public class FischertechnikWorkflow {
         return millingWorkflow;
     }
     
+    /**
+     * Action of transition 0 of the millingAndDrilling Workflow: examine State
+     * Machine input configuration and services
+     */
+    private void millingAndDrillingCheckInput(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 0: Examine State Machine input configuration"
+                + " and services");
+
+        // Check the input configuration
+        if(!validateMillingConfig(env, events, 1, 1)) return;
+        if(!validateDrillingConfig(env, events, 1, 1)) return;
+
+        /* Include the logic creating the OK event after all the test have been a success,
+         * or clear the events at every test that fail to overwrite OK event
+         */
+        events.add(findServices(env,events) ? SERVICES_OK_EV : INIT_FAIL_EV);
+        if(events.contains(INIT_FAIL_EV)) {
+            env.put(ERROR_MESSAGE, "Services needed for Drilling not available in workstation");
+            return;
+        }
+
+        //Check that slider motors are at starting position
+        if(getSensor(env, 2)) {
+            env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
+        }else {
+            events.clear();
+            events.add(INIT_FAIL_EV);
+            env.put(ERROR_MESSAGE, SLIDER_1_ORIGIN + " = FALSE ");
+            return;
+        }
+        if(getSensor(env, 4)) {
+            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
+        }else {
+            events.clear();
+            events.add(INIT_FAIL_EV);
+            env.put(ERROR_MESSAGE, SLIDER_2_ORIGIN + " = FALSE ");
+            return;
+        }
+
+        // Setup the environment
+        env.put(PRODUCT_READY_MILLING, Boolean.FALSE);
+        env.put(PRODUCT_DONE_MILLING, Boolean.FALSE);
+        env.put(PRODUCT_READY_DRILLING, Boolean.FALSE);
+        env.put(PRODUCT_DONE_DRILLING, Boolean.FALSE);
+        env.put(PRODUCT_AT_OUTPUT, Boolean.FALSE);
+
+    }
+    
+    /**
+     * Action of transition 1 of the millingAndDrilling Workflow: read input factory
+     * sensor and start feeding conveyor
+     */
+    private void millingAndDrillingStartFeedConveyor(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 1: Read input factory sensor and start feeding conveyor");
+        if (!getSensor(env, 7)) {
+            logger.debug("Product detected, starting conveyor belt");
+            events.add(PRODUCT_READY_EV);
+            setActuator(env, 5, true);
+        }
+        else {
+            events.add(WAITING_PRODUCT_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 2 of the millingAndDrilling Workflow: read sensor end of
+     * feeding conveyor and stop conveyor
+     */
+    private void millingAndDrillingStopFeedConveyor(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 2: Read sensor end of feeding conveyor "
+                + "and stop conveyor");
+        if (!getSensor(env, 5)) {
+            logger.debug("Product detected at end of conveyor belt, "
+                    + "wait a second before stopping the conveyor");
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            events.add(PRODUCT_END_CONVEYOR_EV);
+            // Stop feeding conveyor
+            setActuator(env, 5, false);
+            // Start slider motor 1
+            setActuator(env, 1, true);
+            env.put(SLIDER_1_ORIGIN, Boolean.FALSE);
+        }
+        else {
+            events.add(PRODUCT_IN_CONVEYOR_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 3 of the millingAndDrilling Workflow: read limit switch
+     * of slider motor 1 and back motor
+     */
+    private void millingAndDrillingLeaveSlider1(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 3: Read limit switch of slider motor 1 and back motor");
+        if (getSensor(env, 1)) {
+            logger.debug("Product detected at end of slider motor, star milling conveyor"
+                    + "and push slider backwards");
+            events.add(PRODUCT_END_SLIDER_EV);
+            // Stop forward movement of slider motor 1
+            setActuator(env, 1, false);
+            // Start milling conveyor
+            setActuator(env, 6, true);
+            // Start backwards movement of slider motor 1
+            setActuator(env, 2, true);
+        }
+        else {
+            events.add(PRODUCT_IN_SLIDER_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 4 of the millingAndDrilling Workflow: read milling
+     * station sensor to stop milling conveyor and read starting position limit
+     * switch of slider motor 1
+     */
+    private void millingAndDrillingArriveAtMilling(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 4: Read milling station sensor to stop milling conveyor"
+                + " and read starting position limit switch of slider motor 1");
+        if (!getSensor(env, 6) && !(Boolean)env.get(PRODUCT_READY_MILLING)) {
+            logger.debug("Product detected at milling station");
+            setActuator(env, 6, false);
+            env.put(PRODUCT_READY_MILLING, Boolean.TRUE);
+        }
+        if (!(Boolean)env.get(SLIDER_1_ORIGIN) && getSensor(env, 2)) {
+            logger.debug("Motor slider 1 detected at starting position");
+            events.add(MOTOR_SLIDER_ORIGIN_EV);
+            return;
+        }
+        if ((Boolean)env.get(PRODUCT_READY_MILLING) && (Boolean)env.get(SLIDER_1_ORIGIN)) {
+            events.add(PRODUCT_IN_MILLING_EV);
+            return;
+        }
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 5 of the millingAndDrilling Workflow: stop slider motor 1
+     * at starting position
+     */
+    private void millingAndDrillingReturnSlider1(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 5: Stop slider motor 1 at starting position");
+        setActuator(env, 2, false);
+        env.put(SLIDER_1_ORIGIN, Boolean.TRUE);
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 6 of the millingAndDrilling Workflow: mill product
+     */
+    private void millingAndDrillingMill(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 6: Mill product");
+        for(int i = 0; i < (int)env.get(NMILLING); i++) {
+            setActuator(env, 7, true);
+            try {
+                Thread.sleep((int)env.get(TIMEMILLING)*1000);
+            } catch (InterruptedException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            setActuator(env, 7, false);
+        }
+        env.put(PRODUCT_DONE_MILLING, Boolean.TRUE);
+        events.add(PRODUCT_END_MILLING_EV);
+        // Milling conveyor
+        setActuator(env, 6, true);
+        // Drilling conveyor
+        setActuator(env, 8, true);
+    }
+    
+    /**
+     * Action of transition 7 of the millingAndDrilling Workflow: wait product
+     * arrives at drilling station
+     */
+    private void millingAndDrillingArriveAtDrilling(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 7: Wait product arrives at drilling station");
+        if (!getSensor(env, 8)){
+            // Drilling conveyor
+            setActuator(env, 8, false);
+            // Milling conveyor
+            setActuator(env, 6, false);
+            events.add(PRODUCT_READY_DRILLING_EV);
+        }else {
+            events.add(PRODUCT_IN_CONVEYOR_EV);
+        }
+
+    }
+    
+    /**
+     * Action of transition 8 of the millingAndDrilling Workflow: drill product
+     */
+    private void millingAndDrillingDrill(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 8: Drill product");
+        for(int i = 0; i < (int)env.get(NDRILLING); i++) {
+            setActuator(env, 9, true);
+            try {
+                Thread.sleep((int)env.get(TIMEDRILLING)*1000);
+            } catch (InterruptedException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
+            setActuator(env, 9, false);
+        }
+        env.put(PRODUCT_DONE_DRILLING, Boolean.TRUE);
+        events.add(PRODUCT_END_DRILLING_EV);
+    }
+    
+    /**
+     * Action of transition 9 of the millingAndDrilling Workflow: move product out of
+     * drilling station
+     */
+    private void millingAndDrillingLeaveDrilling(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 9: Move product out of drilling station");
+        // Drilling conveyor
+        setActuator(env, 8, true);
+        logger.debug("Product leaving drilling conveyor belt, "
+                + "wait 2 seconds before stopping the conveyor");
+        try {
+            Thread.sleep(2000);
+        } catch (InterruptedException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+        // Stop drilling conveyor
+        setActuator(env, 8, false);
+        events.add(PRODUCT_END_CONVEYOR_EV);
+        // Start slider motor 2
+        env.put(SLIDER_2_ORIGIN, Boolean.FALSE);
+        setActuator(env, 3, true);
+
+    }
+    
+    /**
+     * Action of transition 10 of the millingAndDrilling Workflow: read limit switch
+     * of slider motor 2 and back motor while activating output conveyor
+     */
+    private void millingAndDrillingLeaveSlider2(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 10: Read limit switch of slider motor 2 and back motor"
+                + " while activating output conveyor");
+        if (getSensor(env, 3)) {
+            logger.debug("Product detected at end of slider motor 2, "
+                    + "start output conveyor and push slider 2 backwards");
+            // Stop forward movement of slider motor 2
+            setActuator(env, 3, false);
+            // Start output conveyor
+            setActuator(env, 10, true);
+            // Start backwards movement of slider motor 2
+            setActuator(env, 4, true);
+            events.add(PRODUCT_END_SLIDER_EV);
+        }
+        else {
+            events.add(PRODUCT_IN_SLIDER_EV);
+        }
+    }
+    
+    /**
+     * Action of transition 11 of the millingAndDrilling Workflow: read sensor at the
+     * end of output conveyor
+     */
+    private void millingAndDrillingArriveAtOutput(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 11: Read sensor at the end of output conveyor");
+        if (!(Boolean)env.get(PRODUCT_AT_OUTPUT) && !getSensor(env, 9)) {
+            logger.debug("Product detected at output location");
+            // TODO: Add a timer so that product reaches end of conveyor belt, instead of
+            // being stop at the sensor (for use with ROS robot)
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            setActuator(env, 10, false);
+            env.put(PRODUCT_AT_OUTPUT, Boolean.TRUE);
+        }
+        // Check that motor returned to starting position
+        if (!(Boolean)env.get(SLIDER_2_ORIGIN) && getSensor(env, 4)) {
+            logger.debug("Motor slider 2 detected at starting position");
+            setActuator(env, 4, false);
+            env.put(SLIDER_2_ORIGIN, Boolean.TRUE);
+        }
+        if ((Boolean)env.get(PRODUCT_AT_OUTPUT) && (Boolean)env.get(SLIDER_2_ORIGIN)) {
+            events.add(PRODUCT_DONE_EV);
+            return;
+        }
+        events.add(PRODUCT_IN_CONVEYOR_EV);
+    }
+    
+    /**
+     * Action of transition 12 of the millingAndDrilling Workflow: send successful
+     * results and stop factory
+     */
+    private void millingAndDrillingSendSuccess(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 12: Send successful results and stop factory");
+        // Set the results to be passed to the caller of State Machine in the environment
+        env.put(STATE_MACHINE_RESULT, SUCCESS);
+        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
+        storeResultsAndStopFactory(env);
+    }
+    
+    /**
+     * Action of transition 13 of the millingAndDrilling Workflow: send error results
+     * and stop factory
+     */
+    private void millingAndDrillingSendError(Map<String, Object> env, Set<Event> events) {
+        logger.info("Transition 13: Send error results and stop factory");
+        env.put(STATE_MACHINE_RESULT, ERROR);
+        logger.debug("At the end State Machine = " + env.get(STATE_MACHINE_RESULT));
+        logger.debug(env.get(ERROR_MESSAGE));
+        if(env.containsKey(SERVICES_TO_ADDRESS)) {
+            storeResultsAndStopFactory(env);
+        }
+    }
+    
     // Specific methods to use the Fischer factory
     //-------------------------------------------------------------------------------------------------
     
@@ -0,0 +1,42 @@
+package se.ltu.workflow.executor.dto;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The events and variables that an external system posts to a Workflow in
+ * execution, to be added to the context of its State Machine.
+ */
+public class WorkflowEventsDTO {
+
+    final List<String> events;
+    final Map<String,Object> variables;
+
+    public WorkflowEventsDTO(List<String> events, Map<String,Object> variables) {
+        // Both can be null, when only events or only variables are posted
+        this.events = events != null ? Collections.unmodifiableList(events) : List.of();
+        this.variables = variables != null ? Collections.unmodifiableMap(variables) : Map.of();
+    }
+
+    public List<String> getEvents() {
+        return events;
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    // From repository arrowhead-f/core-java-spring, pull request:Implement toString methods in DTOs #259
+    @Override
+    public String toString() {
+        try {
+            return new ObjectMapper().writeValueAsString(this);
+        } catch (final JsonProcessingException ex) {
+            return "toString failure";
+        }
+    }
+}
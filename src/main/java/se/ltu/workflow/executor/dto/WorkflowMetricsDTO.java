@@ -0,0 +1,194 @@
+package se.ltu.workflow.executor.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import se.ltu.workflow.executor.service.Workflow;
+import se.ltu.workflow.executor.state_machine.LatencyHistogram;
+import se.ltu.workflow.executor.state_machine.StateMachineDefinition;
+import se.ltu.workflow.executor.state_machine.TransitionMetrics;
+
+/**
+ * The latencies measured for the states and transitions of a type of Workflow,
+ * in nanoseconds.
+ */
+public class WorkflowMetricsDTO {
+
+    final String workflowName;
+    final List<StateMetricsDTO> states;
+    final List<TransitionMetricsDTO> transitions;
+
+    /**
+     * Creates a new {@code WorkflowMetricsDTO} from the metrics of the State Machine
+     * definition of a Workflow
+     *
+     * @param workflow  The Workflow stored, used as template, can not be null
+     * @return  The DTO object with the latencies, or null if the metrics of the
+     * Workflow are not enabled
+     * @throws IllegalArgumentException if the input parameter workflow is null
+     */
+    public static WorkflowMetricsDTO fromWorkflow(Workflow workflow) {
+        if(workflow == null) {
+            throw new IllegalArgumentException("Input argument \"Workflow\" can not be null");
+        }
+        final StateMachineDefinition definition = workflow.getWorkflowLogic().getDefinition();
+        final TransitionMetrics metrics = definition.getMetrics();
+        if (metrics == null) {
+            return null;
+        }
+
+        List<StateMetricsDTO> states = new ArrayList<>(metrics.getNumberOfStates());
+        for (int s = 0; s < metrics.getNumberOfStates(); s++) {
+            states.add(new StateMetricsDTO(definition.getStates().get(s).name(),
+                    LatencyDTO.fromHistogram(metrics.conditionTime(s)),
+                    LatencyDTO.fromHistogram(metrics.dwellTime(s))));
+        }
+        List<TransitionMetricsDTO> transitions = new ArrayList<>(metrics.getNumberOfTransitions());
+        for (int t = 0; t < metrics.getNumberOfTransitions(); t++) {
+            transitions.add(new TransitionMetricsDTO(t, definition.getTransitions().get(t).targetState(),
+                    LatencyDTO.fromHistogram(metrics.actionTime(t))));
+        }
+        return new WorkflowMetricsDTO(workflow.getWorkflowName(), states, transitions);
+    }
+
+    private WorkflowMetricsDTO(String workflowName, List<StateMetricsDTO> states,
+            List<TransitionMetricsDTO> transitions) {
+        this.workflowName = workflowName;
+        this.states = states;
+        this.transitions = transitions;
+    }
+
+    public String getWorkflowName() {
+        return workflowName;
+    }
+
+    public List<StateMetricsDTO> getStates() {
+        return states;
+    }
+
+    public List<TransitionMetricsDTO> getTransitions() {
+        return transitions;
+    }
+
+    // From repository arrowhead-f/core-java-spring, pull request:Implement toString methods in DTOs #259
+    @Override
+    public String toString() {
+        try {
+            return new ObjectMapper().writeValueAsString(this);
+        } catch (final JsonProcessingException ex) {
+            return "toString failure";
+        }
+    }
+
+    /**
+     * The time spent evaluating the conditions of the transitions of a state, and
+     * the time the state was active
+     */
+    public static class StateMetricsDTO {
+
+        final String state;
+        final LatencyDTO conditionTime;
+        final LatencyDTO dwellTime;
+
+        StateMetricsDTO(String state, LatencyDTO conditionTime, LatencyDTO dwellTime) {
+            this.state = state;
+            this.conditionTime = conditionTime;
+            this.dwellTime = dwellTime;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public LatencyDTO getConditionTime() {
+            return conditionTime;
+        }
+
+        public LatencyDTO getDwellTime() {
+            return dwellTime;
+        }
+    }
+
+    /**
+     * The time spent in the action of a transition
+     */
+    public static class TransitionMetricsDTO {
+
+        final int transition;
+        final int targetState;
+        final LatencyDTO actionTime;
+
+        TransitionMetricsDTO(int transition, int targetState, LatencyDTO actionTime) {
+            this.transition = transition;
+            this.targetState = targetState;
+            this.actionTime = actionTime;
+        }
+
+        public int getTransition() {
+            return transition;
+        }
+
+        public int getTargetState() {
+            return targetState;
+        }
+
+        public LatencyDTO getActionTime() {
+            return actionTime;
+        }
+    }
+
+    /**
+     * The summary of a histogram of latencies, in nanoseconds
+     */
+    public static class LatencyDTO {
+
+        final long count;
+        final double mean;
+        final long p50;
+        final long p90;
+        final long p99;
+        final long max;
+
+        static LatencyDTO fromHistogram(LatencyHistogram histogram) {
+            final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            return new LatencyDTO(snapshot.getCount(), snapshot.getMean(), snapshot.getValueAtPercentile(50),
+                    snapshot.getValueAtPercentile(90), snapshot.getValueAtPercentile(99), snapshot.getMax());
+        }
+
+        LatencyDTO(long count, double mean, long p50, long p90, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
@@ -22,6 +22,21 @@ public class QueuedWorkflow extends Workflow{
         this.endTime = null;
     }
     
+    /**
+     * Creates a QueuedWorkflow that was already queued before, like when it is restored
+     * from a checkpoint after a restart of the Workflow Executor. It receives a new ID
+     * 
+     * @param workflow  The Workflow to execute
+     * @param queueTime  The time when the Workflow entered the queue originally
+     */
+    public QueuedWorkflow(Workflow workflow, ZonedDateTime queueTime) {
+        super(workflow.getWorkflowName(), workflow.getWorkflowConfig(), workflow.getWorkflowLogic());
+        this.id = countWorkflows++;
+        this.queueTime = queueTime;
+        this.startTime = null;
+        this.endTime = null;
+    }
+    
     public static int getCountWorkflows() {
         return countWorkflows;
     }
@@ -0,0 +1,457 @@
+package se.ltu.workflow.executor.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import se.ltu.workflow.executor.state_machine.StateMachine;
+import se.ltu.workflow.executor.state_machine.StepListener;
+
+/**
+ * Append-only journal of the transitions executed by the Workflows, stored as
+ * compact binary records in memory-mapped segment files.
+ * <p>
+ * Each record holds the Workflow ID, the step number, the states and the
+ * transition, the time and the names of the environment variables changed
+ * since the previous transition. The records are written in the segment file
+ * currently mapped, and when it is full a new segment is created, deleting the
+ * oldest ones beyond the number of segments retained.
+ * <p>
+ * A writer reserves the space of its record with one atomic addition on the
+ * position of the segment, writes it with absolute puts, and finally publishes
+ * its length, so writers never lock each other. A reader stops at the first
+ * record whose length is not yet published. Each segment also keeps a mask of
+ * the Workflow IDs it contains, so {@link #readPath(Path, int)} skips the
+ * segments without records of the Workflow.
+ * <p>
+ * The segment format is a header of 16 bytes (magic, version and the mask of
+ * Workflow IDs) followed by records aligned to 4 bytes:
+ * <pre>
+ * int length, int workflowId, long step, int fromState, int toState, int transition,
+ * long timestamp, short keyCount, keyCount * (short keyLength, UTF-8 key)
+ * </pre>
+ */
+public final class TransitionJournal implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(TransitionJournal.class);
+
+    private static final int MAGIC = 0x574A524E;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int MASK_OFFSET = 8;
+    private static final int RECORD_FIXED_SIZE = 38;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final VarHandle INT_VIEW =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * The directory holding the segment files
+     */
+    private final Path directory;
+
+    /**
+     * The size of each segment file, in bytes
+     */
+    private final int segmentSize;
+
+    /**
+     * The maximum number of segment files kept in the directory
+     */
+    private final int maxSegments;
+
+    /**
+     * The UTF-8 encoding of the environment keys already written
+     */
+    private final Map<String, byte[]> encodedKeys = new ConcurrentHashMap<>();
+
+    /**
+     * The segment where the records are appended
+     */
+    private volatile Segment current;
+
+    /**
+     * The error that stopped the rotation of the segments, null if none
+     */
+    private volatile IOException failure;
+
+    /**
+     * Opens a journal in a directory, starting a new segment after the ones
+     * already present
+     *
+     * @param directory  The directory of the segment files, created if it does not exist
+     * @param segmentSize  The size of each segment file, in bytes
+     * @param maxSegments  The maximum number of segment files kept, the oldest ones
+     * are deleted
+     *
+     * @throws IOException if the directory or the first segment can not be created
+     * @throws IllegalArgumentException if the segment size is smaller than 4 KB, or
+     * no segment is retained
+     */
+    public TransitionJournal(final Path directory, final int segmentSize, final int maxSegments)
+            throws IOException {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("The journal segments must be at least 4 KB");
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("The journal must retain at least one segment");
+        }
+        this.directory = Files.createDirectories(directory);
+        // The positions of the records are aligned to 4 bytes
+        this.segmentSize = segmentSize & ~3;
+        this.maxSegments = maxSegments;
+        final List<Path> existing = segments(directory);
+        final int next = existing.isEmpty() ? 0 : segmentIndex(existing.get(existing.size() - 1)) + 1;
+        this.current = Segment.create(segmentPath(next), next, this.segmentSize);
+        deleteOldSegments();
+    }
+
+    /**
+     * Creates the listener that records the transitions of a Workflow in this journal.
+     * <p>
+     * A failure to write the journal is logged, and it does not stop the Workflow.
+     *
+     * @param workflowId  The ID of the Workflow
+     * @param machine  The State Machine of the Workflow, that provides the variables
+     * changed by each transition
+     * @return The listener, to be used by only one thread
+     */
+    public StepListener recorder(final int workflowId, final StateMachine machine) {
+        final List<String> changedKeys = new ArrayList<>();
+        final Consumer<String> collector = changedKeys::add;
+        final long[] step = new long[1];
+        return (fromState, transition, toState) -> {
+            changedKeys.clear();
+            machine.forEachChangedVariable(collector);
+            try {
+                append(workflowId, step[0]++, fromState, toState, transition, System.currentTimeMillis(),
+                        changedKeys);
+            } catch (UncheckedIOException | IllegalStateException | IllegalArgumentException e) {
+                logger.error("Transition " + transition + " of Workflow with ID=" + workflowId
+                        + " could not be written in the journal: " + e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Appends the record of a transition to the journal. This method is thread-safe
+     * and does not lock
+     *
+     * @param workflowId  The ID of the Workflow, not negative
+     * @param step  The number of the step of the Workflow
+     * @param fromState  The state where the transition started
+     * @param toState  The state where the transition ended
+     * @param transition  The index of the transition
+     * @param timestamp  The time of the transition, in milliseconds since the epoch
+     * @param changedKeys  The names of the environment variables changed since the previous transition
+     *
+     * @throws IllegalArgumentException if the record does not fit in a segment, or a
+     * key is longer than {@link Short#MAX_VALUE} bytes in UTF-8
+     * @throws UncheckedIOException if a new segment can not be created
+     * @throws IllegalStateException if the journal is closed
+     */
+    public void append(final int workflowId, final long step, final int fromState, final int toState,
+            final int transition, final long timestamp, final List<String> changedKeys) {
+        final int keyCount = changedKeys.size();
+        final byte[][] keys = new byte[keyCount][];
+        int length = RECORD_FIXED_SIZE;
+        for (int k = 0; k < keyCount; k++) {
+            keys[k] = encodedKeys.computeIfAbsent(changedKeys.get(k), key -> key.getBytes(StandardCharsets.UTF_8));
+            if (keys[k].length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Key of " + keys[k].length + " bytes does not fit in a record");
+            }
+            length += Short.BYTES + keys[k].length;
+        }
+        length = (length + 3) & ~3;
+        if (length > segmentSize - HEADER_SIZE || keyCount > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Record of " + length + " bytes does not fit in a journal segment");
+        }
+
+        for (;;) {
+            final Segment segment = current;
+            if (segment == null) {
+                throw failure != null
+                        ? new UncheckedIOException("The journal could not create a segment", failure)
+                        : new IllegalStateException("The journal is closed");
+            }
+            final int position = segment.position.getAndAdd(length);
+            if (position + length <= segment.capacity) {
+                segment.write(position, length, workflowId, step, fromState, toState, transition, timestamp, keys);
+                return;
+            }
+            if (position <= segment.capacity) {
+                // This record is the first one that does not fit, so this writer rotates the segment
+                rotate(segment);
+            }
+            else {
+                while (current == segment) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces a full segment with a new one
+     */
+    private void rotate(final Segment full) {
+        try {
+            full.buffer.force();
+            current = Segment.create(segmentPath(full.index + 1), full.index + 1, segmentSize);
+            deleteOldSegments();
+        } catch (IOException e) {
+            failure = e;
+            current = null;
+        }
+    }
+
+    /**
+     * Flushes the current segment and stops accepting records
+     */
+    @Override
+    public void close() {
+        final Segment segment = current;
+        current = null;
+        if (segment != null) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Reads the path followed by a Workflow, from all the segments present in
+     * a journal directory
+     *
+     * @param directory  The directory of the segment files
+     * @param workflowId  The ID of the Workflow
+     * @return The records of the transitions of the Workflow, in the order they
+     * were executed. As the IDs start again when the Workflow Executor restarts, the
+     * records may belong to several executions, each one starting at step 0
+     *
+     * @throws IOException if the segments can not be read
+     */
+    public static List<Record> readPath(final Path directory, final int workflowId) throws IOException {
+        final List<Record> path = new ArrayList<>();
+        final long idBit = 1L << (workflowId & 63);
+        for (final Path file : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    continue;
+                }
+                if (((long) LONG_VIEW.getAcquire(buffer, MASK_OFFSET) & idBit) == 0) {
+                    continue;
+                }
+                int position = HEADER_SIZE;
+                while (position + RECORD_FIXED_SIZE <= buffer.capacity()) {
+                    final int length = (int) INT_VIEW.getAcquire(buffer, position);
+                    if (length == 0) {
+                        break;
+                    }
+                    if (buffer.getInt(position + 4) == workflowId) {
+                        path.add(Record.read(buffer, position));
+                    }
+                    position += length;
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Lists the segment files of a directory, ordered by index
+     */
+    private static List<Path> segments(final Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(TransitionJournal::isSegment)
+                    .sorted((a, b) -> Integer.compare(segmentIndex(a), segmentIndex(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isSegment(final Path file) {
+        final String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int segmentIndex(final Path file) {
+        final String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private Path segmentPath(final int index) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Deletes the oldest segments beyond the number retained
+     */
+    private void deleteOldSegments() throws IOException {
+        final List<Path> existing = segments(directory);
+        for (int i = 0; i < existing.size() - maxSegments; i++) {
+            Files.deleteIfExists(existing.get(i));
+        }
+    }
+
+    /**
+     * A segment file mapped in memory
+     */
+    private static final class Segment {
+
+        final int index;
+        final MappedByteBuffer buffer;
+        final int capacity;
+
+        /**
+         * The position where the next record is reserved, it can go beyond the
+         * capacity when the segment is full
+         */
+        final AtomicInteger position = new AtomicInteger(HEADER_SIZE);
+
+        private Segment(final int index, final MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        static Segment create(final Path file, final int index, final int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                return new Segment(index, buffer);
+            }
+        }
+
+        /**
+         * Writes a record in the space reserved, publishing its length last
+         */
+        void write(final int at, final int length, final int workflowId, final long step, final int fromState,
+                final int toState, final int transition, final long timestamp, final byte[][] keys) {
+            // Absolute puts on a duplicate, as the position of a buffer is not thread-safe
+            final ByteBuffer record = buffer.duplicate();
+            record.position(at + 4);
+            record.putInt(workflowId)
+                  .putLong(step)
+                  .putInt(fromState)
+                  .putInt(toState)
+                  .putInt(transition)
+                  .putLong(timestamp)
+                  .putShort((short) keys.length);
+            for (final byte[] key : keys) {
+                record.putShort((short) key.length).put(key);
+            }
+            LONG_VIEW.getAndBitwiseOr(buffer, MASK_OFFSET, 1L << (workflowId & 63));
+            INT_VIEW.setRelease(buffer, at, length);
+        }
+    }
+
+    /**
+     * A transition read from the journal
+     */
+    public static final class Record {
+
+        private final int workflowId;
+        private final long step;
+        private final int fromState;
+        private final int toState;
+        private final int transition;
+        private final long timestamp;
+        private final List<String> changedKeys;
+
+        private Record(int workflowId, long step, int fromState, int toState, int transition, long timestamp,
+                List<String> changedKeys) {
+            this.workflowId = workflowId;
+            this.step = step;
+            this.fromState = fromState;
+            this.toState = toState;
+            this.transition = transition;
+            this.timestamp = timestamp;
+            this.changedKeys = changedKeys;
+        }
+
+        static Record read(final ByteBuffer buffer, final int at) {
+            final ByteBuffer record = buffer.duplicate();
+            record.position(at + 4);
+            final int workflowId = record.getInt();
+            final long step = record.getLong();
+            final int fromState = record.getInt();
+            final int toState = record.getInt();
+            final int transition = record.getInt();
+            final long timestamp = record.getLong();
+            final int keyCount = record.getShort();
+            final List<String> keys = new ArrayList<>(keyCount);
+            for (int k = 0; k < keyCount; k++) {
+                final byte[] key = new byte[record.getShort()];
+                record.get(key);
+                keys.add(new String(key, StandardCharsets.UTF_8));
+            }
+            return new Record(workflowId, step, fromState, toState, transition, timestamp,
+                    Collections.unmodifiableList(keys));
+        }
+
+        public int getWorkflowId() {
+            return workflowId;
+        }
+
+        public long getStep() {
+            return step;
+        }
+
+        public int getFromState() {
+            return fromState;
+        }
+
+        public int getToState() {
+            return toState;
+        }
+
+        public int getTransition() {
+            return transition;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public List<String> getChangedKeys() {
+            return changedKeys;
+        }
+
+        @Override
+        public String toString() {
+            return "Record [workflowId=" + workflowId + ", step=" + step + ", fromState=" + fromState
+                    + ", toState=" + toState + ", transition=" + transition + ", timestamp=" + timestamp
+                    + ", changedKeys=" + changedKeys + "]";
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package se.ltu.workflow.executor.service;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -9,10 +12,12 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
 
@@ -23,6 +28,7 @@ import se.ltu.workflow.executor.InitialWorkflows;
 import se.ltu.workflow.executor.WExecutorConstants;
 import se.ltu.workflow.executor.arrowhead.WExecutorUtils;
 import se.ltu.workflow.executor.dto.FinishWorkflowDTO;
+import se.ltu.workflow.executor.state_machine.StepListener;
 
 @Service
 public class WExecutorService {
@@ -46,6 +52,37 @@ public class WExecutorService {
     
     final private Thread workflowsExecuting;
     
+    /* Optional journal of the transitions executed, enabled when a directory is configured.
+     * It is created after the consumer thread starts, so it is read as volatile
+     */
+    @Value("${journal.directory:}")
+    private String journalDirectory;
+    
+    @Value("${journal.segment_size:16777216}")
+    private int journalSegmentSize;
+    
+    @Value("${journal.max_segments:8}")
+    private int journalMaxSegments;
+    
+    private volatile TransitionJournal journal;
+    
+    /* Optional checkpoints of the Workflows queued and in execution, to resume them after a
+     * restart of the Workflow Executor, enabled when a directory is configured
+     */
+    @Value("${checkpoint.directory:}")
+    private String checkpointDirectory;
+    
+    @Value("${checkpoint.compaction_records:1024}")
+    private int checkpointCompactionRecords;
+    
+    private volatile WorkflowCheckpoints checkpoints;
+    
+    /* Measure the latencies of the states and transitions of the Workflow types, disabled by
+     * default as it reads the clock in every run of the State Machines
+     */
+    @Value("${metrics.enabled:false}")
+    private boolean metricsEnabled;
+    
     public WExecutorService() {
         workflowsStored = new HashSet<>();
         workflowsForExecution = new LinkedBlockingQueue<>();
@@ -73,11 +110,38 @@ public class WExecutorService {
                     // Set this Workflow as the active one
                     workflowOngoing.setWorkflowStatus(WStatus.ACTIVE);
                     
+                    final TransitionJournal transitionJournal = journal;
+                    final WorkflowCheckpoints workflowCheckpoints = checkpoints;
+                    final StepListener checkpointRecorder = workflowCheckpoints == null
+                            ? null
+                            : workflowCheckpoints.recorder(workflowOngoing);
+                    if (transitionJournal != null) {
+                        workflowOngoing.setStepListener(transitionJournal.recorder(
+                                workflowOngoing.getId(), workflowOngoing.getWorkflowLogic())
+                                .andThen(checkpointRecorder));
+                    }
+                    else {
+                        workflowOngoing.setStepListener(checkpointRecorder);
+                    }
+                    
                     
                     /* This method will trigger the execution of the State Machine as the representation
                      * of the Workflow
                      */
-                    workflowOngoing.executeWorkflow();
+                    try {
+                        workflowOngoing.executeWorkflow();
+                    } catch (RuntimeException e) {
+                        /* A failure in the code of one Workflow must not stop the execution of the
+                         * ones queued after it, so it ends as a Workflow with errors
+                         */
+                        logger.error("Workflow " + workflowOngoing.getWorkflowName() + " with ID="
+                                + workflowOngoing.getId() + " failed: " + e);
+                        workflowOngoing.getWorkflowLogic().setVariable(
+                                WExecutorConstants.STATE_MACHINE_RESULT, WExecutorConstants.ERROR);
+                        workflowOngoing.getWorkflowLogic().setVariable(
+                                WExecutorConstants.ERROR_MESSAGE, e.toString());
+                        workflowOngoing.setWorkflowStatus(WStatus.DONE);
+                    }
                     logger.info("The Workflow entered queue at: " + workflowOngoing.getQueueTime());
                     logger.info("The Workflow started at: " + workflowOngoing.getStartTime());
                     logger.info("The Workflow finished at: " + workflowOngoing.getEndTime());
@@ -87,6 +151,11 @@ public class WExecutorService {
                      */
                     sendWorkflowResults(workflowOngoing);
                     
+                    // The results were sent, so the Workflow does not need to be resumed anymore
+                    if (workflowCheckpoints != null) {
+                        workflowCheckpoints.remove(workflowOngoing);
+                    }
+                    
                     // Remove Workflow from Queue after its execution
                     workflowsForExecution.take();
                 }
@@ -105,6 +174,84 @@ public class WExecutorService {
     @PostConstruct
     private void initConfig() {
         workflowsStored.addAll(initData.getWorkflows());
+        for (Workflow w : workflowsStored) {
+            for (String warning : w.getWorkflowLogic().getDefinition().getAnalysis().getWarnings()) {
+                logger.warn("Workflow " + w.getWorkflowName() + ": " + warning);
+            }
+        }
+        
+        // The Workflows created from now on from these templates share their metrics
+        if (metricsEnabled) {
+            workflowsStored.forEach(w -> w.getWorkflowLogic().getDefinition().enableMetrics());
+            logger.info("Latencies of the states and transitions of the Workflows are measured");
+        }
+        
+        if (!journalDirectory.isBlank()) {
+            try {
+                journal = new TransitionJournal(Path.of(journalDirectory), journalSegmentSize, journalMaxSegments);
+                logger.info("Transitions of the Workflows are recorded in journal at " + journalDirectory);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.error("The journal of transitions could not be opened at " + journalDirectory
+                        + ", the transitions will only be logged: " + e.getMessage());
+            }
+        }
+        
+        if (!checkpointDirectory.isBlank()) {
+            try {
+                checkpoints = new WorkflowCheckpoints(Path.of(checkpointDirectory), checkpointCompactionRecords);
+                restoreWorkflows();
+            } catch (IOException | IllegalArgumentException e) {
+                logger.error("The checkpoints of the Workflows could not be opened at " + checkpointDirectory
+                        + ", the Workflows will not be resumed after a restart: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Queues again the Workflows that were queued or in execution when the Workflow Executor
+     * stopped, restoring the State Machines from their last checkpoint
+     */
+    private void restoreWorkflows() throws IOException {
+        for (WorkflowCheckpoints.Checkpoint c : checkpoints.restore()) {
+            Workflow template = null;
+            for (Workflow w : workflowsStored) {
+                if (w.getWorkflowName().equals(c.getWorkflowName())) {
+                    template = w;
+                    break;
+                }
+            }
+            if (template == null) {
+                logger.warn("Workflow " + c.getWorkflowName() + " of checkpoint is not stored anymore, "
+                        + "it can not be resumed");
+                checkpoints.discard(c);
+                continue;
+            }
+            
+            QueuedWorkflow restored = new QueuedWorkflow(
+                    new Workflow(template, c.getWorkflowConfig()), c.getQueueTime());
+            try {
+                c.applyTo(restored.getWorkflowLogic());
+                checkpoints.track(restored, c);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.error("Workflow " + c.getWorkflowName() + " could not be resumed from its checkpoint: "
+                        + e.getMessage());
+                continue;
+            }
+            workflowsForExecution.add(restored);
+            logger.info("Workflow " + restored.getWorkflowName() + " resumed with ID=" + restored.getId()
+                    + " in states " + Arrays.toString(c.getStates()));
+        }
+    }
+    
+    @PreDestroy
+    private void closeJournal() {
+        if (journal != null) {
+            journal.close();
+        }
+        // The checkpoint files are kept, to resume the Workflows not finished
+        if (checkpoints != null) {
+            checkpoints.close();
+        }
     }
     
     public List<Workflow> getWorkflowTypes() {
@@ -123,6 +270,31 @@ public class WExecutorService {
         return workflowInExecution;
     }
     
+    /**
+     * Posts events and variables to a Workflow waiting for execution or being executed.
+     * <p>
+     * They are added to the inbox of its State Machine, without blocking, and received
+     * in the thread executing the Workflow at the beginning of its next run.
+     * 
+     * @param id  The ID of the QueuedWorkflow
+     * @param events  The names of the events posted
+     * @param variables  The variables posted, with their values
+     * @return True if the Workflow was found and is not finished, false otherwise
+     */
+    public boolean postToWorkflow(int id, List<String> events, Map<String, Object> variables) {
+        for (QueuedWorkflow w : workflowsForExecution) {
+            // A finished Workflow may still be at the head of the queue, but it never runs again
+            if (w.getId() == id && w.getWorkflowStatus() != WStatus.DONE) {
+                variables.forEach((k,v) -> w.getWorkflowLogic().postVariable(k, v));
+                events.forEach(e -> w.getWorkflowLogic().postEvent(e));
+                logger.info("Posted events " + events + " and variables " + variables.keySet()
+                        + " to Workflow with ID=" + id);
+                return true;
+            }
+        }
+        return false;
+    }
+    
     public QueuedWorkflow executeWorkflow(String workflowName, Map<String, List<String>> workflowConfig) {
         
         // Search for the workflow in the workflowsStored
@@ -136,15 +308,8 @@ public class WExecutorService {
         Workflow requestedWorkflow = new Workflow(workflowName, workflowConfig, null);
         for (Workflow w : workflowsStored) {
             if (w.equals(requestedWorkflow)) {
-                try {
-                    requestedWorkflow = new Workflow(w);
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                    logger.error("The Workflow stored does not support execution, "
-                            + "due to problem when copying its Workflow Configuration, "
-                            + "repair WorkflowConfiguration Map implementation.");
-                    return null;
-                }
+                // Only the context of the State Machine is created, its definition is shared
+                requestedWorkflow = new Workflow(w, workflowConfig);
                 logger.info("Workflow with requested parameter found in memory: "
                         + requestedWorkflow.getWorkflowName());
                 break;
@@ -156,17 +321,25 @@ public class WExecutorService {
         }
         
         // Create a new QueuedWorkflow with the configuration parameters and add to Queue
-        requestedWorkflow.getWorkflowConfig().clear();
-        // As workflowConfig is optional, it can be null
-        if (workflowConfig != null) {
-            requestedWorkflow.getWorkflowConfig().putAll(workflowConfig);
-        }
         QueuedWorkflow toExecuteWork = new QueuedWorkflow(requestedWorkflow);
+        final WorkflowCheckpoints workflowCheckpoints = checkpoints;
+        if (workflowCheckpoints != null) {
+            try {
+                workflowCheckpoints.track(toExecuteWork);
+            } catch (IOException e) {
+                logger.error("Checkpoint of Workflow with ID=" + toExecuteWork.getId()
+                        + " could not be written, it will not be resumed after a restart: " + e.getMessage());
+            }
+        }
         try {
             workflowsForExecution.add(toExecuteWork);
         } catch (IllegalStateException e) {
             logger.error("The capacity of internal memory of Workflow Executor is full, "
                     + "too many Workflows waiting to be executed");
+            // Tracked before it is queued, as it can start at once, but a rejected Workflow must not be resumed
+            if (workflowCheckpoints != null) {
+                workflowCheckpoints.remove(toExecuteWork);
+            }
         }
         
         // A thread is forever running checking for Workflows in the Queue
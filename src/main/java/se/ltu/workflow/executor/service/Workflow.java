@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,7 +13,7 @@ import se.ltu.workflow.executor.WExecutorConstants;
 import se.ltu.workflow.executor.state_machine.Event;
 import se.ltu.workflow.executor.state_machine.StateMachine;
 import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
-import se.ltu.workflow.executor.state_machine.StateMachine.UpdateResult;
+import se.ltu.workflow.executor.state_machine.StepListener;
 
 public class Workflow {
     
@@ -31,6 +32,12 @@ public class Workflow {
      */
     private Optional<String>  errorMessage;
     
+    /**
+     * Listener that records the transitions executed, like the {@link TransitionJournal},
+     * null if they are only logged
+     */
+    private StepListener stepListener;
+    
     /**
      * Name of the event inside the State Machines that represents a successful execution
      */
@@ -53,36 +60,45 @@ public class Workflow {
     /**
      * A copy constructor of Workflow class.
      * <p>
-     * Creates a new Workflow object from the object provided as argument.
+     * Creates a new Workflow object from the object provided as argument, with a copy
+     * of its configuration and of the context of its State Machine.
      * 
      * @param w The original workflow that will be used as template to create the new Workflow object
-     * @throws IllegalAccessException when the class implementing the Map interface for workflowConfig
-     * has no default constructor to make a copy of it
      */
-    public Workflow(Workflow w) throws IllegalAccessException {
+    public Workflow(Workflow w) {
         this.workflowName = w.getWorkflowName();
         this.workflowStatus = w.getWorkflowStatus();
-        
-        Map<String, List<String>> tempWorkflowConfig = null;
-        try {
-            tempWorkflowConfig = w.getWorkflowConfig().getClass().getDeclaredConstructor().newInstance();
-            tempWorkflowConfig.putAll(w.getWorkflowConfig());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        if (tempWorkflowConfig != null) {
-            this.workflowConfig = tempWorkflowConfig;
-        }
-        else {
-            throw new IllegalAccessException("Copy constructor can not duplicate WorkflowConfig, "
-                    + "Map implementation class has no default constructor");
-            /* Better this Map implementation than an immutable Map, as we add the parameters 
-             * to the workflowConfig Map before execution
-             */
-           // this.workflowConfig = new HashMap<String, List<String>>(w.getWorkflowConfig());
-        }
+        /* Better this Map implementation than an immutable Map, as we add the parameters 
+         * to the workflowConfig Map before execution
+         */
+        this.workflowConfig = new HashMap<String, List<String>>(w.getWorkflowConfig());
         this.workflowLogic = new StateMachine(w.getWorkflowLogic());
     }
+    
+    /**
+     * Creates a new instance of a Workflow template, ready to be executed with
+     * the configuration provided.
+     * <p>
+     * The State Machine of the new Workflow shares the definition of states and
+     * transitions of the template, so only its context, and the configuration,
+     * are allocated. The settings of the State Machine of the template that are
+     * not part of its definition are kept.
+     * 
+     * @param template The Workflow stored, used as template
+     * @param workflowConfig The configuration parameters of this execution, may be null
+     */
+    public Workflow(Workflow template, Map<String, List<String>> workflowConfig) {
+        this.workflowName = template.getWorkflowName();
+        this.workflowStatus = WStatus.IDLE;
+        this.workflowConfig = workflowConfig == null 
+                ? new HashMap<String, List<String>>()
+                : new HashMap<String, List<String>>(workflowConfig);
+        final StateMachine templateLogic = template.getWorkflowLogic();
+        this.workflowLogic = new StateMachine(templateLogic.getDefinition());
+        workflowLogic.setEventConsumption(templateLogic.getEventConsumption());
+        workflowLogic.setRegionPool(templateLogic.getRegionPool());
+        workflowLogic.setTimingWheel(templateLogic.getTimingWheel());
+    }
 
     public WStatus getWorkflowStatus() {
         return workflowStatus;
@@ -104,6 +120,20 @@ public class Workflow {
         return workflowLogic;
     }
 
+    public StepListener getStepListener() {
+        return stepListener;
+    }
+
+    /**
+     * Sets the listener that records each transition executed by this Workflow. When
+     * it is set, the transitions are only logged at debug level
+     * 
+     * @param stepListener  The listener, or null to only log the transitions
+     */
+    public void setStepListener(StepListener stepListener) {
+        this.stepListener = stepListener;
+    }
+
     public Boolean getSuccess() {
         if(workflowStatus!=WStatus.DONE)
             throw  new IllegalStateException(
@@ -153,31 +183,48 @@ public class Workflow {
         logger.debug("Events present: " + this.getWorkflowLogic().getEvents());
         logger.debug("Environment contains variables: " + this.getWorkflowLogic().getEnvironment());
         
+        // Log the progress through the states, for every transition executed
+        final StepListener recorder = this.stepListener;
+        final StepListener progressLogger = recorder == null
+            ? (fromState, transition, toState) ->
+                logger.info("Workflow " + this.getWorkflowName() + " executed transition " + transition
+                        + " from state " + fromState + " to state " + toState)
+            // The recorder keeps the audit trail, so the text log is only for debugging
+            : (fromState, transition, toState) -> {
+                recorder.onStep(fromState, transition, toState);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Workflow " + this.getWorkflowName() + " executed transition " + transition
+                            + " from state " + fromState + " to state " + toState);
+                }
+            };
+        
         // Execute all the transitions of the State Machine
-        UpdateResult machineUpdate = this.getWorkflowLogic().update();
-        while(!machineUpdate.getUpdateAction().equals(UpdateAction.END)) {
-            
-            // Log the progress through the states
-            logger.info("Workflow " + this.getWorkflowName() + " in state "
-                    + this.getWorkflowLogic().getCurrentState() + " (" 
-                    + machineUpdate.getResultState().name() + ")");
-            logger.debug("Events present: " + this.getWorkflowLogic().getEvents());
-            logger.debug("Environment contains variables: " + this.getWorkflowLogic().getEnvironment());
+        long seenChanges = this.getWorkflowLogic().getChangeCount();
+        UpdateAction machineUpdate = this.getWorkflowLogic().runUntilQuiescent(
+                WExecutorConstants.MAX_STEPS_PER_WORKFLOW_RUN, progressLogger);
+        while(machineUpdate != UpdateAction.END) {
             
-            if(machineUpdate.getUpdateAction().equals(UpdateAction.NO_TRANSITION)) {
+            if(machineUpdate == UpdateAction.NO_TRANSITION || machineUpdate == UpdateAction.SUSPENDED) {
+                /* Nothing that could enable a transition has changed until the State Machine
+                 * signals it, or its asynchronous action completes, so wait for it instead of
+                 * checking again the transitions
+                 */
                 try {
-                    logger.info("Sleep for " + WExecutorConstants.TIME_TO_RETRY_WORKFLOW_MILIS + " ms before checking again the Workflow");
-                    Thread.sleep(WExecutorConstants.TIME_TO_RETRY_WORKFLOW_MILIS);
+                    logger.debug("Workflow " + this.getWorkflowName() + " waits up to " 
+                            + WExecutorConstants.TIME_TO_RETRY_WORKFLOW_MILIS + " ms for changes in state "
+                            + this.getWorkflowLogic().getCurrentState());
+                    logger.debug("Events present: " + this.getWorkflowLogic().getEvents());
+                    logger.debug("Environment contains variables: " + this.getWorkflowLogic().getEnvironment());
+                    this.getWorkflowLogic().awaitChange(seenChanges, 
+                            WExecutorConstants.TIME_TO_RETRY_WORKFLOW_MILIS, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException e) {
-                    logger.error("Method executing Workflows had an unexpected halt while sleeping");
+                    logger.error("Method executing Workflows had an unexpected halt while waiting");
                     e.printStackTrace();
                 }
             }
-            else {
-                logger.info("Transition executed: " + 
-                        this.getWorkflowLogic().getTransitions().indexOf(machineUpdate.getExecutedTransition()) );
-            }
-            machineUpdate = this.getWorkflowLogic().update();
+            seenChanges = this.getWorkflowLogic().getChangeCount();
+            machineUpdate = this.getWorkflowLogic().runUntilQuiescent(
+                    WExecutorConstants.MAX_STEPS_PER_WORKFLOW_RUN, progressLogger);
         }
             
         // Set to status DONE the Workflow executed
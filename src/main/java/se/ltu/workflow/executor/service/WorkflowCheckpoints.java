@@ -0,0 +1,653 @@
+package se.ltu.workflow.executor.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import se.ltu.workflow.executor.state_machine.Event;
+import se.ltu.workflow.executor.state_machine.StateMachine;
+import se.ltu.workflow.executor.state_machine.StepListener;
+
+/**
+ * Local store of checkpoints of the Workflows queued and in execution, so they
+ * can be restored and resumed after the Workflow Executor stops unexpectedly.
+ * <p>
+ * Each Workflow has its own checkpoint file, created when it is queued, with a
+ * header (name, configuration and queue time) and a snapshot of its State
+ * Machine: the current state of each region, the events and the environment.
+ * After each transition only a delta record is appended, with the states, the
+ * events and the variables changed since the previous transition, so the cost
+ * of a checkpoint does not grow with the size of the environment. After a
+ * number of delta records, the file is compacted into a new snapshot, replacing
+ * it atomically. The file is deleted when the Workflow finishes.
+ * <p>
+ * Each record is written with a single write, preceded by its length, so a
+ * record cut by a crash is detected and ignored when the file is read. The
+ * records are not forced to the disk, as they only need to survive a crash of
+ * the JVM.
+ * <p>
+ * The variables of type {@code Integer}, {@code Long}, {@code Double},
+ * {@code Boolean} and {@code String} are written in binary form, any other
+ * {@code Serializable} value with Java serialization. Variables whose value
+ * is not serializable are not checkpointed.
+ *
+ * <h4>Implementation notes</h4>
+ * The files of different Workflows can be written by different threads, but the
+ * file of one Workflow must only be written by one thread at a time. Asynchronous
+ * actions pending and timeouts armed are not checkpointed, a restored Workflow
+ * waits in its state for new events or variables.
+ */
+public final class WorkflowCheckpoints implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(WorkflowCheckpoints.class);
+
+    private static final int MAGIC = 0x57434B50;
+    private static final int VERSION = 1;
+    private static final String FILE_PREFIX = "workflow-";
+    private static final String FILE_SUFFIX = ".ckpt";
+
+    private static final byte RECORD_SNAPSHOT = 1;
+    private static final byte RECORD_DELTA = 2;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_INTEGER = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_DOUBLE = 3;
+    private static final byte TAG_BOOLEAN = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_SERIALIZED = 6;
+    private static final byte TAG_REMOVED = 7;
+
+    /**
+     * Marks the variables removed while a delta record is read
+     */
+    private static final Object REMOVED = new Object();
+
+    /**
+     * The directory holding the checkpoint files
+     */
+    private final Path directory;
+
+    /**
+     * The number of delta records appended before the file is compacted
+     */
+    private final int compactionRecords;
+
+    /**
+     * The checkpoint file of each Workflow tracked, by the ID of the Workflow
+     */
+    private final Map<Integer, CheckpointFile> files = new ConcurrentHashMap<>();
+
+    /**
+     * Opens a store of checkpoints in a directory
+     *
+     * @param directory  The directory of the checkpoint files, created if it does not exist
+     * @param compactionRecords  The number of delta records appended to a file before
+     * it is compacted into a new snapshot
+     *
+     * @throws IOException if the directory can not be created
+     * @throws IllegalArgumentException if the number of records before compaction is
+     * not positive
+     */
+    public WorkflowCheckpoints(final Path directory, final int compactionRecords) throws IOException {
+        if (compactionRecords < 1) {
+            throw new IllegalArgumentException("The checkpoints must allow at least one record before compaction");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.compactionRecords = compactionRecords;
+    }
+
+    /**
+     * Starts the checkpoints of a Workflow, writing the snapshot of its current
+     * State Machine in a new checkpoint file
+     *
+     * @param workflow  The Workflow queued
+     *
+     * @throws IOException if the checkpoint file can not be written
+     */
+    public void track(final QueuedWorkflow workflow) throws IOException {
+        final Path file = directory.resolve(String.format("%s%d-%d%s", FILE_PREFIX,
+                workflow.getQueueTime().toInstant().toEpochMilli(), workflow.getId(), FILE_SUFFIX));
+        if (Files.exists(file)) {
+            throw new IOException("Checkpoint file " + file + " already exists");
+        }
+        track(workflow, file);
+    }
+
+    /**
+     * Continues the checkpoints of a Workflow restored, replacing its checkpoint
+     * file with the snapshot of the State Machine restored
+     *
+     * @param workflow  The Workflow created from the checkpoint
+     * @param checkpoint  The checkpoint restored
+     *
+     * @throws IOException if the checkpoint file can not be written
+     */
+    public void track(final QueuedWorkflow workflow, final Checkpoint checkpoint) throws IOException {
+        track(workflow, checkpoint.file);
+    }
+
+    private void track(final QueuedWorkflow workflow, final Path file) throws IOException {
+        final CheckpointFile checkpointFile = new CheckpointFile(file, header(workflow));
+        checkpointFile.writeSnapshot(workflow.getWorkflowLogic());
+        final CheckpointFile previous = files.put(workflow.getId(), checkpointFile);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Creates the listener that appends a delta record to the checkpoint file of
+     * a Workflow after each transition.
+     * <p>
+     * A failure to write the checkpoint is logged, and it does not stop the Workflow.
+     *
+     * @param workflow  The Workflow tracked
+     * @return The listener, or null if the Workflow is not tracked
+     */
+    public StepListener recorder(final QueuedWorkflow workflow) {
+        final CheckpointFile checkpointFile = files.get(workflow.getId());
+        if (checkpointFile == null) {
+            return null;
+        }
+        final StateMachine machine = workflow.getWorkflowLogic();
+        return (fromState, transition, toState) -> {
+            try {
+                checkpointFile.writeDelta(machine);
+            } catch (IOException e) {
+                logger.error("Checkpoint of Workflow with ID=" + workflow.getId() + " after transition "
+                        + transition + " could not be written: " + e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Stops the checkpoints of a Workflow that finished, deleting its checkpoint file
+     *
+     * @param workflow  The Workflow finished
+     */
+    public void remove(final QueuedWorkflow workflow) {
+        final CheckpointFile checkpointFile = files.remove(workflow.getId());
+        if (checkpointFile != null) {
+            checkpointFile.close();
+            try {
+                Files.deleteIfExists(checkpointFile.file);
+            } catch (IOException e) {
+                logger.error("Checkpoint file of Workflow with ID=" + workflow.getId()
+                        + " could not be deleted: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes the checkpoint files, keeping them to restore the Workflows later
+     */
+    @Override
+    public void close() {
+        files.values().forEach(CheckpointFile::close);
+        files.clear();
+    }
+
+    /**
+     * Reads the checkpoints of all the Workflows present in the directory. The files
+     * stay in the directory until the Workflows restored are tracked again.
+     * <p>
+     * The records cut by a crash, and the ones after them, are ignored. The files that
+     * can not be read are skipped.
+     *
+     * @return The checkpoints, in the order the Workflows were queued
+     *
+     * @throws IOException if the directory can not be listed
+     */
+    public List<Checkpoint> restore() throws IOException {
+        final List<Path> existing;
+        try (Stream<Path> list = Files.list(directory)) {
+            existing = list.filter(WorkflowCheckpoints::isCheckpoint).collect(Collectors.toList());
+        }
+        final List<Checkpoint> checkpoints = new ArrayList<>();
+        for (final Path file : existing) {
+            try {
+                checkpoints.add(Checkpoint.read(file));
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                logger.error("Checkpoint file " + file + " could not be read: " + e.getMessage());
+            }
+        }
+        checkpoints.sort(Comparator.comparing(Checkpoint::getQueueTime));
+        return checkpoints;
+    }
+
+    /**
+     * Deletes the file of a checkpoint that is not going to be restored
+     *
+     * @param checkpoint  The checkpoint discarded
+     *
+     * @throws IOException if the file can not be deleted
+     */
+    public void discard(final Checkpoint checkpoint) throws IOException {
+        Files.deleteIfExists(checkpoint.file);
+    }
+
+    private static boolean isCheckpoint(final Path file) {
+        final String name = file.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+
+    /**
+     * Encodes the header of the checkpoint file of a Workflow
+     */
+    private static byte[] header(final QueuedWorkflow workflow) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(workflow.getWorkflowName());
+        out.writeLong(workflow.getQueueTime().toInstant().toEpochMilli());
+        final Map<String, List<String>> config = workflow.getWorkflowConfig();
+        out.writeInt(config == null ? 0 : config.size());
+        if (config != null) {
+            for (final Map.Entry<String, List<String>> parameter : config.entrySet()) {
+                out.writeUTF(parameter.getKey());
+                final List<String> values = parameter.getValue() == null ? List.of() : parameter.getValue();
+                out.writeInt(values.size());
+                for (final String value : values) {
+                    out.writeUTF(value);
+                }
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a value with its type tag
+     *
+     * @return False if the value is not serializable, so nothing was written
+     */
+    private static boolean writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        }
+        else if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        }
+        else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        }
+        else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            out.writeUTF((String) value);
+        }
+        else if (value instanceof Serializable) {
+            final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(serialized)) {
+                objects.writeObject(value);
+            } catch (IOException e) {
+                // Serializable, but some of its fields are not
+                return false;
+            }
+            out.writeByte(TAG_SERIALIZED);
+            out.writeInt(serialized.size());
+            serialized.writeTo(out);
+        }
+        else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue(DataOutputStream, Object)}
+     *
+     * @return The value, or {@link #REMOVED} for a variable removed
+     */
+    private static Object readValue(final DataInputStream in) throws IOException, ClassNotFoundException {
+        final byte tag = in.readByte();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_INTEGER:
+            return in.readInt();
+        case TAG_LONG:
+            return in.readLong();
+        case TAG_DOUBLE:
+            return in.readDouble();
+        case TAG_BOOLEAN:
+            return in.readBoolean();
+        case TAG_STRING:
+            return in.readUTF();
+        case TAG_SERIALIZED:
+            final byte[] serialized = new byte[in.readInt()];
+            in.readFully(serialized);
+            try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                return objects.readObject();
+            }
+        case TAG_REMOVED:
+            return REMOVED;
+        default:
+            throw new IOException("Unknown type of value " + tag);
+        }
+    }
+
+    /**
+     * The checkpoint file of one Workflow, open for appending records
+     */
+    private final class CheckpointFile {
+
+        final Path file;
+        final byte[] header;
+
+        /**
+         * The buffer where each record is encoded before it is written, reused
+         */
+        final RecordBuffer record = new RecordBuffer();
+        final DataOutputStream recordOut = new DataOutputStream(record);
+
+        /**
+         * The names of the variables changed by the last transition, reused
+         */
+        final List<String> changedKeys = new ArrayList<>();
+
+        OutputStream out;
+        int deltaRecords;
+
+        CheckpointFile(final Path file, final byte[] header) {
+            this.file = file;
+            this.header = header;
+        }
+
+        /**
+         * Replaces the file with the header and a snapshot of the State Machine,
+         * writing first a temporary file that is moved atomically over it
+         */
+        void writeSnapshot(final StateMachine machine) throws IOException {
+            record.start();
+            recordOut.writeByte(RECORD_SNAPSHOT);
+            writeStates(machine);
+            final Map<String, Object> environment = machine.getEnvironment();
+            final List<Map.Entry<String, Object>> variables = new ArrayList<>(environment.entrySet());
+            recordOut.writeInt(variables.size());
+            for (final Map.Entry<String, Object> variable : variables) {
+                writeVariable(variable.getKey(), variable.getValue());
+            }
+
+            close();
+            final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream snapshot = Files.newOutputStream(temporary)) {
+                snapshot.write(header);
+                record.writeTo(snapshot);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            out = new FileOutputStream(file.toFile(), true);
+            deltaRecords = 0;
+        }
+
+        /**
+         * Appends the states, events and variables changed since the previous transition
+         */
+        void writeDelta(final StateMachine machine) throws IOException {
+            if (out == null) {
+                throw new IOException("Checkpoint file " + file + " is closed");
+            }
+            if (deltaRecords >= compactionRecords) {
+                writeSnapshot(machine);
+                return;
+            }
+            changedKeys.clear();
+            machine.forEachChangedVariable(changedKeys::add);
+
+            record.start();
+            recordOut.writeByte(RECORD_DELTA);
+            writeStates(machine);
+            final Map<String, Object> environment = machine.getEnvironment();
+            recordOut.writeInt(changedKeys.size());
+            for (final String key : changedKeys) {
+                if (environment.containsKey(key)) {
+                    writeVariable(key, environment.get(key));
+                }
+                else {
+                    recordOut.writeUTF(key);
+                    recordOut.writeByte(TAG_REMOVED);
+                }
+            }
+            record.writeTo(out);
+            deltaRecords++;
+        }
+
+        private void writeStates(final StateMachine machine) throws IOException {
+            final int[] states = machine.getCurrentStates();
+            recordOut.writeInt(states.length);
+            for (final int s : states) {
+                recordOut.writeInt(s);
+            }
+            final Set<Event> events = machine.getEvents();
+            recordOut.writeInt(events.size());
+            for (final Event e : events) {
+                recordOut.writeUTF(e.getName());
+            }
+        }
+
+        private void writeVariable(final String key, final Object value) throws IOException {
+            recordOut.writeUTF(key);
+            if (!writeValue(recordOut, value)) {
+                // The key was already written, so the variable is recorded as removed
+                recordOut.writeByte(TAG_REMOVED);
+                logger.warn("Variable " + key + " of class " + value.getClass().getName()
+                        + " is not serializable, it is not included in the checkpoint");
+            }
+        }
+
+        void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    logger.error("Checkpoint file " + file + " could not be closed: " + e.getMessage());
+                }
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * A buffer that encodes a record after the space of its length, so the record
+     * and its length are written together without copying them
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+
+        RecordBuffer() {
+            super(256);
+        }
+
+        /**
+         * Discards the previous record, reserving the space of the length
+         */
+        void start() {
+            count = Integer.BYTES;
+        }
+
+        @Override
+        public synchronized void writeTo(final OutputStream target) throws IOException {
+            final int length = count - Integer.BYTES;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            target.write(buf, 0, count);
+        }
+    }
+
+    /**
+     * The last state of a Workflow read from its checkpoint file
+     */
+    public static final class Checkpoint {
+
+        private final Path file;
+        private final String workflowName;
+        private final Map<String, List<String>> workflowConfig;
+        private final ZonedDateTime queueTime;
+        private int[] states;
+        private final Set<String> events = new LinkedHashSet<>();
+        private final Map<String, Object> variables = new HashMap<>();
+
+        private Checkpoint(Path file, String workflowName, Map<String, List<String>> workflowConfig,
+                ZonedDateTime queueTime) {
+            this.file = file;
+            this.workflowName = workflowName;
+            this.workflowConfig = workflowConfig;
+            this.queueTime = queueTime;
+        }
+
+        static Checkpoint read(final Path file) throws IOException, ClassNotFoundException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a checkpoint file of this version");
+                }
+                final String name = in.readUTF();
+                final ZonedDateTime queueTime = Instant.ofEpochMilli(in.readLong()).atZone(ZoneOffset.UTC);
+                final int parameters = in.readInt();
+                final Map<String, List<String>> config = new HashMap<>();
+                for (int p = 0; p < parameters; p++) {
+                    final String key = in.readUTF();
+                    final int count = in.readInt();
+                    final List<String> values = new ArrayList<>(count);
+                    for (int v = 0; v < count; v++) {
+                        values.add(in.readUTF());
+                    }
+                    config.put(key, values);
+                }
+                final Checkpoint checkpoint = new Checkpoint(file, name, config, queueTime);
+
+                for (;;) {
+                    final byte[] record;
+                    try {
+                        record = new byte[in.readInt()];
+                        in.readFully(record);
+                    } catch (EOFException e) {
+                        // The end of the file, or a record cut by a crash
+                        break;
+                    }
+                    checkpoint.apply(new DataInputStream(new ByteArrayInputStream(record)));
+                }
+                if (checkpoint.states == null) {
+                    throw new IOException("The checkpoint file does not contain a snapshot");
+                }
+                return checkpoint;
+            }
+        }
+
+        /**
+         * Applies a snapshot or delta record to the state read until now
+         */
+        private void apply(final DataInputStream in) throws IOException, ClassNotFoundException {
+            final byte type = in.readByte();
+            if (type == RECORD_SNAPSHOT) {
+                variables.clear();
+            }
+            else if (type != RECORD_DELTA) {
+                throw new IOException("Unknown type of record " + type);
+            }
+            states = new int[in.readInt()];
+            for (int r = 0; r < states.length; r++) {
+                states[r] = in.readInt();
+            }
+            events.clear();
+            final int eventCount = in.readInt();
+            for (int e = 0; e < eventCount; e++) {
+                events.add(in.readUTF());
+            }
+            final int variableCount = in.readInt();
+            for (int v = 0; v < variableCount; v++) {
+                final String key = in.readUTF();
+                final Object value = readValue(in);
+                if (value == REMOVED) {
+                    variables.remove(key);
+                }
+                else {
+                    variables.put(key, value);
+                }
+            }
+        }
+
+        /**
+         * Restores the states, events and variables of the checkpoint in a State Machine
+         *
+         * @param machine  A new State Machine with the definition of the Workflow
+         *
+         * @throws IllegalArgumentException if the states do not match the definition
+         */
+        public void applyTo(final StateMachine machine) {
+            machine.setCurrentStates(states);
+            variables.forEach(machine::setVariable);
+            events.forEach(machine::setEvent);
+        }
+
+        public String getWorkflowName() {
+            return workflowName;
+        }
+
+        public Map<String, List<String>> getWorkflowConfig() {
+            return workflowConfig;
+        }
+
+        public ZonedDateTime getQueueTime() {
+            return queueTime;
+        }
+
+        public int[] getStates() {
+            return states.clone();
+        }
+
+        public Set<String> getEvents() {
+            return Collections.unmodifiableSet(events);
+        }
+
+        public Map<String, Object> getVariables() {
+            return Collections.unmodifiableMap(variables);
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint [workflowName=" + workflowName + ", queueTime=" + queueTime + ", file=" + file + "]";
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outputs of an {@link AsyncAction}: the events and variables added to the
+ * context of the {@link StateMachine} when the action completes.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is immutable
+ */
+public final class ActionResult {
+
+    private static final ActionResult EMPTY = new ActionResult(Map.of(), List.of());
+
+    /**
+     * The variables set in the environment
+     */
+    private final Map<String, Object> variables;
+
+    /**
+     * The events added to the set of events
+     */
+    private final List<Event> events;
+
+    private ActionResult(final Map<String, Object> variables, final List<Event> events) {
+        this.variables = variables;
+        this.events = events;
+    }
+
+    /**
+     * Provides a result without outputs
+     *
+     * @return The empty result
+     */
+    public static ActionResult empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a result that only adds events
+     *
+     * @param events  The events added to the State Machine
+     * @return The result
+     */
+    public static ActionResult of(final Event... events) {
+        return new ActionResult(Map.of(), List.of(events));
+    }
+
+    /**
+     * Creates a result that sets variables and adds events
+     *
+     * @param variables  The variables set in the environment, whose values may be null
+     * @param events  The events added to the State Machine
+     * @return The result
+     */
+    public static ActionResult of(final Map<String, Object> variables, final Event... events) {
+        return new ActionResult(Collections.unmodifiableMap(new HashMap<>(variables)), List.of(events));
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        return "ActionResult [variables=" + variables + ", events=" + events + "]";
+    }
+}
@@ -0,0 +1,41 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Represents an asynchronous Action in a transition, that starts some work,
+ * like a call to a remote service, and returns without waiting for it.
+ * <p>
+ * While the work is pending, the {@link StateMachine} is suspended: its
+ * transitions are not checked and {@link StateMachine#update()} reports it as
+ * {@link StateMachine.UpdateAction#SUSPENDED SUSPENDED}. Once the returned
+ * {@code CompletionStage} completes, the events and variables of its
+ * {@link ActionResult} are added to the context of the State Machine, in the
+ * thread executing it, and the State Machine resumes. If it completes
+ * exceptionally, the failure event and the error variable of the transition are
+ * added instead, see {@link Transition#async(Evaluable, AsyncAction, int, Event, String)}.
+ * <p>
+ * The context is only valid during the call to {@link #triggerAsync(Map, Set)},
+ * the work completed later must not access it, and must provide its outputs
+ * through the {@code ActionResult}.
+ * <p>This is a {@link java.lang.FunctionalInterface FunctionalInterface} whose
+ * abstract method is {@link #triggerAsync(Map, Set)}.
+ *
+ * @see Transition#async(Evaluable, AsyncAction, int)
+ */
+@FunctionalInterface
+public interface AsyncAction {
+
+	/**
+	 * Triggers the action on the State Machine, without waiting for its work to
+	 * complete.
+	 *
+	 * @param environment  The Map used to store the variables of the State Machine
+	 * @param events  The Set of Events active in the State Machine
+	 * @return The stage completed with the outputs of the action, with a null
+	 * value if it has no outputs, or completed exceptionally if the action failed
+	 */
+	CompletionStage<ActionResult> triggerAsync(final Map<String, Object> environment, final Set<Event> events);
+}
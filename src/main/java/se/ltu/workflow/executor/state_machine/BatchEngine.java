@@ -0,0 +1,680 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Executes many instances of the same {@link StateMachineDefinition}, stored
+ * as a structure of arrays instead of one {@link StateMachine} object each.
+ * <p>
+ * The current states of all the instances are stored in one {@code int[]}, their
+ * events in one {@code long[]} of bit masks, and their environment in columns, one
+ * per variable interned by the definition, with the unboxed numbers of all the
+ * instances next to each other. A call to {@link #stepAll()} runs every instance
+ * once, as {@link StateMachine#update()} would, in tight loops over those arrays,
+ * and {@link #stepAll(ForkJoinPool)} splits the instances in chunks run in parallel.
+ * This way thousands of instances of a type of Workflow can be stepped without one
+ * thread, nor one set of objects, per instance.
+ * <p>
+ * The engine only accepts definitions whose transitions are evaluated entirely
+ * from the events and the interned variables, and that have no asynchronous
+ * actions nor timeouts, which need a {@link StateMachine} to be suspended or
+ * armed, and that clear the events when a transition is triggered, with
+ * {@link StateMachine.EventConsumption#CLEAR_ALL}. The actions receive a view of
+ * the context of their instance, where the events added that no transition
+ * reads are discarded, as they can never trigger one. The entry and exit actions
+ * of the {@link CompositeState composite states} are executed as in a State Machine.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is not thread-safe. When the instances are stepped in parallel,
+ * the actions of different instances may run at the same time, but each
+ * instance is only run by one thread.
+ */
+public final class BatchEngine {
+
+    /**
+     * Number of instances stepped by each parallel task
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * The kind of a variable column for the instances where it has no value
+     */
+    private static final byte KIND_ABSENT = -1;
+
+    private final TransitionTable table;
+
+    /**
+     * The composite states of the definition, null if it has none
+     */
+    private final StateHierarchy hierarchy;
+
+    /**
+     * The initial state of each region
+     */
+    private final int[] initialStates;
+
+    private final int regions;
+
+    /**
+     * The number of {@code long} words of the event mask of each instance
+     */
+    private final int eventWords;
+
+    /**
+     * For each transition, its condition compiled for the columns of the engine
+     */
+    private final Node[] conditions;
+
+    /**
+     * The number of instances added
+     */
+    private int size;
+
+    /**
+     * The current state of each region of each instance, at {@code instance * regions + region}
+     */
+    private int[] states;
+
+    /**
+     * The mask of active events of each instance, at {@code instance * eventWords}
+     */
+    private long[] events;
+
+    /**
+     * For each interned variable, the kind of its value in each instance, one of
+     * the {@code KIND} constants of {@link Environment} or {@link #KIND_ABSENT}
+     */
+    private final byte[][] kinds;
+
+    /**
+     * For each interned variable, its number in each instance, as a {@code long}
+     * or the raw bits of a {@code double}
+     */
+    private final long[][] numbers;
+
+    /**
+     * For each interned variable, its value in each instance when it is not a number
+     */
+    private final Object[][] values;
+
+    /**
+     * For each instance, the variables that are not interned, or null if it has none
+     */
+    private Map<String, Object>[] others;
+
+    /**
+     * Constructs an engine without instances
+     *
+     * @param definition  The definition of all the instances
+     * @param initialCapacity  The number of instances to allocate space for
+     *
+     * @throws IllegalArgumentException if the definition has asynchronous actions,
+     * timeouts, conditions that are not evaluated from the events and variables,
+     * or queues the events
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BatchEngine(final StateMachineDefinition definition, final int initialCapacity) {
+        this.table = definition.table();
+        this.hierarchy = definition.hierarchy();
+        this.regions = definition.getNumberOfRegions();
+        this.initialStates = new int[regions];
+        for (int r = 0; r < regions; r++) {
+            initialStates[r] = definition.initialState(r);
+        }
+        if (definition.getEventConsumption() != StateMachine.EventConsumption.CLEAR_ALL) {
+            throw new IllegalArgumentException("Queued events are not supported by a BatchEngine");
+        }
+        this.eventWords = (table.registry.size() + 63) >>> 6;
+        this.conditions = new Node[table.transitions.length];
+        for (int t = 0; t < conditions.length; t++) {
+            final Transition transition = table.transitions[t];
+            if (transition.asyncAction() != null || transition.timeout() > 0) {
+                throw new IllegalArgumentException("Transition " + t
+                        + " has an asynchronous action or a timeout, not supported by a BatchEngine");
+            }
+            if (!Conditions.isTracked(table.conditions[t])) {
+                throw new IllegalArgumentException("The condition of transition " + t
+                        + " is not made of events and guards, not supported by a BatchEngine");
+            }
+            conditions[t] = Node.of(table.conditions[t]);
+        }
+
+        final int capacity = Math.max(1, initialCapacity);
+        this.states = new int[capacity * regions];
+        this.events = new long[capacity * eventWords];
+        final int slots = table.variables.size();
+        this.kinds = new byte[slots][capacity];
+        this.numbers = new long[slots][capacity];
+        this.values = new Object[slots][capacity];
+        for (final byte[] column : kinds) {
+            Arrays.fill(column, KIND_ABSENT);
+        }
+        this.others = new Map[capacity];
+    }
+
+    /**
+     * Adds an instance, in the initial states of the definition and with an empty context
+     *
+     * @return The index of the instance
+     */
+    public int add() {
+        if (size == others.length) {
+            grow(size * 2);
+        }
+        final int instance = size++;
+        System.arraycopy(initialStates, 0, states, instance * regions, regions);
+        return instance;
+    }
+
+    private void grow(final int capacity) {
+        states = Arrays.copyOf(states, capacity * regions);
+        events = Arrays.copyOf(events, capacity * eventWords);
+        for (int slot = 0; slot < kinds.length; slot++) {
+            final int old = kinds[slot].length;
+            kinds[slot] = Arrays.copyOf(kinds[slot], capacity);
+            Arrays.fill(kinds[slot], old, capacity, KIND_ABSENT);
+            numbers[slot] = Arrays.copyOf(numbers[slot], capacity);
+            values[slot] = Arrays.copyOf(values[slot], capacity);
+        }
+        others = Arrays.copyOf(others, capacity);
+    }
+
+    /**
+     * Provides the number of instances added
+     *
+     * @return The number of instances
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Obtains the current state of an instance, in its primary region
+     *
+     * @param instance  The index of the instance
+     * @return The number of the current state as ordered in the State List
+     */
+    public int getCurrentState(final int instance) {
+        return getCurrentState(instance, 0);
+    }
+
+    /**
+     * Obtains the current state of a region of an instance
+     *
+     * @param instance  The index of the instance
+     * @param region  The index of the region, by priority
+     * @return The number of the current state as ordered in the State List
+     */
+    public int getCurrentState(final int instance, final int region) {
+        checkInstance(instance);
+        return states[instance * regions + region];
+    }
+
+    /**
+     * Checks if all the regions of an instance are in an END state
+     *
+     * @param instance  The index of the instance
+     * @return True if the instance has ended, false otherwise
+     */
+    public boolean isEnded(final int instance) {
+        checkInstance(instance);
+        for (int r = 0; r < regions; r++) {
+            if (!table.isEndState(states[instance * regions + r])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds an event to an instance. Events that no transition reads are ignored,
+     * as they can not trigger any
+     *
+     * @param instance  The index of the instance
+     * @param name  The name of the event
+     */
+    public void setEvent(final int instance, final String name) {
+        checkInstance(instance);
+        final int index = table.registry.indexOf(name);
+        if (index >= 0) {
+            events[instance * eventWords + (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * Checks if an event is active in an instance
+     *
+     * @param instance  The index of the instance
+     * @param name  The name of the event
+     * @return True if the event is active, false otherwise
+     */
+    public boolean hasEvent(final int instance, final String name) {
+        checkInstance(instance);
+        final int index = table.registry.indexOf(name);
+        return index >= 0 && (events[instance * eventWords + (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    /**
+     * Sets the value of a variable of an instance
+     *
+     * @param instance  The index of the instance
+     * @param variable  The name of the variable
+     * @param value  The value, may be null
+     */
+    public void setVariable(final int instance, final String variable, final Object value) {
+        checkInstance(instance);
+        final int slot = table.variables.slotOf(variable);
+        if (slot >= 0) {
+            storeValue(slot, instance, value);
+            return;
+        }
+        if (others[instance] == null) {
+            others[instance] = new HashMap<>();
+        }
+        others[instance].put(variable, value);
+    }
+
+    /**
+     * Obtains the value of a variable of an instance
+     *
+     * @param instance  The index of the instance
+     * @param variable  The name of the variable
+     * @return The value, or null if the variable is not present
+     */
+    public Object getVariable(final int instance, final String variable) {
+        checkInstance(instance);
+        final int slot = table.variables.slotOf(variable);
+        if (slot >= 0) {
+            return loadValue(slot, instance);
+        }
+        return others[instance] == null ? null : others[instance].get(variable);
+    }
+
+    private void checkInstance(final int instance) {
+        if (instance < 0 || instance >= size) {
+            throw new IndexOutOfBoundsException("Instance " + instance + " out of range, the engine has "
+                    + size + " instances");
+        }
+    }
+
+    /**
+     * Runs every instance once, in the calling thread
+     *
+     * @return The number of instances that executed a transition
+     */
+    public int stepAll() {
+        return stepRange(0, size);
+    }
+
+    /**
+     * Runs every instance once, splitting the instances in chunks stepped in
+     * parallel by a pool
+     *
+     * @param pool  The pool that steps the chunks of instances
+     * @return The number of instances that executed a transition
+     */
+    public int stepAll(final ForkJoinPool pool) {
+        final int count = size;
+        final int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunks <= 1) {
+            return stepRange(0, count);
+        }
+        return pool.submit(() -> IntStream.range(0, chunks).parallel()
+                .map(c -> stepRange(c * CHUNK_SIZE, Math.min(count, (c + 1) * CHUNK_SIZE)))
+                .sum()).join();
+    }
+
+    /**
+     * Runs the instances of a range once
+     *
+     * @param from  The first instance, inclusive
+     * @param to  The last instance, exclusive
+     * @return The number of instances that executed a transition
+     */
+    private int stepRange(final int from, final int to) {
+        final int[] selected = new int[regions];
+        Scratch scratch = null;
+        int stepped = 0;
+        for (int instance = from; instance < to; instance++) {
+            final int base = instance * regions;
+            int first = -1;
+            for (int r = 0; r < regions; r++) {
+                final int state = states[base + r];
+                selected[r] = table.isEndState(state) ? -1 : select(state, instance);
+                if (selected[r] >= 0 && first < 0) {
+                    first = r;
+                }
+            }
+            if (first < 0) {
+                continue;
+            }
+            stepped++;
+            Arrays.fill(events, instance * eventWords, (instance + 1) * eventWords, 0L);
+            boolean loaded = false;
+            for (int r = first; r < regions; r++) {
+                if (selected[r] < 0) {
+                    continue;
+                }
+                final Transition transition = table.transitions[selected[r]];
+                final int source = states[base + r];
+                final int target = transition.targetState();
+                final boolean nested = hierarchy != null && hierarchy.hasActions(source, target);
+                if (transition.action() != null || nested) {
+                    if (scratch == null) {
+                        scratch = new Scratch(table);
+                    }
+                    if (!loaded) {
+                        load(scratch, instance);
+                        loaded = true;
+                    }
+                    if (nested) {
+                        hierarchy.exit(source, target, scratch.environment, scratch.events);
+                    }
+                    if (transition.action() != null) {
+                        transition.action().trigger(scratch.environment, scratch.events);
+                    }
+                    if (nested) {
+                        hierarchy.enter(source, target, scratch.environment, scratch.events);
+                    }
+                }
+                states[base + r] = target;
+            }
+            if (loaded) {
+                store(scratch, instance);
+            }
+        }
+        return stepped;
+    }
+
+    /**
+     * Finds the first transition of a state triggered in an instance, using the
+     * dispatch index of the state when it has one
+     */
+    private int select(final int state, final int instance) {
+        final int[] candidates = table.stateTransitions[state];
+        final long[] byEvent = table.eventTransitions[state];
+        if (byEvent == null) {
+            for (int i = 0; i < candidates.length; i++) {
+                final Node condition = conditions[candidates[i]];
+                if (condition == null || condition.evaluate(this, instance)) {
+                    return candidates[i];
+                }
+            }
+            return -1;
+        }
+        long dispatched = table.eventlessTransitions[state];
+        final int offset = instance * eventWords;
+        for (int w = 0; w < eventWords; w++) {
+            long bits = events[offset + w];
+            while (bits != 0) {
+                dispatched |= byEvent[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        while (dispatched != 0) {
+            final int transition = candidates[Long.numberOfTrailingZeros(dispatched)];
+            final Node condition = conditions[transition];
+            if (condition == null || condition.evaluate(this, instance)) {
+                return transition;
+            }
+            dispatched &= dispatched - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a value in the column of a variable, unboxing numbers
+     */
+    private void storeValue(final int slot, final int instance, final Object value) {
+        if (value instanceof Integer) {
+            storeNumber(slot, instance, Environment.KIND_INT, (Integer) value);
+        } else if (value instanceof Long) {
+            storeNumber(slot, instance, Environment.KIND_LONG, (Long) value);
+        } else if (value instanceof Double) {
+            storeNumber(slot, instance, Environment.KIND_DOUBLE, Double.doubleToRawLongBits((Double) value));
+        } else {
+            kinds[slot][instance] = Environment.KIND_OBJECT;
+            values[slot][instance] = value;
+        }
+    }
+
+    private void storeNumber(final int slot, final int instance, final byte kind, final long number) {
+        kinds[slot][instance] = kind;
+        numbers[slot][instance] = number;
+        values[slot][instance] = null;
+    }
+
+    /**
+     * Reads the value in the column of a variable, boxing numbers
+     */
+    private Object loadValue(final int slot, final int instance) {
+        switch (kinds[slot][instance]) {
+            case KIND_ABSENT:
+                return null;
+            case Environment.KIND_INT:
+                return Integer.valueOf((int) numbers[slot][instance]);
+            case Environment.KIND_LONG:
+                return Long.valueOf(numbers[slot][instance]);
+            case Environment.KIND_DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(numbers[slot][instance]));
+            default:
+                return values[slot][instance];
+        }
+    }
+
+    /**
+     * Copies the context of an instance into the scratch context given to the actions
+     */
+    private void load(final Scratch scratch, final int instance) {
+        final Environment environment = scratch.environment;
+        environment.clear();
+        for (int slot = 0; slot < kinds.length; slot++) {
+            final byte kind = kinds[slot][instance];
+            if (kind == Environment.KIND_OBJECT) {
+                environment.putSlot(slot, values[slot][instance]);
+            }
+            else if (kind != KIND_ABSENT) {
+                environment.putNumber(slot, kind, numbers[slot][instance]);
+            }
+        }
+        if (others[instance] != null) {
+            environment.putAll(others[instance]);
+        }
+        environment.clearChanges();
+        // The events were cleared when the transitions were triggered
+        scratch.events.clear();
+    }
+
+    /**
+     * Copies the changes made by the actions to the scratch context back into an instance
+     */
+    private void store(final Scratch scratch, final int instance) {
+        final Environment environment = scratch.environment;
+        environment.forEachChange(variable -> {
+            final int slot = table.variables.slotOf(variable);
+            if (slot < 0) {
+                if (environment.containsKey(variable)) {
+                    if (others[instance] == null) {
+                        others[instance] = new HashMap<>();
+                    }
+                    others[instance].put(variable, environment.get(variable));
+                }
+                else if (others[instance] != null) {
+                    others[instance].remove(variable);
+                }
+            }
+            else if (!environment.containsSlot(slot)) {
+                kinds[slot][instance] = KIND_ABSENT;
+                values[slot][instance] = null;
+            }
+            else if (environment.kindOf(slot) == Environment.KIND_OBJECT) {
+                kinds[slot][instance] = Environment.KIND_OBJECT;
+                values[slot][instance] = environment.getSlot(slot);
+            }
+            else {
+                storeNumber(slot, instance, environment.kindOf(slot), environment.longAt(slot));
+            }
+        });
+        final int offset = instance * eventWords;
+        for (int w = 0; w < eventWords; w++) {
+            events[offset + w] = scratch.events.activeWord(w);
+        }
+    }
+
+    /**
+     * The context given to the actions of the instances stepped by one thread
+     */
+    private static final class Scratch {
+
+        final Environment environment;
+        final EventSet events;
+
+        Scratch(final TransitionTable table) {
+            this.environment = new Environment(table.variables);
+            this.events = new EventSet(table.registry);
+        }
+    }
+
+    /**
+     * A condition compiled to be evaluated against the columns of the engine
+     */
+    private static final class Node {
+
+        private static final byte CONSTANT = 0;
+        private static final byte EVENT = 1;
+        private static final byte GUARD = 2;
+        private static final byte NUMERIC = 3;
+        private static final byte AND = 4;
+        private static final byte OR = 5;
+        private static final byte NOT = 6;
+        private static final byte XOR = 7;
+
+        private final byte op;
+        /** The event index or the variable slot */
+        private final int index;
+        /** The constant, or the value compared by a guard */
+        private final Object value;
+        private final NumericGuard numeric;
+        private final Node[] operands;
+
+        private Node(byte op, int index, Object value, NumericGuard numeric, Node[] operands) {
+            this.op = op;
+            this.index = index;
+            this.value = value;
+            this.numeric = numeric;
+            this.operands = operands;
+        }
+
+        /**
+         * Compiles a tracked condition, bound to the registries of the definition
+         */
+        @SuppressWarnings("unchecked")
+        static Node of(final Evaluable<Context> condition) {
+            if (condition == null) {
+                return null;
+            }
+            if (condition instanceof Conditions.Constant) {
+                return new Node(CONSTANT, 0, ((Conditions.Constant) condition).value, null, null);
+            }
+            if (condition instanceof Conditions.EventCondition) {
+                return new Node(EVENT, ((Conditions.EventCondition) condition).index, null, null, null);
+            }
+            if (condition instanceof Conditions.GuardCondition) {
+                final Conditions.GuardCondition guard = (Conditions.GuardCondition) condition;
+                return new Node(GUARD, guard.slot, guard.guard.getValue(), null, null);
+            }
+            if (condition instanceof Conditions.NumericCondition) {
+                final Conditions.NumericCondition guard = (Conditions.NumericCondition) condition;
+                return new Node(NUMERIC, guard.slot, null, guard.guard, null);
+            }
+            final LogicExpression<?, Context> expression = (LogicExpression<?, Context>) condition;
+            final Node[] operands = expression.operands().stream()
+                    .map(o -> of((Evaluable<Context>) o))
+                    .toArray(Node[]::new);
+            if (expression.operator() == null) {
+                return operands[0];
+            }
+            switch (expression.operator()) {
+                case AND:
+                    return new Node(AND, 0, null, null, operands);
+                case OR:
+                    return new Node(OR, 0, null, null, operands);
+                case NOT:
+                    return new Node(NOT, 0, null, null, operands);
+                default:
+                    return new Node(XOR, 0, null, null, operands);
+            }
+        }
+
+        boolean evaluate(final BatchEngine engine, final int instance) {
+            switch (op) {
+                case CONSTANT:
+                    return (Boolean) value;
+                case EVENT:
+                    return (engine.events[instance * engine.eventWords + (index >>> 6)] & (1L << index)) != 0;
+                case GUARD:
+                    return equalsValue(engine, instance);
+                case NUMERIC:
+                    return testNumber(engine, instance);
+                case AND:
+                    for (final Node operand : operands) {
+                        if (!operand.evaluate(engine, instance)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case OR:
+                    for (final Node operand : operands) {
+                        if (operand.evaluate(engine, instance)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case NOT:
+                    return !operands[0].evaluate(engine, instance);
+                default:
+                    return operands[0].evaluate(engine, instance) != operands[1].evaluate(engine, instance);
+            }
+        }
+
+        /**
+         * Compares the variable of a guard as {@link Environment#slotEquals(int, Object)}
+         */
+        private boolean equalsValue(final BatchEngine engine, final int instance) {
+            final long number = engine.numbers[index][instance];
+            switch (engine.kinds[index][instance]) {
+                case KIND_ABSENT:
+                    return false;
+                case Environment.KIND_INT:
+                    return value instanceof Integer && (Integer) value == (int) number;
+                case Environment.KIND_LONG:
+                    return value instanceof Long && (Long) value == number;
+                case Environment.KIND_DOUBLE:
+                    return value instanceof Double
+                            && Double.doubleToLongBits((Double) value)
+                                == Double.doubleToLongBits(Double.longBitsToDouble(number));
+                default:
+                    return Objects.equals(engine.values[index][instance], value);
+            }
+        }
+
+        private boolean testNumber(final BatchEngine engine, final int instance) {
+            switch (engine.kinds[index][instance]) {
+                case KIND_ABSENT:
+                    return false;
+                case Environment.KIND_INT:
+                case Environment.KIND_LONG:
+                    return numeric.test(engine.numbers[index][instance]);
+                case Environment.KIND_DOUBLE:
+                    return numeric.test(Double.longBitsToDouble(engine.numbers[index][instance]));
+                default:
+                    return numeric.testValue(engine.values[index][instance]);
+            }
+        }
+    }
+}
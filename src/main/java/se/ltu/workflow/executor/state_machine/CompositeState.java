@@ -0,0 +1,117 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.List;
+
+/**
+ * A composite state of a Finite State Machine, that groups several
+ * {@link State states} of the State Machine as its substates.
+ * <p>
+ * The transitions of a composite state apply to all its substates, as if they
+ * were attached to each of them after their own transitions, so a transition
+ * shared by many states, like the handling of an error, is written once. A
+ * composite state can also have an entry action, executed when a transition
+ * enters one of its substates from outside of it, and an exit action, executed
+ * when a transition leaves its substates. The composite states can be nested,
+ * as long as the substates of two composite states are either disjoint or one
+ * of them contains all the substates of the other.
+ * <p>
+ * The composite states are not states of the State Machine themselves: the
+ * {@link StateMachineDefinition} flattens them into the transitions of their
+ * substates, and the State Machine is always in one of those substates.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is immutable, as long as the lists provided are not modified
+ * after the composite state is created
+ */
+public final class CompositeState {
+
+    /**
+     * The name is used to identify this {@code CompositeState}
+     */
+    private final String name;
+
+    /**
+     * The indexes of the states grouped by this composite state
+     */
+    private final List<Integer> statesIndexes;
+
+    /**
+     * The indexes of the transitions that apply to all the substates
+     */
+    private final List<Integer> transitionsIndexes;
+
+    /**
+     * The action executed when a substate is entered from outside, may be null
+     */
+    private final Action entryAction;
+
+    /**
+     * The action executed when the substates are left, may be null
+     */
+    private final Action exitAction;
+
+    /**
+     * Constructs an instance of a {@code CompositeState} with the given substates
+     * and transitions, and without entry nor exit actions.
+     *
+     * @param name  The name used to identify the composite state
+     * @param statesIndexes  The indexes of its substates in the State List
+     * @param transitionsIndexes  The indexes of the transitions that apply to all
+     * its substates
+     */
+    public CompositeState(final String name, final List<Integer> statesIndexes,
+            final List<Integer> transitionsIndexes) {
+        this(name, statesIndexes, transitionsIndexes, null, null);
+    }
+
+    /**
+     * Constructs an instance of a {@code CompositeState} with the given substates,
+     * transitions, and entry and exit actions.
+     *
+     * @param name  The name used to identify the composite state
+     * @param statesIndexes  The indexes of its substates in the State List
+     * @param transitionsIndexes  The indexes of the transitions that apply to all
+     * its substates
+     * @param entryAction  The action executed when a substate is entered from
+     * outside of the composite state, may be null
+     * @param exitAction  The action executed when the substates are left, may be null
+     */
+    public CompositeState(final String name, final List<Integer> statesIndexes,
+            final List<Integer> transitionsIndexes, final Action entryAction, final Action exitAction) {
+        this.name = name;
+        this.statesIndexes = statesIndexes;
+        this.transitionsIndexes = transitionsIndexes;
+        this.entryAction = entryAction;
+        this.exitAction = exitAction;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the indexes of the states grouped by this composite state
+     *
+     * @return The indexes of the substates
+     */
+    public List<Integer> statesIndexes() {
+        return statesIndexes;
+    }
+
+    /**
+     * Returns the indexes of the Transitions that apply to all the substates
+     *
+     * @return The indexes of the Transitions
+     */
+    public List<Integer> transitionsIndexes() {
+        return transitionsIndexes;
+    }
+
+    public Action entryAction() {
+        return entryAction;
+    }
+
+    public Action exitAction() {
+        return exitAction;
+    }
+}
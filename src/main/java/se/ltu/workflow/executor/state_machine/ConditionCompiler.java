@@ -0,0 +1,237 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles the conditions of the transitions of each state into one
+ * {@code MethodHandle}.
+ * <p>
+ * For every state, the normalized conditions of its transitions are chained
+ * with {@code MethodHandle} combinators into a selector of type
+ * {@code (Context)int}, that returns the index of the first transition whose
+ * condition is satisfied, or -1 if none is. The logic operators become branches
+ * of {@link MethodHandles#guardWithTest guardWithTest}, so the short-circuit
+ * order of the interpreted {@link LogicOperator} is kept, and the leaves are the
+ * bound {@link Evaluable#evaluate} of each event or guard. Once the selector of
+ * a state has been called often enough, the JVM specializes it for its bound
+ * leaves and the JIT can inline the whole condition chain of the state.
+ * <p>
+ * The condition of each transition is also compiled on its own, into a handle of
+ * type {@code (Context)boolean}, for the states with a dispatch index: only the
+ * transitions that the active events can trigger are evaluated there, so they
+ * can not use the chained selector of the state.
+ * <p>
+ * The compiler is optional, it is only used when the system property
+ * {@value #COMPILE_PROPERTY} is set to {@code true}. If it is not set, or a
+ * condition can not be compiled, the {@link StateMachine} keeps evaluating the
+ * {@code Evaluable} tree of the transitions.
+ */
+final class ConditionCompiler {
+
+    /**
+     * System property that enables the compilation of the conditions
+     */
+    static final String COMPILE_PROPERTY = "se.ltu.workflow.executor.state_machine.compileConditions";
+
+    private static final MethodHandle EVALUATE;
+    private static final MethodHandle NOT;
+    private static final MethodHandle TRUE;
+    private static final MethodHandle FALSE;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            EVALUATE = lookup.findVirtual(Evaluable.class, "evaluate",
+                    MethodType.methodType(boolean.class, Object.class))
+                    .asType(MethodType.methodType(boolean.class, Evaluable.class, Context.class));
+            NOT = lookup.findStatic(ConditionCompiler.class, "not",
+                    MethodType.methodType(boolean.class, boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        TRUE = constant(true);
+        FALSE = constant(false);
+    }
+
+    /**
+     * Do not create an instance of a class used to hold static methods
+     */
+    private ConditionCompiler() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Checks if the compilation of the conditions is enabled
+     *
+     * @return True if the system property {@value #COMPILE_PROPERTY} is true
+     */
+    static boolean isEnabled() {
+        return Boolean.getBoolean(COMPILE_PROPERTY);
+    }
+
+    /**
+     * Compiles the selectors of all the states
+     *
+     * @param stateTransitions  For each state, the indexes of its transitions
+     * @param conditions  For each transition, its normalized and bound condition,
+     * null if it has no conditions
+     * @return For each state, its selector of type {@code (Context)int}, or null
+     * if the conditions could not be compiled
+     */
+    static MethodHandle[] compile(final int[][] stateTransitions, final Evaluable<Context>[] conditions) {
+        final MethodHandle[] compiled = compileConditions(conditions);
+        return compiled == null ? null : compile(stateTransitions, compiled);
+    }
+
+    /**
+     * Compiles the selectors of all the states from the compiled conditions of
+     * their transitions
+     *
+     * @param stateTransitions  For each state, the indexes of its transitions
+     * @param conditions  For each transition, its compiled condition, as
+     * returned by {@link #compileConditions(Evaluable[])}
+     * @return For each state, its selector of type {@code (Context)int}
+     */
+    static MethodHandle[] compile(final int[][] stateTransitions, final MethodHandle[] conditions) {
+        final MethodHandle[] selectors = new MethodHandle[stateTransitions.length];
+        for (int s = 0; s < stateTransitions.length; s++) {
+            selectors[s] = selector(stateTransitions[s], conditions);
+        }
+        return selectors;
+    }
+
+    /**
+     * Compiles the condition of each transition
+     *
+     * @param conditions  For each transition, its normalized and bound condition,
+     * null if it has no conditions
+     * @return For each transition, its condition of type {@code (Context)boolean},
+     * or null if it has no conditions. The result is null if the conditions could
+     * not be compiled
+     */
+    static MethodHandle[] compileConditions(final Evaluable<Context>[] conditions) {
+        final MethodHandle[] compiled = new MethodHandle[conditions.length];
+        try {
+            for (int t = 0; t < conditions.length; t++) {
+                compiled[t] = conditions[t] == null ? null : condition(conditions[t]);
+            }
+        } catch (IllegalArgumentException e) {
+            // The interpreted conditions are used instead
+            return null;
+        }
+        return compiled;
+    }
+
+    /**
+     * Runs the selector of a state
+     *
+     * @param selector  The selector, of type {@code (Context)int}
+     * @param context  The context the conditions are evaluated against
+     * @return The index of the first transition satisfied, or -1 if none is
+     */
+    static int select(final MethodHandle selector, final Context context) {
+        try {
+            return (int) selector.invokeExact(context);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // Evaluable.evaluate does not declare checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs a compiled condition
+     *
+     * @param condition  The condition, of type {@code (Context)boolean}
+     * @param context  The context the condition is evaluated against
+     * @return True if the condition is satisfied, false otherwise
+     */
+    static boolean test(final MethodHandle condition, final Context context) {
+        try {
+            return (boolean) condition.invokeExact(context);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // Evaluable.evaluate does not declare checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Chains the conditions of the transitions of a state, keeping their order
+     */
+    private static MethodHandle selector(final int[] transitions, final MethodHandle[] conditions) {
+        MethodHandle selector = MethodHandles.dropArguments(
+                MethodHandles.constant(int.class, -1), 0, Context.class);
+        for (int i = transitions.length - 1; i >= 0; i--) {
+            final MethodHandle selected = MethodHandles.dropArguments(
+                    MethodHandles.constant(int.class, transitions[i]), 0, Context.class);
+            final MethodHandle condition = conditions[transitions[i]];
+            selector = condition == null
+                    ? selected
+                    : MethodHandles.guardWithTest(condition, selected, selector);
+        }
+        return selector;
+    }
+
+    /**
+     * Compiles one condition into a {@code MethodHandle} of type {@code (Context)boolean}
+     */
+    @SuppressWarnings("unchecked")
+    private static MethodHandle condition(final Evaluable<Context> condition) {
+        if (condition instanceof Conditions.Constant) {
+            return ((Conditions.Constant) condition).value ? TRUE : FALSE;
+        }
+        if (!(condition instanceof LogicExpression)) {
+            return EVALUATE.bindTo(condition);
+        }
+        final LogicExpression<?, Context> expression = (LogicExpression<?, Context>) condition;
+        final List<MethodHandle> operands = new ArrayList<>();
+        for (final Evaluable<Context> operand : expression.operands()) {
+            operands.add(condition(operand));
+        }
+        if (expression.operator() == null) {
+            return operands.get(0);
+        }
+        switch (expression.operator()) {
+            case NOT:
+                return MethodHandles.filterReturnValue(operands.get(0), NOT);
+            case XOR:
+                return MethodHandles.guardWithTest(operands.get(0),
+                        MethodHandles.filterReturnValue(operands.get(1), NOT), operands.get(1));
+            case AND:
+                return chain(operands, true);
+            case OR:
+                return chain(operands, false);
+            default:
+                throw new IllegalArgumentException("Unknown LogicOperator " + expression.operator());
+        }
+    }
+
+    /**
+     * Chains operands with AND or OR, evaluating them in order and stopping at
+     * the first one that decides the result
+     */
+    private static MethodHandle chain(final List<MethodHandle> operands, final boolean and) {
+        MethodHandle chained = operands.get(operands.size() - 1);
+        for (int i = operands.size() - 2; i >= 0; i--) {
+            chained = and
+                    ? MethodHandles.guardWithTest(operands.get(i), chained, FALSE)
+                    : MethodHandles.guardWithTest(operands.get(i), TRUE, chained);
+        }
+        return chained;
+    }
+
+    private static MethodHandle constant(final boolean value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(boolean.class, value), 0, Context.class);
+    }
+
+    private static boolean not(final boolean value) {
+        return !value;
+    }
+}
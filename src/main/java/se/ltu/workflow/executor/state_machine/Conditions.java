@@ -0,0 +1,706 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Creates and normalizes the conditions of the transitions, as logic expressions
+ * evaluated against the {@link Context} of a State Machine.
+ * <p>
+ * A condition is a tree of {@link LogicExpression logic expressions}, where each
+ * operand can be another logic expression or a leaf made of an {@link Event} or a
+ * {@link Guard}. For example, a transition that needs two events, or one event and
+ * a guard, can be written as:
+ * <pre>{@code
+ * Conditions.or(
+ *     Conditions.and(Conditions.event(productReady), Conditions.event(sliderReady)),
+ *     Conditions.and(Conditions.event(productReady), Conditions.guard(new Guard("Slider", true))))
+ * }</pre>
+ * <p>
+ * When a {@link StateMachine} is created, the events, guards and condition of each
+ * transition are combined into one condition and normalized: nested AND and OR are
+ * flattened, double NOT are removed, constant subtrees are folded and the cheap
+ * checks of events are placed before the guards. The operands are therefore
+ * expected to have no side effects.
+ */
+public final class Conditions {
+
+    /**
+     * Relative cost of evaluating each kind of leaf, used to order the operands
+     */
+    private static final int EVENT_COST = 1;
+    private static final int GUARD_COST = 4;
+    private static final int OTHER_COST = 8;
+
+    /**
+     * Do not create an instance of a class used to hold static methods
+     */
+    private Conditions() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Creates a condition that is true when the event is active
+     *
+     * @param event  The event, not null
+     * @return The condition
+     */
+    public static Evaluable<Context> event(final Event event) {
+        return new EventCondition(event, null, -1);
+    }
+
+    /**
+     * Creates a condition that is true when the guard matches the environment
+     *
+     * @param guard  The guard, not null
+     * @return The condition
+     */
+    public static Evaluable<Context> guard(final Guard guard) {
+        return new GuardCondition(guard, null, -1);
+    }
+
+    /**
+     * Creates a condition that is true when the numeric guard matches the environment
+     *
+     * @param guard  The numeric guard, not null
+     * @return The condition
+     */
+    public static Evaluable<Context> guard(final NumericGuard guard) {
+        return new NumericCondition(guard, null, -1);
+    }
+
+    /**
+     * Creates a condition from a logic expression made of events
+     *
+     * @param events  The logic expression, may contain nested logic expressions
+     * @return The condition
+     */
+    public static Evaluable<Context> events(final LogicExpression<? extends Evaluable<Set<Event>>, Set<Event>> events) {
+        return lift(events, Conditions::liftEvents);
+    }
+
+    /**
+     * Creates a condition from a logic expression made of guards
+     *
+     * @param guards  The logic expression, may contain nested logic expressions
+     * @return The condition
+     */
+    public static Evaluable<Context> guards(
+            final LogicExpression<? extends Evaluable<Map<String, Object>>, Map<String, Object>> guards) {
+        return lift(guards, Conditions::liftGuards);
+    }
+
+    /**
+     * Creates a condition with a fixed value
+     *
+     * @param value  The value of the condition
+     * @return The condition
+     */
+    public static Evaluable<Context> constant(final boolean value) {
+        return value ? Constant.TRUE : Constant.FALSE;
+    }
+
+    /**
+     * Creates a condition that is true when all the operands are true
+     *
+     * @param operands  Two or more operands
+     * @return The condition
+     */
+    @SafeVarargs
+    public static LogicExpression<Evaluable<Context>, Context> and(final Evaluable<Context>... operands) {
+        // Copied one by one, as passing on the generic array would make the annotation unsafe
+        final List<Evaluable<Context>> list = new ArrayList<>(operands.length);
+        for (final Evaluable<Context> operand : operands) {
+            list.add(operand);
+        }
+        return new LogicExpression<>(LogicOperator.AND, list);
+    }
+
+    /**
+     * Creates a condition that is true when any of the operands is true
+     *
+     * @param operands  Two or more operands
+     * @return The condition
+     */
+    @SafeVarargs
+    public static LogicExpression<Evaluable<Context>, Context> or(final Evaluable<Context>... operands) {
+        final List<Evaluable<Context>> list = new ArrayList<>(operands.length);
+        for (final Evaluable<Context> operand : operands) {
+            list.add(operand);
+        }
+        return new LogicExpression<>(LogicOperator.OR, list);
+    }
+
+    /**
+     * Creates a condition that is true when the operand is false
+     *
+     * @param operand  The operand
+     * @return The condition
+     */
+    public static LogicExpression<Evaluable<Context>, Context> not(final Evaluable<Context> operand) {
+        return new LogicExpression<>(LogicOperator.NOT, List.of(operand));
+    }
+
+    /**
+     * Creates a condition that is true when only one of the operands is true
+     *
+     * @param first  The first operand
+     * @param second  The second operand
+     * @return The condition
+     */
+    public static LogicExpression<Evaluable<Context>, Context> xor(final Evaluable<Context> first,
+            final Evaluable<Context> second) {
+        return new LogicExpression<>(LogicOperator.XOR, List.of(first, second));
+    }
+
+    /**
+     * Combines the events, guards and condition of a transition into one normalized
+     * condition.
+     *
+     * @param transition  The transition
+     * @return The normalized condition, or null if the transition has no conditions
+     *
+     * @throws IllegalArgumentException if any logic expression has more than one
+     * operand and no operator
+     */
+    static Evaluable<Context> of(final Transition transition) {
+        final List<Evaluable<Context>> parts = new ArrayList<>(3);
+        if (transition.event() != null) {
+            parts.add(events(transition.event()));
+        }
+        if (transition.guard() != null) {
+            parts.add(guards(transition.guard()));
+        }
+        if (transition.condition() != null) {
+            parts.add(lift(transition.condition(), operand -> operand));
+        }
+        if (parts.isEmpty()) {
+            return null;
+        }
+        final Evaluable<Context> combined = parts.size() == 1
+                ? parts.get(0)
+                : new LogicExpression<>(LogicOperator.AND, parts);
+        return normalize(combined);
+    }
+
+    /**
+     * Normalizes a condition, returning an equivalent one that is cheaper to evaluate.
+     * <p>
+     * The steps performed are:
+     * <p><ul>
+     * <li>Expressions without operator are replaced by their only operand
+     * <li>Nested AND inside AND, and OR inside OR, are flattened
+     * <li>Double NOT are removed
+     * <li>Subtrees with constant value are folded into a constant
+     * <li>The operands of AND and OR are ordered by their cost, events first
+     * </ul><p>
+     *
+     * @param condition  The condition, its expressions must be well formed
+     * @return The normalized condition
+     */
+    @SuppressWarnings("unchecked")
+    static Evaluable<Context> normalize(final Evaluable<Context> condition) {
+        if (!(condition instanceof LogicExpression)) {
+            return condition;
+        }
+        final LogicExpression<?, Context> expression = (LogicExpression<?, Context>) condition;
+        final List<Evaluable<Context>> operands = new ArrayList<>();
+        for (final Evaluable<Context> operand : expression.operands()) {
+            operands.add(normalize(operand));
+        }
+        final LogicOperator operator = expression.operator();
+        if (operator == null) {
+            return operands.get(0);
+        }
+        switch (operator) {
+            case NOT:
+                return negate(operands.get(0));
+            case XOR:
+                return exclusive(operands.get(0), operands.get(1));
+            default:
+                return combine(operator, operands);
+        }
+    }
+
+    /**
+     * Negates a normalized condition
+     */
+    @SuppressWarnings("unchecked")
+    private static Evaluable<Context> negate(final Evaluable<Context> operand) {
+        if (operand instanceof Constant) {
+            return constant(!((Constant) operand).value);
+        }
+        if (operand instanceof LogicExpression
+                && ((LogicExpression<?, Context>) operand).operator() == LogicOperator.NOT) {
+            return ((LogicExpression<?, Context>) operand).operands().iterator().next();
+        }
+        return not(operand);
+    }
+
+    /**
+     * Combines two normalized conditions with XOR
+     */
+    private static Evaluable<Context> exclusive(final Evaluable<Context> first, final Evaluable<Context> second) {
+        if (first instanceof Constant && second instanceof Constant) {
+            return constant(((Constant) first).value != ((Constant) second).value);
+        }
+        if (first instanceof Constant) {
+            return ((Constant) first).value ? negate(second) : second;
+        }
+        if (second instanceof Constant) {
+            return ((Constant) second).value ? negate(first) : first;
+        }
+        return xor(first, second);
+    }
+
+    /**
+     * Combines normalized conditions with AND or OR
+     */
+    @SuppressWarnings("unchecked")
+    private static Evaluable<Context> combine(final LogicOperator operator, final List<Evaluable<Context>> operands) {
+        // The value that decides the result on its own: false for AND, true for OR
+        final boolean dominant = operator == LogicOperator.OR;
+        final List<Evaluable<Context>> flattened = new ArrayList<>();
+        for (final Evaluable<Context> operand : operands) {
+            if (operand instanceof Constant) {
+                if (((Constant) operand).value == dominant) {
+                    return operand;
+                }
+                // The neutral value does not change the result
+                continue;
+            }
+            if (operand instanceof LogicExpression
+                    && ((LogicExpression<?, Context>) operand).operator() == operator) {
+                flattened.addAll(((LogicExpression<?, Context>) operand).operands());
+            }
+            else {
+                flattened.add(operand);
+            }
+        }
+        if (flattened.isEmpty()) {
+            return constant(!dominant);
+        }
+        if (flattened.size() == 1) {
+            return flattened.get(0);
+        }
+        // The sort is stable, so operands of the same cost keep the order chosen by the user
+        flattened.sort(Comparator.comparingInt(Conditions::cost));
+        return new LogicExpression<>(operator, flattened);
+    }
+
+    /**
+     * Estimates the cost of evaluating a condition
+     */
+    @SuppressWarnings("unchecked")
+    private static int cost(final Evaluable<Context> condition) {
+        if (condition instanceof Constant) {
+            return 0;
+        }
+        if (condition instanceof EventCondition) {
+            return EVENT_COST;
+        }
+        if (condition instanceof GuardCondition || condition instanceof NumericCondition) {
+            return GUARD_COST;
+        }
+        if (condition instanceof LogicExpression) {
+            int cost = 0;
+            for (final Evaluable<Context> operand : ((LogicExpression<?, Context>) condition).operands()) {
+                cost += cost(operand);
+            }
+            return cost;
+        }
+        return OTHER_COST;
+    }
+
+    /**
+     * Collects the events present in a condition
+     *
+     * @param condition  The condition, may be null
+     * @param events  The list where the events are added, in order of appearance
+     */
+    @SuppressWarnings("unchecked")
+    static void collectEvents(final Evaluable<Context> condition, final List<Event> events) {
+        if (condition instanceof EventCondition) {
+            events.add(((EventCondition) condition).event);
+        }
+        else if (condition instanceof LogicExpression) {
+            for (final Evaluable<Context> operand : ((LogicExpression<?, Context>) condition).operands()) {
+                collectEvents(operand, events);
+            }
+        }
+    }
+
+    /**
+     * Collects the variables read by the guards present in a condition
+     *
+     * @param condition  The condition, may be null
+     * @param variables  The list where the variable names are added, in order of appearance
+     */
+    @SuppressWarnings("unchecked")
+    static void collectVariables(final Evaluable<Context> condition, final List<String> variables) {
+        if (condition instanceof GuardCondition) {
+            variables.add(((GuardCondition) condition).guard.getVariable());
+        }
+        else if (condition instanceof NumericCondition) {
+            variables.add(((NumericCondition) condition).guard.getVariable());
+        }
+        else if (condition instanceof LogicExpression) {
+            for (final Evaluable<Context> operand : ((LogicExpression<?, Context>) condition).operands()) {
+                collectVariables(operand, variables);
+            }
+        }
+    }
+
+    /**
+     * Checks if the result of a bound condition only depends on the active events
+     * and the interned variables it references, so it can not change while none
+     * of them changes.
+     * <p>
+     * Conditions with other operands, evaluated against the whole set of events
+     * or environment, are not tracked. Neither are guards comparing against a
+     * mutable value, as a variable equal to it could be modified in place.
+     *
+     * @param condition  The condition, bound to the registries, may be null
+     * @return True if the condition is tracked, false otherwise
+     */
+    @SuppressWarnings("unchecked")
+    static boolean isTracked(final Evaluable<Context> condition) {
+        if (condition == null || condition instanceof Constant) {
+            return true;
+        }
+        if (condition instanceof EventCondition) {
+            return ((EventCondition) condition).index >= 0;
+        }
+        if (condition instanceof GuardCondition) {
+            final GuardCondition guard = (GuardCondition) condition;
+            final Object value = guard.guard.getValue();
+            return guard.slot >= 0 && (value == null || value instanceof String || value instanceof Boolean
+                    || value instanceof Integer || value instanceof Long || value instanceof Double
+                    || value instanceof Enum);
+        }
+        if (condition instanceof NumericCondition) {
+            return ((NumericCondition) condition).slot >= 0;
+        }
+        if (condition instanceof LogicExpression) {
+            for (final Evaluable<Context> operand : ((LogicExpression<?, Context>) condition).operands()) {
+                if (!isTracked(operand)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Resolves the events and guard variables of a condition to their index in
+     * the registries
+     *
+     * @param condition  The normalized condition, may be null
+     * @param events  The registry containing all the events of the condition
+     * @param variables  The registry containing all the guard variables of the condition
+     * @return An equivalent condition that evaluates its events and guards through
+     * their index
+     */
+    @SuppressWarnings("unchecked")
+    static Evaluable<Context> bind(final Evaluable<Context> condition, final EventRegistry events,
+            final VariableRegistry variables) {
+        if (condition instanceof EventCondition) {
+            final Event event = ((EventCondition) condition).event;
+            return new EventCondition(event, events, events.indexOf(event.getName()));
+        }
+        if (condition instanceof GuardCondition) {
+            final Guard guard = ((GuardCondition) condition).guard;
+            return new GuardCondition(guard, variables, variables.slotOf(guard.getVariable()));
+        }
+        if (condition instanceof NumericCondition) {
+            final NumericGuard guard = ((NumericCondition) condition).guard;
+            return new NumericCondition(guard, variables, variables.slotOf(guard.getVariable()));
+        }
+        if (condition instanceof LogicExpression) {
+            final LogicExpression<?, Context> expression = (LogicExpression<?, Context>) condition;
+            final List<Evaluable<Context>> operands = new ArrayList<>();
+            for (final Evaluable<Context> operand : expression.operands()) {
+                operands.add(bind(operand, events, variables));
+            }
+            return new LogicExpression<>(expression.operator(), operands);
+        }
+        return condition;
+    }
+
+    /**
+     * Finds the events that trigger a bound condition: the condition can only be
+     * true when at least one of those events is active.
+     * <p>
+     * The result is conservative. An AND is triggered by the events of any of its
+     * operands, and an OR by the events of all of its operands, if all of them
+     * have triggering events. Conditions with NOT, XOR, guards or constants have
+     * no triggering events, as they can be true without any active event.
+     *
+     * @param condition  The condition, bound to an {@code EventRegistry}
+     * @return The indexes of the triggering events, or null if the condition
+     * can be true without any active event
+     */
+    @SuppressWarnings("unchecked")
+    static int[] triggerEvents(final Evaluable<Context> condition) {
+        if (condition instanceof EventCondition) {
+            final int index = ((EventCondition) condition).index;
+            return index >= 0 ? new int[] {index} : null;
+        }
+        if (!(condition instanceof LogicExpression)) {
+            return null;
+        }
+        final LogicExpression<?, Context> expression = (LogicExpression<?, Context>) condition;
+        if (expression.operator() == LogicOperator.AND) {
+            // Any operand is enough, the one with less events filters more transitions
+            int[] smallest = null;
+            for (final Evaluable<Context> operand : expression.operands()) {
+                final int[] trigger = triggerEvents(operand);
+                if (trigger != null && (smallest == null || trigger.length < smallest.length)) {
+                    smallest = trigger;
+                }
+            }
+            return smallest;
+        }
+        if (expression.operator() == LogicOperator.OR) {
+            final List<int[]> triggers = new ArrayList<>();
+            int length = 0;
+            for (final Evaluable<Context> operand : expression.operands()) {
+                final int[] trigger = triggerEvents(operand);
+                if (trigger == null) {
+                    return null;
+                }
+                triggers.add(trigger);
+                length += trigger.length;
+            }
+            final int[] union = new int[length];
+            int position = 0;
+            for (final int[] trigger : triggers) {
+                System.arraycopy(trigger, 0, union, position, trigger.length);
+                position += trigger.length;
+            }
+            return union;
+        }
+        return null;
+    }
+
+    /**
+     * Rebuilds a tree of logic expressions as a condition, lifting its leaves to
+     * the {@code Context}.
+     *
+     * @throws IllegalArgumentException if any logic expression has more than one
+     * operand and no operator
+     */
+    @SuppressWarnings("unchecked")
+    private static <C> Evaluable<Context> lift(final Evaluable<C> operand,
+            final Function<Evaluable<C>, Evaluable<Context>> leafLifter) {
+        if (!(operand instanceof LogicExpression)) {
+            return leafLifter.apply(operand);
+        }
+        final LogicExpression<?, C> expression = (LogicExpression<?, C>) operand;
+        if (expression.operator() == null && expression.operands().size() != 1) {
+            throw new IllegalArgumentException("LogicExpression needs a LogicOperator if more than one operand");
+        }
+        final List<Evaluable<Context>> operands = new ArrayList<>();
+        for (final Evaluable<C> o : expression.operands()) {
+            operands.add(lift(o, leafLifter));
+        }
+        return new LogicExpression<>(expression.operator(), operands);
+    }
+
+    private static Evaluable<Context> liftEvents(final Evaluable<Set<Event>> operand) {
+        if (operand instanceof Event) {
+            return event((Event) operand);
+        }
+        return new EventsOperand(operand);
+    }
+
+    private static Evaluable<Context> liftGuards(final Evaluable<Map<String, Object>> operand) {
+        if (operand instanceof Guard) {
+            return guard((Guard) operand);
+        }
+        if (operand instanceof NumericGuard) {
+            return guard((NumericGuard) operand);
+        }
+        return new EnvironmentOperand(operand);
+    }
+
+    /**
+     * A condition with a fixed value
+     */
+    static final class Constant implements Evaluable<Context> {
+
+        static final Constant TRUE = new Constant(true);
+        static final Constant FALSE = new Constant(false);
+
+        final boolean value;
+
+        private Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean evaluate(Context context) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return Boolean.toString(value);
+        }
+    }
+
+    /**
+     * A condition made of one {@link Event}.
+     * <p>
+     * Once bound to the registry of a State Machine, it only tests a bit of the
+     * {@link EventSet} of that State Machine.
+     */
+    static final class EventCondition implements Evaluable<Context> {
+
+        final Event event;
+        final EventRegistry registry;
+        final int index;
+
+        EventCondition(Event event, EventRegistry registry, int index) {
+            this.event = event;
+            this.registry = registry;
+            this.index = index;
+        }
+
+        @Override
+        public boolean evaluate(Context context) {
+            final Set<Event> events = context.getEvents();
+            if (registry != null && events instanceof EventSet && ((EventSet) events).registry == registry) {
+                return ((EventSet) events).containsIndex(index);
+            }
+            return event.evaluate(events);
+        }
+
+        @Override
+        public String toString() {
+            return event.toString();
+        }
+    }
+
+    /**
+     * A condition made of one {@link Guard}.
+     * <p>
+     * Once bound to the registry of a State Machine, it reads the slot of its
+     * variable in the {@link Environment} of that State Machine, without hashing
+     * the variable name.
+     */
+    static final class GuardCondition implements Evaluable<Context> {
+
+        final Guard guard;
+        final VariableRegistry registry;
+        final int slot;
+
+        GuardCondition(Guard guard, VariableRegistry registry, int slot) {
+            this.guard = guard;
+            this.registry = registry;
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean evaluate(Context context) {
+            final Map<String, Object> environment = context.getEnvironment();
+            if (registry != null && environment instanceof Environment
+                    && ((Environment) environment).registry == registry) {
+                final Environment slots = (Environment) environment;
+                return slots.containsSlot(slot) && slots.slotEquals(slot, guard.getValue());
+            }
+            return guard.evaluate(environment);
+        }
+
+        @Override
+        public String toString() {
+            return "Guard [" + guard.getVariable() + "=" + guard.getValue() + "]";
+        }
+    }
+
+    /**
+     * A condition made of one {@link NumericGuard}.
+     * <p>
+     * Once bound to the registry of a State Machine, it compares the unboxed value
+     * stored in the slot of its variable in the {@link Environment} of that State
+     * Machine, without hashing the variable name nor boxing the value.
+     */
+    static final class NumericCondition implements Evaluable<Context> {
+
+        final NumericGuard guard;
+        final VariableRegistry registry;
+        final int slot;
+
+        NumericCondition(NumericGuard guard, VariableRegistry registry, int slot) {
+            this.guard = guard;
+            this.registry = registry;
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean evaluate(Context context) {
+            final Map<String, Object> environment = context.getEnvironment();
+            if (registry != null && environment instanceof Environment
+                    && ((Environment) environment).registry == registry) {
+                final Environment slots = (Environment) environment;
+                if (!slots.containsSlot(slot)) {
+                    return false;
+                }
+                switch (slots.kindOf(slot)) {
+                    case Environment.KIND_INT:
+                    case Environment.KIND_LONG:
+                        return guard.test(slots.longAt(slot));
+                    case Environment.KIND_DOUBLE:
+                        return guard.test(slots.doubleAt(slot));
+                    default:
+                        return guard.testValue(slots.getSlot(slot));
+                }
+            }
+            return guard.evaluate(environment);
+        }
+
+        @Override
+        public String toString() {
+            return guard.toString();
+        }
+    }
+
+    /**
+     * A condition made of any other operand evaluated against the events
+     */
+    static final class EventsOperand implements Evaluable<Context> {
+
+        final Evaluable<Set<Event>> operand;
+
+        EventsOperand(Evaluable<Set<Event>> operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean evaluate(Context context) {
+            return operand.evaluate(context.getEvents());
+        }
+    }
+
+    /**
+     * A condition made of any other operand evaluated against the environment
+     */
+    static final class EnvironmentOperand implements Evaluable<Context> {
+
+        final Evaluable<Map<String, Object>> operand;
+
+        EnvironmentOperand(Evaluable<Map<String, Object>> operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean evaluate(Context context) {
+            return operand.evaluate(context.getEnvironment());
+        }
+    }
+}
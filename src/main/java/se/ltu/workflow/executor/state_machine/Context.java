@@ -0,0 +1,31 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The context of a {@link StateMachine}, against which the conditions of the
+ * transitions are evaluated.
+ * <p>
+ * It gives access to both the {@code Set} of active {@link Event events} and the
+ * environment of variables used by the {@link Guard guards}, so a single
+ * {@link LogicExpression} can mix {@code Events} and {@code Guards}.
+ *
+ * @see Conditions
+ */
+public interface Context {
+
+    /**
+     * Provides the events active in this context
+     * 
+     * @return The Set of Events active
+     */
+    Set<Event> getEvents();
+
+    /**
+     * Provides the variables of the environment in this context
+     * 
+     * @return The Map of variables used as Environment
+     */
+    Map<String, Object> getEnvironment();
+}
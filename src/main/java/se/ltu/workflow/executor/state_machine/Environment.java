@@ -0,0 +1,572 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The environment of a {@link StateMachine}, as a {@code Map} of variables with
+ * a name and a value of any type.
+ * <p>
+ * The variables interned in the {@link VariableRegistry} of the State Machine
+ * are stored in an {@code Object[]} indexed by their slot, with a bit mask that
+ * marks which slots hold a value, as a variable can be present with a null
+ * value. This way the {@link Guard guards} of the transitions are evaluated
+ * without hashing the variable names. The {@code Integer}, {@code Long} and
+ * {@code Double} values of those variables are stored unboxed in a
+ * {@code long[]}, so they can be written and compared by {@link NumericGuard
+ * numeric guards} without allocating, and they are only boxed again when read
+ * through the {@code Map} view. Any other variable, which is not part of
+ * a guard but may be used by the actions, is kept in a regular {@code HashMap}.
+ * <p>
+ * The variables written or removed are also recorded, so the State Machine can
+ * report which ones were changed since the previous transition.
+ * <p>
+ * This class offers the {@code Map} view that {@link Action actions} receive, so
+ * they can keep reading and writing variables as before.
+ */
+final class Environment extends AbstractMap<String, Object> {
+
+    /**
+     * The registry used to translate variable names into slots
+     */
+    final VariableRegistry registry;
+
+    /**
+     * The values of the interned variables, indexed by slot
+     */
+    private final Object[] values;
+
+    /**
+     * The kind of value held by each slot, one of the {@code KIND} constants
+     */
+    private final byte[] kinds;
+
+    /**
+     * The unboxed values of the slots holding a number, as a {@code long} or
+     * the raw bits of a {@code double}
+     */
+    private final long[] numbers;
+
+    /**
+     * Kinds of value held by a slot
+     */
+    static final byte KIND_OBJECT = 0;
+    static final byte KIND_INT = 1;
+    static final byte KIND_LONG = 2;
+    static final byte KIND_DOUBLE = 3;
+
+    /**
+     * The mask of slots holding a value, one bit per variable interned in the registry
+     */
+    private final long[] present;
+
+    /**
+     * Variables that are not part of the registry
+     */
+    private final Map<String, Object> others;
+
+    /**
+     * Number of bits set in {@link #present}
+     */
+    private int presentCount;
+
+    /**
+     * The mask of slots written or removed since the last {@link #clearChanges()}
+     */
+    private final long[] changed;
+
+    /**
+     * The variables not part of the registry written or removed since the last
+     * {@link #clearChanges()}
+     */
+    private final Set<String> changedOthers;
+
+    /**
+     * Counter of the writes and removals of the interned variables, so it only
+     * stays the same while none of them changes
+     */
+    private long version;
+
+    /**
+     * For each slot, the value of {@link #version} when its variable was last
+     * written or removed, 0 if it never was
+     */
+    private final long[] versions;
+
+    /**
+     * Constructs an empty environment for a registry
+     *
+     * @param registry  The registry of the State Machine
+     */
+    Environment(VariableRegistry registry) {
+        this.registry = registry;
+        this.values = new Object[registry.size()];
+        this.kinds = new byte[registry.size()];
+        this.numbers = new long[registry.size()];
+        this.present = new long[(registry.size() + 63) >>> 6];
+        this.changed = new long[present.length];
+        this.versions = new long[registry.size()];
+        this.others = new HashMap<>();
+        this.changedOthers = new HashSet<>();
+        this.presentCount = 0;
+    }
+
+    /**
+     * Constructs a copy of an environment
+     *
+     * @param original  The environment to copy
+     */
+    Environment(Environment original) {
+        this.registry = original.registry;
+        this.values = original.values.clone();
+        this.kinds = original.kinds.clone();
+        this.numbers = original.numbers.clone();
+        this.present = original.present.clone();
+        this.changed = new long[present.length];
+        this.versions = new long[values.length];
+        this.others = new HashMap<>(original.others);
+        this.changedOthers = new HashSet<>();
+        this.presentCount = original.presentCount;
+    }
+
+    /**
+     * Checks if the variable with that slot in the registry has a value
+     *
+     * @param slot  The slot of the variable, -1 if it is not interned
+     * @return True if the variable is present, false otherwise
+     */
+    boolean containsSlot(int slot) {
+        return slot >= 0 && (present[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Provides the value of the variable with that slot in the registry
+     *
+     * @param slot  The slot of the variable
+     * @return The value, null if the variable is not present or its value is null.
+     * Numbers stored unboxed are boxed again
+     */
+    Object getSlot(int slot) {
+        switch (kinds[slot]) {
+            case KIND_INT:
+                return Integer.valueOf((int) numbers[slot]);
+            case KIND_LONG:
+                return Long.valueOf(numbers[slot]);
+            case KIND_DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(numbers[slot]));
+            default:
+                return values[slot];
+        }
+    }
+
+    /**
+     * Provides the kind of value held by the variable with that slot in the registry
+     *
+     * @param slot  The slot of the variable
+     * @return One of the {@code KIND} constants
+     */
+    byte kindOf(int slot) {
+        return kinds[slot];
+    }
+
+    /**
+     * Provides the unboxed value of a variable that holds an {@code int} or {@code long}
+     *
+     * @param slot  The slot of the variable, whose kind is {@code KIND_INT} or {@code KIND_LONG}
+     * @return The value
+     */
+    long longAt(int slot) {
+        return numbers[slot];
+    }
+
+    /**
+     * Provides the unboxed value of a variable that holds a {@code double}
+     *
+     * @param slot  The slot of the variable, whose kind is {@code KIND_DOUBLE}
+     * @return The value
+     */
+    double doubleAt(int slot) {
+        return Double.longBitsToDouble(numbers[slot]);
+    }
+
+    /**
+     * Checks if the value of the variable with that slot in the registry is equal
+     * to another value, without boxing the numbers stored unboxed.
+     *
+     * @param slot  The slot of the variable, which must be present
+     * @param value  The value compared, may be null
+     * @return True if both values are equal, as {@code Objects.equals} would tell
+     */
+    boolean slotEquals(int slot, Object value) {
+        switch (kinds[slot]) {
+            case KIND_INT:
+                return value instanceof Integer && (Integer) value == (int) numbers[slot];
+            case KIND_LONG:
+                return value instanceof Long && (Long) value == numbers[slot];
+            case KIND_DOUBLE:
+                // Double.equals compares the bits of the values
+                return value instanceof Double
+                        && Double.doubleToLongBits((Double) value) == Double.doubleToLongBits(doubleAt(slot));
+            default:
+                return Objects.equals(values[slot], value);
+        }
+    }
+
+    /**
+     * Sets the value of the variable with that slot in the registry
+     *
+     * @param slot  The slot of the variable
+     * @param value  The value, may be null
+     * @return The previous value
+     */
+    Object putSlot(int slot, Object value) {
+        final Object previous = markPresent(slot);
+        if (value instanceof Integer) {
+            setNumber(slot, KIND_INT, (Integer) value);
+        } else if (value instanceof Long) {
+            setNumber(slot, KIND_LONG, (Long) value);
+        } else if (value instanceof Double) {
+            setNumber(slot, KIND_DOUBLE, Double.doubleToRawLongBits((Double) value));
+        } else {
+            kinds[slot] = KIND_OBJECT;
+            values[slot] = value;
+        }
+        return previous;
+    }
+
+    /**
+     * Sets a number as the value of the variable with that slot in the registry,
+     * without boxing it
+     *
+     * @param slot  The slot of the variable
+     * @param kind  The kind of number, {@code KIND_INT}, {@code KIND_LONG} or {@code KIND_DOUBLE}
+     * @param number  The value, or the raw bits of a {@code double}
+     */
+    void putNumber(int slot, byte kind, long number) {
+        final long bit = 1L << slot;
+        if ((present[slot >>> 6] & bit) == 0) {
+            present[slot >>> 6] |= bit;
+            presentCount++;
+        }
+        changed[slot >>> 6] |= bit;
+        versions[slot] = ++version;
+        setNumber(slot, kind, number);
+    }
+
+    private void setNumber(int slot, byte kind, long number) {
+        kinds[slot] = kind;
+        numbers[slot] = number;
+        values[slot] = null;
+    }
+
+    /**
+     * Marks a slot as present, returning its previous value
+     */
+    private Object markPresent(int slot) {
+        final long bit = 1L << slot;
+        changed[slot >>> 6] |= bit;
+        versions[slot] = ++version;
+        if ((present[slot >>> 6] & bit) == 0) {
+            present[slot >>> 6] |= bit;
+            presentCount++;
+            return null;
+        }
+        return getSlot(slot);
+    }
+
+    /**
+     * Removes the variable with that slot in the registry
+     *
+     * @param slot  The slot of the variable
+     * @return The previous value
+     */
+    Object removeSlot(int slot) {
+        final long bit = 1L << slot;
+        if ((present[slot >>> 6] & bit) == 0) {
+            return null;
+        }
+        present[slot >>> 6] &= ~bit;
+        presentCount--;
+        changed[slot >>> 6] |= bit;
+        versions[slot] = ++version;
+        final Object previous = getSlot(slot);
+        kinds[slot] = KIND_OBJECT;
+        values[slot] = null;
+        return previous;
+    }
+
+    @Override
+    public Object get(Object key) {
+        final int slot = registry.slotOf(key);
+        if (slot >= 0) {
+            return containsSlot(slot) ? getSlot(slot) : null;
+        }
+        return others.isEmpty() ? null : others.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        final int slot = registry.slotOf(key);
+        if (slot >= 0) {
+            return containsSlot(slot);
+        }
+        return !others.isEmpty() && others.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        final int slot = registry.slotOf(key);
+        if (slot >= 0) {
+            return putSlot(slot, value);
+        }
+        changedOthers.add(key);
+        return others.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        final int slot = registry.slotOf(key);
+        if (slot >= 0) {
+            return removeSlot(slot);
+        }
+        if (others.isEmpty() || !others.containsKey(key)) {
+            return null;
+        }
+        changedOthers.add((String) key);
+        return others.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        if (presentCount != 0) {
+            for (int i = 0; i < present.length; i++) {
+                changed[i] |= present[i];
+                present[i] = 0L;
+            }
+            version++;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = null;
+                kinds[i] = KIND_OBJECT;
+                versions[i] = version;
+            }
+            presentCount = 0;
+        }
+        if (!others.isEmpty()) {
+            changedOthers.addAll(others.keySet());
+            others.clear();
+        }
+    }
+
+    /**
+     * Provides the version of the interned variables, which changes every time
+     * one of them is written or removed
+     *
+     * @return The current version
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Provides the version of the interned variables when the variable with that
+     * slot was last written or removed
+     *
+     * @param slot  The slot of the variable
+     * @return The version of its last change, 0 if it never changed
+     */
+    long versionOf(int slot) {
+        return versions[slot];
+    }
+
+    /**
+     * Forgets the variables changed until now, to start tracking the ones
+     * changed before the next transition
+     */
+    void clearChanges() {
+        for (int i = 0; i < changed.length; i++) {
+            changed[i] = 0L;
+        }
+        if (!changedOthers.isEmpty()) {
+            changedOthers.clear();
+        }
+    }
+
+    /**
+     * Provides the names of the variables written or removed since the last
+     * {@link #clearChanges()}
+     *
+     * @param action  The action called with the name of each variable changed
+     */
+    void forEachChange(Consumer<String> action) {
+        for (int i = 0; i < changed.length; i++) {
+            long bits = changed[i];
+            while (bits != 0) {
+                action.accept(registry.nameAt((i << 6) + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+        if (!changedOthers.isEmpty()) {
+            changedOthers.forEach(action);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return presentCount == 0 && others.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return presentCount + others.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return Environment.this.size();
+            }
+
+            @Override
+            public void clear() {
+                Environment.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the interned variables first, and then over the other ones
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        /** Slot of the next interned variable to return, -1 when they are exhausted */
+        private int next = nextSlot(0);
+        /** Slot of the last interned variable returned, -1 if none */
+        private int last = -1;
+        /** Iterator over the other variables, once the interned ones are exhausted */
+        private Iterator<Map.Entry<String, Object>> othersIterator;
+        /** The last other variable returned, null if none */
+        private String lastOther;
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0 || (othersIterator == null ? !others.isEmpty() : othersIterator.hasNext());
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (next >= 0) {
+                last = next;
+                next = nextSlot(next + 1);
+                return new SlotEntry(last);
+            }
+            last = -1;
+            if (othersIterator == null) {
+                othersIterator = others.entrySet().iterator();
+            }
+            if (!othersIterator.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<String, Object> entry = othersIterator.next();
+            lastOther = entry.getKey();
+            return new OtherEntry(entry);
+        }
+
+        @Override
+        public void remove() {
+            if (last >= 0) {
+                removeSlot(last);
+                last = -1;
+            }
+            else if (othersIterator != null) {
+                othersIterator.remove();
+                changedOthers.add(lastOther);
+            }
+            else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * The entry of a variable not part of the registry, that writes through to
+     * the {@code HashMap} and records the change
+     */
+    private final class OtherEntry extends AbstractMap.SimpleEntry<String, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Map.Entry<String, Object> entry;
+
+        OtherEntry(Map.Entry<String, Object> entry) {
+            super(entry);
+            this.entry = entry;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            super.setValue(value);
+            changedOthers.add(entry.getKey());
+            return entry.setValue(value);
+        }
+    }
+
+    /**
+     * The entry of an interned variable, that writes through to its slot
+     */
+    private final class SlotEntry extends AbstractMap.SimpleEntry<String, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int slot;
+
+        SlotEntry(int slot) {
+            super(registry.nameAt(slot), getSlot(slot));
+            this.slot = slot;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            super.setValue(value);
+            return putSlot(slot, value);
+        }
+    }
+
+    /**
+     * Finds the next interned variable that has a value
+     *
+     * @param from  The slot to start searching from, inclusive
+     * @return The slot of the next variable present, or -1 if there is none
+     */
+    private int nextSlot(int from) {
+        int word = from >>> 6;
+        if (word >= present.length) {
+            return -1;
+        }
+        long bits = present[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == present.length) {
+                return -1;
+            }
+            bits = present[word];
+        }
+    }
+}
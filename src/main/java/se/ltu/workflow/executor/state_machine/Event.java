@@ -1,5 +1,6 @@
 package se.ltu.workflow.executor.state_machine;
 
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -10,6 +11,9 @@ import java.util.Set;
  * <p>
  * This class allows the creation of null Event, when the constructor has null
  * as argument.
+ * <p>
+ * Two {@code Events} are equal when they have the same name, so they can be
+ * stored and looked up in any {@code Set}.
  * 
  * @see EventTest#testNullEventCreationAndEvaluation()
  *
@@ -34,6 +38,24 @@ public class Event implements Evaluable<Set<Event>>{
 		return eventName;
 	}
     
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(eventName);
+	}
+
+	// Events are identified only by their name
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		Event other = (Event) obj;
+		return Objects.equals(eventName, other.eventName);
+	}
+
 	@Override
 	public String toString() {
 		return "Event [eventName=" + eventName + "]";
@@ -49,11 +71,18 @@ public class Event implements Evaluable<Set<Event>>{
      * When the {@code eventName} is null, it will compare against other 
      * {@code Events} that also have a null name, but it will not match against
      * a {@code null} Object
+     * <p>
+     * When the set is the one kept by a {@link StateMachine}, the lookup is done
+     * in constant time through the interned index of the event name.
      * 
      * @param names  The set of event names that have been triggered
      * @return True if the event was found, False otherwise
      */
     public boolean evaluate(final Set<Event> names) {
+    	
+    	if (names instanceof EventSet) {
+    		return names.contains(this);
+    	}
 
     	for(Event e: names) {
     		// An null object can never match an Event
@@ -74,11 +103,5 @@ public class Event implements Evaluable<Set<Event>>{
     	}
     	
     	return false;
-    	/*
-    	 * The use of contains() method from Set interface with Event Object 
-    	 * requires to override the equals() method from Object class, and 
-    	 * therefore also the hash() method
-    	 */
-        //return names.contains(this);
     }
 }
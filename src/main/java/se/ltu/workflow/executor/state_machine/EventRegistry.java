@@ -0,0 +1,92 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the names of the {@link Event events} used by a {@link StateMachine}
+ * to small integers.
+ * <p>
+ * The registry is filled when the State Machine is constructed, with every event
+ * present in the conditions of its transitions. Each different name
+ * receives an index, starting from 0, that is used to store the active events
+ * as a bit mask in {@link EventSet}.
+ * <p>
+ * Events that are not part of any transition can still be added to the State
+ * Machine, but as they can never trigger a transition they are not interned.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is immutable
+ */
+final class EventRegistry {
+
+    /**
+     * The index of each event name, the name may be null
+     */
+    private final Map<String, Integer> indexes;
+
+    /**
+     * The first {@code Event} found with each name, ordered by index
+     */
+    private final Event[] events;
+
+    private EventRegistry(Map<String, Integer> indexes, Event[] events) {
+        this.indexes = indexes;
+        this.events = events;
+    }
+
+    /**
+     * Creates the registry of all the events present in the conditions of the
+     * transitions.
+     *
+     * @param conditions  The conditions of the transitions, may contain null
+     * @return The registry with the events interned in order of appearance
+     */
+    static EventRegistry of(Evaluable<Context>[] conditions) {
+        final List<Event> found = new ArrayList<>();
+        for (final Evaluable<Context> condition : conditions) {
+            Conditions.collectEvents(condition, found);
+        }
+        final Map<String, Integer> indexes = new HashMap<>();
+        final List<Event> events = new ArrayList<>();
+        for (final Event e : found) {
+            if (!indexes.containsKey(e.getName())) {
+                indexes.put(e.getName(), events.size());
+                events.add(e);
+            }
+        }
+        return new EventRegistry(indexes, events.toArray(new Event[events.size()]));
+    }
+
+    /**
+     * Provides the index of an event name
+     *
+     * @param name  The name of the event, may be null
+     * @return The index of the event, or -1 if the name is not part of this registry
+     */
+    int indexOf(String name) {
+        final Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Provides the {@code Event} interned with an index
+     *
+     * @param index  The index of the event
+     * @return The event
+     */
+    Event eventAt(int index) {
+        return events[index];
+    }
+
+    /**
+     * Provides the number of events interned
+     *
+     * @return The number of different event names
+     */
+    int size() {
+        return events.length;
+    }
+}
@@ -0,0 +1,307 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The {@code Set} of active {@link Event events} of a {@link StateMachine}.
+ * <p>
+ * The events interned in the {@link EventRegistry} of the State Machine are
+ * stored as bits in a {@code long[]} mask, so adding, removing and checking them
+ * is done in constant time without allocating. Any other event, which can not
+ * trigger a transition but may be used by the actions, is kept in a regular
+ * {@code HashSet}.
+ * <p>
+ * This class offers the {@code Set} view that {@link Action actions} receive, so
+ * they can keep adding, removing or checking events as before.
+ * <p>
+ * When the State Machine consumes its events as a queue, an interned event added
+ * while it is already active is not lost: its occurrence is counted, and the
+ * event stays active after it is {@link #consumeIndex(int) consumed} once for
+ * each occurrence queued. The {@code Set} view still shows it only once.
+ */
+final class EventSet extends AbstractSet<Event> {
+
+    /**
+     * The registry used to translate events into bits
+     */
+    final EventRegistry registry;
+
+    /**
+     * The mask of active events, one bit per event interned in the registry
+     */
+    private final long[] active;
+
+    /**
+     * Events that are not part of the registry
+     */
+    private final Set<Event> others;
+
+    /**
+     * Number of bits set in {@link #active}
+     */
+    private int activeCount;
+
+    /**
+     * For each interned event, the occurrences queued behind the active one, or
+     * null if the events are not queued
+     */
+    private int[] queued;
+
+    /**
+     * Constructs an empty set of events for a registry
+     *
+     * @param registry  The registry of the State Machine
+     */
+    EventSet(EventRegistry registry) {
+        this.registry = registry;
+        this.active = new long[(registry.size() + 63) >>> 6];
+        this.others = new HashSet<>();
+        this.activeCount = 0;
+    }
+
+    /**
+     * Constructs a copy of a set of events
+     *
+     * @param original  The set to copy
+     */
+    EventSet(EventSet original) {
+        this.registry = original.registry;
+        this.active = original.active.clone();
+        this.others = new HashSet<>(original.others);
+        this.activeCount = original.activeCount;
+        this.queued = original.queued == null ? null : original.queued.clone();
+    }
+
+    /**
+     * Sets if the occurrences of an event added while it is active are queued,
+     * or ignored as in any {@code Set}
+     *
+     * @param queueing  True to queue the occurrences
+     */
+    void setQueueing(boolean queueing) {
+        if (queueing && queued == null) {
+            queued = new int[registry.size()];
+        }
+        else if (!queueing) {
+            queued = null;
+        }
+    }
+
+    /**
+     * Checks if the event with that index in the registry is active
+     *
+     * @param index  The index of the event, -1 if it is not interned
+     * @return True if the event is active, false otherwise
+     */
+    boolean containsIndex(int index) {
+        return index >= 0 && (active[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Activates the event with that index in the registry
+     *
+     * @param index  The index of the event
+     * @return True if the event was not active before
+     */
+    boolean addIndex(int index) {
+        final long bit = 1L << index;
+        if ((active[index >>> 6] & bit) != 0) {
+            if (queued != null) {
+                queued[index]++;
+            }
+            return false;
+        }
+        active[index >>> 6] |= bit;
+        activeCount++;
+        return true;
+    }
+
+    /**
+     * Deactivates the event with that index in the registry, discarding the
+     * occurrences queued
+     *
+     * @param index  The index of the event
+     * @return True if the event was active before
+     */
+    boolean removeIndex(int index) {
+        final long bit = 1L << index;
+        if ((active[index >>> 6] & bit) == 0) {
+            return false;
+        }
+        active[index >>> 6] &= ~bit;
+        activeCount--;
+        if (queued != null) {
+            queued[index] = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Consumes one occurrence of the event with that index in the registry. The
+     * event stays active if it has more occurrences queued
+     *
+     * @param index  The index of the event
+     */
+    void consumeIndex(int index) {
+        if (queued != null && queued[index] > 0) {
+            queued[index]--;
+        }
+        else {
+            removeIndex(index);
+        }
+    }
+
+    /**
+     * Adds an event by name, without creating an {@code Event} object if the
+     * name is interned in the registry.
+     *
+     * @param name  The name of the event
+     * @return True if the event was not active before
+     */
+    boolean addName(String name) {
+        final int index = registry.indexOf(name);
+        return index >= 0 ? addIndex(index) : others.add(new Event(name));
+    }
+
+    @Override
+    public boolean add(Event e) {
+        final int index = e == null ? -1 : registry.indexOf(e.getName());
+        return index >= 0 ? addIndex(index) : others.add(e);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof Event) {
+            final int index = registry.indexOf(((Event) o).getName());
+            if (index >= 0) {
+                return containsIndex(index);
+            }
+        }
+        return !others.isEmpty() && others.contains(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o instanceof Event) {
+            final int index = registry.indexOf(((Event) o).getName());
+            if (index >= 0) {
+                return removeIndex(index);
+            }
+        }
+        return others.remove(o);
+    }
+
+    @Override
+    public void clear() {
+        if (activeCount != 0) {
+            for (int i = 0; i < active.length; i++) {
+                active[i] = 0L;
+            }
+            activeCount = 0;
+            if (queued != null) {
+                Arrays.fill(queued, 0);
+            }
+        }
+        if (!others.isEmpty()) {
+            others.clear();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return activeCount == 0 && others.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return activeCount + others.size();
+    }
+
+    @Override
+    public Iterator<Event> iterator() {
+        return new Iterator<Event>() {
+
+            /** Index of the next interned event to return, -1 when they are exhausted */
+            private int next = nextIndex(0);
+            /** Index of the last interned event returned, -1 if none */
+            private int last = -1;
+            /** Iterator over the other events, once the interned ones are exhausted */
+            private Iterator<Event> othersIterator;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0 || (othersIterator == null ? !others.isEmpty() : othersIterator.hasNext());
+            }
+
+            @Override
+            public Event next() {
+                if (next >= 0) {
+                    last = next;
+                    next = nextIndex(next + 1);
+                    return registry.eventAt(last);
+                }
+                last = -1;
+                if (othersIterator == null) {
+                    othersIterator = others.iterator();
+                }
+                if (!othersIterator.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return othersIterator.next();
+            }
+
+            @Override
+            public void remove() {
+                if (last >= 0) {
+                    removeIndex(last);
+                    last = -1;
+                }
+                else if (othersIterator != null) {
+                    othersIterator.remove();
+                }
+                else {
+                    throw new IllegalStateException();
+                }
+            }
+        };
+    }
+
+    /**
+     * Provides 64 bits of the mask of active interned events
+     *
+     * @param word  The position of the bits in the mask, the events from
+     * {@code 64 * word} to {@code 64 * word + 63}
+     * @return The bits of the active events
+     */
+    long activeWord(int word) {
+        return active[word];
+    }
+
+    /**
+     * Finds the next active interned event
+     *
+     * @param from  The index to start searching from, inclusive
+     * @return The index of the next active event, or -1 if there is none
+     */
+    int nextIndex(int from) {
+        int word = from >>> 6;
+        if (word >= active.length) {
+            return -1;
+        }
+        long bits = active[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == active.length) {
+                return -1;
+            }
+            bits = active[word];
+        }
+    }
+}
@@ -69,10 +69,14 @@ public class Guard implements Evaluable<Map<String, Object>>{
      * false otherwise
      */
     public boolean evaluate(final Map<String, Object> environment) {
-    	if (!environment.containsKey(this.getVariable()))
-    		return false;
+    	/* A single lookup is enough when the variable has a non null value, the
+    	 * second lookup is only needed to tell a missing variable from a null one
+    	 */
+    	final Object current = environment.get(variable);
+    	if (current == null)
+    		return value == null && environment.containsKey(variable);
     	
-    	return Objects.equals(environment.get(variable), value);
+    	return current.equals(value);
 
     	/* Is there a difference between above and below?
     	 * Below throws exception when environment.get(variable) == null
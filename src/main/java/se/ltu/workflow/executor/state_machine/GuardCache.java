@@ -0,0 +1,128 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.Arrays;
+
+/**
+ * Remembers, for each region of a {@link StateMachine}, that no transition of
+ * its current state was triggered, together with the version of the variables
+ * and the events that the conditions of the state read at that time.
+ * <p>
+ * While a Workflow waits in a state, every run of the State Machine evaluates
+ * the same conditions against the same values. With this cache, a run only
+ * compares the versions of the variables read by the state, from its
+ * {@link TransitionTable#trackedSlots}, and its {@link TransitionTable#trackedEvents},
+ * and evaluates the conditions again only if one of them changed.
+ * <p>
+ * Only states whose conditions are all {@link Conditions#isTracked(Evaluable)
+ * tracked} are cached, the others are always evaluated.
+ *
+ * <h4>Implementation notes</h4>
+ * The entries of different regions are independent, so the regions can be
+ * evaluated in parallel, each one reading and writing only its own entry.
+ */
+final class GuardCache {
+
+    /**
+     * The value of {@link #states} for a region without entry
+     */
+    private static final int EMPTY = -1;
+
+    private final TransitionTable table;
+
+    /**
+     * For each region, the state without triggered transitions, or {@link #EMPTY}
+     */
+    private final int[] states;
+
+    /**
+     * For each region, the version of the environment when its state was evaluated
+     */
+    private final long[] versions;
+
+    /**
+     * For each region, the events read by its state that were active when it
+     * was evaluated
+     */
+    private final long[][] events;
+
+    /**
+     * Constructs an empty cache
+     *
+     * @param table  The table of the State Machine
+     * @param regions  The number of regions of the State Machine
+     */
+    GuardCache(TransitionTable table, int regions) {
+        this.table = table;
+        this.states = new int[regions];
+        Arrays.fill(states, EMPTY);
+        this.versions = new long[regions];
+        this.events = new long[regions][];
+    }
+
+    /**
+     * Checks if the state of a region was already evaluated without triggering
+     * any transition, and nothing it reads changed since then
+     *
+     * @param region  The index of the region
+     * @param state  The current state of the region
+     * @param environment  The environment of the State Machine
+     * @param active  The events of the State Machine
+     * @return True if no transition can be triggered, false if the conditions
+     * have to be evaluated
+     */
+    boolean isUntriggered(int region, int state, Environment environment, EventSet active) {
+        if (states[region] != state) {
+            return false;
+        }
+        final long version = versions[region];
+        if (environment.version() != version) {
+            for (final int slot : table.trackedSlots[state]) {
+                if (environment.versionOf(slot) > version) {
+                    return false;
+                }
+            }
+        }
+        final long[] mask = table.trackedEvents[state];
+        final long[] seen = events[region];
+        for (int w = 0; w < mask.length; w++) {
+            if ((active.activeWord(w) & mask[w]) != seen[w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the result of evaluating the state of a region
+     *
+     * @param region  The index of the region
+     * @param state  The current state of the region
+     * @param transition  The transition triggered, or -1 if none
+     * @param environment  The environment of the State Machine
+     * @param active  The events of the State Machine
+     */
+    void store(int region, int state, int transition, Environment environment, EventSet active) {
+        if (transition >= 0 || table.trackedSlots[state] == null) {
+            states[region] = EMPTY;
+            return;
+        }
+        final long[] mask = table.trackedEvents[state];
+        long[] seen = events[region];
+        if (seen == null || seen.length != mask.length) {
+            seen = new long[mask.length];
+            events[region] = seen;
+        }
+        for (int w = 0; w < mask.length; w++) {
+            seen[w] = active.activeWord(w) & mask[w];
+        }
+        versions[region] = environment.version();
+        states[region] = state;
+    }
+
+    /**
+     * Forgets the entries of all the regions
+     */
+    void clear() {
+        Arrays.fill(states, EMPTY);
+    }
+}
@@ -0,0 +1,97 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A lock-free, unbounded queue with many producers and a single consumer,
+ * used to pass messages to a {@link StateMachine} from other threads.
+ * <p>
+ * The queue is a linked list of nodes, where the producers append a node by
+ * swapping the tail with one atomic operation, and then linking the previous
+ * tail to it. The consumer owns the head, so it reads the messages without any
+ * atomic operation. A producer never waits for another one or for the consumer.
+ * <p>
+ * Between the swap of the tail and the link of the previous node, a message is
+ * not yet visible to the consumer. It will be received in the next drain, so the
+ * consumer never blocks either.
+ *
+ * <h4>Implementation notes</h4>
+ * {@link #offer(Object)} is thread-safe. {@link #drain(Consumer)} and
+ * {@link #isEmpty()} must only be called by the consumer thread
+ *
+ * @param <T>  The type of the messages
+ */
+final class Inbox<T> {
+
+    /**
+     * A node of the list, holding a message
+     */
+    private static final class Node<T> {
+
+        T message;
+        volatile Node<T> next;
+
+        Node(T message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * The last node, where the producers append the new messages
+     */
+    private final AtomicReference<Node<T>> tail;
+
+    /**
+     * The node before the first message not received, only accessed by the consumer
+     */
+    private Node<T> head;
+
+    Inbox() {
+        final Node<T> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Adds a message to the inbox, from any thread
+     *
+     * @param message  The message, not null
+     */
+    void offer(final T message) {
+        final Node<T> node = new Node<>(message);
+        final Node<T> previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Checks if there are messages visible to the consumer
+     *
+     * @return True if the next drain would not receive any message
+     */
+    boolean isEmpty() {
+        return head.next == null;
+    }
+
+    /**
+     * Receives all the messages visible, in the order they were offered. If the
+     * consumer of the messages throws an exception, the messages not yet received
+     * are kept in the inbox
+     *
+     * @param consumer  The consumer of each message
+     * @return The number of messages received
+     */
+    int drain(final Consumer<? super T> consumer) {
+        int received = 0;
+        Node<T> next;
+        while ((next = head.next) != null) {
+            final T message = next.message;
+            // The received node becomes the new stub, releasing its message
+            next.message = null;
+            head = next;
+            received++;
+            consumer.accept(message);
+        }
+        return received;
+    }
+}
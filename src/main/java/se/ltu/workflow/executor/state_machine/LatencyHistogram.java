@@ -0,0 +1,152 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds, with fixed memory, that can be
+ * recorded from many threads without locking.
+ * <p>
+ * As in HDR histograms, the range of values is divided in buckets that grow
+ * with the magnitude of the values: each power of two is split in
+ * {@value #SUB_BUCKETS} linear sub-buckets, so every value is counted with a
+ * relative error under 12.5%, from nanoseconds to centuries, with
+ * {@value #BUCKETS} counters. Recording a value is one increment of its counter,
+ * plus the update of the sum and the maximum.
+ * <p>
+ * The values are read from a {@link Snapshot}, which copies the counters. A
+ * snapshot taken while values are recorded may not include all of them, but
+ * its count and percentiles are consistent with each other.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The values under {@link #SUB_BUCKETS} have a bucket each, then every power of
+     * two, up to 2<sup>62</sup>, has {@link #SUB_BUCKETS} buckets
+     */
+    static final int BUCKETS = (62 - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency
+     *
+     * @param nanos  The latency in nanoseconds, negative values are counted as 0
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0L, nanos);
+        counts.getAndIncrement(bucket(value));
+        sum.getAndAdd(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Finds the bucket of a value
+     */
+    static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Finds the lowest value counted in a bucket
+     */
+    static long lowestValue(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        return ((long) (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * Finds the width of the range of values counted in a bucket
+     */
+    static long bucketWidth(final int bucket) {
+        return bucket < SUB_BUCKETS ? 1L : 1L << ((bucket >>> SUB_BUCKET_BITS) - 1);
+    }
+
+    /**
+     * Copies the values recorded until now
+     *
+     * @return The snapshot of the histogram
+     */
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            copy[b] = counts.get(b);
+            count += copy[b];
+        }
+        return new Snapshot(copy, count, sum.get(), max.get());
+    }
+
+    /**
+     * The values of a {@link LatencyHistogram} at a point in time
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Provides the mean of the latencies
+         *
+         * @return The mean in nanoseconds, 0 if no latency was recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Provides the latency under which a percentage of the latencies are
+         *
+         * @param percentile  The percentage, from 0 to 100
+         * @return The latency in nanoseconds, as the middle of its bucket, or 0 if no
+         * latency was recorded
+         */
+        public long getValueAtPercentile(final double percentile) {
+            if (count == 0) {
+                return 0L;
+            }
+            final long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * count));
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank) {
+                    return Math.min(max, lowestValue(b) + bucketWidth(b) / 2);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -1,18 +1,17 @@
 package se.ltu.workflow.executor.state_machine;
 
 import java.util.Collection;
-import java.util.List;
-import java.util.ArrayList;
-
-/* TODO:Further functionality is achieved if the logic expressions can be 
- * recursively composed of logic expressions
- */
 
 /**
  * This class represents a valid logic expression to be tested in a State Machine
  * <p>
  * It wraps together a logic operator and a number of operands to form the logic
  * expression. <br>
+ * A logic expression is also {@link Evaluable}, so the operands can be other
+ * logic expressions evaluated against the same context, and form a tree. To mix
+ * {@link Event events} and {@link Guard guards} in the same tree, the operands
+ * are evaluated against the {@link Context} of the State Machine, as created by
+ * {@link Conditions}.<br>
  * An alternative to this class could be the use of the functional interface
  * {@link java.util.function.Predicate Predicate}, which offer methods for AND, OR and Logical
  * negation of a predicate that returns a boolean value.
@@ -20,11 +19,18 @@ import java.util.ArrayList;
  * @param <E>  Type of logic operand grouped by this logic expression
  * @param <C>  Type of context used to evaluate the operands
  */
-public class LogicExpression<E extends Evaluable<C>, C> {
+public class LogicExpression<E extends Evaluable<C>, C> implements Evaluable<C> {
 
 	private final LogicOperator operator;
 	private final Collection<E> operands;
 	
+	/**
+	 * The operands copied into an array when the expression is created, so they
+	 * can be evaluated without creating an {@code Iterator}
+	 */
+	private final Evaluable<C>[] operandArray;
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	public LogicExpression(LogicOperator operator, Collection<E> operands) 
 	        throws IllegalNumberOfOperandsException {
 	    
@@ -32,12 +38,15 @@ public class LogicExpression<E extends Evaluable<C>, C> {
 	    
 		this.operator = operator;
 		this.operands = operands;
+		this.operandArray = operands.toArray(new Evaluable[operands.size()]);
 	}
 	
 	/**
-	 * Evaluates the logic expression to true or false, in a 2 step process.<br>
-	 * First checks if each operand is true or false in this context, then
-	 * test those boolean values with respect to the operator chosen.
+	 * Evaluates the logic expression to true or false.
+	 * <p>
+	 * The operands are evaluated one by one by the operator chosen, which stops
+	 * as soon as the result is known: AND stops on the first false operand and
+	 * OR on the first true operand. No objects are created during the evaluation.
 	 * 
 	 * @param context  The external context to evaluate each operand
 	 * 
@@ -50,29 +59,52 @@ public class LogicExpression<E extends Evaluable<C>, C> {
 	public boolean evaluateLogicExpression(C context) throws IllegalLogicExpressionException {
 		
 		// No need to check for null, as is previously tested in update() method in StateMachine class
-		/*if (operands == null) {
-			return true;
-		}
-		*/
-		List<Boolean> operandsEvaluated = new ArrayList<>();
-		for(E e: operands){
-			operandsEvaluated.add(e.evaluate(context));
-		}
-		boolean result;
 		if (operator == null) {
-			if (operands.size() != 1) {
+			if (operandArray.length != 1) {
 				throw new IllegalLogicExpressionException(
 				        "LogicExpression needs a LogicOperator if more than one operand");
 			}
-			else {
-				result = operandsEvaluated.get(0);
-			}
+			return operandArray[0].evaluate(context);
 		}
-		else {
-				result = operator.evaluateOperator(
-				        operandsEvaluated.toArray(new Boolean[operandsEvaluated.size()]));
+		return operator.evaluateOperands(operandArray, context);
+	}
+	
+	/**
+	 * Evaluates the logic expression when it is the operand of another logic expression.
+	 * 
+	 * @param context  The external context to evaluate each operand
+	 * @return True if the whole expression is true
+	 * 
+	 * @throws IllegalStateException if the logic expression is missing the logic
+	 * operator and has more than one operand, which is checked when the
+	 * {@link StateMachine} is created
+	 */
+	@Override
+	public boolean evaluate(C context) {
+		try {
+			return evaluateLogicExpression(context);
+		} catch (IllegalLogicExpressionException e) {
+			throw new IllegalStateException(e.getMessage(), e);
 		}
-		return result;
+	}
+	
+	/**
+	 * Provides the operator of this logic expression
+	 * 
+	 * @return The operator, may be null if there is only one operand
+	 */
+	LogicOperator operator() {
+		return operator;
+	}
+	
+	/**
+	 * Provides the operands of this logic expression, used when the State Machine
+	 * is constructed to find the events and guards of its transitions.
+	 * 
+	 * @return The operands
+	 */
+	Collection<E> operands() {
+		return operands;
 	}
 	
 	/**
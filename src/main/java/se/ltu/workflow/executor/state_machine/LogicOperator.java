@@ -9,6 +9,11 @@ package se.ltu.workflow.executor.state_machine;
  * they are relations between operands, or modifiers of operands like NOT.
  * <p>
  * At the moment the class supports the operators NOT, AND, OR and XOR.
+ * <p>
+ * Each operator can combine operands already evaluated, with
+ * {@link #evaluateOperator(Boolean...)}, or evaluate the operands itself with
+ * {@link #evaluateOperands(Evaluable[], Object)}, which short-circuits and does
+ * not create any object.
  * 
  */
 public enum LogicOperator {
@@ -19,6 +24,11 @@ public enum LogicOperator {
 				return !operands[0];
 		}
 		
+		@Override
+		public <C> boolean evaluateOperands(final Evaluable<C>[] operands, final C context) {
+			return !operands[0].evaluate(context);
+		}
+		
 		@Override
         public void testValidOperator(int numberOperands) throws IllegalNumberOfOperandsException{
             if(numberOperands != 1)
@@ -39,6 +49,16 @@ public enum LogicOperator {
 			return true;
 		}
 		
+		@Override
+		public <C> boolean evaluateOperands(final Evaluable<C>[] operands, final C context) {
+			for (int i= 0; i < operands.length; i++) {
+				if (!operands[i].evaluate(context)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
 		@Override
         public void testValidOperator(int numberOperands) throws IllegalNumberOfOperandsException {
             if(numberOperands < 2)
@@ -59,6 +79,16 @@ public enum LogicOperator {
 			return false;
 		}
 		
+		@Override
+		public <C> boolean evaluateOperands(final Evaluable<C>[] operands, final C context) {
+			for (int i= 0; i < operands.length; i++) {
+				if (operands[i].evaluate(context)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
 		@Override
         public void testValidOperator(int numberOperands) throws IllegalNumberOfOperandsException {
 		    if(numberOperands < 2)
@@ -74,6 +104,11 @@ public enum LogicOperator {
 			return operands[0] != operands[1];
 		}
 		
+		@Override
+		public <C> boolean evaluateOperands(final Evaluable<C>[] operands, final C context) {
+			return operands[0].evaluate(context) != operands[1].evaluate(context);
+		}
+		
 		@Override
 		public void testValidOperator(int numberOperands) throws IllegalNumberOfOperandsException {
             if(numberOperands != 2)
@@ -91,6 +126,19 @@ public enum LogicOperator {
 	 */
 	public abstract boolean evaluateOperator(final Boolean... operands);
 	
+	/**
+	 * Evaluates the operands in the given context and combines them according to the
+	 * operator chosen.
+	 * <p>
+	 * The operands are evaluated in order, and only until the result is known.
+	 * 
+	 * @param <C>  Type of context used to evaluate the operands
+	 * @param operands  The array of operands that will be used by the operators
+	 * @param context  The external context to evaluate each operand
+	 * @return The result of applying the operator to the operands
+	 */
+	public abstract <C> boolean evaluateOperands(final Evaluable<C>[] operands, final C context);
+	
 	/**
 	 * Test if the {@code LogicOperator} can be used to evaluate that number of operands
 	 * 
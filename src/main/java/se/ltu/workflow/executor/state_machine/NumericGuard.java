@@ -0,0 +1,251 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.Map;
+
+/**
+ * A numeric Guard in the context of a State Machine.
+ * <p>
+ * A {@code NumericGuard} compares the value of a numeric variable of the
+ * environment of the {@link StateMachine} with a constant, or checks that the
+ * value is inside a range. The constant can be integral ({@code int} and
+ * {@code long}) or floating point ({@code double}). Integral variables are
+ * compared with integral constants without converting them to {@code double}.
+ * <p>
+ * When the variable is used by a guard of a State Machine, its value is stored
+ * unboxed in the environment, if it is set with the typed methods like
+ * {@link StateMachine#setIntVariable(String, int)}, and this guard reads it without
+ * boxing.
+ * <p>
+ * The guard name must be not null. A variable that is not present, or that is
+ * not a {@code Number}, never matches the guard.
+ *
+ * @see Guard
+ */
+public class NumericGuard implements Evaluable<Map<String, Object>> {
+
+	/**
+	 * The comparisons that a {@code NumericGuard} can perform, with the value of
+	 * the variable on the left side
+	 */
+	public enum Comparison {
+		LESS_THAN, LESS_OR_EQUAL, GREATER_THAN, GREATER_OR_EQUAL, EQUAL, NOT_EQUAL, BETWEEN
+	}
+
+	/**
+	 * The name of the variable compared by this {@code Guard}, not null
+	 */
+    private final String variable;
+
+    /**
+     * The comparison performed
+     */
+    private final Comparison comparison;
+
+    /**
+     * True if the constants are integral, false if they are floating point
+     */
+    private final boolean integral;
+
+    /**
+     * The constant compared, or the lower bound of the range, inclusive
+     */
+    private final long low;
+    private final double lowDouble;
+
+    /**
+     * The upper bound of the range, inclusive, only used by {@code BETWEEN}
+     */
+    private final long high;
+    private final double highDouble;
+
+    /**
+     * Constructs an instance of {@code NumericGuard} that compares a variable
+     * with an integral value.
+     *
+     * @param variable  the name of the variable
+     * @param comparison  the comparison performed, can not be {@code BETWEEN}
+     * @param value  the value compared
+     *
+     * @throws IllegalArgumentException if the {@code variable} is null, or the
+     * comparison is {@code BETWEEN}
+     */
+    public NumericGuard(final String variable, final Comparison comparison, final long value) {
+        this(variable, comparison, true, value, value, value, value);
+        checkComparison(comparison);
+    }
+
+    /**
+     * Constructs an instance of {@code NumericGuard} that compares a variable
+     * with a floating point value.
+     *
+     * @param variable  the name of the variable
+     * @param comparison  the comparison performed, can not be {@code BETWEEN}
+     * @param value  the value compared
+     *
+     * @throws IllegalArgumentException if the {@code variable} is null, or the
+     * comparison is {@code BETWEEN}
+     */
+    public NumericGuard(final String variable, final Comparison comparison, final double value) {
+        this(variable, comparison, false, (long) value, value, (long) value, value);
+        checkComparison(comparison);
+    }
+
+    private NumericGuard(final String variable, final Comparison comparison, final boolean integral,
+            final long low, final double lowDouble, final long high, final double highDouble) {
+
+        if (variable == null) {
+            throw new IllegalArgumentException("Guard has no name, so it can not be created");
+        }
+        if (comparison == null) {
+            throw new IllegalArgumentException("Guard has no comparison, so it can not be created");
+        }
+
+        this.variable = variable;
+        this.comparison = comparison;
+        this.integral = integral;
+        this.low = low;
+        this.lowDouble = lowDouble;
+        this.high = high;
+        this.highDouble = highDouble;
+    }
+
+    /**
+     * Creates a guard that checks that an integral variable is inside a range
+     *
+     * @param variable  the name of the variable
+     * @param min  the lower bound, inclusive
+     * @param max  the upper bound, inclusive
+     * @return The guard
+     *
+     * @throws IllegalArgumentException if the {@code variable} is null
+     */
+    public static NumericGuard between(final String variable, final long min, final long max) {
+        return new NumericGuard(variable, Comparison.BETWEEN, true, min, min, max, max);
+    }
+
+    /**
+     * Creates a guard that checks that a floating point variable is inside a range
+     *
+     * @param variable  the name of the variable
+     * @param min  the lower bound, inclusive
+     * @param max  the upper bound, inclusive
+     * @return The guard
+     *
+     * @throws IllegalArgumentException if the {@code variable} is null
+     */
+    public static NumericGuard between(final String variable, final double min, final double max) {
+        return new NumericGuard(variable, Comparison.BETWEEN, false, (long) min, min, (long) max, max);
+    }
+
+    public String getVariable() {
+		return variable;
+	}
+
+	public Comparison getComparison() {
+		return comparison;
+	}
+
+	/**
+     * Function that checks if the value of the variable in the environment
+     * satisfies the comparison of the guard.
+     *
+     * @param environment The environment keeps a map of variables that can be
+     * modified in the context of this State Machine.
+     *
+     * @return True if the variable is a number that satisfies the comparison,
+     * false otherwise
+     */
+    @Override
+    public boolean evaluate(final Map<String, Object> environment) {
+        return testValue(environment.get(variable));
+    }
+
+    /**
+     * Checks a value of any type against the comparison of the guard
+     *
+     * @param value  The value of the variable, may be null
+     * @return True if the value is a number that satisfies the comparison
+     */
+    boolean testValue(final Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return test(((Number) value).longValue());
+        }
+        if (value instanceof Number) {
+            return test(((Number) value).doubleValue());
+        }
+        return false;
+    }
+
+    /**
+     * Checks an integral value against the comparison of the guard
+     *
+     * @param value  The value of the variable
+     * @return True if the value satisfies the comparison
+     */
+    boolean test(final long value) {
+        if (!integral) {
+            return test((double) value);
+        }
+        switch (comparison) {
+            case LESS_THAN:
+                return value < low;
+            case LESS_OR_EQUAL:
+                return value <= low;
+            case GREATER_THAN:
+                return value > low;
+            case GREATER_OR_EQUAL:
+                return value >= low;
+            case EQUAL:
+                return value == low;
+            case NOT_EQUAL:
+                return value != low;
+            default:
+                return value >= low && value <= high;
+        }
+    }
+
+    /**
+     * Checks a floating point value against the comparison of the guard
+     *
+     * @param value  The value of the variable
+     * @return True if the value satisfies the comparison
+     */
+    boolean test(final double value) {
+        switch (comparison) {
+            case LESS_THAN:
+                return value < lowDouble;
+            case LESS_OR_EQUAL:
+                return value <= lowDouble;
+            case GREATER_THAN:
+                return value > lowDouble;
+            case GREATER_OR_EQUAL:
+                return value >= lowDouble;
+            case EQUAL:
+                return value == lowDouble;
+            case NOT_EQUAL:
+                return value != lowDouble;
+            default:
+                return value >= lowDouble && value <= highDouble;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (comparison == Comparison.BETWEEN) {
+            return "NumericGuard [" + variable + " " + comparison + " "
+                    + (integral ? low + " and " + high : lowDouble + " and " + highDouble) + "]";
+        }
+        return "NumericGuard [" + variable + " " + comparison + " " + (integral ? low : lowDouble) + "]";
+    }
+
+    /**
+     * Checks that a comparison against one value is not a range
+     *
+     * @throws IllegalArgumentException if the comparison is {@code BETWEEN}
+     */
+    private static void checkComparison(final Comparison comparison) {
+        if (comparison == Comparison.BETWEEN) {
+            throw new IllegalArgumentException("Guard with a range needs two values, use between()");
+        }
+    }
+}
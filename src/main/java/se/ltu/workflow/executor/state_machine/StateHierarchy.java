@@ -0,0 +1,210 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * The compiled form of the {@link CompositeState composite states} of a
+ * {@link StateMachine}.
+ * <p>
+ * For each state, it stores the composite states that contain it, from the
+ * outermost to the innermost, which is enough to flatten their transitions into
+ * the states and to find the entry and exit actions of a transition: the ones
+ * of the composite states that contain the source state but not the target
+ * state are exited, innermost first, and the ones that contain the target state
+ * but not the source state are entered, outermost first.
+ * <p>
+ * A transition between two substates of a composite state does not exit nor
+ * enter it, including the transitions of the composite state itself.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is immutable, the arrays are never exposed outside of this package
+ * and can therefore be shared by all the copies of a State Machine.
+ */
+final class StateHierarchy {
+
+    /**
+     * For each state, the indexes of the composite states containing it, from the outermost
+     */
+    private final int[][] paths;
+
+    private final Action[] entryActions;
+    private final Action[] exitActions;
+
+    private StateHierarchy(int[][] paths, Action[] entryActions, Action[] exitActions) {
+        this.paths = paths;
+        this.entryActions = entryActions;
+        this.exitActions = exitActions;
+    }
+
+    /**
+     * Compiles the composite states of a State Machine, checking that they are
+     * well-formed
+     *
+     * @param composites  The composite states
+     * @param numberOfStates  The number of states of the State Machine
+     * @param numberOfTransitions  The number of transitions of the State Machine
+     * @return The hierarchy of the states
+     *
+     * @throws IllegalArgumentException if a composite state has no substates, points
+     * to states or transitions that do not exist, has the same name as another
+     * one, or shares only some of its substates with another composite state
+     */
+    static StateHierarchy of(final List<CompositeState> composites, final int numberOfStates,
+            final int numberOfTransitions) {
+        final List<Set<Integer>> substates = new ArrayList<>(composites.size());
+        final Set<String> names = new HashSet<>();
+        for (final CompositeState c : composites) {
+            if (!names.add(c.name())) {
+                throw new IllegalArgumentException("State Machine contains different composite states with the "
+                        + "same name");
+            }
+            if (c.statesIndexes().isEmpty()) {
+                throw new IllegalArgumentException("Composite state " + c.name() + " has no substates");
+            }
+            for (final int s : c.statesIndexes()) {
+                if (s >= numberOfStates || s < 0) {
+                    throw new IllegalArgumentException("Composite state points to nonexistent state");
+                }
+            }
+            for (final int t : c.transitionsIndexes()) {
+                if (t >= numberOfTransitions || t < 0) {
+                    throw new IllegalArgumentException("Composite state points to nonexistent transition");
+                }
+            }
+            substates.add(new HashSet<>(c.statesIndexes()));
+        }
+        for (int a = 0; a < substates.size(); a++) {
+            for (int b = a + 1; b < substates.size(); b++) {
+                final Set<Integer> shared = new HashSet<>(substates.get(a));
+                shared.retainAll(substates.get(b));
+                if (!shared.isEmpty() && shared.size() != substates.get(a).size()
+                        && shared.size() != substates.get(b).size()) {
+                    throw new IllegalArgumentException("Composite states " + composites.get(a).name() + " and "
+                            + composites.get(b).name() + " share only some of their substates");
+                }
+            }
+        }
+
+        // A composite state contains the ones with less substates, or the later ones with as many
+        final Comparator<Integer> outermostFirst = Comparator
+                .<Integer>comparingInt(c -> -substates.get(c).size())
+                .thenComparingInt(c -> c);
+        final int[][] paths = new int[numberOfStates][];
+        for (int s = 0; s < numberOfStates; s++) {
+            final int state = s;
+            paths[s] = IntStream.range(0, composites.size()).boxed()
+                    .filter(c -> substates.get(c).contains(state))
+                    .sorted(outermostFirst)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        final Action[] entryActions = composites.stream().map(CompositeState::entryAction).toArray(Action[]::new);
+        final Action[] exitActions = composites.stream().map(CompositeState::exitAction).toArray(Action[]::new);
+        return new StateHierarchy(paths, entryActions, exitActions);
+    }
+
+    /**
+     * Attaches to each state the transitions of the composite states containing it,
+     * after its own transitions and from the innermost composite state. A transition
+     * already attached is not repeated, and the states without transitions are left
+     * as END states.
+     *
+     * @param states  The states of the State Machine
+     * @param composites  The composite states, compiled in this hierarchy
+     * @return The states with all the transitions that apply to them
+     */
+    List<State> flatten(final List<State> states, final List<CompositeState> composites) {
+        final List<State> flattened = new ArrayList<>(states.size());
+        for (int s = 0; s < states.size(); s++) {
+            final State state = states.get(s);
+            if (paths[s].length == 0 || state.transitionsIndexes() == null
+                    || state.transitionsIndexes().isEmpty()) {
+                flattened.add(state);
+                continue;
+            }
+            final Set<Integer> transitions = new LinkedHashSet<>(state.transitionsIndexes());
+            for (int i = paths[s].length - 1; i >= 0; i--) {
+                transitions.addAll(composites.get(paths[s][i]).transitionsIndexes());
+            }
+            flattened.add(new State(state.name(), new ArrayList<>(transitions)));
+        }
+        return flattened;
+    }
+
+    /**
+     * Checks if a transition between two states exits or enters any composite
+     * state with an action
+     *
+     * @param from  The source state
+     * @param to  The target state
+     * @return True if there is any entry or exit action to execute
+     */
+    boolean hasActions(final int from, final int to) {
+        final int[] source = paths[from];
+        final int[] target = paths[to];
+        final int common = commonPrefix(source, target);
+        for (int i = common; i < source.length; i++) {
+            if (exitActions[source[i]] != null) {
+                return true;
+            }
+        }
+        for (int i = common; i < target.length; i++) {
+            if (entryActions[target[i]] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes the exit actions of the composite states left by a transition,
+     * from the innermost
+     *
+     * @param from  The source state
+     * @param to  The target state
+     * @param environment  The environment of the State Machine
+     * @param events  The events of the State Machine
+     */
+    void exit(final int from, final int to, final Map<String, Object> environment, final Set<Event> events) {
+        final int[] source = paths[from];
+        final int common = commonPrefix(source, paths[to]);
+        for (int i = source.length - 1; i >= common; i--) {
+            final Action action = exitActions[source[i]];
+            if (action != null) {
+                action.trigger(environment, events);
+            }
+        }
+    }
+
+    /**
+     * Executes the entry actions of the composite states entered by a transition,
+     * from the outermost
+     *
+     * @param from  The source state
+     * @param to  The target state
+     * @param environment  The environment of the State Machine
+     * @param events  The events of the State Machine
+     */
+    void enter(final int from, final int to, final Map<String, Object> environment, final Set<Event> events) {
+        final int[] target = paths[to];
+        for (int i = commonPrefix(paths[from], target); i < target.length; i++) {
+            final Action action = entryActions[target[i]];
+            if (action != null) {
+                action.trigger(environment, events);
+            }
+        }
+    }
+
+    private static int commonPrefix(final int[] a, final int[] b) {
+        final int mismatch = Arrays.mismatch(a, b);
+        return mismatch < 0 ? a.length : mismatch;
+    }
+}
@@ -1,6 +1,12 @@
 package se.ltu.workflow.executor.state_machine;
 
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 /**
  * A Finite State Machine, following Mealy paradigm.
@@ -15,43 +21,169 @@ import java.util.*;
  * context).<br>
  * This is in line with a Mealy State Machine behavior, which offers as benefit
  * over Moore State Machines that require less States to model a similar system.
+ * <p>
+ * A State Machine can have several orthogonal regions, each one with its own
+ * active state, that share the context of the State Machine. The regions are
+ * ordered by priority, being the first one the primary region.
+ * <p>
+ * The states and transitions are held in a {@link StateMachineDefinition}, that
+ * can be shared by many State Machines, each one with its own context. The
+ * definition can also group states in {@link CompositeState composite states},
+ * whose transitions apply to all their substates, and whose entry and exit
+ * actions are executed around the action of the transitions that enter or
+ * leave them.
+ *  
+ * Transitions with a timeout are armed in the {@link TimingWheel} of the State
+ * Machine when their state becomes active, and the events they post are added
+ * to the context at the beginning of the next run.
+ * <p>
+ * A transition with an {@link AsyncAction} suspends the State Machine until its
+ * action completes. Meanwhile no transition is checked, and the outputs of the
+ * action are added to the context at the beginning of the first run after it
+ * completes.
+ * <p>
+ * When no transition of a state is triggered, its conditions are not evaluated
+ * again until one of the events or variables they read changes, so a Workflow
+ * waiting in a state costs almost nothing to check. A variable read by a guard
+ * must therefore be replaced to change its value, not modified in place.
  *  
  * <h4>Implementation notes</h4>
- * This class is immutable
+ * This class is not thread-safe, except for the methods that post events, and
+ * signal and await the changes in its context
  */
-public class StateMachine {
+public class StateMachine implements Context {
 	
 	/**
-	 * The {@code Set} of {@link Event events} that are active in this State Machine.
+	 * The {@code Set} of {@link Event events} that are active in this State Machine,
+	 * stored as a bit mask of the events interned when the State Machine was created.
 	 */
-    private final Set<Event> events;
+    private final EventSet events;
     
     /**
      * The environment of the State Machine, represented by a {@code Map} of
-     * variables with a name and a value of any type.
+     * variables with a name and a value of any type, stored in slots for the
+     * variables interned when the State Machine was created.
+     */
+    private final Environment environment;
+    
+    /**
+     * The immutable definition of the states and transitions, shared by all the
+     * State Machines created from it.
+     */
+    private final StateMachineDefinition definition;
+    
+    /**
+     * The compiled, array-backed form of the states and transitions of the
+     * definition, used by {@link #update()}.
+     */
+    private final TransitionTable table;
+    
+    /**
+     * The composite states of the definition, with their entry and exit actions,
+     * or null if it has none
+     */
+    private final StateHierarchy hierarchy;
+    
+    /**
+     * The reference of the current/active state of each region in this State
+     * Machine, ordered by priority
+     */
+    private final int[] currentStates;
+    
+    /**
+     * For each region, the transition selected in the last {@link #update()},
+     * reused between calls
+     */
+    private final int[] selectedTransitions;
+    
+    /**
+     * The pool used to select the transitions of the regions in parallel, or
+     * null to select them in the calling thread
+     */
+    private ForkJoinPool regionPool;
+    
+    /**
+     * Values returned by {@link #stepRegions(StepListener)} when no region
+     * executes a transition
+     */
+    private static final int NOT_TRIGGERED = -1;
+    private static final int ENDED = -2;
+    
+    /**
+     * The values of {@link UpdateAction}, indexed by ordinal
+     */
+    private static final UpdateAction[] UPDATE_ACTIONS = UpdateAction.values();
+    
+    /**
+     * Monitor used to signal the changes in the context of this State Machine to
+     * the threads waiting for them
+     */
+    private final Object changeMonitor = new Object();
+    
+    /**
+     * How the events are consumed when a transition is triggered, the one of the
+     * definition unless it is set for this State Machine
+     */
+    private EventConsumption eventConsumption;
+    
+    /**
+     * Number of changes signaled, guarded by {@link #changeMonitor}
+     */
+    private long changes;
+    
+    /**
+     * The messages sent from any thread: events and variables posted, timeouts
+     * expired and asynchronous actions completed. They are received in a batch at
+     * the beginning of the next run
+     */
+    private final Inbox<Message> inbox = new Inbox<>();
+    
+    /**
+     * The wheel where the timeouts of the transitions are scheduled, or null to
+     * use the {@link TimingWheel#shared() shared} one
+     */
+    private TimingWheel timingWheel;
+    
+    /**
+     * For each region, the number of times it has entered a state, so the
+     * timeouts armed in a previous visit to the state are discarded
+     */
+    private final long[] stateEntries;
+    
+    /**
+     * For each region, the timeouts armed for its current state, null if none
      */
-    private final Map<String, Object> environment;
+    private final TimingWheel.Timeout[][] armedTimeouts;
     
     /**
-     * The {@code List} of {@link State states} that conform this State Machine.
+     * True once the timeouts of the current states have been armed, which is
+     * done in the first run, so State Machines used as templates never arm them
      */
-    private final List<State> states;
+    private boolean timeoutsArmed;
     
     /**
-     * The {@code List} of {@link Transition transitions} that conform this 
-     * State Machine.
+     * Number of asynchronous actions started and not yet received, the State
+     * Machine is suspended while it is not zero
      */
-    private final List<Transition> transitions;
+    private int pendingActions;
     
-    /* TODO: Enable parallel executions with more than one active state at the 
-     * same time, i.e. List<CurrentStates>. But this implies that states have an
-     * order, or priority, then the issue is how to order them.
-     * If transitions also have priorities, they could impose state order?
+    /**
+     * The latencies measured for the definition, or null if they are not measured,
+     * so the State Machine only checks this field when the metrics are disabled
      */
+    private final TransitionMetrics metrics;
+    
     /**
-     * The reference of the current/active state in this State Machine
+     * For each region, the time when its current state was entered, in
+     * nanoseconds, or 0 if it is not known yet. Null if the metrics are disabled
      */
-    private int currentState;
+    private final long[] stateEnteredAt;
+    
+    /**
+     * For each region, the state found without triggered transitions, so it is
+     * not evaluated again until the variables or events it reads change
+     */
+    private final GuardCache guardCache;
 
     /**
      * Constructs an instance of a State Machine with the given {@code List}
@@ -77,56 +209,173 @@ public class StateMachine {
      * 
      * @throws IllegalArgumentException  if there are errors present when creating the
      * State Machine, like two states with the same name, or states with transitions that
-     * do not exist or transitions pointing to states that do not exist
+     * do not exist or transitions pointing to states that do not exist, or logic
+     * expressions with more than one operand and no operator
      * 
-     * @see #checkStateMachine(List, List)
+     * @see StateMachineDefinition
      */
     public StateMachine(final List<State> states, final List<Transition> transitions, final int currentState)
         throws IllegalArgumentException {
-        
-        /* Check consistency of State Machine before creating the object:
-         *  - States should not point to Transitions that do not exist
-         *  - States should have unique names
-         *  - Transitions should not target states that do not exist
-         */
-        checkStateMachine(states, transitions);
-    	
-    	this.events = new HashSet<>();
-        this.environment = new HashMap<>();
-        this.states = states;
-        this.transitions = transitions;
-        this.currentState = currentState;
-        
+        this(new StateMachineDefinition(states, transitions, List.of(currentState)));
+    }
+    
+    /**
+     * Constructs an instance of a State Machine with the given {@code List}
+     * of states and transitions, and several orthogonal regions.
+     * <p>
+     * Each region is given by its initial state and, from there, it moves
+     * through the states targeted by its transitions. The regions are active at
+     * the same time and are stepped by each {@link #update()} call, in the
+     * order of the list, which sets their priority.
+     * 
+     * @param states  The list of states of this State Machine
+     * @param transitions  The list of transitions part of this State Machine
+     * @param regionStates  The initial state of each region, ordered by priority
+     * 
+     * @throws IllegalArgumentException  if there are errors present when creating the
+     * State Machine, as in {@link #StateMachine(List, List, int)}, or if there are no
+     * regions or a region starts in a state that does not exist
+     */
+    public StateMachine(final List<State> states, final List<Transition> transitions,
+            final List<Integer> regionStates) throws IllegalArgumentException {
+        this(new StateMachineDefinition(states, transitions, regionStates));
     }
     
+    /**
+     * Constructs an instance of a State Machine from its definition, with an
+     * empty context of events and environment, starting in the initial states
+     * of the definition and consuming the events as the definition sets.
+     * <p>
+     * Only the context is allocated, the definition is shared. The settings of
+     * the execution, like the {@link #setRegionPool(ForkJoinPool) region pool}
+     * and the {@link #setTimingWheel(TimingWheel) timing wheel}, are not part
+     * of the definition and start with their defaults.
+     * 
+     * @param definition  The definition of the State Machine
+     */
+    public StateMachine(final StateMachineDefinition definition) {
+        this.definition = definition;
+        this.table = definition.table();
+        this.hierarchy = definition.hierarchy();
+        this.events = new EventSet(table.registry);
+        this.environment = new Environment(table.variables);
+        this.eventConsumption = definition.getEventConsumption();
+        events.setQueueing(eventConsumption == EventConsumption.QUEUE);
+        this.currentStates = new int[definition.getNumberOfRegions()];
+        for (int r = 0; r < currentStates.length; r++) {
+            currentStates[r] = definition.initialState(r);
+        }
+        this.selectedTransitions = new int[currentStates.length];
+        this.stateEntries = new long[currentStates.length];
+        this.armedTimeouts = new TimingWheel.Timeout[currentStates.length][];
+        this.metrics = definition.getMetrics();
+        this.stateEnteredAt = metrics == null ? null : new long[currentStates.length];
+        this.guardCache = new GuardCache(table, currentStates.length);
+    }
+    
+    /**
+     * Constructs a copy of a State Machine, with its own context of events and
+     * environment, but sharing the definition of states and transitions,
+     * which is immutable.
+     * 
+     * @param sm  The State Machine to copy
+     */
     public StateMachine(StateMachine sm) {
-        this.events = new HashSet<>(sm.getEvents());
-        this.environment = new HashMap<>(sm.getEnvironment());
-        this.states = List.copyOf(sm.states);
-        this.transitions = List.copyOf(sm.transitions);
-        this.currentState = sm.getCurrentState();
+        this.events = new EventSet(sm.events);
+        this.environment = new Environment(sm.environment);
+        this.definition = sm.definition;
+        this.table = sm.table;
+        this.hierarchy = sm.hierarchy;
+        this.currentStates = sm.currentStates.clone();
+        this.selectedTransitions = new int[currentStates.length];
+        this.regionPool = sm.regionPool;
+        this.timingWheel = sm.timingWheel;
+        this.eventConsumption = sm.eventConsumption;
+        this.stateEntries = new long[currentStates.length];
+        this.armedTimeouts = new TimingWheel.Timeout[currentStates.length][];
+        this.metrics = definition.getMetrics();
+        this.stateEnteredAt = metrics == null ? null : new long[currentStates.length];
+        this.guardCache = new GuardCache(table, currentStates.length);
     }
 
 	/**
-     * Obtains the number of the current/active state of the State Machine
+     * Obtains the number of the current/active state of the State Machine, in
+     * its primary region
      * 
      * @return The number of the current state as ordered in the State List
      */
     public int getCurrentState() {
-        return currentState;
+        return currentStates[0];
     }
     
     /**
-     * Obtains the current/active state of the State Machine
+     * Obtains the current/active state of the State Machine, in its primary region
      * 
      * @return The State which will be checked for transitions in the {@link #update()} method
      */
     public State getActiveState() {
-        return states.get(currentState);
+        return table.states[currentStates[0]];
     }
     
     /**
-     * Sets the number corresponding to the current/active state of the State Machine
+     * Obtains the number of the current/active state of each region of the
+     * State Machine
+     * 
+     * @return A copy of the numbers of the current states, ordered by region priority
+     */
+    public int[] getCurrentStates() {
+        return currentStates.clone();
+    }
+    
+    /**
+     * Obtains the current/active state of each region of the State Machine
+     * 
+     * @return The list of current states, ordered by region priority
+     */
+    public List<State> getActiveStates() {
+        final List<State> active = new ArrayList<>(currentStates.length);
+        for (final int s : currentStates) {
+            active.add(table.states[s]);
+        }
+        return active;
+    }
+    
+    /**
+     * Obtains the number of orthogonal regions of the State Machine
+     * 
+     * @return The number of regions, 1 if the State Machine has no regions
+     */
+    public int getNumberOfRegions() {
+        return currentStates.length;
+    }
+    
+    /**
+     * Sets the pool used to select the transitions of the regions in parallel.
+     * <p>
+     * Only the evaluation of the conditions, which does not modify the context,
+     * runs in the pool. The actions of the transitions are always executed in
+     * the thread calling {@link #update()}, in the priority order of the
+     * regions, as they share the events and the environment.
+     * 
+     * @param regionPool  The pool, or null to select the transitions in the
+     * calling thread
+     */
+    public void setRegionPool(final ForkJoinPool regionPool) {
+        this.regionPool = regionPool;
+    }
+    
+    /**
+     * Provides the pool used to select the transitions of the regions in parallel
+     * 
+     * @return The pool, or null if they are selected in the calling thread
+     */
+    public ForkJoinPool getRegionPool() {
+        return regionPool;
+    }
+    
+    /**
+     * Sets the number corresponding to the current/active state of the State Machine,
+     * in its primary region
      * 
      * @param currentState The number of the state, as ordered in the State List, that should
      * be used to start the State Machine from.
@@ -141,13 +390,52 @@ public class StateMachine {
 //            throw new IllegalStateException("StateMachine does not contain any state");
 //        }
         
-        if(currentState > states.size()-1) {
+        if(currentState > table.numberOfStates()-1) {
             throw new IllegalArgumentException("State number out of range, "
-                    + "StateMachine only has index until " + (states.size()-1));
+                    + "StateMachine only has index until " + (table.numberOfStates()-1));
         }
         else {
-            this.currentState = currentState;
+            this.currentStates[0] = currentState;
+            if (timeoutsArmed) {
+                enterState(0);
+            }
+            if (stateEnteredAt != null) {
+                stateEnteredAt[0] = 0L;
+            }
+            guardCache.clear();
+        }
+    }
+
+    /**
+     * Sets the number of the current/active state of every region, like when
+     * the State Machine is restored from a checkpoint
+     * 
+     * @param states  The numbers of the states, ordered by region priority
+     * 
+     * @throws IllegalArgumentException if the number of states is not the number of
+     * regions, or a state number is out of range
+     */
+    public void setCurrentStates(final int[] states) {
+        if (states.length != currentStates.length) {
+            throw new IllegalArgumentException("The State Machine has " + currentStates.length
+                    + " regions, but " + states.length + " states were provided");
+        }
+        for (final int s : states) {
+            if (s < 0 || s > table.numberOfStates()-1) {
+                throw new IllegalArgumentException("State number out of range, "
+                        + "StateMachine only has index until " + (table.numberOfStates()-1));
+            }
         }
+        for (int r = 0; r < states.length; r++) {
+            currentStates[r] = states[r];
+            if (timeoutsArmed) {
+                enterState(r);
+            }
+            if (stateEnteredAt != null) {
+                stateEnteredAt[r] = 0L;
+            }
+        }
+        guardCache.clear();
     }
 
     /**
@@ -155,6 +443,7 @@ public class StateMachine {
      * 
      * @return The Set of Events active in the State Machine
      */
+    @Override
     public Set<Event> getEvents(){
     	return events;
     }
@@ -164,6 +453,7 @@ public class StateMachine {
      * 
      * @return The Map of variables used as Environment in the State Machine
      */
+    @Override
     public Map<String, Object> getEnvironment(){
     	return environment;
     }
@@ -174,7 +464,38 @@ public class StateMachine {
      * @return The list of Transitions of the State Machine
      */
     public List<Transition> getTransitions() {
-        return transitions;
+        return definition.getTransitions();
+    }
+    
+    /**
+     * Provides the names of the variables of the environment written or removed
+     * since the previous transition, by the action of the transition executed or
+     * set and posted before it. It is meant to be called by a {@link StepListener},
+     * when the transition is reported
+     * 
+     * @param action  The action called with the name of each variable changed
+     */
+    public void forEachChangedVariable(final Consumer<String> action) {
+        environment.forEachChange(action);
+    }
+    
+    /**
+     * Provides the definition of this State Machine, to create other State
+     * Machines sharing it
+     * 
+     * @return The immutable definition of states and transitions
+     */
+    public StateMachineDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Provides the compiled table of states and transitions of this State Machine
+     *
+     * @return The table, shared by all the State Machines with the same definition
+     */
+    TransitionTable table() {
+        return table;
     }
 
     /**
@@ -183,7 +504,88 @@ public class StateMachine {
      * @param name The event name to be added to the set of Events
      */
     public void setEvent(final String name) {
-        events.add(new Event(name));
+        events.addName(name);
+        signalChange();
+    }
+    
+    /**
+     * Posts an event to the State Machine from any thread.<br>
+     * Unlike {@link #setEvent(String)}, the event is not added to the set of
+     * events immediately, but at the beginning of the next run of the State
+     * Machine, in the thread executing it. This method is thread-safe and
+     * does not block.
+     * 
+     * @param name The event name to be added to the set of Events
+     */
+    public void postEvent(final String name) {
+        inbox.offer(new PostedEvent(name, -1, 0));
+        signalChange();
+    }
+    
+    /**
+     * Posts a variable to the State Machine environment from any thread.<br>
+     * As {@link #postEvent(String)}, the variable is set at the beginning of the
+     * next run of the State Machine, in the thread executing it. This method is
+     * thread-safe and does not block.
+     * 
+     * @param variable The variable name to be saved in the environment
+     * @param value The value of the variable, any type of object accepted
+     */
+    public void postVariable(final String variable, final Object value) {
+        inbox.offer(new PostedVariable(variable, value));
+        signalChange();
+    }
+    
+    /**
+     * Sets how the events are consumed when a transition is triggered, for this
+     * State Machine only, instead of the way set by its definition. It should be
+     * set before any event is added
+     * 
+     * @param eventConsumption  CLEAR_ALL or QUEUE
+     */
+    public void setEventConsumption(final EventConsumption eventConsumption) {
+        this.eventConsumption = Objects.requireNonNull(eventConsumption, "Expected an event consumption");
+        events.setQueueing(eventConsumption == EventConsumption.QUEUE);
+    }
+    
+    /**
+     * Provides how the events are consumed when a transition is triggered
+     * 
+     * @return The event consumption of this State Machine
+     */
+    public EventConsumption getEventConsumption() {
+        return eventConsumption;
+    }
+    
+    /**
+     * Sets the wheel where the timeouts of the transitions are scheduled. It
+     * must be set before the first run of the State Machine
+     * 
+     * @param timingWheel The wheel, or null to use the {@link TimingWheel#shared()
+     * shared} one
+     */
+    public void setTimingWheel(final TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+    
+    /**
+     * Provides the wheel where the timeouts of the transitions are scheduled
+     * 
+     * @return The wheel, or null if the {@link TimingWheel#shared() shared} one is used
+     */
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+    
+    /**
+     * Cancels the timeouts armed for the current states, for a State Machine that
+     * is not going to be run anymore. They are armed again if it is run later
+     */
+    public void cancelTimeouts() {
+        for (int r = 0; r < armedTimeouts.length; r++) {
+            cancelTimeouts(r);
+        }
+        timeoutsArmed = false;
     }
     
 
@@ -197,6 +599,122 @@ public class StateMachine {
      */
     public void setVariable(final String variable, final Object value) {
         environment.put(variable, value);
+        signalChange();
+    }
+
+    /**
+     * Adds a new {@code int} variable to the State Machine environment. If the variable
+     * is used by a guard, its value is stored without boxing it
+     * 
+     * @param variable The variable name to be saved in the environment
+     * @param value The value of the variable
+     */
+    public void setIntVariable(final String variable, final int value) {
+        final int slot = table.variables.slotOf(variable);
+        if (slot >= 0) {
+            environment.putNumber(slot, Environment.KIND_INT, value);
+        }
+        else {
+            environment.put(variable, value);
+        }
+        signalChange();
+    }
+
+    /**
+     * Adds a new {@code long} variable to the State Machine environment. If the variable
+     * is used by a guard, its value is stored without boxing it
+     * 
+     * @param variable The variable name to be saved in the environment
+     * @param value The value of the variable
+     */
+    public void setLongVariable(final String variable, final long value) {
+        final int slot = table.variables.slotOf(variable);
+        if (slot >= 0) {
+            environment.putNumber(slot, Environment.KIND_LONG, value);
+        }
+        else {
+            environment.put(variable, value);
+        }
+        signalChange();
+    }
+
+    /**
+     * Adds a new {@code double} variable to the State Machine environment. If the variable
+     * is used by a guard, its value is stored without boxing it
+     * 
+     * @param variable The variable name to be saved in the environment
+     * @param value The value of the variable
+     */
+    public void setDoubleVariable(final String variable, final double value) {
+        final int slot = table.variables.slotOf(variable);
+        if (slot >= 0) {
+            environment.putNumber(slot, Environment.KIND_DOUBLE, Double.doubleToRawLongBits(value));
+        }
+        else {
+            environment.put(variable, value);
+        }
+        signalChange();
+    }
+    
+    /**
+     * Signals that the context of this State Machine has changed, waking up the
+     * threads waiting in {@link #awaitChange(long, long, TimeUnit)}.
+     * <p>
+     * It is called by {@link #setEvent(String)}, {@link #setVariable(String, Object)}
+     * and after a transition and its action are completed. Code that modifies the
+     * {@code Set} of events or the environment directly from another thread should
+     * call it afterwards.
+     */
+    public void signalChange() {
+        synchronized (changeMonitor) {
+            changes++;
+            changeMonitor.notifyAll();
+        }
+    }
+    
+    /**
+     * Provides the number of changes signaled in this State Machine, to be used
+     * as argument of {@link #awaitChange(long, long, TimeUnit)}.
+     * <p>
+     * It should be read before calling {@link #update()}, so a change signaled
+     * while the update is running is not missed.
+     * 
+     * @return The number of changes signaled
+     */
+    public long getChangeCount() {
+        synchronized (changeMonitor) {
+            return changes;
+        }
+    }
+    
+    /**
+     * Blocks the calling thread until a change is signaled in this State Machine,
+     * or the timeout expires.
+     * <p>
+     * The timeout allows to check again the transitions whose guards depend on
+     * time, as the passing of time is not signaled.
+     * 
+     * @param seenChanges  The number of changes already seen by the caller, as
+     * returned by {@link #getChangeCount()}
+     * @param timeout  The maximum time to wait
+     * @param unit  The unit of the timeout
+     * @return True if there were changes, false if the timeout expired
+     * 
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitChange(final long seenChanges, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (changeMonitor) {
+            while (changes == seenChanges) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(changeMonitor, remaining);
+            }
+            return true;
+        }
     }
     
     /**
@@ -211,75 +729,63 @@ public class StateMachine {
      * call, and also a reference to the state after the method finished updating the State Machine.
      */
     public UpdateResult update() {
-    	final State state = getActiveState();
+        return definition.result(step());
+    }
+    
+    /**
+     * Executes a run of the State Machine, as {@link #update()}, but returns its
+     * outcome packed in a primitive, so no object is used for it.
+     * <p>
+     * The outcome can be read with {@link #stepAction(long)}, {@link #stepState(long)}
+     * and {@link #stepTransition(long)}.
+     * 
+     * @return The action performed, the resulting state and the transition executed,
+     * packed in a {@code long}
+     */
+    public long step() {
+        receiveMessages();
+        if (pendingActions > 0) {
+            return pack(UpdateAction.SUSPENDED, currentStates[0], -1);
+        }
+        if (currentStates.length > 1) {
+            final int first = stepRegions(null);
+            if (first == ENDED) {
+                return pack(UpdateAction.END, currentStates[0], -1);
+            }
+            if (first == NOT_TRIGGERED) {
+                return pack(UpdateAction.NO_TRANSITION, currentStates[0], -1);
+            }
+            return pack(UpdateAction.TRANSITION, currentStates[first], selectedTransitions[first]);
+        }
+        final int currentState = currentStates[0];
     	
-    	/* Check if this state is an END state, that would stop the State Machine.
-         * Before adding and END state flag to the state object, we can just check if the state has
-         * an empty list of transitions.
-         */
-    	if (state.transitionsIndexes() == null || state.transitionsIndexes().isEmpty()) {
-    		return new UpdateResult(getActiveState(), null, UpdateAction.END);
+    	// Check if this state is an END state, that would stop the State Machine.
+    	if (table.isEndState(currentState)) {
+    		return pack(UpdateAction.END, currentState, -1);
     	}
     	
-    	// Go through the transitions of the current state and check if they are triggered.
-        for (final int t: state.transitionsIndexes()) {
-            final Transition transition = transitions.get(t);
-            
-            /* If the State Machine is event based, the first and necessary check should be events
-             * At the moment, we keep that both are needed, but in the future guards could be optional
-             */
-            
-            // Do we accept transitions without Events?
-            /* Now, the behavior is to accept transitions that have no Events, and
-             * continue evaluating the  transition, its guards, as if the Events
-             * were true 
-             */
-            if(transition.event() != null) {
-                try {
-					if (!transition.event().evaluateLogicExpression(events)) {
-					    continue;
-					}
-				} catch (IllegalLogicExpressionException e) {
-					// TODO Should I catch the exception or propagate it...
-					// Now if the expression is illegal it will be evaluated as false
-					e.printStackTrace();
-					continue;
-				}
-            }
-            
-            // Do we accept transitions without Guards?
-            /* Now, the behavior is to accept transitions that have no Guards, and
-             * activate the transition, triggering its action, as if the Guards
-             * were true
-             */
-            if(transition.guard() != null) {
-            	try {
-					if (!transition.guard().evaluateLogicExpression(environment)) {
-					    continue;
-					}
-				} catch (IllegalLogicExpressionException e) {
-					// TODO Should I catch the exception or propagate it...
-					// Now if the expression is illegal it will be evaluated as false
-					e.printStackTrace();
-					continue;
-				}
-            }
-            
+    	/* Find the first transition of the current state that is triggered. The events,
+    	 * guards and condition of each transition were combined into one condition when
+    	 * the State Machine was created, with the events checked first. Transitions
+    	 * without any of them are always triggered.
+    	 */
+        final int selected = select(0, currentState);
+        if (selected >= 0) {
             /* CLear Events after transition satisfies its conditions (Events & Guards)
-             * and before the action is executed
+             * and before the action is executed, or only the ones it consumes
              */
-            events.clear();
+            consumeEvents(selected);
             
-            if(transition.action() != null) {
-            	transition.action().trigger(environment, events);
-            }
-            
-            currentState = transition.targetState();
+            fire(0, selected, null);
+            // The action, and the new state, may enable other transitions
+            signalChange();
             /* TODO: Check if any other transitions are also satisfied. 
              * If so, remove break, remove event clear before actions and
              * throw exception for nondeterministic behavior?
+             * The transitions that may be satisfied at the same time are reported
+             * by the StateMachineAnalysis of the definition.
              */
-            return new UpdateResult(getActiveState(), transition, UpdateAction.TRANSITION); 
+            return pack(UpdateAction.TRANSITION, currentStates[0], selected); 
         }
         
         /* The events are removed after they have been checked against all the transitions.
@@ -291,10 +797,459 @@ public class StateMachine {
          */
         //events.clear();
         
-        return new UpdateResult(getActiveState(), null, UpdateAction.NO_TRANSITION);
+        return pack(UpdateAction.NO_TRANSITION, currentState, -1);
         
     }
     
+    /**
+     * Packs the outcome of a run of the State Machine
+     */
+    private static long pack(final UpdateAction action, final int state, final int transition) {
+        return ((long) transition << 32) | ((long) state << 2) | action.ordinal();
+    }
+    
+    /**
+     * Reads the action performed from the outcome of {@link #step()}
+     * 
+     * @param step  The packed outcome
+     * @return The action performed by the run of the State Machine
+     */
+    public static UpdateAction stepAction(final long step) {
+        return UPDATE_ACTIONS[(int) step & 0b11];
+    }
+    
+    /**
+     * Reads the resulting state from the outcome of {@link #step()}
+     * 
+     * @param step  The packed outcome
+     * @return The number of the state after the run, as ordered in the State List. For
+     * a State Machine with regions, the state of the region that executed the transition
+     * reported, or of the primary region if none did
+     */
+    public static int stepState(final long step) {
+        return (int) step >>> 2;
+    }
+    
+    /**
+     * Reads the transition executed from the outcome of {@link #step()}
+     * 
+     * @param step  The packed outcome
+     * @return The number of the transition executed, as ordered in the Transition List,
+     * or -1 if no transition was executed
+     */
+    public static int stepTransition(final long step) {
+        return (int) (step >> 32);
+    }
+    
+    /**
+     * Steps all the regions of the State Machine once.
+     * <p>
+     * First, the transition of each region is selected against the same context,
+     * so a region does not see the changes made by the actions of another region
+     * in the same run. Then, if any transition is triggered, the events are cleared
+     * once and the actions are executed in the priority order of the regions.
+     * <p>
+     * If an action starts an asynchronous action, the regions with lower priority
+     * are not executed in this run: the State Machine is suspended, and they select
+     * their transitions again once it resumes. With queued events, only the events
+     * of the transitions executed are consumed.
+     * 
+     * @param listener  The listener of each transition executed, may be null
+     * @return The region with highest priority that executed a transition, or
+     * {@link #NOT_TRIGGERED} or {@link #ENDED} if all the regions have ended
+     */
+    private int stepRegions(final StepListener listener) {
+        final int regions = currentStates.length;
+        final ForkJoinPool pool = regionPool;
+        if (pool == null) {
+            for (int r = 0; r < regions; r++) {
+                selectTransition(r);
+            }
+        }
+        else {
+            pool.submit(() -> IntStream.range(0, regions).parallel().forEach(this::selectTransition)).join();
+        }
+        
+        int first = -1;
+        boolean ended = true;
+        for (int r = 0; r < regions; r++) {
+            if (selectedTransitions[r] >= 0 && first < 0) {
+                first = r;
+            }
+            ended &= table.isEndState(currentStates[r]);
+        }
+        if (ended) {
+            return ENDED;
+        }
+        if (first < 0) {
+            return NOT_TRIGGERED;
+        }
+        
+        if (eventConsumption == EventConsumption.CLEAR_ALL) {
+            events.clear();
+        }
+        for (int r = first; r < regions; r++) {
+            if (selectedTransitions[r] >= 0) {
+                if (eventConsumption == EventConsumption.QUEUE) {
+                    consumeEvents(selectedTransitions[r]);
+                }
+                fire(r, selectedTransitions[r], listener);
+                // A suspended State Machine does not execute actions until the asynchronous one completes
+                if (pendingActions > 0) {
+                    break;
+                }
+            }
+        }
+        signalChange();
+        return first;
+    }
+    
+    /**
+     * Executes consecutive runs of the State Machine, while there are transitions
+     * triggered, until no transition is triggered, the State Machine ends or the
+     * maximum number of steps is reached.
+     * <p>
+     * It behaves as calling {@link #update()} in a loop, but each transition
+     * executed is reported to the listener instead of creating an {@code UpdateResult}.
+     * 
+     * @param maxSteps  The maximum number of runs of the State Machine, so a loop of
+     * transitions always triggered does not block the caller forever
+     * @param listener  The listener of each transition executed, may be null
+     * @return NO_TRANSITION or END when the State Machine stops by itself, SUSPENDED
+     * when it waits for an asynchronous action, TRANSITION if it stops because the
+     * maximum number of steps was reached
+     */
+    public UpdateAction runUntilQuiescent(final int maxSteps, final StepListener listener) {
+        for (int step = 0; step < maxSteps; step++) {
+            receiveMessages();
+            if (pendingActions > 0) {
+                return UpdateAction.SUSPENDED;
+            }
+            if (currentStates.length > 1) {
+                final int first = stepRegions(listener);
+                if (first == ENDED) {
+                    return UpdateAction.END;
+                }
+                if (first == NOT_TRIGGERED) {
+                    return UpdateAction.NO_TRANSITION;
+                }
+                continue;
+            }
+            final int currentState = currentStates[0];
+            if (table.isEndState(currentState)) {
+                return UpdateAction.END;
+            }
+            final int selected = select(0, currentState);
+            if (selected < 0) {
+                return UpdateAction.NO_TRANSITION;
+            }
+            consumeEvents(selected);
+            fire(0, selected, listener);
+            signalChange();
+        }
+        return UpdateAction.TRANSITION;
+    }
+    
+    /**
+     * Removes the events consumed by a transition that has been triggered: all of
+     * them, or only the ones referenced by its condition if they are queued
+     * 
+     * @param transition  The index of the transition
+     */
+    private void consumeEvents(final int transition) {
+        if (eventConsumption == EventConsumption.CLEAR_ALL) {
+            events.clear();
+            return;
+        }
+        for (final int event : table.consumedEvents[transition]) {
+            events.consumeIndex(event);
+        }
+    }
+    
+    /**
+     * Executes the action of a transition and moves its region to the target state,
+     * between the exit actions of the composite states it leaves and the entry
+     * actions of the ones it enters
+     * 
+     * @param region  The index of the region
+     * @param transition  The index of the transition
+     * @param listener  The listener of the transition, may be null
+     */
+    private void fire(final int region, final int transition, final StepListener listener) {
+        final int from = currentStates[region];
+        final Transition t = table.transitions[transition];
+        final long start = metrics == null ? 0L : System.nanoTime();
+        if (hierarchy != null) {
+            hierarchy.exit(from, t.targetState(), environment, events);
+        }
+        if(t.action() != null) {
+            t.action().trigger(environment, events);
+        }
+        else if (t.asyncAction() != null) {
+            startAsync(transition, t.asyncAction());
+        }
+        if (metrics != null) {
+            recordTransition(region, from, transition, start);
+        }
+        currentStates[region] = t.targetState();
+        if (hierarchy != null) {
+            hierarchy.enter(from, currentStates[region], environment, events);
+        }
+        if (timeoutsArmed) {
+            enterState(region);
+        }
+        if (listener != null) {
+            listener.onStep(from, transition, currentStates[region]);
+        }
+        // The changes reported by the next transition start after this one
+        environment.clearChanges();
+    }
+    
+    /**
+     * Records the time of the action of a transition, and the dwell time of the
+     * state it leaves
+     * 
+     * @param region  The index of the region
+     * @param from  The state left
+     * @param transition  The index of the transition
+     * @param start  The time when the action started, in nanoseconds
+     */
+    private void recordTransition(final int region, final int from, final int transition, final long start) {
+        final long end = System.nanoTime();
+        metrics.actionTime(transition).record(end - start);
+        if (stateEnteredAt[region] != 0L) {
+            metrics.dwellTime(from).record(start - stateEnteredAt[region]);
+        }
+        stateEnteredAt[region] = end;
+    }
+    
+    /**
+     * Starts an asynchronous action, suspending the State Machine until it completes
+     * 
+     * @param transition  The index of the transition of the action
+     * @param action  The action
+     */
+    private void startAsync(final int transition, final AsyncAction action) {
+        final CompletionStage<ActionResult> stage = action.triggerAsync(environment, events);
+        if (stage == null) {
+            return;
+        }
+        pendingActions++;
+        stage.whenComplete((result, error) -> {
+            inbox.offer(new CompletedAction(transition, result, error));
+            signalChange();
+        });
+    }
+    
+    /**
+     * Checks if the State Machine is suspended, waiting for an asynchronous action
+     * 
+     * @return True if an asynchronous action is pending, or has completed and its
+     * outputs will be received in the next run
+     */
+    public boolean isSuspended() {
+        return pendingActions > 0;
+    }
+    
+    /**
+     * Receives the messages sent from other threads: adds the events and variables
+     * posted and the outputs, or the failures, of the asynchronous actions completed
+     * to the context of the State Machine. It also arms the timeouts of the current
+     * states in the first run
+     */
+    private void receiveMessages() {
+        if (table.hasTimeouts && !timeoutsArmed) {
+            timeoutsArmed = true;
+            for (int r = 0; r < currentStates.length; r++) {
+                enterState(r);
+            }
+        }
+        if (!inbox.isEmpty()) {
+            inbox.drain(message -> message.deliver(this));
+        }
+    }
+    
+    /**
+     * Records that a region has entered its current state, cancelling the
+     * timeouts of the previous state and arming the ones of the new state
+     * 
+     * @param region  The index of the region
+     */
+    private void enterState(final int region) {
+        cancelTimeouts(region);
+        final long entry = ++stateEntries[region];
+        final int[] timed = table.timedTransitions[currentStates[region]];
+        if (timed == null) {
+            return;
+        }
+        final TimingWheel wheel = timingWheel != null ? timingWheel : TimingWheel.shared();
+        final TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[timed.length];
+        for (int i = 0; i < timed.length; i++) {
+            final Transition t = table.transitions[timed[i]];
+            final PostedEvent posted = new PostedEvent(t.timeoutEvent().getName(), region, entry);
+            timeouts[i] = wheel.schedule(() -> {
+                inbox.offer(posted);
+                signalChange();
+            }, t.timeout(), TimeUnit.MILLISECONDS);
+        }
+        armedTimeouts[region] = timeouts;
+    }
+    
+    private void cancelTimeouts(final int region) {
+        final TimingWheel.Timeout[] timeouts = armedTimeouts[region];
+        if (timeouts != null) {
+            for (final TimingWheel.Timeout timeout : timeouts) {
+                timeout.cancel();
+            }
+            armedTimeouts[region] = null;
+        }
+    }
+    
+    /**
+     * A message sent to the State Machine from another thread
+     */
+    private abstract static class Message {
+        
+        /**
+         * Applies the message to the State Machine, in the thread executing it
+         * 
+         * @param machine  The State Machine receiving the message
+         */
+        abstract void deliver(StateMachine machine);
+    }
+    
+    /**
+     * An asynchronous action completed, with its outputs or its failure
+     */
+    private static final class CompletedAction extends Message {
+        
+        final int transition;
+        final ActionResult result;
+        final Throwable error;
+        
+        CompletedAction(int transition, ActionResult result, Throwable error) {
+            this.transition = transition;
+            this.result = result;
+            this.error = error;
+        }
+        
+        @Override
+        void deliver(StateMachine machine) {
+            machine.pendingActions--;
+            if (error != null) {
+                // A failure is an outcome of the action, handled by the transitions of the target state
+                final Transition t = machine.table.transitions[transition];
+                final Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error;
+                machine.environment.put(t.errorVariable(),
+                        cause.getMessage() != null ? cause.getMessage() : cause.toString());
+                machine.events.add(t.failureEvent());
+                return;
+            }
+            if (result != null) {
+                machine.environment.putAll(result.getVariables());
+                machine.events.addAll(result.getEvents());
+            }
+        }
+    }
+    
+    /**
+     * An event posted to the State Machine, by another thread or by the timeout
+     * of a transition
+     */
+    private static final class PostedEvent extends Message {
+        
+        final String name;
+        
+        /**
+         * The region and the entry to its state that armed the timeout, or -1
+         * if the event was not posted by a timeout
+         */
+        final int region;
+        final long entry;
+        
+        PostedEvent(String name, int region, long entry) {
+            this.name = name;
+            this.region = region;
+            this.entry = entry;
+        }
+        
+        @Override
+        void deliver(StateMachine machine) {
+            // A timeout armed in a previous visit to the state is stale
+            if (region < 0 || entry == machine.stateEntries[region]) {
+                machine.events.addName(name);
+            }
+        }
+    }
+    
+    /**
+     * A variable posted to the State Machine by another thread
+     */
+    private static final class PostedVariable extends Message {
+        
+        final String variable;
+        final Object value;
+        
+        PostedVariable(String variable, Object value) {
+            this.variable = variable;
+            this.value = value;
+        }
+        
+        @Override
+        void deliver(StateMachine machine) {
+            machine.environment.put(variable, value);
+        }
+    }
+    
+    /**
+     * Selects the transition triggered in a region, storing it in {@link #selectedTransitions}
+     * 
+     * @param region  The index of the region
+     */
+    private void selectTransition(final int region) {
+        final int state = currentStates[region];
+        selectedTransitions[region] = table.isEndState(state) ? -1 : select(region, state);
+    }
+    
+    /**
+     * Selects the first transition triggered in the current state of a region,
+     * measuring the time of the evaluation when the metrics are enabled
+     * 
+     * @param region  The index of the region
+     * @param state  The current state of the region
+     * @return The index of the transition, or -1 if none is triggered
+     */
+    private int select(final int region, final int state) {
+        if (metrics == null) {
+            return selectUncached(region, state);
+        }
+        final long start = System.nanoTime();
+        final int selected = selectUncached(region, state);
+        final long end = System.nanoTime();
+        metrics.conditionTime(state).record(end - start);
+        if (stateEnteredAt[region] == 0L) {
+            // The first run of the State Machine starts the dwell time of the current state
+            stateEnteredAt[region] = start;
+        }
+        return selected;
+    }
+    
+    /**
+     * Selects the first transition triggered in the current state of a region,
+     * unless the region is cached without triggered transitions and nothing its
+     * conditions read changed since then
+     */
+    private int selectUncached(final int region, final int state) {
+        if (guardCache.isUntriggered(region, state, environment, events)) {
+            return -1;
+        }
+        final int selected = table.select(state, this);
+        guardCache.store(region, state, selected, environment, events);
+        return selected;
+    }
+    
     /**
      * This enumeration represents the 3 possible actions that the update method can do
      * upon a State Machine:
@@ -306,19 +1261,41 @@ public class StateMachine {
      * go back to the same state that it started in)
      * <li>END: The update method acknowledge that this State has no transitions, so is a dead end
      * for the State Machine
+     * <li>SUSPENDED: The update method does not check the transitions, because the State Machine
+     * waits for an {@link AsyncAction asynchronous action} to complete
      * </ul><p>
      *
      */
     public enum UpdateAction {
-        NO_TRANSITION,TRANSITION,END
+        NO_TRANSITION,TRANSITION,END,SUSPENDED
+    }
+    
+    /**
+     * This enumeration represents how the events are consumed when a transition is
+     * triggered:
+     * <p><ul>
+     * <li>CLEAR_ALL: All the events are removed, also the ones that were not part of the
+     * transition. An event added while it was already active is ignored
+     * <li>QUEUE: Only the events referenced by the condition of the transition are removed,
+     * and the rest stay for the next run. An event added while it was already active is
+     * queued, and it stays active until it is consumed once for each time it was added,
+     * in FIFO order
+     * </ul><p>
+     *
+     */
+    public enum EventConsumption {
+        CLEAR_ALL,QUEUE
     }
     
     /**
      * Class that wraps the different values that someone executing a State Machine will be
      * interested to know, after each update() call
-     *
+     * <p>
+     * The results are immutable and do not reference the State Machine that produced them,
+     * so {@link #update()} reuses the same instances, created once for each state and
+     * transition by the {@link StateMachineDefinition}.
      */
-    public class UpdateResult {
+    public static final class UpdateResult {
         
         private final State resultState;
         private final Transition executedTransition;
@@ -346,7 +1323,6 @@ public class StateMachine {
         public int hashCode() {
             final int prime = 31;
             int result = 1;
-            result = prime * result + getEnclosingInstance().hashCode();
             result = prime * result + ((executedTransition == null) ? 0 : executedTransition.hashCode());
             result = prime * result + ((resultState == null) ? 0 : resultState.hashCode());
             result = prime * result + ((updateAction == null) ? 0 : updateAction.hashCode());
@@ -362,8 +1338,6 @@ public class StateMachine {
             if (getClass() != obj.getClass())
                 return false;
             UpdateResult other = (UpdateResult) obj;
-            if (!getEnclosingInstance().equals(other.getEnclosingInstance()))
-                return false;
             if (executedTransition == null) {
                 if (other.executedTransition != null)
                     return false;
@@ -378,66 +1352,6 @@ public class StateMachine {
                 return false;
             return true;
         }
-
-        private StateMachine getEnclosingInstance() {
-            return StateMachine.this;
-        }
-        
-        
     }
-
-    /**
-     * Checks that the arguments provided to the State Machine constructor are
-     * correct to produce a well-formed State Machine.
-     * <p>
-     * The tests performed are:
-     * <p><ul>
-     * <li>Tests that the states contains references to transitions in the 
-     * available range
-     * <li>Tests the states name for duplicates, each name should be unique in 
-     * this State Machine.
-     * <li>Tests that the transitions contains references to states in the 
-     * available range
-     * </ul><p>
-     * 
-     * @param statesUnderTest  The list of states
-     * @param transitionsUnderTest  The list of transitions
-     * 
-     * @throws IllegalArgumentException if any of the arguments does not follow
-     * the rules to create a correct State Machine
-     */
-    private void checkStateMachine(List<State> statesUnderTest, List<Transition> transitionsUnderTest ) 
-            throws IllegalArgumentException {
-    	
-        // Check that there are at least one State and one Transition
-        if(statesUnderTest.isEmpty()) {
-            throw new IllegalArgumentException("StateMachine can not be created without a state");
-        }
-        if(transitionsUnderTest.isEmpty()) {
-            throw new IllegalArgumentException("StateMachine can not be created without a transition");
-        }
-        
-    	for (final State s: statesUnderTest) {
-    		// Check that states do not point to Transitions that do not exist
-    		for(int i: s.transitionsIndexes()) {
-    			if (i >= transitionsUnderTest.size() || i < 0) {
-    				throw new IllegalArgumentException("State points to nonexistent transition");
-    			}
-    		}
-    	}
-    	
-    	// Check that states do not have duplicate names
-    	if(Utility.hasDuplicate(statesUnderTest)){
-    		throw new IllegalArgumentException("State Machine contains different states with the "
-    											+ "same name");
-    	}
-    	
-    	// Check that transitions should not target states that do not exist
-    	for(final Transition t: transitionsUnderTest) {
-    		if(t.targetState() >= statesUnderTest.size() || t.targetState() < 0) {
-    			throw new IllegalArgumentException("Transition targets nonexistent state");
-    		}
-    	}
-	}
     
 }
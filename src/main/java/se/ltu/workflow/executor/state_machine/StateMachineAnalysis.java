@@ -0,0 +1,420 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The analysis of the graph of states and transitions of a
+ * {@link StateMachineDefinition}, done once when the definition is created.
+ * <p>
+ * Unlike the checks of the definition, which reject State Machines that can not
+ * be executed, the analysis finds the parts of a State Machine that are most
+ * likely mistakes, without rejecting it:
+ * <p><ul>
+ * <li>States that are not reachable from the initial states of the regions
+ * <li>Reachable states from which no END state can be reached
+ * <li>Transitions shadowed by an earlier transition of the same state that is
+ * always triggered, or whose condition is always false
+ * <li>Transitions of the same state whose conditions depend on the same event
+ * or variable and can be true at the same time, so only their order decides
+ * which one is executed
+ * </ul><p>
+ * It also finds the states that can never be left, and the transitions that can
+ * never be executed, which the {@link TransitionTable} does not evaluate.
+ * <p>
+ * The sets of states are stored as bit masks, one {@code long} per 64 states,
+ * so the reachability is computed by propagating whole masks through the
+ * successors, or predecessors, of the states. The overlap between two conditions
+ * is decided from their conjunctions of events and guards: two conditions are
+ * exclusive if one requires what the other negates, or if they compare the same
+ * variable with different values. Conditions that do not share any event or
+ * variable are not reported, as their order is rarely a mistake: a transition
+ * without conditions after others, for example, is the default one of the state.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is immutable.
+ */
+public final class StateMachineAnalysis {
+
+    private final int numberOfStates;
+    private final long[] reachable;
+    private final long[] reachesEnd;
+    private final long[] terminal;
+    private final boolean[] fireable;
+    private final List<Overlap> overlaps;
+    private final List<String> warnings;
+
+    private StateMachineAnalysis(int numberOfStates, long[] reachable, long[] reachesEnd, long[] terminal,
+            boolean[] fireable, List<Overlap> overlaps, List<String> warnings) {
+        this.numberOfStates = numberOfStates;
+        this.reachable = reachable;
+        this.reachesEnd = reachesEnd;
+        this.terminal = terminal;
+        this.fireable = fireable;
+        this.overlaps = Collections.unmodifiableList(overlaps);
+        this.warnings = Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * Analyses a compiled State Machine
+     *
+     * @param table  The table of states and transitions
+     * @param initialStates  The initial state of each region
+     * @return The analysis of the State Machine
+     */
+    static StateMachineAnalysis of(TransitionTable table, int[] initialStates) {
+        final int states = table.states.length;
+        final int words = (states + 63) >>> 6;
+        final List<String> warnings = new ArrayList<>();
+
+        // Transitions after one always triggered, or always false, are not evaluated by the table
+        final boolean[][] live = new boolean[states][];
+        final long[][] successors = new long[states][words];
+        final long[][] predecessors = new long[states][words];
+        final long[] terminal = new long[words];
+        for (int s = 0; s < states; s++) {
+            final int[] candidates = table.declaredTransitions[s];
+            final int[] executable = table.stateTransitions[s];
+            live[s] = new boolean[candidates.length];
+            int next = 0;
+            for (int i = 0; i < candidates.length; i++) {
+                if (next < executable.length && executable[next] == candidates[i]) {
+                    live[s][i] = true;
+                    next++;
+                    final int target = table.transitions[candidates[i]].targetState();
+                    successors[s][target >>> 6] |= 1L << target;
+                    predecessors[target][s >>> 6] |= 1L << s;
+                }
+                else if (next == executable.length && next > 0 && isUnconditional(table, executable[next - 1])) {
+                    warnings.add("Transition " + candidates[i] + " of state " + table.states[s].name()
+                            + " is shadowed by transition " + executable[next - 1] + ", which is always triggered");
+                }
+                else {
+                    warnings.add("Transition " + candidates[i] + " of state " + table.states[s].name()
+                            + " is never triggered, its condition is always false");
+                }
+            }
+            // A state is terminal if no transition can take it to another state
+            final long[] others = successors[s].clone();
+            others[s >>> 6] &= ~(1L << s);
+            if (isEmpty(others)) {
+                terminal[s >>> 6] |= 1L << s;
+            }
+        }
+
+        final long[] initial = new long[words];
+        for (final int s : initialStates) {
+            initial[s >>> 6] |= 1L << s;
+        }
+        final long[] reachable = closure(initial, successors);
+        final long[] ends = new long[words];
+        for (int s = 0; s < states; s++) {
+            if (table.endStates[s]) {
+                ends[s >>> 6] |= 1L << s;
+            }
+        }
+        final long[] reachesEnd = closure(ends, predecessors);
+
+        for (int s = 0; s < states; s++) {
+            if (!contains(reachable, s)) {
+                warnings.add("State " + table.states[s].name() + " is not reachable from the initial states");
+            }
+            else if (!contains(reachesEnd, s)) {
+                warnings.add("State " + table.states[s].name() + " has no path to an END state");
+            }
+        }
+
+        final boolean[] fireable = new boolean[table.transitions.length];
+        final List<Overlap> overlaps = new ArrayList<>();
+        for (int s = 0; s < states; s++) {
+            if (!contains(reachable, s)) {
+                continue;
+            }
+            final int[] candidates = table.declaredTransitions[s];
+            final List<List<Literal>> conjunctions = new ArrayList<>(candidates.length);
+            for (int i = 0; i < candidates.length; i++) {
+                fireable[candidates[i]] |= live[s][i];
+                conjunctions.add(live[s][i] ? Literal.conjunction(table.conditions[candidates[i]]) : null);
+            }
+            for (int i = 0; i < candidates.length; i++) {
+                for (int j = i + 1; j < candidates.length && live[s][i]; j++) {
+                    if (live[s][j] && overlap(conjunctions.get(i), conjunctions.get(j))) {
+                        overlaps.add(new Overlap(s, candidates[i], candidates[j]));
+                        warnings.add("Transitions " + candidates[i] + " and " + candidates[j] + " of state "
+                                + table.states[s].name() + " can be triggered at the same time, transition "
+                                + candidates[i] + " has priority");
+                    }
+                }
+            }
+        }
+        return new StateMachineAnalysis(states, reachable, reachesEnd, terminal, fireable, overlaps, warnings);
+    }
+
+    /**
+     * Finds the states connected to a set of states, including them
+     *
+     * @param from  The mask of the states to start from
+     * @param edges  For each state, the mask of the states it is connected to
+     * @return The mask of all the connected states
+     */
+    private static long[] closure(final long[] from, final long[][] edges) {
+        final long[] reached = from.clone();
+        long[] frontier = from.clone();
+        while (!isEmpty(frontier)) {
+            final long[] next = new long[from.length];
+            for (int w = 0; w < frontier.length; w++) {
+                long bits = frontier[w];
+                while (bits != 0) {
+                    final long[] connected = edges[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                    for (int v = 0; v < next.length; v++) {
+                        next[v] |= connected[v];
+                    }
+                    bits &= bits - 1;
+                }
+            }
+            for (int w = 0; w < next.length; w++) {
+                next[w] &= ~reached[w];
+                reached[w] |= next[w];
+            }
+            frontier = next;
+        }
+        return reached;
+    }
+
+    private static boolean isEmpty(final long[] mask) {
+        for (final long word : mask) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(final long[] mask, final int state) {
+        return (mask[state >>> 6] & (1L << state)) != 0;
+    }
+
+    private static boolean isUnconditional(final TransitionTable table, final int transition) {
+        final Evaluable<Context> condition = table.conditions[transition];
+        return condition == null || condition instanceof Conditions.Constant;
+    }
+
+    /**
+     * Checks if two conjunctions depend on the same event or variable, and can
+     * be true at the same time
+     */
+    private static boolean overlap(final List<Literal> first, final List<Literal> second) {
+        boolean shared = false;
+        for (final Literal a : first) {
+            for (final Literal b : second) {
+                if (a.contradicts(b)) {
+                    return false;
+                }
+                shared |= a.sameLeaf(b);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Checks if a state can be reached from the initial states of the regions
+     *
+     * @param state  The number of the state, as ordered in the State List
+     * @return True if the state is reachable, false otherwise
+     */
+    public boolean isReachable(final int state) {
+        return contains(reachable, state);
+    }
+
+    /**
+     * Checks if an END state can be reached from a state
+     *
+     * @param state  The number of the state, as ordered in the State List
+     * @return True if there is a path from the state to an END state, which is
+     * true for the END states themselves
+     */
+    public boolean canReachEnd(final int state) {
+        return contains(reachesEnd, state);
+    }
+
+    /**
+     * Checks if a state can never be left, because it is an END state or all its
+     * transitions that can be executed go back to it
+     *
+     * @param state  The number of the state, as ordered in the State List
+     * @return True if the state is terminal, false otherwise
+     */
+    public boolean isTerminal(final int state) {
+        return contains(terminal, state);
+    }
+
+    /**
+     * Checks if a transition can be executed, from any reachable state
+     *
+     * @param transition  The number of the transition, as ordered in the Transition List
+     * @return False if the transition is never executed, true otherwise
+     */
+    public boolean canFire(final int transition) {
+        return fireable[transition];
+    }
+
+    /**
+     * Provides the states that are not reachable from the initial states
+     *
+     * @return The numbers of the states, in order
+     */
+    public List<Integer> getUnreachableStates() {
+        final List<Integer> unreachable = new ArrayList<>();
+        for (int s = 0; s < numberOfStates; s++) {
+            if (!isReachable(s)) {
+                unreachable.add(s);
+            }
+        }
+        return unreachable;
+    }
+
+    /**
+     * Provides the pairs of transitions of the same state that depend on the
+     * same event or variable and can be triggered at the same time
+     *
+     * @return The unmodifiable list of overlaps, by state
+     */
+    public List<Overlap> getOverlaps() {
+        return overlaps;
+    }
+
+    /**
+     * Provides the description of each problem found by the analysis
+     *
+     * @return The unmodifiable list of warnings, empty if there are none
+     */
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Two transitions of a state whose conditions can be true at the same time
+     */
+    public static final class Overlap {
+
+        private final int state;
+        private final int first;
+        private final int second;
+
+        Overlap(int state, int first, int second) {
+            this.state = state;
+            this.first = first;
+            this.second = second;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        /**
+         * Provides the transition evaluated first, which is executed when both are triggered
+         *
+         * @return The number of the transition, as ordered in the Transition List
+         */
+        public int getFirst() {
+            return first;
+        }
+
+        public int getSecond() {
+            return second;
+        }
+
+        @Override
+        public String toString() {
+            return "Overlap [state=" + state + ", first=" + first + ", second=" + second + "]";
+        }
+    }
+
+    /**
+     * An event or guard that a condition requires to be true, or false
+     */
+    private static final class Literal {
+
+        private final Evaluable<Context> leaf;
+        private final boolean positive;
+
+        private Literal(Evaluable<Context> leaf, boolean positive) {
+            this.leaf = leaf;
+            this.positive = positive;
+        }
+
+        /**
+         * Finds the literals that a bound condition requires, from its top level AND.
+         * Operands of other kinds add no literal, so the result may be incomplete
+         */
+        @SuppressWarnings("unchecked")
+        static List<Literal> conjunction(final Evaluable<Context> condition) {
+            final List<Literal> literals = new ArrayList<>();
+            if (condition instanceof LogicExpression
+                    && ((LogicExpression<?, Context>) condition).operator() == LogicOperator.AND) {
+                for (final Evaluable<Context> operand : ((LogicExpression<?, Context>) condition).operands()) {
+                    add(operand, literals);
+                }
+            }
+            else {
+                add(condition, literals);
+            }
+            return literals;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static void add(final Evaluable<Context> operand, final List<Literal> literals) {
+            if (isLeaf(operand)) {
+                literals.add(new Literal(operand, true));
+            }
+            else if (operand instanceof LogicExpression
+                    && ((LogicExpression<?, Context>) operand).operator() == LogicOperator.NOT) {
+                final Evaluable<Context> negated =
+                        ((LogicExpression<?, Context>) operand).operands().iterator().next();
+                if (isLeaf(negated)) {
+                    literals.add(new Literal(negated, false));
+                }
+            }
+        }
+
+        private static boolean isLeaf(final Evaluable<Context> operand) {
+            return operand instanceof Conditions.EventCondition || operand instanceof Conditions.GuardCondition;
+        }
+
+        /**
+         * Checks if this literal and another one read the same event or variable
+         */
+        boolean sameLeaf(final Literal other) {
+            if (leaf instanceof Conditions.EventCondition && other.leaf instanceof Conditions.EventCondition) {
+                return ((Conditions.EventCondition) leaf).index == ((Conditions.EventCondition) other.leaf).index;
+            }
+            if (leaf instanceof Conditions.GuardCondition && other.leaf instanceof Conditions.GuardCondition) {
+                return ((Conditions.GuardCondition) leaf).slot == ((Conditions.GuardCondition) other.leaf).slot;
+            }
+            return false;
+        }
+
+        /**
+         * Checks if this literal and another one can not be true at the same time
+         */
+        boolean contradicts(final Literal other) {
+            if (leaf instanceof Conditions.EventCondition && other.leaf instanceof Conditions.EventCondition) {
+                return positive != other.positive
+                        && ((Conditions.EventCondition) leaf).index == ((Conditions.EventCondition) other.leaf).index;
+            }
+            if (leaf instanceof Conditions.GuardCondition && other.leaf instanceof Conditions.GuardCondition) {
+                final Conditions.GuardCondition a = (Conditions.GuardCondition) leaf;
+                final Conditions.GuardCondition b = (Conditions.GuardCondition) other.leaf;
+                if (a.slot != b.slot) {
+                    return false;
+                }
+                final boolean sameValue = Objects.equals(a.guard.getValue(), b.guard.getValue());
+                // A variable can not be equal to two different values, nor equal and not equal to one
+                return positive && other.positive ? !sameValue : positive != other.positive && sameValue;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import se.ltu.workflow.executor.state_machine.StateMachine.EventConsumption;
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateResult;
+
+/**
+ * The definition of a {@link StateMachine}: its {@link State states},
+ * {@link Transition transitions} and the initial state of each region.
+ * <p>
+ * A definition is validated and compiled once, and then shared by all the
+ * State Machines created from it, which only hold their own context: the
+ * current states, the events and the environment. This way a Workflow stored
+ * as a template can be executed many times, allocating only that context for
+ * each execution.
+ * 
+ * <h4>Implementation notes</h4>
+ * This class is immutable, as long as the states and transitions provided are
+ * not modified after the definition is created, except for the
+ * {@link TransitionMetrics metrics} that can be enabled
+ */
+public final class StateMachineDefinition {
+    
+    /**
+     * The {@code List} of {@link State states} that conform this State Machine.
+     */
+    private final List<State> states;
+    
+    /**
+     * The {@code List} of {@link Transition transitions} that conform this 
+     * State Machine.
+     */
+    private final List<Transition> transitions;
+    
+    /**
+     * The {@code List} of {@link CompositeState composite states} grouping the
+     * states of this State Machine, empty if it has none.
+     */
+    private final List<CompositeState> compositeStates;
+    
+    /**
+     * The initial state of each region, ordered by priority
+     */
+    private final int[] initialStates;
+    
+    /**
+     * How the State Machines of this definition consume the events when a
+     * transition is triggered
+     */
+    private final EventConsumption eventConsumption;
+    
+    /**
+     * The compiled, array-backed form of the states and transitions, used by
+     * {@link StateMachine#update()}
+     */
+    private final TransitionTable table;
+    
+    /**
+     * The compiled form of the composite states, used to execute their entry
+     * and exit actions, null if there are no composite states
+     */
+    private final StateHierarchy hierarchy;
+    
+    /**
+     * The analysis of the graph of states and transitions, done once
+     */
+    private final StateMachineAnalysis analysis;
+    
+    /**
+     * The results of {@link StateMachine#update()}, created once and shared: for
+     * each transition executed, and for each state with no transition, ended or
+     * suspended
+     */
+    private final UpdateResult[] transitionResults;
+    private final UpdateResult[] noTransitionResults;
+    private final UpdateResult[] endResults;
+    private final UpdateResult[] suspendedResults;
+    
+    /**
+     * The latencies measured by the State Machines of this definition, null if
+     * they are not measured
+     */
+    private volatile TransitionMetrics metrics;
+    
+    /**
+     * Constructs the definition of a State Machine with the given {@code List}
+     * of states and transitions, and the initial state of each of its regions.
+     * <p>
+     * It validates the arguments provided, to test that the State Machine is
+     * well-formed, and compiles them.
+     * 
+     * @param states  The list of states of the State Machine
+     * @param transitions  The list of transitions part of the State Machine
+     * @param regionStates  The initial state of each region, ordered by priority.
+     * A State Machine without regions has only one
+     * 
+     * @throws IllegalArgumentException  if there are errors present when creating the
+     * State Machine, like two states with the same name, or states with transitions that
+     * do not exist or transitions pointing to states that do not exist, regions starting
+     * in states that do not exist, or logic expressions with more than one operand and
+     * no operator
+     * 
+     * @see #checkStateMachine(List, List, List)
+     */
+    public StateMachineDefinition(final List<State> states, final List<Transition> transitions,
+            final List<Integer> regionStates) throws IllegalArgumentException {
+        this(states, transitions, regionStates, List.of());
+    }
+    
+    /**
+     * Constructs the definition of a State Machine with the given {@code List}
+     * of states, transitions and composite states, and the initial state of each
+     * of its regions, whose State Machines clear all the events when a
+     * transition is triggered.
+     * 
+     * @param states  The list of states of the State Machine
+     * @param transitions  The list of transitions part of the State Machine
+     * @param regionStates  The initial state of each region, ordered by priority
+     * @param compositeStates  The list of composite states grouping the states
+     * 
+     * @throws IllegalArgumentException  if there are errors present when creating the
+     * State Machine, as in {@link #StateMachineDefinition(List, List, List, List, EventConsumption)}
+     */
+    public StateMachineDefinition(final List<State> states, final List<Transition> transitions,
+            final List<Integer> regionStates, final List<CompositeState> compositeStates)
+            throws IllegalArgumentException {
+        this(states, transitions, regionStates, compositeStates, EventConsumption.CLEAR_ALL);
+    }
+    
+    /**
+     * Constructs the definition of a State Machine with the given {@code List}
+     * of states, transitions and composite states, the initial state of each
+     * of its regions, and how its State Machines consume the events.
+     * <p>
+     * The transitions of the composite states are attached to each of their
+     * substates, after the transitions of the substate, so the States provided
+     * by {@link #getStates()} include them. The transitions shared by several
+     * substates are not copied, and a substate without transitions of its own
+     * is still an END state.
+     * 
+     * @param states  The list of states of the State Machine
+     * @param transitions  The list of transitions part of the State Machine
+     * @param regionStates  The initial state of each region, ordered by priority.
+     * A State Machine without regions has only one
+     * @param compositeStates  The list of composite states grouping the states
+     * @param eventConsumption  How the State Machines of this definition consume
+     * the events, CLEAR_ALL or QUEUE
+     * 
+     * @throws IllegalArgumentException  if there are errors present when creating the
+     * State Machine, as in {@link #StateMachineDefinition(List, List, List)}, or composite
+     * states without substates, pointing to states or transitions that do not exist,
+     * with duplicate names, or that overlap without one containing the other
+     */
+    public StateMachineDefinition(final List<State> states, final List<Transition> transitions,
+            final List<Integer> regionStates, final List<CompositeState> compositeStates,
+            final EventConsumption eventConsumption) throws IllegalArgumentException {
+        
+        /* Check consistency of State Machine before creating the object:
+         *  - States should not point to Transitions that do not exist
+         *  - States should have unique names
+         *  - Transitions should not target states that do not exist
+         *  - Regions should not start in states that do not exist
+         */
+        checkStateMachine(states, transitions, regionStates);
+        
+        this.compositeStates = Collections.unmodifiableList(new ArrayList<>(compositeStates));
+        this.hierarchy = compositeStates.isEmpty()
+                ? null
+                : StateHierarchy.of(this.compositeStates, states.size(), transitions.size());
+        this.states = Collections.unmodifiableList(hierarchy == null
+                ? new ArrayList<>(states)
+                : hierarchy.flatten(states, this.compositeStates));
+        this.transitions = Collections.unmodifiableList(new ArrayList<>(transitions));
+        this.initialStates = new int[regionStates.size()];
+        for (int r = 0; r < initialStates.length; r++) {
+            initialStates[r] = regionStates.get(r);
+        }
+        this.eventConsumption = Objects.requireNonNull(eventConsumption, "Expected an event consumption");
+        this.table = TransitionTable.compile(this.states, this.transitions);
+        this.analysis = StateMachineAnalysis.of(table, initialStates);
+        
+        this.transitionResults = new UpdateResult[table.transitions.length];
+        for (int t = 0; t < transitionResults.length; t++) {
+            transitionResults[t] = new UpdateResult(table.states[table.transitions[t].targetState()],
+                    table.transitions[t], UpdateAction.TRANSITION);
+        }
+        this.noTransitionResults = new UpdateResult[table.states.length];
+        this.endResults = new UpdateResult[table.states.length];
+        this.suspendedResults = new UpdateResult[table.states.length];
+        for (int s = 0; s < table.states.length; s++) {
+            noTransitionResults[s] = new UpdateResult(table.states[s], null, UpdateAction.NO_TRANSITION);
+            endResults[s] = new UpdateResult(table.states[s], null, UpdateAction.END);
+            suspendedResults[s] = new UpdateResult(table.states[s], null, UpdateAction.SUSPENDED);
+        }
+    }
+    
+    /**
+     * Provides the states of the State Machine
+     * 
+     * @return The unmodifiable list of states
+     */
+    public List<State> getStates() {
+        return states;
+    }
+    
+    /**
+     * Provides the transitions of the State Machine, independently if they are
+     * attached to any state
+     * 
+     * @return The unmodifiable list of transitions
+     */
+    public List<Transition> getTransitions() {
+        return transitions;
+    }
+    
+    /**
+     * Provides the composite states grouping the states of the State Machine
+     * 
+     * @return The unmodifiable list of composite states, empty if there are none
+     */
+    public List<CompositeState> getCompositeStates() {
+        return compositeStates;
+    }
+    
+    /**
+     * Provides the initial state of each region
+     * 
+     * @return A copy of the initial states, ordered by region priority
+     */
+    public int[] getInitialStates() {
+        return initialStates.clone();
+    }
+    
+    /**
+     * Provides how the State Machines of this definition consume the events
+     * 
+     * @return The event consumption they start with
+     */
+    public EventConsumption getEventConsumption() {
+        return eventConsumption;
+    }
+    
+    /**
+     * Provides the number of orthogonal regions of the State Machine
+     * 
+     * @return The number of regions, 1 if the State Machine has no regions
+     */
+    public int getNumberOfRegions() {
+        return initialStates.length;
+    }
+    
+    /**
+     * Provides the analysis of the states and transitions, with the problems
+     * found in the State Machine that do not prevent its execution
+     * 
+     * @return The analysis, computed when the definition was created
+     */
+    public StateMachineAnalysis getAnalysis() {
+        return analysis;
+    }
+    
+    /**
+     * Starts measuring the latencies of the states and transitions, in the State
+     * Machines created from now on with this definition
+     * 
+     * @return The metrics, shared by those State Machines
+     */
+    public synchronized TransitionMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new TransitionMetrics(table.states.length, table.transitions.length);
+        }
+        return metrics;
+    }
+    
+    /**
+     * Provides the latencies measured for the states and transitions
+     * 
+     * @return The metrics, or null if they are not enabled
+     */
+    public TransitionMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Provides the initial state of a region, without copying them
+     * 
+     * @param region  The index of the region
+     * @return The number of its initial state
+     */
+    int initialState(int region) {
+        return initialStates[region];
+    }
+    
+    /**
+     * Provides the shared result of a run of a State Machine
+     * 
+     * @param step  The outcome of the run, as returned by {@link StateMachine#step()}
+     * @return The result with the same action, state and transition
+     */
+    UpdateResult result(long step) {
+        switch (StateMachine.stepAction(step)) {
+            case TRANSITION:
+                return transitionResults[StateMachine.stepTransition(step)];
+            case END:
+                return endResults[StateMachine.stepState(step)];
+            case SUSPENDED:
+                return suspendedResults[StateMachine.stepState(step)];
+            default:
+                return noTransitionResults[StateMachine.stepState(step)];
+        }
+    }
+    
+    /**
+     * Provides the compiled table of states and transitions
+     * 
+     * @return The table
+     */
+    TransitionTable table() {
+        return table;
+    }
+    
+    /**
+     * Provides the compiled composite states
+     * 
+     * @return The hierarchy, or null if there are no composite states
+     */
+    StateHierarchy hierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Checks that the arguments provided to the State Machine constructor are
+     * correct to produce a well-formed State Machine.
+     * <p>
+     * The tests performed are:
+     * <p><ul>
+     * <li>Tests that the states contains references to transitions in the 
+     * available range
+     * <li>Tests the states name for duplicates, each name should be unique in 
+     * this State Machine.
+     * <li>Tests that the transitions contains references to states in the 
+     * available range
+     * <li>Tests that there is at least one region, and that the initial states
+     * of the regions are in the available range
+     * </ul><p>
+     * 
+     * @param statesUnderTest  The list of states
+     * @param transitionsUnderTest  The list of transitions
+     * @param regionStatesUnderTest  The initial state of each region
+     * 
+     * @throws IllegalArgumentException if any of the arguments does not follow
+     * the rules to create a correct State Machine
+     */
+    private static void checkStateMachine(List<State> statesUnderTest, List<Transition> transitionsUnderTest,
+            List<Integer> regionStatesUnderTest) 
+            throws IllegalArgumentException {
+    	
+        // Check that there are at least one State and one Transition
+        if(statesUnderTest.isEmpty()) {
+            throw new IllegalArgumentException("StateMachine can not be created without a state");
+        }
+        if(transitionsUnderTest.isEmpty()) {
+            throw new IllegalArgumentException("StateMachine can not be created without a transition");
+        }
+        
+    	for (final State s: statesUnderTest) {
+    		// Check that states do not point to Transitions that do not exist
+    		for(int i: s.transitionsIndexes()) {
+    			if (i >= transitionsUnderTest.size() || i < 0) {
+    				throw new IllegalArgumentException("State points to nonexistent transition");
+    			}
+    		}
+    	}
+    	
+    	// Check that states do not have duplicate names
+    	if(Utility.hasDuplicate(statesUnderTest)){
+    		throw new IllegalArgumentException("State Machine contains different states with the "
+    											+ "same name");
+    	}
+    	
+    	// Check that transitions should not target states that do not exist
+    	for(final Transition t: transitionsUnderTest) {
+    		if(t.targetState() >= statesUnderTest.size() || t.targetState() < 0) {
+    			throw new IllegalArgumentException("Transition targets nonexistent state");
+    		}
+    	}
+    	
+    	// Check that regions start in states that exist
+    	if(regionStatesUnderTest.isEmpty()) {
+    	    throw new IllegalArgumentException("StateMachine can not be created without a region");
+    	}
+    	for(final int s: regionStatesUnderTest) {
+    	    if(s >= statesUnderTest.size() || s < 0) {
+    	        throw new IllegalArgumentException("Region starts in nonexistent state");
+    	    }
+    	}
+	}
+    
+}
@@ -0,0 +1,39 @@
+package se.ltu.workflow.executor.state_machine;
+
+/**
+ * Listens to the transitions executed by a {@link StateMachine} in
+ * {@link StateMachine#runUntilQuiescent(int, StepListener)}.
+ * <p>
+ * The step is reported with the indexes of the states and transition, as ordered
+ * in the lists of the State Machine, so no object is created for each step.
+ * <p>This is a {@link java.lang.FunctionalInterface FunctionalInterface} whose 
+ * abstract method is {@link #onStep(int, int, int)}.
+ */
+@FunctionalInterface
+public interface StepListener {
+	
+	/**
+	 * Called after a transition, and its action, have been executed.
+	 * 
+	 * @param fromState  The state where the transition started
+	 * @param transition  The transition executed
+	 * @param toState  The state where the transition ended
+	 */
+	void onStep(final int fromState, final int transition, final int toState);
+	
+	/**
+	 * Returns a listener that reports each step to this listener and then to another one.
+	 * 
+	 * @param after  The listener called after this one, may be null
+	 * @return The composed listener, or this listener if the other one is null
+	 */
+	default StepListener andThen(final StepListener after) {
+		if (after == null) {
+			return this;
+		}
+		return (fromState, transition, toState) -> {
+			onStep(fromState, transition, toState);
+			after.onStep(fromState, transition, toState);
+		};
+	}
+}
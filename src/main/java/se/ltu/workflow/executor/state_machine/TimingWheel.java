@@ -0,0 +1,273 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel, that runs tasks after a delay using one thread for
+ * all of them.
+ * <p>
+ * The wheel is an array of buckets, and a single thread moves over them one
+ * bucket every tick. A task is stored in the bucket where the wheel will be when
+ * its delay expires, together with the number of full turns of the wheel still
+ * needed. This way scheduling and cancelling a task costs a constant time, no
+ * matter how many tasks are waiting, and a waiting task does not hold any
+ * thread. The price is the precision, a task runs in the first tick after its
+ * delay expires.
+ * <p>
+ * The tasks run in the thread of the wheel, so they must be short, like posting
+ * an {@link Event} to a {@link StateMachine}. The wheel used by default by all
+ * the State Machines is given by {@link #shared()}.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is thread-safe. New tasks are queued by the calling threads and
+ * added to the buckets by the thread of the wheel, that is the only one
+ * accessing them. Cancelling a task only marks it, and it is removed when the
+ * wheel reaches its bucket
+ */
+public final class TimingWheel {
+
+    /**
+     * The default duration of a tick, in milliseconds
+     */
+    private static final long DEFAULT_TICK_MILLIS = 10;
+
+    /**
+     * The default number of buckets of the wheel
+     */
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * The duration of a tick, in nanoseconds
+     */
+    private final long tickNanos;
+
+    /**
+     * The buckets of the wheel, each one a linked list of timeouts. The size is a
+     * power of two, so the bucket of a tick is found with a mask
+     */
+    private final Timeout[] buckets;
+    private final int mask;
+
+    /**
+     * The timeouts scheduled and not yet added to a bucket by the thread of the wheel
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The thread that moves the wheel
+     */
+    private final Thread worker;
+
+    /**
+     * The moment the wheel started, the origin of its ticks, in nanoseconds
+     */
+    private final long startNanos;
+
+    /**
+     * The number of ticks processed, only accessed by the thread of the wheel
+     */
+    private long tick;
+
+    private volatile boolean stopped;
+
+    /**
+     * Lazily created wheel shared by all the State Machines
+     */
+    private static final class Shared {
+        static final TimingWheel INSTANCE = new TimingWheel(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS,
+                DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Constructs a timing wheel and starts its thread
+     *
+     * @param tickDuration  The duration of a tick, the precision of the wheel
+     * @param unit  The unit of the tick duration
+     * @param wheelSize  The number of buckets of the wheel, rounded up to a
+     * power of two
+     *
+     * @throws IllegalArgumentException if the tick duration or the wheel size
+     * are not positive
+     */
+    public TimingWheel(final long tickDuration, final TimeUnit unit, final int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("The duration of a tick must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("The size of the wheel must be positive and up to 2^30");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        final int size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, "timing-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Provides the wheel shared by all the State Machines, that is created the
+     * first time it is used, with a tick of 10 milliseconds
+     *
+     * @return The shared timing wheel
+     */
+    public static TimingWheel shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Schedules a task to run once after a delay
+     *
+     * @param task  The task, that runs in the thread of the wheel
+     * @param delay  The delay, a negative or zero delay runs the task in the next tick
+     * @param unit  The unit of the delay
+     * @return The timeout, that can be used to cancel the task
+     *
+     * @throws IllegalStateException if the wheel was stopped
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("The timing wheel was stopped");
+        }
+        final Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay)));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the thread of the wheel. The tasks not yet run are discarded
+     */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    /**
+     * The loop of the thread of the wheel
+     */
+    private void run() {
+        while (!stopped) {
+            final long deadline = (tick + 1) * tickNanos;
+            final long sleep = deadline - (System.nanoTime() - startNanos);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // Only interrupted to stop the wheel
+                    continue;
+                }
+            }
+            transferPending();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    /**
+     * Adds the timeouts scheduled to their buckets
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // The first tick that ends after the deadline, never one already processed
+            final long expiry = Math.max(tick, (timeout.deadlineNanos + tickNanos - 1) / tickNanos - 1);
+            timeout.rounds = (expiry - tick) / buckets.length;
+            final int bucket = (int) (expiry & mask);
+            timeout.next = buckets[bucket];
+            buckets[bucket] = timeout;
+        }
+    }
+
+    /**
+     * Runs the timeouts of a bucket whose rounds are over, and removes the
+     * cancelled ones
+     */
+    private void expire(final int bucket) {
+        Timeout previous = null;
+        Timeout timeout = buckets[bucket];
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            if (timeout.cancelled || timeout.rounds == 0) {
+                if (previous == null) {
+                    buckets[bucket] = next;
+                }
+                else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+                if (!timeout.cancelled) {
+                    timeout.run();
+                }
+            }
+            else {
+                timeout.rounds--;
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A task scheduled in a {@link TimingWheel}
+     */
+    public static final class Timeout {
+
+        private final Runnable task;
+
+        /**
+         * The moment the task should run, relative to the start of the wheel
+         */
+        private final long deadlineNanos;
+
+        /**
+         * Full turns of the wheel left before the task runs, and the next
+         * timeout of the same bucket, only accessed by the thread of the wheel
+         */
+        private long rounds;
+        private Timeout next;
+
+        private volatile boolean cancelled;
+        private volatile boolean expired;
+
+        private Timeout(final Runnable task, final long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancels the task, if it has not run yet
+         *
+         * @return True if the task will not run, false if it had already run
+         */
+        public boolean cancel() {
+            cancelled = true;
+            return !expired;
+        }
+
+        /**
+         * Checks if the task has already run
+         *
+         * @return True if the task was run by the wheel
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+
+        private void run() {
+            expired = true;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // A failing task must not stop the wheel for the other ones
+                final Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package se.ltu.workflow.executor.state_machine;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A transition on the context of a State Machine.
@@ -13,12 +14,38 @@ import java.util.Set;
  * freedom to create any output, either to affect the outside world or to change
  * the State Machine internals, by throwing new {@code Events} or changing the
  * value of some {@code Guard}.
+ * <p>
+ * The conditions can also be written as one logic expression that mixes events
+ * and guards, evaluated against the {@link Context} of the State Machine and
+ * created with {@link Conditions}.
+ * <p>
+ * A transition can also have a timeout, created with {@link #after(long, TimeUnit,
+ * Event, Action, int)}: when its state becomes active, the State Machine schedules
+ * its event to be posted once the timeout expires, and the transition is
+ * triggered by that event. Waiting for a timeout does not block any thread.
+ * <p>
+ * Instead of an {@link Action}, a transition created with {@link #async(Evaluable,
+ * AsyncAction, int)} has an {@link AsyncAction}, that suspends the State Machine
+ * until it completes. If the action fails, its failure event and error variable
+ * are added to the context, so the transitions of the target state can handle it.
  *
  * <h4>Implementation notes</h4>
  * This class is immutable
  */
 public class Transition {
     
+    /**
+     * The event added when an asynchronous action fails, unless the transition
+     * declares another one
+     */
+    public static final Event ASYNC_FAILURE_EVENT = new Event("Asynchronous action failed");
+    
+    /**
+     * The variable set to the message of the failure of an asynchronous action,
+     * unless the transition declares another one
+     */
+    public static final String ASYNC_ERROR_VARIABLE = "Asynchronous action error";
+    
 	/**
 	 * The logic expression formed with {@code Events}
 	 */
@@ -29,17 +56,52 @@ public class Transition {
 	 */
     private final LogicExpression<Guard, Map<String, Object>> guards;
     
+    /**
+     * The condition formed with {@code Events} and {@code Guards}, or any
+     * nested logic expression of them
+     */
+    private final Evaluable<Context> condition;
+    
     /**
      * The action triggered by this transition
      */
     private final Action action;
     
+    /**
+     * The asynchronous action triggered by this transition, null if its action
+     * is synchronous
+     */
+    private final AsyncAction asyncAction;
+    
     /**
      * The goal state, that will be the current state once the transition has
      * been executed.
      */
     private final int targetState;
     
+    /**
+     * The timeout after which the {@link #timeoutEvent} is posted, counted from
+     * the moment the state of this transition becomes active, in milliseconds.
+     * Zero if this transition has no timeout
+     */
+    private final long timeoutMillis;
+    
+    /**
+     * The event posted when the timeout expires, null if this transition has no timeout
+     */
+    private final Event timeoutEvent;
+    
+    /**
+     * The event added when the asynchronous action fails, null if the action is synchronous
+     */
+    private final Event failureEvent;
+    
+    /**
+     * The variable set to the message of the failure of the asynchronous action,
+     * null if the action is synchronous
+     */
+    private final String errorVariable;
+    
     /*
      *  In the event of several transitions meeting the requirements of being trigger, the use 
      *  of a property as priority will assure deterministic behavior.
@@ -58,8 +120,133 @@ public class Transition {
     public Transition(final LogicExpression<Event, Set<Event>> event, final LogicExpression<Guard, Map<String, Object>> guard, final Action action, final int targetState) {
         this.events = event;
         this.guards = guard;
+        this.condition = null;
         this.action = action;
+        this.asyncAction = null;
         this.targetState = targetState;
+        this.timeoutMillis = 0;
+        this.timeoutEvent = null;
+        this.failureEvent = null;
+        this.errorVariable = null;
+    }
+    
+    /**
+     * Constructs an instance of a transition with the given condition, that
+     * can mix events and guards, action and target state.
+     * 
+     * @param condition  The condition made of events and guards, a single one or
+     * a logic expression of them
+     * @param action  The action of the transition
+     * @param targetState  The state where this transition ends
+     * 
+     * @see Conditions
+     */
+    public Transition(final Evaluable<Context> condition, final Action action, final int targetState) {
+        this.events = null;
+        this.guards = null;
+        this.condition = condition;
+        this.action = action;
+        this.asyncAction = null;
+        this.targetState = targetState;
+        this.timeoutMillis = 0;
+        this.timeoutEvent = null;
+        this.failureEvent = null;
+        this.errorVariable = null;
+    }
+    
+    private Transition(final Evaluable<Context> condition, final Action action, final AsyncAction asyncAction,
+            final int targetState, final long timeoutMillis, final Event timeoutEvent, final Event failureEvent,
+            final String errorVariable) {
+        this.events = null;
+        this.guards = null;
+        this.condition = condition;
+        this.action = action;
+        this.asyncAction = asyncAction;
+        this.targetState = targetState;
+        this.timeoutMillis = timeoutMillis;
+        this.timeoutEvent = timeoutEvent;
+        this.failureEvent = failureEvent;
+        this.errorVariable = errorVariable;
+    }
+    
+    /**
+     * Creates a transition with an asynchronous action, that suspends the State
+     * Machine until the action completes. If the action fails, the
+     * {@link #ASYNC_FAILURE_EVENT} is added and the {@link #ASYNC_ERROR_VARIABLE}
+     * is set to the message of the failure.
+     * 
+     * @param condition  The condition made of events and guards, a single one or
+     * a logic expression of them
+     * @param action  The asynchronous action of the transition, not null
+     * @param targetState  The state where this transition ends
+     * @return The transition
+     * 
+     * @throws IllegalArgumentException if the action is null
+     */
+    public static Transition async(final Evaluable<Context> condition, final AsyncAction action,
+            final int targetState) {
+        return async(condition, action, targetState, ASYNC_FAILURE_EVENT, ASYNC_ERROR_VARIABLE);
+    }
+    
+    /**
+     * Creates a transition with an asynchronous action, that suspends the State
+     * Machine until the action completes.
+     * <p>
+     * The failure of the action, like a remote service that does not answer, is
+     * an outcome handled by the State Machine: once it is received, the failure
+     * event is added and the error variable is set to the message of the failure,
+     * so the transitions of the target state can be triggered by them.
+     * 
+     * @param condition  The condition made of events and guards, a single one or
+     * a logic expression of them
+     * @param action  The asynchronous action of the transition, not null
+     * @param targetState  The state where this transition ends
+     * @param failureEvent  The event added if the action fails, not null
+     * @param errorVariable  The variable set to the message of the failure, not null
+     * @return The transition
+     * 
+     * @throws IllegalArgumentException if the action, the failure event or the
+     * error variable are null
+     */
+    public static Transition async(final Evaluable<Context> condition, final AsyncAction action,
+            final int targetState, final Event failureEvent, final String errorVariable) {
+        if (action == null) {
+            throw new IllegalArgumentException("An asynchronous transition needs an action");
+        }
+        if (failureEvent == null || errorVariable == null) {
+            throw new IllegalArgumentException("An asynchronous transition needs a failure event and an error variable");
+        }
+        return new Transition(condition, null, action, targetState, 0, null, failureEvent, errorVariable);
+    }
+    
+    /**
+     * Creates a transition with a timeout, that posts an event once its state has
+     * been active for that time, and is triggered by that event.
+     * <p>
+     * The event is posted through {@link StateMachine#postEvent(String)}, by the
+     * {@link TimingWheel} of the State Machine, and it is not posted if the state is
+     * left before the timeout expires. Other transitions of the state can also be
+     * triggered by the same event.
+     * 
+     * @param timeout  The time the state must be active, it must be positive
+     * @param unit  The unit of the timeout
+     * @param event  The event posted when the timeout expires
+     * @param action  The action of the transition
+     * @param targetState  The state where this transition ends
+     * @return The transition
+     * 
+     * @throws IllegalArgumentException if the timeout is not positive or the event is null
+     */
+    public static Transition after(final long timeout, final TimeUnit unit, final Event event,
+            final Action action, final int targetState) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("The timeout of a transition must be positive");
+        }
+        if (event == null) {
+            throw new IllegalArgumentException("The timeout of a transition needs an event");
+        }
+        return new Transition(Conditions.event(event), action, null, targetState,
+                Math.max(1, unit.toMillis(timeout)), event, null, null);
     }
 
     /**
@@ -82,6 +269,16 @@ public class Transition {
         return guards;
     }
 
+    /**
+     * Provides the condition formed of {@code Events} and {@code Guards}
+     * attached to this transition
+     * 
+     * @return The condition, may be null
+     */
+    public Evaluable<Context> condition() {
+        return condition;
+    }
+
     /**
      * Provides the action executed when this transition is activated
      * 
@@ -91,6 +288,15 @@ public class Transition {
         return action;
     }
 
+    /**
+     * Provides the asynchronous action executed when this transition is activated
+     * 
+     * @return The asynchronous action, or null if the action is synchronous
+     */
+    public AsyncAction asyncAction() {
+        return asyncAction;
+    }
+
     /**
      * Provides the state that this transition points to, that will be
      * the current state once the transition is activated
@@ -100,4 +306,42 @@ public class Transition {
     public int targetState() {
         return targetState;
     }
+
+    /**
+     * Provides the timeout of this transition, counted from the moment its state
+     * becomes active
+     * 
+     * @return The timeout in milliseconds, or 0 if this transition has no timeout
+     */
+    public long timeout() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Provides the event posted when the timeout of this transition expires
+     * 
+     * @return The event, or null if this transition has no timeout
+     */
+    public Event timeoutEvent() {
+        return timeoutEvent;
+    }
+
+    /**
+     * Provides the event added when the asynchronous action of this transition fails
+     * 
+     * @return The event, or null if the action is synchronous
+     */
+    public Event failureEvent() {
+        return failureEvent;
+    }
+
+    /**
+     * Provides the variable set to the message of the failure of the asynchronous
+     * action of this transition
+     * 
+     * @return The name of the variable, or null if the action is synchronous
+     */
+    public String errorVariable() {
+        return errorVariable;
+    }
 }
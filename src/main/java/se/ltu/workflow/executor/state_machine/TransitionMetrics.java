@@ -0,0 +1,76 @@
+package se.ltu.workflow.executor.state_machine;
+
+/**
+ * The latencies measured for the states and transitions of a
+ * {@link StateMachineDefinition}, shared by all the State Machines created
+ * from it, so they describe a type of Workflow.
+ * <p>
+ * For each state, it records the time spent evaluating the conditions of its
+ * transitions, on every run of the State Machine, and the time the state was
+ * active (dwell time), each time it is left. For each transition, it records
+ * the time of its action. For an asynchronous action, only the time to start it
+ * is recorded, as the State Machine is suspended, and that time counts as the
+ * dwell time of its target state.
+ * <p>
+ * The metrics are optional, they are only measured after
+ * {@link StateMachineDefinition#enableMetrics()}, by the State Machines created
+ * after that call.
+ */
+public final class TransitionMetrics {
+
+    private final LatencyHistogram[] conditionTimes;
+    private final LatencyHistogram[] dwellTimes;
+    private final LatencyHistogram[] actionTimes;
+
+    TransitionMetrics(final int states, final int transitions) {
+        this.conditionTimes = histograms(states);
+        this.dwellTimes = histograms(states);
+        this.actionTimes = histograms(transitions);
+    }
+
+    private static LatencyHistogram[] histograms(final int length) {
+        final LatencyHistogram[] histograms = new LatencyHistogram[length];
+        for (int h = 0; h < length; h++) {
+            histograms[h] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    public int getNumberOfStates() {
+        return dwellTimes.length;
+    }
+
+    public int getNumberOfTransitions() {
+        return actionTimes.length;
+    }
+
+    /**
+     * Provides the time spent evaluating the conditions of the transitions of a state
+     *
+     * @param state  The number of the state, as ordered in the State List
+     * @return The histogram of the evaluations
+     */
+    public LatencyHistogram conditionTime(final int state) {
+        return conditionTimes[state];
+    }
+
+    /**
+     * Provides the time a state was active, until one of its transitions was executed
+     *
+     * @param state  The number of the state, as ordered in the State List
+     * @return The histogram of the visits to the state
+     */
+    public LatencyHistogram dwellTime(final int state) {
+        return dwellTimes[state];
+    }
+
+    /**
+     * Provides the time spent in the action of a transition
+     *
+     * @param transition  The number of the transition, as ordered in the Transition List
+     * @return The histogram of the actions executed
+     */
+    public LatencyHistogram actionTime(final int transition) {
+        return actionTimes[transition];
+    }
+}
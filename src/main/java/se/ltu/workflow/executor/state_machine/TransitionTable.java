@@ -0,0 +1,403 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The compiled form of the states and transitions of a {@link StateMachine}.
+ * <p>
+ * Once a State Machine has been validated, its {@code Lists} of states and
+ * transitions are turned into arrays: the indexes of the transitions of each
+ * state are stored as {@code int[]}, the transitions are stored in a
+ * {@code Transition[]} and the END states are flagged in advance. The events, guards
+ * and condition of each transition are combined into one normalized condition,
+ * whose events are interned in an {@link EventRegistry} and guard variables in a
+ * {@link VariableRegistry}, and bound to those indexes. The transitions that can
+ * never be executed from a state, the ones after a transition that is always
+ * triggered and the ones whose condition is always false, are left out of its
+ * evaluation, as reported by the {@link StateMachineAnalysis}. Each state also gets a
+ * dispatch index from its triggering events to its transitions, so only the
+ * transitions that the active events can trigger are evaluated, and the
+ * variables and events its conditions read, so their result is only evaluated
+ * again when one of them changes. This way the
+ * {@link StateMachine#update()} method, which is called on every run of the
+ * Workflow, does not need to unbox indexes or go through {@code List} lookups.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is immutable, the arrays are never exposed outside of this package
+ * and can therefore be shared by all the copies of a State Machine.
+ */
+final class TransitionTable {
+
+    /**
+     * The states of the State Machine, in the same order as they were provided
+     */
+    final State[] states;
+
+    /**
+     * The transitions of the State Machine, in the same order as they were provided
+     */
+    final Transition[] transitions;
+
+    /**
+     * For each state, the indexes of its transitions in {@link #transitions}
+     */
+    final int[][] declaredTransitions;
+
+    /**
+     * For each state, the indexes of the transitions in {@link #transitions}
+     * that can be executed from it, in order, which are the ones evaluated
+     */
+    final int[][] stateTransitions;
+
+    /**
+     * For each state, true if the state has no transitions and therefore ends
+     * the State Machine
+     */
+    final boolean[] endStates;
+
+    /**
+     * The registry with all the events used by the transitions
+     */
+    final EventRegistry registry;
+
+    /**
+     * The registry with all the environment variables used by the guards
+     */
+    final VariableRegistry variables;
+
+    /**
+     * For each transition, its normalized condition bound to the registries,
+     * or null if the transition has no conditions
+     */
+    final Evaluable<Context>[] conditions;
+
+    /**
+     * For each state, the compiled selector of its transitions, or null if the
+     * conditions are interpreted
+     *
+     * @see ConditionCompiler
+     */
+    final MethodHandle[] selectors;
+
+    /**
+     * For each transition, its compiled condition, used by the states with a
+     * dispatch index, or null if the conditions are interpreted
+     *
+     * @see ConditionCompiler
+     */
+    final MethodHandle[] compiledConditions;
+
+    /**
+     * Maximum number of transitions of a state to build its dispatch index, as
+     * the transitions are stored as bits of a {@code long}
+     */
+    private static final int MAX_DISPATCH_TRANSITIONS = Long.SIZE;
+
+    /**
+     * For each state, the bits of the positions in {@link #stateTransitions} of
+     * the transitions without triggering events, which are always evaluated
+     */
+    final long[] eventlessTransitions;
+
+    /**
+     * For each state and event index, the bits of the positions in
+     * {@link #stateTransitions} of the transitions that the event can trigger.
+     * The entry of a state is null if it has no dispatch index, and then all
+     * its transitions are evaluated.
+     */
+    final long[][] eventTransitions;
+
+    /**
+     * For each state, the indexes of its transitions with a timeout, armed when
+     * the state becomes active. The entry of a state is null if it has none
+     */
+    final int[][] timedTransitions;
+
+    /**
+     * For each transition, the indexes of the events referenced by its condition,
+     * that it consumes when the events are queued
+     */
+    final int[][] consumedEvents;
+
+    /**
+     * For each state, the slots of the variables read by the conditions of its
+     * transitions. The entry of a state is null if any of those conditions is not
+     * {@link Conditions#isTracked(Evaluable) tracked}, or if it is an END state.
+     */
+    final int[][] trackedSlots;
+
+    /**
+     * For each state with {@link #trackedSlots}, the mask of the events read by
+     * the conditions of its transitions, one bit per event index
+     */
+    final long[][] trackedEvents;
+
+    /**
+     * True if any transition has a timeout
+     */
+    final boolean hasTimeouts;
+
+    private TransitionTable(State[] states, Transition[] transitions, int[][] declaredTransitions,
+            int[][] stateTransitions, boolean[] endStates, EventRegistry registry, VariableRegistry variables,
+            Evaluable<Context>[] conditions, MethodHandle[] selectors, MethodHandle[] compiledConditions,
+            long[] eventlessTransitions, long[][] eventTransitions, int[][] timedTransitions,
+            int[][] consumedEvents, int[][] trackedSlots, long[][] trackedEvents) {
+        this.states = states;
+        this.transitions = transitions;
+        this.declaredTransitions = declaredTransitions;
+        this.stateTransitions = stateTransitions;
+        this.endStates = endStates;
+        this.registry = registry;
+        this.variables = variables;
+        this.conditions = conditions;
+        this.selectors = selectors;
+        this.compiledConditions = compiledConditions;
+        this.eventlessTransitions = eventlessTransitions;
+        this.eventTransitions = eventTransitions;
+        this.timedTransitions = timedTransitions;
+        this.consumedEvents = consumedEvents;
+        this.trackedSlots = trackedSlots;
+        this.trackedEvents = trackedEvents;
+        boolean timed = false;
+        for (final int[] t : timedTransitions) {
+            timed |= t != null;
+        }
+        this.hasTimeouts = timed;
+    }
+
+    /**
+     * Compiles the {@code Lists} of states and transitions into a table.
+     * <p>
+     * The arguments should have been validated before, as this method does not
+     * check the ranges of the indexes.
+     *
+     * @param states  The list of states of the State Machine
+     * @param transitions  The list of transitions of the State Machine
+     * @return The table representing the same State Machine structure
+     *
+     * @throws IllegalArgumentException if any logic expression of the transitions
+     * has more than one operand and no operator
+     */
+    @SuppressWarnings("unchecked")
+    static TransitionTable compile(List<State> states, List<Transition> transitions) {
+        final State[] stateArray = states.toArray(new State[states.size()]);
+        final Transition[] transitionArray = transitions.toArray(new Transition[transitions.size()]);
+        final int[][] declaredTransitions = new int[stateArray.length][];
+        final boolean[] endStates = new boolean[stateArray.length];
+
+        for (int s = 0; s < stateArray.length; s++) {
+            final List<Integer> indexes = stateArray[s].transitionsIndexes();
+            /* Before adding and END state flag to the state object, a state with an empty
+             * list of transitions is considered an END state
+             */
+            if (indexes == null || indexes.isEmpty()) {
+                declaredTransitions[s] = new int[0];
+                endStates[s] = true;
+                continue;
+            }
+            final int[] compiled = new int[indexes.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = indexes.get(i);
+            }
+            declaredTransitions[s] = compiled;
+        }
+
+        @SuppressWarnings("rawtypes")
+        final Evaluable<Context>[] conditions = new Evaluable[transitionArray.length];
+        for (int t = 0; t < transitionArray.length; t++) {
+            conditions[t] = Conditions.of(transitionArray[t]);
+        }
+        final EventRegistry registry = EventRegistry.of(conditions);
+        final VariableRegistry variables = VariableRegistry.of(conditions);
+        for (int t = 0; t < conditions.length; t++) {
+            conditions[t] = Conditions.bind(conditions[t], registry, variables);
+        }
+        final int[][] stateTransitions = new int[stateArray.length][];
+        for (int s = 0; s < stateArray.length; s++) {
+            stateTransitions[s] = executable(declaredTransitions[s], conditions);
+        }
+        final MethodHandle[] compiledConditions = ConditionCompiler.isEnabled()
+                ? ConditionCompiler.compileConditions(conditions)
+                : null;
+        final MethodHandle[] selectors = compiledConditions != null
+                ? ConditionCompiler.compile(stateTransitions, compiledConditions)
+                : null;
+        final long[] eventlessTransitions = new long[stateArray.length];
+        final long[][] eventTransitions = new long[stateArray.length][];
+        for (int s = 0; s < stateArray.length; s++) {
+            final int[] candidates = stateTransitions[s];
+            if (candidates.length == 0 || candidates.length > MAX_DISPATCH_TRANSITIONS) {
+                continue;
+            }
+            final long[] byEvent = new long[registry.size()];
+            boolean dispatched = false;
+            for (int i = 0; i < candidates.length; i++) {
+                final int[] trigger = Conditions.triggerEvents(conditions[candidates[i]]);
+                if (trigger == null) {
+                    eventlessTransitions[s] |= 1L << i;
+                    continue;
+                }
+                for (final int event : trigger) {
+                    byEvent[event] |= 1L << i;
+                }
+                dispatched = true;
+            }
+            // States without transitions triggered by events are evaluated in order
+            if (dispatched) {
+                eventTransitions[s] = byEvent;
+            }
+        }
+        final int[][] timedTransitions = new int[stateArray.length][];
+        for (int s = 0; s < stateArray.length; s++) {
+            final int[] timed = Arrays.stream(stateTransitions[s])
+                    .filter(t -> transitionArray[t].timeout() > 0)
+                    .toArray();
+            timedTransitions[s] = timed.length == 0 ? null : timed;
+        }
+        final int[][] consumedEvents = new int[transitionArray.length][];
+        for (int t = 0; t < transitionArray.length; t++) {
+            final List<Event> referenced = new ArrayList<>();
+            Conditions.collectEvents(conditions[t], referenced);
+            consumedEvents[t] = referenced.stream()
+                    .mapToInt(e -> registry.indexOf(e.getName()))
+                    .filter(i -> i >= 0)
+                    .distinct()
+                    .toArray();
+        }
+        final int[][] trackedSlots = new int[stateArray.length][];
+        final long[][] trackedEvents = new long[stateArray.length][];
+        for (int s = 0; s < stateArray.length; s++) {
+            final int[] candidates = stateTransitions[s];
+            if (endStates[s] || !Arrays.stream(candidates).allMatch(t -> Conditions.isTracked(conditions[t]))) {
+                continue;
+            }
+            final List<String> read = new ArrayList<>();
+            final long[] mask = new long[(registry.size() + 63) >>> 6];
+            for (final int t : candidates) {
+                Conditions.collectVariables(conditions[t], read);
+                for (final int event : consumedEvents[t]) {
+                    mask[event >>> 6] |= 1L << event;
+                }
+            }
+            trackedSlots[s] = read.stream().mapToInt(variables::slotOf).distinct().toArray();
+            trackedEvents[s] = mask;
+        }
+        return new TransitionTable(stateArray, transitionArray, declaredTransitions, stateTransitions, endStates,
+                registry, variables, conditions, selectors, compiledConditions, eventlessTransitions,
+                eventTransitions, timedTransitions, consumedEvents, trackedSlots, trackedEvents);
+    }
+
+    /**
+     * Finds the transitions of a state that can be executed: the ones before the
+     * first transition that is always triggered, including it, whose condition
+     * is not always false
+     *
+     * @param candidates  The indexes of the transitions of the state, in order
+     * @param conditions  The bound condition of each transition
+     * @return The indexes of the transitions that can be executed, in order
+     */
+    private static int[] executable(final int[] candidates, final Evaluable<Context>[] conditions) {
+        final int[] executable = new int[candidates.length];
+        int count = 0;
+        for (final int t : candidates) {
+            final Evaluable<Context> condition = conditions[t];
+            if (condition instanceof Conditions.Constant && !((Conditions.Constant) condition).value) {
+                continue;
+            }
+            executable[count++] = t;
+            if (condition == null || condition instanceof Conditions.Constant) {
+                break;
+            }
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(executable, count);
+    }
+
+    /**
+     * Provides the number of states in this table
+     *
+     * @return The number of states
+     */
+    int numberOfStates() {
+        return states.length;
+    }
+
+    /**
+     * Checks if a state ends the State Machine
+     *
+     * @param state  The index of the state
+     * @return True if the state has no transitions, false otherwise
+     */
+    boolean isEndState(int state) {
+        return endStates[state];
+    }
+
+    /**
+     * Finds the first transition of a state whose condition is satisfied.
+     * <p>
+     * If the state has a dispatch index, only the transitions without triggering
+     * events and the ones triggered by the active events are evaluated, keeping
+     * their order, with their compiled conditions if there are. Otherwise the
+     * compiled selector of the state is used if there is one, or all the
+     * transitions are evaluated in order.
+     *
+     * @param state  The index of the state
+     * @param context  The context the conditions are evaluated against
+     * @return The index of the transition in {@link #transitions}, or -1 if none
+     * is satisfied
+     */
+    int select(int state, Context context) {
+        final long[] byEvent = eventTransitions[state];
+        final Set<Event> events = context.getEvents();
+        if (byEvent != null && events instanceof EventSet && ((EventSet) events).registry == registry) {
+            return dispatch(state, byEvent, (EventSet) events, context);
+        }
+        if (selectors != null) {
+            return ConditionCompiler.select(selectors[state], context);
+        }
+        final int[] candidates = stateTransitions[state];
+        for (int i = 0; i < candidates.length; i++) {
+            final Evaluable<Context> condition = conditions[candidates[i]];
+            // Transitions without conditions are always triggered
+            if (condition == null || condition.evaluate(context)) {
+                return candidates[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Evaluates the transitions of a state selected by its dispatch index
+     */
+    private int dispatch(int state, long[] byEvent, EventSet events, Context context) {
+        long candidates = eventlessTransitions[state];
+        for (int e = events.nextIndex(0); e >= 0; e = events.nextIndex(e + 1)) {
+            candidates |= byEvent[e];
+        }
+        final int[] positions = stateTransitions[state];
+        while (candidates != 0) {
+            final int transition = positions[Long.numberOfTrailingZeros(candidates)];
+            final Evaluable<Context> condition = conditions[transition];
+            if (condition == null || (compiledConditions != null
+                    ? ConditionCompiler.test(compiledConditions[transition], context)
+                    : condition.evaluate(context))) {
+                return transition;
+            }
+            candidates &= candidates - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Provides the indexes of the transitions attached to a state
+     *
+     * @param state  The index of the state
+     * @return The array of indexes, must not be modified by the caller
+     */
+    int[] transitionsOf(int state) {
+        return declaredTransitions[state];
+    }
+}
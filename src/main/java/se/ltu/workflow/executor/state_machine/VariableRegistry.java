@@ -0,0 +1,92 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the names of the environment variables used by the {@link Guard guards}
+ * of a {@link StateMachine} to small integers.
+ * <p>
+ * The registry is filled when the State Machine is constructed, with every
+ * variable present in the conditions of its transitions. Each different name
+ * receives a slot, starting from 0, that is used to store the value of the
+ * variable in an array in {@link Environment}.
+ * <p>
+ * Variables that are not part of any guard can still be added to the
+ * environment, but as they can never trigger a transition they are not interned.
+ *
+ * <h4>Implementation notes</h4>
+ * This class is immutable
+ */
+final class VariableRegistry {
+
+    /**
+     * The slot of each variable name
+     */
+    private final Map<String, Integer> slots;
+
+    /**
+     * The variable names, ordered by slot
+     */
+    private final String[] names;
+
+    private VariableRegistry(Map<String, Integer> slots, String[] names) {
+        this.slots = slots;
+        this.names = names;
+    }
+
+    /**
+     * Creates the registry of all the variables present in the guards of the
+     * conditions of the transitions.
+     *
+     * @param conditions  The conditions of the transitions, may contain null
+     * @return The registry with the variables interned in order of appearance
+     */
+    static VariableRegistry of(Evaluable<Context>[] conditions) {
+        final List<String> found = new ArrayList<>();
+        for (final Evaluable<Context> condition : conditions) {
+            Conditions.collectVariables(condition, found);
+        }
+        final Map<String, Integer> slots = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+        for (final String variable : found) {
+            if (!slots.containsKey(variable)) {
+                slots.put(variable, names.size());
+                names.add(variable);
+            }
+        }
+        return new VariableRegistry(slots, names.toArray(new String[names.size()]));
+    }
+
+    /**
+     * Provides the slot of a variable name
+     *
+     * @param name  The name of the variable, may be null
+     * @return The slot of the variable, or -1 if the name is not part of this registry
+     */
+    int slotOf(Object name) {
+        final Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Provides the name of the variable interned with a slot
+     *
+     * @param slot  The slot of the variable
+     * @return The variable name
+     */
+    String nameAt(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Provides the number of variables interned
+     *
+     * @return The number of different variable names
+     */
+    int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,66 @@
+package se.ltu.workflow.executor.definition;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import se.ltu.workflow.executor.demo.FischertechnikWorkflow;
+import se.ltu.workflow.executor.service.Workflow;
+
+class ActionRegistryTest {
+
+	Path directory;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		directory = Files.createTempDirectory("definitions");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	final void testDefinitionsLoadedThroughSpring() throws Exception {
+		Files.writeString(directory.resolve("sorting.json"), WorkflowDefinitionsTest.SORTING);
+		try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+				ActionRegistry.class, WorkflowDefinitions.class, SorterActions.class)) {
+			List<Workflow> workflows = context.getBean(WorkflowDefinitions.class)
+					.load(directory, directory.resolve("cache"));
+			assertEquals(1, workflows.size(),
+					"The actions of the registrar beans should be registered before the definitions are loaded");
+		}
+	}
+
+	@Test
+	final void testFischertechnikActions() {
+		ActionRegistry registry = new ActionRegistry();
+		new FischertechnikWorkflow().registerActions(registry);
+		assertNotNull(registry.action("fischertechnik.milling.mill"), "Should register the milling step");
+		assertNotNull(registry.action("fischertechnik.millingAndDrilling.checkInput"));
+		assertNotNull(registry.action("fischertechnik.drilling.drill"));
+		assertThrows(IllegalArgumentException.class, () -> registry.action("fischertechnik.milling.7"),
+				"Actions should be named by their step, not by the index of their transition");
+	}
+
+	static class SorterActions implements ActionRegistrar {
+
+		@Override
+		public void registerActions(ActionRegistry registry) {
+			registry.register("sorter.start", (env, events) -> env.put("count", 0));
+			registry.register("sorter.count", (env, events) -> env.put("count", (Integer) env.get("count") + 1));
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package se.ltu.workflow.executor.definition;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.service.Workflow;
+import se.ltu.workflow.executor.state_machine.Event;
+import se.ltu.workflow.executor.state_machine.StateMachine;
+import se.ltu.workflow.executor.state_machine.StateMachine.EventConsumption;
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+import se.ltu.workflow.executor.state_machine.Transition;
+
+class WorkflowDefinitionsTest {
+
+	static final String SORTING = "{\n"
+			+ "  \"name\": \"sorting\",\n"
+			+ "  \"config\": { \"color\": [\"String\"] },\n"
+			+ "  \"states\": [\n"
+			+ "    { \"name\": \"Idle\", \"transitions\": [0] },\n"
+			+ "    { \"name\": \"Sorting\", \"transitions\": [1, 2] },\n"
+			+ "    { \"name\": \"Done\" }\n"
+			+ "  ],\n"
+			+ "  \"transitions\": [\n"
+			+ "    { \"condition\": { \"and\": [ { \"event\": \"start\" },\n"
+			+ "        { \"guard\": { \"variable\": \"mode\", \"value\": \"auto\" } } ] },\n"
+			+ "      \"action\": \"sorter.start\", \"target\": 1 },\n"
+			+ "    { \"condition\": { \"numeric\": { \"variable\": \"count\", \"comparison\": \"GREATER_OR_EQUAL\","
+			+ " \"value\": 3 } },\n"
+			+ "      \"target\": 2 },\n"
+			+ "    { \"condition\": { \"not\": { \"event\": \"stop\" } }, \"action\": \"sorter.count\", \"target\": 1 }\n"
+			+ "  ]\n"
+			+ "}\n";
+
+	Path directory;
+	ActionRegistry actions;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		directory = Files.createTempDirectory("definitions");
+		actions = new ActionRegistry();
+		actions.register("sorter.start", (env, events) -> env.put("count", 0));
+		actions.register("sorter.count", (env, events) -> env.put("count", (Integer) env.get("count") + 1));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	final void testLoadDefinition() throws Exception {
+		Files.writeString(directory.resolve("sorting.json"), SORTING);
+		List<Workflow> workflows = new WorkflowDefinitions(actions).load(directory, directory.resolve("cache"));
+
+		assertEquals(1, workflows.size());
+		Workflow sorting = workflows.get(0);
+		assertEquals("sorting", sorting.getWorkflowName());
+		assertEquals(List.of("String"), sorting.getWorkflowConfig().get("color"));
+
+		StateMachine machine = new StateMachine(sorting.getWorkflowLogic().getDefinition());
+		machine.setVariable("mode", "auto");
+		machine.setEvent("start");
+		assertEquals(UpdateAction.END, machine.runUntilQuiescent(20, null),
+				"The State Machine defined should count until it ends");
+		assertEquals(3, machine.getEnvironment().get("count"));
+		assertEquals("Done", machine.getActiveState().name());
+	}
+
+	@Test
+	final void testCompositeStates() throws Exception {
+		actions.register("lamp.on", (env, events) -> env.put("lamp", "on"));
+		actions.register("lamp.off", (env, events) -> env.put("lamp", "off"));
+		String composite = SORTING.substring(0, SORTING.lastIndexOf("  ]"))
+				+ "  ],\n"
+				+ "  \"composites\": [ { \"name\": \"Working\", \"states\": [1], \"transitions\": [],"
+				+ " \"entry\": \"lamp.on\", \"exit\": \"lamp.off\" } ]\n"
+				+ "}\n";
+		Files.writeString(directory.resolve("sorting.json"), composite);
+		Workflow sorting = new WorkflowDefinitions(actions).load(directory, directory.resolve("cache")).get(0);
+		assertEquals(1, sorting.getWorkflowLogic().getDefinition().getCompositeStates().size());
+
+		StateMachine machine = new StateMachine(sorting.getWorkflowLogic().getDefinition());
+		machine.setVariable("mode", "auto");
+		machine.setEvent("start");
+		machine.update();
+		assertEquals("on", machine.getEnvironment().get("lamp"), "Entering Sorting should enter Working");
+		assertEquals(UpdateAction.END, machine.runUntilQuiescent(20, null));
+		assertEquals("off", machine.getEnvironment().get("lamp"), "Reaching Done should exit Working");
+	}
+
+	@Test
+	final void testEventConsumption() throws Exception {
+		Files.writeString(directory.resolve("sorting.json"),
+				SORTING.replace("\"name\": \"sorting\",", "\"name\": \"sorting\", \"eventConsumption\": \"QUEUE\","));
+		Workflow template = new WorkflowDefinitions(actions).load(directory, directory.resolve("cache")).get(0);
+		assertEquals(EventConsumption.QUEUE, template.getWorkflowLogic().getDefinition().getEventConsumption());
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			template.getWorkflowLogic().setRegionPool(pool);
+			StateMachine machine = new Workflow(template, null).getWorkflowLogic();
+			assertEquals(EventConsumption.QUEUE, machine.getEventConsumption(),
+					"Each execution should queue the events as the definition sets");
+			assertSame(pool, machine.getRegionPool(), "Each execution should keep the settings of the template");
+		} finally {
+			pool.shutdown();
+		}
+
+		Files.writeString(directory.resolve("sorting.json"),
+				SORTING.replace("\"name\": \"sorting\",", "\"name\": \"sorting\", \"eventConsumption\": \"FIFO\","));
+		assertTrue(new WorkflowDefinitions(actions).load(directory, directory.resolve("cache")).isEmpty(),
+				"An unknown event consumption should be rejected");
+	}
+
+	@Test
+	final void testAsyncFailure() throws Exception {
+		actions.registerAsync("sorter.read", (env, events) -> CompletableFuture.failedFuture(new Exception("Offline")));
+		Files.writeString(directory.resolve("sorting.json"), SORTING.replace(
+				"\"action\": \"sorter.start\", \"target\": 1 }",
+				"\"asyncAction\": \"sorter.read\", \"failureEvent\": \"read-failed\", \"target\": 1 }"));
+		Workflow sorting = new WorkflowDefinitions(actions).load(directory, directory.resolve("cache")).get(0);
+		Transition read = sorting.getWorkflowLogic().getDefinition().getTransitions().get(0);
+		assertEquals(new Event("read-failed"), read.failureEvent());
+		assertEquals(Transition.ASYNC_ERROR_VARIABLE, read.errorVariable(), "The error variable should default");
+	}
+
+	@Test
+	final void testCacheReused() throws Exception {
+		Path source = directory.resolve("sorting.json");
+		Path cache = directory.resolve("cache");
+		Files.writeString(source, SORTING);
+		new WorkflowDefinitions(actions).load(directory, cache);
+		assertTrue(Files.exists(cache), "The compiled definitions should be cached");
+
+		// Same size and modification time, but not valid JSON: only the cache can provide it
+		FileTime modified = Files.getLastModifiedTime(source);
+		Files.writeString(source, " ".repeat(SORTING.length()));
+		Files.setLastModifiedTime(source, modified);
+		assertEquals(1, new WorkflowDefinitions(actions).load(directory, cache).size(),
+				"The definition should be decoded from the cache");
+
+		// A changed source is compiled again
+		Files.writeString(source, SORTING.replace("sorting", "sorting-v2"));
+		Files.setLastModifiedTime(source, FileTime.fromMillis(modified.toMillis() + 1000));
+		assertEquals("sorting-v2",
+				new WorkflowDefinitions(actions).load(directory, cache).get(0).getWorkflowName());
+	}
+
+	@Test
+	final void testInvalidDefinitionSkipped() throws Exception {
+		Files.writeString(directory.resolve("sorting.json"), SORTING);
+		Files.writeString(directory.resolve("unknown-action.json"),
+				SORTING.replace("sorter.start", "sorter.missing"));
+		Files.writeString(directory.resolve("no-target.json"), SORTING.replace("\"target\": 2", "\"goal\": 2"));
+
+		List<Workflow> workflows = new WorkflowDefinitions(actions).load(directory, directory.resolve("cache"));
+		assertEquals(1, workflows.size(), "Only the valid definition should be loaded");
+	}
+}
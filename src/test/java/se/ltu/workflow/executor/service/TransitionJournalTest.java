@@ -0,0 +1,109 @@
+package se.ltu.workflow.executor.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.Conditions;
+import se.ltu.workflow.executor.state_machine.Event;
+import se.ltu.workflow.executor.state_machine.State;
+import se.ltu.workflow.executor.state_machine.StateMachine;
+import se.ltu.workflow.executor.state_machine.StepListener;
+import se.ltu.workflow.executor.state_machine.Transition;
+
+class TransitionJournalTest {
+
+	Path directory;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		directory = Files.createTempDirectory("journal");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	final void testSegmentRotation() throws IOException {
+		final int steps = 500;
+		try (TransitionJournal journal = new TransitionJournal(directory, 4096, 100)) {
+			for (int step = 0; step < steps; step++) {
+				journal.append(step % 2, step / 2, step, step + 1, 0, step, List.of("value"));
+			}
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			assertTrue(files.count() > 1, "The records should not fit in one segment");
+		}
+
+		List<TransitionJournal.Record> path = TransitionJournal.readPath(directory, 1);
+		assertEquals(steps / 2, path.size(), "All the records of the Workflow should be read");
+		for (int i = 0; i < path.size(); i++) {
+			assertEquals(1, path.get(i).getWorkflowId());
+			assertEquals(i, path.get(i).getStep(), "The records should be read in the order they were written");
+			assertEquals(List.of("value"), path.get(i).getChangedKeys());
+		}
+	}
+
+	@Test
+	final void testOldSegmentsDeleted() throws IOException {
+		try (TransitionJournal journal = new TransitionJournal(directory, 4096, 2)) {
+			for (int step = 0; step < 1000; step++) {
+				journal.append(0, step, 0, 0, 0, step, List.of());
+			}
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(2, files.count(), "Only the newest segments should be kept");
+		}
+		List<TransitionJournal.Record> path = TransitionJournal.readPath(directory, 0);
+		assertEquals(999, path.get(path.size() - 1).getStep(), "The newest records should be kept");
+	}
+
+	@Test
+	final void testLongKeyRejected() throws IOException {
+		try (TransitionJournal journal = new TransitionJournal(directory, 1 << 17, 1)) {
+			journal.append(0, 0, 0, 1, 0, 0, List.of("value"));
+			assertThrows(IllegalArgumentException.class,
+					() -> journal.append(0, 1, 1, 2, 0, 1, List.of("x".repeat(Short.MAX_VALUE + 1))),
+					"A key whose length does not fit in a short should be rejected");
+			journal.append(0, 2, 1, 2, 0, 2, List.of("value"));
+		}
+		List<TransitionJournal.Record> path = TransitionJournal.readPath(directory, 0);
+		assertEquals(2, path.size(), "The segment should still be readable");
+		assertEquals(2, path.get(1).getStep());
+	}
+
+	@Test
+	final void testRecorder() throws IOException {
+		StateMachine machine = new StateMachine(
+				List.of(new State("Idle", List.of(0)), new State("Done", List.of())),
+				List.of(new Transition(Conditions.event(new Event("start")),
+						(env, events) -> env.put("result", "ok"), 1)));
+		machine.setEvent("start");
+
+		try (TransitionJournal journal = new TransitionJournal(directory, 4096, 1)) {
+			StepListener recorder = journal.recorder(7, machine);
+			machine.runUntilQuiescent(10, recorder);
+		}
+
+		List<TransitionJournal.Record> path = TransitionJournal.readPath(directory, 7);
+		assertEquals(1, path.size());
+		assertEquals(0, path.get(0).getFromState());
+		assertEquals(1, path.get(0).getToState());
+		assertEquals(List.of("result"), path.get(0).getChangedKeys(),
+				"The variables set by the action should be recorded");
+		assertTrue(TransitionJournal.readPath(directory, 8).isEmpty());
+	}
+}
@@ -0,0 +1,151 @@
+package se.ltu.workflow.executor.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.Conditions;
+import se.ltu.workflow.executor.state_machine.Event;
+import se.ltu.workflow.executor.state_machine.State;
+import se.ltu.workflow.executor.state_machine.StateMachine;
+import se.ltu.workflow.executor.state_machine.StepListener;
+import se.ltu.workflow.executor.state_machine.Transition;
+
+class WorkflowCheckpointsTest {
+
+	Path directory;
+	Workflow template;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		directory = Files.createTempDirectory("checkpoints");
+		StateMachine machine = new StateMachine(
+				List.of(new State("Idle", List.of(0)), new State("Counting", List.of(1, 2)),
+						new State("Done", List.of())),
+				List.of(new Transition(Conditions.event(new Event("start")),
+								(env, events) -> env.put("count", 0), 1),
+						new Transition(Conditions.event(new Event("tick")),
+								(env, events) -> {
+									env.put("count", (Integer) env.get("count") + 1);
+									env.remove("temporary");
+								}, 1),
+						new Transition(Conditions.event(new Event("stop")), null, 2)));
+		template = new Workflow("Counter", Map.of(), machine);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	/**
+	 * Runs the State Machine of the Workflow, after setting an event
+	 */
+	private void run(QueuedWorkflow workflow, String event, StepListener recorder) {
+		workflow.getWorkflowLogic().setEvent(event);
+		workflow.getWorkflowLogic().runUntilQuiescent(10, recorder);
+	}
+
+	@Test
+	final void testRestoreAfterTransitions() throws IOException {
+		QueuedWorkflow workflow = new QueuedWorkflow(new Workflow(template, Map.of("mode", List.of("fast"))));
+		WorkflowCheckpoints checkpoints = new WorkflowCheckpoints(directory, 100);
+		checkpoints.track(workflow);
+		StepListener recorder = checkpoints.recorder(workflow);
+
+		run(workflow, "start", recorder);
+		workflow.getWorkflowLogic().setVariable("temporary", "value");
+		run(workflow, "tick", recorder);
+		run(workflow, "tick", recorder);
+		workflow.getWorkflowLogic().setEvent("pending");
+		// The Workflow Executor stops without finishing the Workflow
+		checkpoints.close();
+
+		List<WorkflowCheckpoints.Checkpoint> restored = new WorkflowCheckpoints(directory, 100).restore();
+		assertEquals(1, restored.size());
+		WorkflowCheckpoints.Checkpoint checkpoint = restored.get(0);
+		assertEquals("Counter", checkpoint.getWorkflowName());
+		assertEquals(List.of("fast"), checkpoint.getWorkflowConfig().get("mode"));
+		assertEquals(workflow.getQueueTime().toInstant().toEpochMilli(),
+				checkpoint.getQueueTime().toInstant().toEpochMilli());
+		assertArrayEquals(new int[] {1}, checkpoint.getStates());
+		assertEquals(Map.of("count", 2), checkpoint.getVariables(),
+				"The variables removed should not be restored");
+
+		StateMachine machine = new StateMachine(template.getWorkflowLogic().getDefinition());
+		checkpoint.applyTo(machine);
+		assertEquals(1, machine.getCurrentState());
+		machine.setEvent("stop");
+		machine.runUntilQuiescent(10, null);
+		assertEquals(2, machine.getCurrentState(), "The restored Workflow should resume its execution");
+	}
+
+	@Test
+	final void testCompaction() throws IOException {
+		QueuedWorkflow workflow = new QueuedWorkflow(new Workflow(template, null));
+		WorkflowCheckpoints checkpoints = new WorkflowCheckpoints(directory, 3);
+		checkpoints.track(workflow);
+		StepListener recorder = checkpoints.recorder(workflow);
+
+		run(workflow, "start", recorder);
+		long compactedSize = 0;
+		for (int i = 0; i < 20; i++) {
+			run(workflow, "tick", recorder);
+			try (Stream<Path> files = Files.list(directory)) {
+				compactedSize = Math.max(compactedSize, files.findFirst().get().toFile().length());
+			}
+		}
+		checkpoints.close();
+
+		WorkflowCheckpoints.Checkpoint checkpoint = new WorkflowCheckpoints(directory, 3).restore().get(0);
+		assertEquals(20, checkpoint.getVariables().get("count"));
+		assertTrue(compactedSize < 400, "The checkpoint file should be compacted, but it reached "
+				+ compactedSize + " bytes");
+	}
+
+	@Test
+	final void testRecordCutByCrash() throws IOException {
+		QueuedWorkflow workflow = new QueuedWorkflow(new Workflow(template, null));
+		WorkflowCheckpoints checkpoints = new WorkflowCheckpoints(directory, 100);
+		checkpoints.track(workflow);
+		run(workflow, "start", checkpoints.recorder(workflow));
+		checkpoints.close();
+
+		Path file;
+		try (Stream<Path> files = Files.list(directory)) {
+			file = files.findFirst().get();
+		}
+		// Half of a record, with the length of a complete one
+		try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+			out.write(new byte[] {0, 0, 0, 64, 2, 0, 0});
+		}
+
+		WorkflowCheckpoints.Checkpoint checkpoint = new WorkflowCheckpoints(directory, 100).restore().get(0);
+		assertArrayEquals(new int[] {1}, checkpoint.getStates(), "The complete records should be restored");
+		assertEquals(0, checkpoint.getVariables().get("count"));
+	}
+
+	@Test
+	final void testRemoveFinished() throws IOException {
+		QueuedWorkflow workflow = new QueuedWorkflow(new Workflow(template, null));
+		WorkflowCheckpoints checkpoints = new WorkflowCheckpoints(directory, 100);
+		checkpoints.track(workflow);
+		checkpoints.remove(workflow);
+
+		assertTrue(checkpoints.restore().isEmpty(), "A finished Workflow should not be restored");
+	}
+}
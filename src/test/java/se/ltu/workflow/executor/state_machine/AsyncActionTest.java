@@ -0,0 +1,83 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+
+class AsyncActionTest {
+
+	CompletableFuture<ActionResult> pending;
+	StateMachine machineUnderTest;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		pending = new CompletableFuture<>();
+		Event start = new Event("start");
+		Event read = new Event("read");
+		machineUnderTest = new StateMachine(
+				List.of(new State("Idle", List.of(0)), new State("Reading", List.of(1)),
+						new State("Done", List.of())),
+				List.of(Transition.async(Conditions.event(start), (env, events) -> pending, 1),
+						new Transition(Conditions.event(read), null, 2)));
+	}
+
+	@Test
+	final void testSuspendedUntilCompletion() {
+		machineUnderTest.setEvent("start");
+		assertEquals(UpdateAction.TRANSITION, machineUnderTest.update().getUpdateAction());
+		assertTrue(machineUnderTest.isSuspended());
+		assertEquals(UpdateAction.SUSPENDED, machineUnderTest.runUntilQuiescent(10, null),
+				"The State Machine should not check transitions while the action is pending");
+
+		long seen = machineUnderTest.getChangeCount();
+		pending.complete(ActionResult.of(Map.of("value", 42), new Event("read")));
+		assertTrue(seen < machineUnderTest.getChangeCount(), "The completion should signal a change");
+
+		assertEquals(UpdateAction.END, machineUnderTest.runUntilQuiescent(10, null),
+				"The events of the action should trigger the next transition");
+		assertEquals(2, machineUnderTest.getCurrentState());
+		assertEquals(42, machineUnderTest.getEnvironment().get("value"),
+				"The variables of the action should be added to the environment");
+		assertFalse(machineUnderTest.isSuspended());
+	}
+
+	@Test
+	final void testFailedAction() {
+		machineUnderTest.setEvent("start");
+		machineUnderTest.update();
+		pending.completeExceptionally(new RuntimeException("Service unavailable"));
+
+		assertEquals(UpdateAction.NO_TRANSITION, machineUnderTest.update().getUpdateAction(),
+				"The failure of the asynchronous action should not be thrown");
+		assertFalse(machineUnderTest.isSuspended());
+		assertTrue(machineUnderTest.getEvents().contains(Transition.ASYNC_FAILURE_EVENT),
+				"The failure should be received as an event");
+		assertEquals("Service unavailable", machineUnderTest.getEnvironment().get(Transition.ASYNC_ERROR_VARIABLE));
+	}
+
+	@Test
+	final void testFailureRouted() {
+		CompletableFuture<ActionResult> failing = new CompletableFuture<>();
+		StateMachine machine = new StateMachine(
+				List.of(new State("Idle", List.of(0)), new State("Reading", List.of(1, 2)),
+						new State("Done", List.of()), new State("Failed", List.of())),
+				List.of(Transition.async(Conditions.event(new Event("start")), (env, events) -> failing, 1,
+								new Event("read-failed"), "readError"),
+						new Transition(Conditions.event(new Event("read")), null, 2),
+						new Transition(Conditions.event(new Event("read-failed")), null, 3)));
+		machine.setEvent("start");
+		machine.update();
+		failing.completeExceptionally(new IllegalStateException("Timed out"));
+
+		assertEquals(UpdateAction.END, machine.runUntilQuiescent(10, null));
+		assertEquals(3, machine.getCurrentState(), "The failure event should trigger the handling transition");
+		assertEquals("Timed out", machine.getEnvironment().get("readError"));
+	}
+}
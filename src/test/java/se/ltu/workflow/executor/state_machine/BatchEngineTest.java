@@ -0,0 +1,100 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.NumericGuard.Comparison;
+
+class BatchEngineTest {
+
+	StateMachineDefinition definition;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		definition = new StateMachineDefinition(
+				Arrays.asList(
+					new State("Idle", 0),
+					new State("Counting", 1, 2),
+					new State("End")
+					),
+				Arrays.asList(
+					new Transition(Conditions.event(new Event("start")),
+							(environment, events) -> environment.put("count", 0), 1),
+					new Transition(Conditions.guard(new NumericGuard("count", Comparison.GREATER_OR_EQUAL, 3)),
+							(environment, events) -> environment.put("note", "done"), 2),
+					new Transition(Conditions.guard(new Guard("paused", false)),
+							(environment, events) -> environment.put("count", (Integer) environment.get("count") + 1),
+							1)
+					),
+				List.of(0));
+	}
+
+	@Test
+	final void testSameRunsAsStateMachine() {
+		BatchEngine engine = new BatchEngine(definition, 1);
+		StateMachine machine = new StateMachine(definition);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, engine.add(), "Instances should be indexed in order, growing the capacity");
+		}
+		engine.setEvent(1, "start");
+		engine.setVariable(1, "paused", false);
+		machine.setEvent("start");
+		machine.setVariable("paused", false);
+
+		for (int run = 0; run < 6; run++) {
+			machine.update();
+			int stepped = engine.stepAll();
+			assertEquals(machine.getCurrentState(), engine.getCurrentState(1),
+					"The instance should follow the same states as a State Machine, in run " + run);
+			assertEquals(machine.getEnvironment().get("count"), engine.getVariable(1, "count"));
+			assertEquals(run < 5 ? 1 : 0, stepped, "Only the started instance should transition");
+		}
+		assertTrue(engine.isEnded(1));
+		assertEquals("done", engine.getVariable(1, "note"), "Variables not read by guards should be kept");
+		assertFalse(engine.hasEvent(1, "start"), "Events should be cleared when a transition is triggered");
+		assertEquals(0, engine.getCurrentState(0), "Instances without events should not move");
+		assertNull(engine.getVariable(0, "count"));
+	}
+
+	@Test
+	final void testStepAllInParallel() {
+		BatchEngine engine = new BatchEngine(definition, 16);
+		for (int i = 0; i < 5000; i++) {
+			engine.add();
+			if (i % 2 == 0) {
+				engine.setEvent(i, "start");
+				engine.setVariable(i, "paused", false);
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(2500, engine.stepAll(pool), "Each started instance should transition once");
+			for (int run = 0; run < 4; run++) {
+				engine.stepAll(pool);
+			}
+		} finally {
+			pool.shutdown();
+		}
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(i % 2 == 0 ? 2 : 0, engine.getCurrentState(i), "Wrong state of instance " + i);
+		}
+	}
+
+	@Test
+	final void testRejectsAsyncActions() {
+		StateMachineDefinition async = new StateMachineDefinition(
+				List.of(new State("Start", 0), new State("End")),
+				List.of(Transition.async(null,
+						(environment, events) -> CompletableFuture.completedFuture(null), 1)),
+				List.of(0));
+		assertThrows(IllegalArgumentException.class, () -> new BatchEngine(async, 10),
+				"Asynchronous actions need a State Machine to be suspended");
+	}
+}
@@ -0,0 +1,86 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CompositeStateTest {
+
+	StateMachineDefinition definitionUnderTest;
+	List<String> trace;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		trace = new ArrayList<>();
+		Event error = new Event("error");
+		definitionUnderTest = new StateMachineDefinition(
+				Arrays.asList(
+					new State("Idle", 0),
+					new State("Loading", 1),
+					new State("Drilling", 2),
+					new State("Cleanup"),
+					new State("Done")
+					),
+				Arrays.asList(
+					new Transition(Conditions.event(new Event("start")), null, 1),
+					new Transition(Conditions.event(new Event("loaded")), (env, events) -> trace.add("load"), 2),
+					new Transition(Conditions.event(new Event("drilled")), null, 4),
+					new Transition(Conditions.event(error), (env, events) -> trace.add("error"), 3)
+					),
+				List.of(0),
+				List.of(
+					new CompositeState("Working", List.of(1, 2), List.of(3),
+							(env, events) -> trace.add("enter Working"), (env, events) -> trace.add("exit Working")),
+					new CompositeState("Machining", List.of(2), List.of(3),
+							(env, events) -> trace.add("enter Machining"), (env, events) -> trace.add("exit Machining"))
+					));
+	}
+
+	@Test
+	final void testTransitionsFlattened() {
+		List<State> states = definitionUnderTest.getStates();
+		assertEquals(List.of(1, 3), states.get(1).transitionsIndexes(),
+				"The transitions of the composite state should follow the ones of the substate");
+		assertEquals(List.of(2, 3), states.get(2).transitionsIndexes(),
+				"A transition shared by nested composite states should be attached only once");
+		assertEquals(List.of(0), states.get(0).transitionsIndexes(), "States outside should not change");
+		assertTrue(definitionUnderTest.table().isEndState(3));
+	}
+
+	@Test
+	final void testEntryAndExitActions() {
+		StateMachine machine = new StateMachine(definitionUnderTest);
+		machine.setEvent("start");
+		machine.update();
+		assertEquals(List.of("enter Working"), trace);
+
+		trace.clear();
+		machine.setEvent("loaded");
+		machine.update();
+		assertEquals(List.of("load", "enter Machining"), trace,
+				"Moving inside Working should only enter the nested composite state");
+
+		trace.clear();
+		machine.setEvent("error");
+		machine.update();
+		assertEquals(List.of("exit Machining", "exit Working", "error"), trace,
+				"The shared transition should exit the composite states from the innermost, before its action");
+		assertEquals(3, machine.getCurrentState());
+	}
+
+	@Test
+	final void testOverlappingCompositesRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new StateMachineDefinition(
+				List.of(new State("A", 0), new State("B", 0), new State("C")),
+				List.of(new Transition(null, null, 2)),
+				List.of(0),
+				List.of(new CompositeState("AB", List.of(0, 1), List.of()),
+						new CompositeState("BC", List.of(1, 2), List.of()))),
+				"Composite states sharing only some substates should be rejected");
+	}
+}
@@ -0,0 +1,98 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConditionCompilerTest {
+
+	StateMachine machineUnderTest;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Evaluable<Context> a = Conditions.event(new Event("a"));
+		Evaluable<Context> b = Conditions.event(new Event("b"));
+		Evaluable<Context> ready = Conditions.guard(new Guard("ready", true));
+		machineUnderTest = new StateMachine(
+				Arrays.asList(
+					new State("Start", 0, 1, 2, 3),
+					new State("End")
+					),
+				Arrays.asList(
+					new Transition(Conditions.and(a, b, ready), null, 1),
+					new Transition(Conditions.xor(a, Conditions.not(b)), null, 1),
+					new Transition(Conditions.or(Conditions.and(a, ready), Conditions.not(ready)), null, 1),
+					new Transition(Conditions.and(b, Conditions.constant(true)), null, 1)
+					));
+	}
+
+	@Test
+	final void testCompiledSelectorMatchesInterpreted() {
+		TransitionTable table = machineUnderTest.table();
+		MethodHandle[] selectors = ConditionCompiler.compile(table.stateTransitions, table.conditions);
+		assertNotNull(selectors, "All the conditions should be compiled");
+
+		// Go through every combination of both events and the guard variable
+		for (int combination = 0; combination < 8; combination++) {
+			machineUnderTest.getEvents().clear();
+			if ((combination & 1) != 0) machineUnderTest.setEvent("a");
+			if ((combination & 2) != 0) machineUnderTest.setEvent("b");
+			machineUnderTest.setVariable("ready", (combination & 4) != 0);
+
+			assertEquals(table.select(0, machineUnderTest),
+					ConditionCompiler.select(selectors[0], machineUnderTest),
+					"The compiled selector should choose the same transition for combination " + combination);
+		}
+		assertEquals(-1, ConditionCompiler.select(selectors[1], machineUnderTest),
+				"A state without transitions should never select one");
+	}
+
+	@Test
+	final void testUnconditionalTransition() {
+		StateMachine machine = new StateMachine(
+				List.of(new State("Start", 0, 1), new State("End")),
+				List.of(new Transition(null, null, null, 1), new Transition(null, null, null, 0)));
+		TransitionTable table = machine.table();
+		MethodHandle[] selectors = ConditionCompiler.compile(table.stateTransitions, table.conditions);
+
+		assertEquals(0, ConditionCompiler.select(selectors[0], machine),
+				"The first transition without conditions should always be selected");
+	}
+
+	@Test
+	final void testDispatchedStateCompiled() {
+		List<State> states = List.of(new State("Start", 0, 1, 2), new State("End"));
+		List<Transition> transitions = List.of(
+				new Transition(Conditions.and(Conditions.event(new Event("a")),
+						Conditions.guard(new Guard("ready", true))), null, 1),
+				new Transition(Conditions.not(Conditions.guard(new Guard("ready", true))), null, 1),
+				new Transition(Conditions.event(new Event("b")), null, 1));
+		StateMachine machine;
+		System.setProperty(ConditionCompiler.COMPILE_PROPERTY, "true");
+		try {
+			machine = new StateMachine(states, transitions);
+		} finally {
+			System.clearProperty(ConditionCompiler.COMPILE_PROPERTY);
+		}
+		TransitionTable compiled = machine.table();
+		TransitionTable interpreted = new StateMachine(states, transitions).table();
+		assertNotNull(compiled.eventTransitions[0], "The state should have a dispatch index");
+		assertNotNull(compiled.compiledConditions, "The dispatched transitions should use compiled conditions");
+		assertNull(interpreted.compiledConditions);
+
+		for (int combination = 0; combination < 8; combination++) {
+			machine.getEvents().clear();
+			if ((combination & 1) != 0) machine.setEvent("a");
+			if ((combination & 2) != 0) machine.setEvent("b");
+			machine.setVariable("ready", (combination & 4) != 0);
+
+			assertEquals(interpreted.select(0, machine), compiled.select(0, machine),
+					"The compiled conditions should choose the same transition for combination " + combination);
+		}
+	}
+}
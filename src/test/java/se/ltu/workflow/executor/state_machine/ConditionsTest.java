@@ -0,0 +1,98 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+
+class ConditionsTest {
+
+	Event productReady;
+	Event sliderReady;
+	Guard sliderFree;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		productReady = new Event("productReady");
+		sliderReady = new Event("sliderReady");
+		sliderFree = new Guard("slider", true);
+	}
+
+	@Test
+	final void testNestedEventsAndGuards() {
+		StateMachine machine = new StateMachine(
+				Arrays.asList(
+					new State("Start", 0),
+					new State("End")
+					),
+				Arrays.asList(
+					new Transition(
+						Conditions.or(
+							Conditions.and(Conditions.event(productReady), Conditions.event(sliderReady)),
+							Conditions.and(Conditions.event(productReady), Conditions.guard(sliderFree))),
+						null,
+						1)
+					));
+
+		machine.setEvent("productReady");
+		assertEquals(UpdateAction.NO_TRANSITION, machine.update().getUpdateAction(),
+				"One event alone should not satisfy any of the branches");
+
+		machine.setVariable("slider", true);
+		assertEquals(UpdateAction.TRANSITION, machine.update().getUpdateAction(),
+				"The event together with the guard should satisfy the second branch");
+	}
+
+	@Test
+	final void testFlattenAndOrderByCost() {
+		Evaluable<Context> normalized = Conditions.normalize(
+				Conditions.and(
+					Conditions.guard(sliderFree),
+					Conditions.and(Conditions.event(productReady), Conditions.event(sliderReady))));
+
+		assertTrue(normalized instanceof LogicExpression, "The result should still be an expression");
+		LogicExpression<?, Context> expression = (LogicExpression<?, Context>) normalized;
+		List<? extends Evaluable<Context>> operands = List.copyOf(expression.operands());
+		assertEquals(3, operands.size(), "The nested AND should be flattened into its parent");
+		assertTrue(operands.get(0) instanceof Conditions.EventCondition, "Events should be checked first");
+		assertTrue(operands.get(1) instanceof Conditions.EventCondition, "Events should be checked first");
+		assertTrue(operands.get(2) instanceof Conditions.GuardCondition, "Guards should be checked last");
+	}
+
+	@Test
+	final void testConstantFolding() {
+		assertSame(Conditions.constant(false), Conditions.normalize(
+				Conditions.and(Conditions.event(productReady), Conditions.constant(false))),
+				"An AND with a false operand should be folded into false");
+		assertSame(Conditions.constant(true), Conditions.normalize(
+				Conditions.or(Conditions.guard(sliderFree), Conditions.not(Conditions.constant(false)))),
+				"An OR with a true operand should be folded into true");
+
+		Evaluable<Context> event = Conditions.event(productReady);
+		assertSame(event, Conditions.normalize(Conditions.not(Conditions.not(event))),
+				"A double NOT should be removed");
+		assertSame(event, Conditions.normalize(Conditions.and(event, Conditions.constant(true))),
+				"The neutral operand of an AND should be removed");
+	}
+
+	@Test
+	final void testMalformedExpressionRejected() {
+		assertThrows(IllegalArgumentException.class, () -> {
+				new StateMachine(List.of(new State("Start", 0), new State("End")),
+								 List.of(new Transition(
+										 new LogicExpression<Event, Set<Event>>(null, List.of(productReady, sliderReady)),
+										 new LogicExpression<Guard, Map<String, Object>>(null, List.of(sliderFree)),
+										 null,
+										 1)));
+			}
+			,"A logic expression with more than one operand and no operator should be rejected"
+		);
+	}
+}
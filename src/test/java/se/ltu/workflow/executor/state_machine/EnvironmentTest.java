@@ -0,0 +1,88 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EnvironmentTest {
+
+	Environment environmentUnderTest;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Transition transition = new Transition(null,
+				new LogicExpression<Guard, Map<String, Object>>(LogicOperator.AND,
+						List.of(new Guard("slider", true), new Guard("product", null))),
+				null, 0);
+		environmentUnderTest = new Environment(
+				VariableRegistry.of(new Evaluable[] {Conditions.of(transition)}));
+	}
+
+	@Test
+	final void testMapView() {
+		assertTrue(environmentUnderTest.isEmpty(), "A new environment should be empty");
+
+		environmentUnderTest.put("slider", true);
+		environmentUnderTest.put("product", null);
+		environmentUnderTest.put("not-interned", 3);
+
+		Map<String, Object> expected = new HashMap<>();
+		expected.put("slider", true);
+		expected.put("product", null);
+		expected.put("not-interned", 3);
+		assertEquals(expected, environmentUnderTest,
+				"The environment should behave as a Map with the same variables");
+		assertEquals(expected.hashCode(), environmentUnderTest.hashCode());
+		assertTrue(environmentUnderTest.containsKey("product"),
+				"A variable with a null value should still be present");
+
+		environmentUnderTest.remove("product");
+		assertFalse(environmentUnderTest.containsKey("product"), "Should not find the variable once removed");
+		assertEquals(2, environmentUnderTest.size());
+
+		environmentUnderTest.entrySet().removeIf(e -> e.getKey().equals("slider"));
+		assertNull(environmentUnderTest.get("slider"), "Should remove interned variables through the view");
+
+		environmentUnderTest.clear();
+		assertTrue(environmentUnderTest.isEmpty(), "Should be empty after clear");
+	}
+
+	@Test
+	final void testGuardUsesSlots() {
+		StateMachine machine = new StateMachine(
+				List.of(new State("Start", 0), new State("End")),
+				List.of(new Transition(null,
+						new LogicExpression<Guard, Map<String, Object>>(null, List.of(new Guard("ready", null))),
+						null, 1)));
+
+		assertFalse(machine.getEnvironment().containsKey("ready"));
+		machine.update();
+		assertEquals(0, machine.getCurrentState(),
+				"A guard with null value should not match a variable that is not present");
+
+		machine.setVariable("ready", null);
+		machine.update();
+		assertEquals(1, machine.getCurrentState(),
+				"A guard with null value should match a variable present with null value");
+	}
+
+	@Test
+	final void testBoxedTypesKept() {
+		StateMachine machine = new StateMachine(
+				List.of(new State("Start", 0), new State("End")),
+				List.of(new Transition(null,
+						new LogicExpression<Guard, Map<String, Object>>(null, List.of(new Guard("x", (short) 1))),
+						null, 1)));
+
+		machine.setVariable("x", (short) 1);
+		assertEquals(Short.valueOf((short) 1), machine.getEnvironment().get("x"),
+				"A short variable should be stored as a Short");
+		machine.update();
+		assertEquals(1, machine.getCurrentState(), "A guard with a Short value should match the variable");
+	}
+}
@@ -3,6 +3,7 @@ package se.ltu.workflow.executor.state_machine;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -55,4 +56,47 @@ class EventTest {
 					eventUnderTest.evaluate(testingSet));
 	}
 
+	@Test
+	final void testEquals() {
+		assertTrue("Events with the same name should be equal", 
+					eventUnderTest.equals(new Event("test")));
+		assertTrue("Events with the same name should have the same hash", 
+					eventUnderTest.hashCode() == new Event("test").hashCode());
+		assertTrue("Events with null name should be equal", 
+					new Event(null).equals(new Event(null)));
+		
+		testingSet.add(new Event("test"));
+		testingSet.add(new Event("test"));
+		assertTrue("A Set should not store twice the same Event", testingSet.size() == 1);
+	}
+
+	@Test
+	final void testEventSet() {
+		Transition transition = new Transition(
+				new LogicExpression<Event, Set<Event>>(LogicOperator.OR, 
+						List.of(eventUnderTest, new Event("other"))),
+				null, null, 0);
+		EventSet events = new EventSet(
+				EventRegistry.of(new Evaluable[] {Conditions.of(transition)}));
+		
+		assertFalse("Should not find the event, because the set is empty", 
+					eventUnderTest.evaluate(events));
+		
+		events.add(new Event("test"));
+		events.add(new Event("test"));
+		events.add(new Event("not-interned"));
+		assertTrue("Should find the event, because it has been added to the set", 
+					eventUnderTest.evaluate(events));
+		assertTrue("Should store each event only once", events.size() == 2);
+		assertTrue("Should keep events that are not part of any transition", 
+					events.contains(new Event("not-interned")));
+		
+		events.removeIf(e -> e.getName().equals("test"));
+		assertFalse("Should not find the event once removed", eventUnderTest.evaluate(events));
+		assertTrue("Should only keep the event not removed", events.size() == 1);
+		
+		events.clear();
+		assertTrue("Should be empty after clear", events.isEmpty());
+	}
+
 }
@@ -0,0 +1,108 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.NumericGuard.Comparison;
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+
+class GuardCacheTest {
+
+	StateMachine machineUnderTest;
+	TransitionTable table;
+	int evaluations;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		evaluations = 0;
+		Evaluable<Context> counted = context -> {
+			evaluations++;
+			return false;
+		};
+		machineUnderTest = new StateMachine(
+				Arrays.asList(
+					new State("Waiting", 0, 1),
+					new State("Polling", 2, 3),
+					new State("End")
+					),
+				Arrays.asList(
+					new Transition(Conditions.and(Conditions.event(new Event("go")),
+							Conditions.guard(new Guard("ready", true))), null, 1),
+					new Transition(Conditions.guard(new NumericGuard("level", Comparison.GREATER_THAN, 10)), null, 2),
+					new Transition(counted, null, 2),
+					new Transition(Conditions.event(new Event("stop")), null, 2)
+					));
+		table = machineUnderTest.table();
+	}
+
+	@Test
+	final void testTrackedDependencies() {
+		int ready = table.variables.slotOf("ready");
+		int level = table.variables.slotOf("level");
+		int go = table.registry.indexOf("go");
+
+		assertArrayEquals(new int[] {ready, level}, table.trackedSlots[0],
+				"A state should track the variables read by all its transitions");
+		assertEquals(1L << go, table.trackedEvents[0][go >>> 6],
+				"A state should track the events read by all its transitions");
+		assertNull(table.trackedSlots[1], "A state with a condition that is not tracked should not be cached");
+		assertNull(table.trackedSlots[2], "An END state should not be cached");
+	}
+
+	@Test
+	final void testCacheInvalidation() {
+		Environment environment = (Environment) machineUnderTest.getEnvironment();
+		EventSet events = (EventSet) machineUnderTest.getEvents();
+		GuardCache cache = new GuardCache(table, 1);
+
+		assertFalse(cache.isUntriggered(0, 0, environment, events), "An empty cache should not skip evaluations");
+		cache.store(0, 0, -1, environment, events);
+		assertTrue(cache.isUntriggered(0, 0, environment, events),
+				"Nothing read by the state changed since it was evaluated");
+		assertFalse(cache.isUntriggered(0, 1, environment, events), "The entry is only valid for its state");
+
+		machineUnderTest.setIntVariable("other", 1);
+		machineUnderTest.setEvent("unrelated");
+		assertTrue(cache.isUntriggered(0, 0, environment, events),
+				"Variables and events not read by the state should not invalidate it");
+
+		machineUnderTest.setIntVariable("level", 5);
+		assertFalse(cache.isUntriggered(0, 0, environment, events), "A variable read by the state changed");
+		cache.store(0, 0, -1, environment, events);
+
+		machineUnderTest.setEvent("go");
+		assertFalse(cache.isUntriggered(0, 0, environment, events), "An event read by the state changed");
+
+		cache.store(0, 0, 0, environment, events);
+		assertFalse(cache.isUntriggered(0, 0, environment, events), "Triggered transitions should not be cached");
+	}
+
+	@Test
+	final void testWaitingStateIsEvaluatedOnChanges() {
+		assertEquals(UpdateAction.NO_TRANSITION, machineUnderTest.update().getUpdateAction());
+		assertEquals(UpdateAction.NO_TRANSITION, machineUnderTest.update().getUpdateAction(),
+				"A cached state without changes should still not transition");
+
+		machineUnderTest.setVariable("ready", true);
+		assertEquals(UpdateAction.NO_TRANSITION, machineUnderTest.update().getUpdateAction(),
+				"The guard alone should not trigger the transition");
+		machineUnderTest.setEvent("go");
+		assertEquals(UpdateAction.TRANSITION, machineUnderTest.update().getUpdateAction(),
+				"A new event should evaluate the cached state again");
+		assertEquals(1, machineUnderTest.getCurrentState());
+
+		machineUnderTest.update();
+		machineUnderTest.update();
+		assertEquals(2, evaluations, "A state whose conditions are not tracked should be evaluated every run");
+
+		machineUnderTest.setCurrentState(0);
+		machineUnderTest.setLongVariable("level", 11L);
+		assertEquals(UpdateAction.TRANSITION, machineUnderTest.update().getUpdateAction(),
+				"A changed variable should evaluate the cached state again");
+		assertEquals(2, machineUnderTest.getCurrentState());
+	}
+}
@@ -0,0 +1,63 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+
+class InboxTest {
+
+	@Test
+	final void testManyProducers() throws InterruptedException {
+		final int producers = 4;
+		final int messages = 10_000;
+		Inbox<int[]> inbox = new Inbox<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			threads.add(new Thread(() -> {
+				for (int m = 0; m < messages; m++) {
+					inbox.offer(new int[] {producer, m});
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+
+		int[] next = new int[producers];
+		int received = 0;
+		while (received < producers * messages) {
+			received += inbox.drain(message -> {
+				assertEquals(next[message[0]]++, message[1],
+						"The messages of each producer should be received in order");
+			});
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertTrue(inbox.isEmpty());
+		assertEquals(0, inbox.drain(message -> fail("No message should be left")));
+	}
+
+	@Test
+	final void testPostToStateMachine() throws InterruptedException {
+		StateMachine machine = new StateMachine(
+				List.of(new State("Waiting", List.of(0)), new State("Notified", List.of())),
+				List.of(new Transition(Conditions.and(Conditions.event(new Event("notify")),
+						Conditions.guard(new Guard("source", "sensor"))), null, 1)));
+
+		Thread producer = new Thread(() -> {
+			machine.postVariable("source", "sensor");
+			machine.postEvent("notify");
+		});
+		producer.start();
+		producer.join();
+
+		assertTrue(machine.getEvents().isEmpty(), "The posted events should wait for the next run");
+		assertEquals(UpdateAction.END, machine.runUntilQuiescent(10, null),
+				"The posted event and variable should trigger the transition");
+	}
+}
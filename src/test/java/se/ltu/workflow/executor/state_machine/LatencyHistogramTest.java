@@ -0,0 +1,87 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+	@Test
+	final void testBuckets() {
+		for (long value : new long[] {0, 1, 7, 8, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+			int bucket = LatencyHistogram.bucket(value);
+			assertTrue(bucket >= 0 && bucket < LatencyHistogram.BUCKETS, "Bucket out of range for " + value);
+			long lowest = LatencyHistogram.lowestValue(bucket);
+			assertTrue(lowest <= value && value - lowest < LatencyHistogram.bucketWidth(bucket),
+					"The value " + value + " should be inside its bucket");
+			assertTrue(LatencyHistogram.bucketWidth(bucket) <= Math.max(1, lowest / LatencyHistogram.SUB_BUCKETS),
+					"The bucket of " + value + " should be narrower than 12.5% of its values");
+		}
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+	}
+
+	@Test
+	final void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long v = 1; v <= 10_000; v++) {
+			histogram.record(v * 1000);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(10_000, snapshot.getCount());
+		assertEquals(10_000_000, snapshot.getMax());
+		assertEquals(5_000_500.0, snapshot.getMean(), 0.001);
+		assertEquals(5_000_000, snapshot.getValueAtPercentile(50), 5_000_000 * 0.125);
+		assertEquals(9_900_000, snapshot.getValueAtPercentile(99), 9_900_000 * 0.125);
+		assertEquals(0, new LatencyHistogram().snapshot().getValueAtPercentile(50));
+	}
+
+	@Test
+	final void testConcurrentRecording() throws InterruptedException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 100_000; i++) {
+					histogram.record(i);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(400_000, histogram.snapshot().getCount(), "No value should be lost");
+		assertEquals(99_999, histogram.snapshot().getMax());
+	}
+
+	@Test
+	final void testStateMachineMetrics() {
+		StateMachineDefinition definition = new StateMachineDefinition(
+				List.of(new State("Idle", List.of(0)), new State("Working", List.of(1)), new State("Done", List.of())),
+				List.of(new Transition(Conditions.event(new Event("start")), null, 1),
+						new Transition(Conditions.event(new Event("stop")), (env, events) -> env.put("done", true), 2)),
+				List.of(0));
+		StateMachine withoutMetrics = new StateMachine(definition);
+		TransitionMetrics metrics = definition.enableMetrics();
+		assertSame(metrics, definition.enableMetrics());
+
+		StateMachine machine = new StateMachine(definition);
+		machine.runUntilQuiescent(10, null);
+		machine.setEvent("start");
+		machine.runUntilQuiescent(10, null);
+		machine.setEvent("stop");
+		machine.runUntilQuiescent(10, null);
+		withoutMetrics.setEvent("start");
+		withoutMetrics.runUntilQuiescent(10, null);
+
+		assertEquals(2, metrics.conditionTime(0).snapshot().getCount(),
+				"The conditions of Idle should be evaluated twice, only by the State Machine with metrics");
+		assertEquals(1, metrics.actionTime(1).snapshot().getCount());
+		assertEquals(1, metrics.dwellTime(0).snapshot().getCount());
+		assertEquals(1, metrics.dwellTime(1).snapshot().getCount());
+		assertEquals(0, metrics.dwellTime(2).snapshot().getCount(), "The end state is never left");
+	}
+}
@@ -0,0 +1,139 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the evaluation of {@link LogicExpression logic expressions}, as done
+ * by {@link StateMachine#update()} for every transition of the active state.
+ * <p>
+ * Running the {@link #main(String[])} method executes the benchmarks with the
+ * GC profiler, and fails if any of them allocates memory in steady state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogicExpressionBenchmark {
+
+    /**
+     * Maximum bytes per operation accepted as zero, to absorb the rounding of the profiler
+     */
+    private static final double MAX_ALLOCATION_BYTES = 0.5;
+
+    private Evaluable<Context> allEvents;
+    private Evaluable<Context> anyEvent;
+    private Evaluable<Context> exclusiveEvents;
+    private Evaluable<Context> allGuards;
+    private Evaluable<Context> mixed;
+    private StateMachine machine;
+
+    @Setup
+    public void setUp() {
+        final Event ready = new Event("ready");
+        final Event moving = new Event("moving");
+        final Event done = new Event("done");
+        final Guard slider = new Guard("slider", Boolean.TRUE);
+        final Guard product = new Guard("product", Boolean.TRUE);
+        final List<Transition> transitions = List.of(
+                new Transition(new LogicExpression<Event, Set<Event>>(LogicOperator.AND, List.of(ready, moving, done)),
+                        null, null, 0),
+                new Transition(new LogicExpression<Event, Set<Event>>(LogicOperator.OR, List.of(ready, moving, done)),
+                        null, null, 0),
+                new Transition(new LogicExpression<Event, Set<Event>>(LogicOperator.XOR, List.of(ready, done)),
+                        null, null, 0),
+                new Transition(null, new LogicExpression<>(LogicOperator.AND, List.of(slider, product)),
+                        null, 0),
+                new Transition(Conditions.or(
+                        Conditions.and(Conditions.guard(slider), Conditions.event(ready)),
+                        Conditions.not(Conditions.not(Conditions.event(done)))),
+                        null, 0));
+        machine = new StateMachine(List.of(
+                new se.ltu.workflow.executor.state_machine.State("Start", 0, 1, 2, 3, 4)), transitions);
+
+        final TransitionTable table = machine.table();
+        allEvents = table.conditions[0];
+        anyEvent = table.conditions[1];
+        exclusiveEvents = table.conditions[2];
+        allGuards = table.conditions[3];
+        mixed = table.conditions[4];
+
+        machine.setEvent("ready");
+        machine.setEvent("moving");
+        machine.setEvent("done");
+        machine.setVariable("slider", Boolean.TRUE);
+        machine.setVariable("product", Boolean.TRUE);
+    }
+
+    @Benchmark
+    public boolean evaluateAndOfEvents() {
+        return allEvents.evaluate(machine);
+    }
+
+    @Benchmark
+    public boolean evaluateOrOfEvents() {
+        return anyEvent.evaluate(machine);
+    }
+
+    @Benchmark
+    public boolean evaluateXorOfEvents() {
+        return exclusiveEvents.evaluate(machine);
+    }
+
+    @Benchmark
+    public boolean evaluateAndOfGuards() {
+        return allGuards.evaluate(machine);
+    }
+
+    @Benchmark
+    public boolean evaluateNestedEventsAndGuards() {
+        return mixed.evaluate(machine);
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler and checks that none of them allocates.
+     *
+     * @param args  Not used
+     * @throws RunnerException if JMH can not run the benchmarks
+     * @throws IllegalStateException if a benchmark allocates memory in steady state
+     */
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(LogicExpressionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        for (final RunResult result : new Runner(options).run()) {
+            for (final Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                // The name of the metric is prefixed by a different character depending on the JMH version
+                if (secondary.getKey().endsWith("gc.alloc.rate.norm")
+                        && secondary.getValue().getScore() > MAX_ALLOCATION_BYTES) {
+                    throw new IllegalStateException(result.getParams().getBenchmark() + " allocates "
+                            + secondary.getValue().getScore() + " bytes per evaluation");
+                }
+            }
+        }
+    }
+}
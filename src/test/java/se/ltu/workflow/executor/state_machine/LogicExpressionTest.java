@@ -0,0 +1,85 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LogicExpressionTest {
+
+	/**
+	 * Operand that counts how many times it has been evaluated
+	 */
+	static class CountingOperand implements Evaluable<Object> {
+		final boolean value;
+		int evaluations = 0;
+
+		CountingOperand(boolean value) {
+			this.value = value;
+		}
+
+		@Override
+		public boolean evaluate(Object context) {
+			evaluations++;
+			return value;
+		}
+	}
+
+	CountingOperand truth;
+	CountingOperand falsity;
+	CountingOperand other;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		truth = new CountingOperand(true);
+		falsity = new CountingOperand(false);
+		other = new CountingOperand(true);
+	}
+
+	@Test
+	final void testAndShortCircuits() throws IllegalLogicExpressionException {
+		LogicExpression<CountingOperand, Object> expression =
+				new LogicExpression<>(LogicOperator.AND, List.of(truth, falsity, other));
+
+		assertFalse(expression.evaluateLogicExpression(null),
+				"The AND expression should be false when any operand is false");
+		assertEquals(0, other.evaluations,
+				"The AND expression should stop evaluating at the first false operand");
+	}
+
+	@Test
+	final void testOrShortCircuits() throws IllegalLogicExpressionException {
+		LogicExpression<CountingOperand, Object> expression =
+				new LogicExpression<>(LogicOperator.OR, List.of(falsity, truth, other));
+
+		assertTrue(expression.evaluateLogicExpression(null),
+				"The OR expression should be true when any operand is true");
+		assertEquals(1, falsity.evaluations);
+		assertEquals(0, other.evaluations,
+				"The OR expression should stop evaluating at the first true operand");
+	}
+
+	@Test
+	final void testNotAndXor() throws IllegalLogicExpressionException {
+		assertTrue(new LogicExpression<>(LogicOperator.NOT, List.of(falsity)).evaluateLogicExpression(null),
+				"The NOT expression should invert its operand");
+		assertTrue(new LogicExpression<>(LogicOperator.XOR, List.of(truth, falsity)).evaluateLogicExpression(null),
+				"The XOR expression should be true when the operands are different");
+		assertFalse(new LogicExpression<>(LogicOperator.XOR, List.of(truth, other)).evaluateLogicExpression(null),
+				"The XOR expression should be false when the operands are equal");
+	}
+
+	@Test
+	final void testMissingOperator() {
+		LogicExpression<CountingOperand, Object> expression =
+				new LogicExpression<>(null, List.of(truth, falsity));
+
+		assertThrows(IllegalLogicExpressionException.class, () -> {
+				expression.evaluateLogicExpression(null);
+			}
+			,"An expression without operator should only accept one operand"
+		);
+	}
+}
@@ -0,0 +1,69 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.NumericGuard.Comparison;
+
+class NumericGuardTest {
+
+	@Test
+	final void testComparisons() {
+		assertTrue(new NumericGuard("n", Comparison.LESS_THAN, 3).test(2L));
+		assertFalse(new NumericGuard("n", Comparison.LESS_THAN, 3).test(3L));
+		assertTrue(new NumericGuard("n", Comparison.LESS_OR_EQUAL, 3).test(3L));
+		assertTrue(new NumericGuard("n", Comparison.GREATER_THAN, 3).test(4L));
+		assertTrue(new NumericGuard("n", Comparison.GREATER_OR_EQUAL, 3).test(3L));
+		assertTrue(new NumericGuard("n", Comparison.EQUAL, 3).test(3L));
+		assertTrue(new NumericGuard("n", Comparison.NOT_EQUAL, 3).test(4L));
+		assertTrue(new NumericGuard("n", Comparison.GREATER_THAN, 2.5).test(3L),
+				"Integral values should be compared with floating point constants");
+		assertFalse(new NumericGuard("n", Comparison.LESS_THAN, 2.5).test(2.5));
+	}
+
+	@Test
+	final void testBetween() {
+		NumericGuard range = NumericGuard.between("n", 1, 3);
+
+		assertTrue(range.test(1L), "The lower bound should be inclusive");
+		assertTrue(range.test(3L), "The upper bound should be inclusive");
+		assertFalse(range.test(4L));
+		assertTrue(NumericGuard.between("n", 0.5, 1.5).test(1.5));
+		assertThrows(IllegalArgumentException.class, () -> {
+				new NumericGuard("n", Comparison.BETWEEN, 1);
+			}
+			,"A range should be created with between()"
+		);
+	}
+
+	@Test
+	final void testEvaluateMap() {
+		NumericGuard guard = new NumericGuard("n", Comparison.GREATER_OR_EQUAL, 2);
+
+		assertTrue(guard.evaluate(Map.of("n", 2)));
+		assertTrue(guard.evaluate(Map.of("n", 2.0)));
+		assertFalse(guard.evaluate(Map.of("n", "2")), "A value that is not a number should never match");
+		assertFalse(guard.evaluate(Map.of()), "A missing variable should never match");
+	}
+
+	@Test
+	final void testSlotBackedEvaluation() {
+		StateMachine machine = new StateMachine(
+				List.of(new State("Low", List.of(0)), new State("High", List.of())),
+				List.of(new Transition(Conditions.guard(NumericGuard.between("temperature", 20.0, 30.0)), null, 1)));
+
+		machine.setDoubleVariable("temperature", 15.0);
+		machine.update();
+		assertEquals(0, machine.getCurrentState(), "The guard should not match a value outside of the range");
+
+		machine.setIntVariable("temperature", 25);
+		assertEquals(Integer.class, machine.getEnvironment().get("temperature").getClass(),
+				"The environment should keep the type of the value set");
+		machine.update();
+		assertEquals(1, machine.getCurrentState(), "The guard should match a value inside the range");
+	}
+}
@@ -0,0 +1,109 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateResult;
+
+class RegionsTest {
+
+	StateMachine machineUnderTest;
+	List<String> actionsExecuted;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		actionsExecuted = new ArrayList<>();
+		machineUnderTest = new StateMachine(
+				Arrays.asList(
+					new State("Milling", 0),
+					new State("Milled"),
+					new State("Drilling", 1),
+					new State("Drilled")
+					),
+				Arrays.asList(
+					new Transition(Conditions.event(new Event("start")), (env, events) -> actionsExecuted.add("mill"), 1),
+					new Transition(Conditions.event(new Event("start")), (env, events) -> actionsExecuted.add("drill"), 3)
+					),
+				List.of(0, 2));
+	}
+
+	@Test
+	final void testRegionsStepTogether() {
+		assertEquals(2, machineUnderTest.getNumberOfRegions());
+		assertEquals(UpdateAction.NO_TRANSITION, machineUnderTest.update().getUpdateAction());
+
+		machineUnderTest.setEvent("start");
+		UpdateResult result = machineUnderTest.update();
+		assertEquals(UpdateAction.TRANSITION, result.getUpdateAction(),
+				"Both regions should see the same event in the same update");
+		assertArrayEquals(new int[] {1, 3}, machineUnderTest.getCurrentStates());
+		assertEquals(List.of("mill", "drill"), actionsExecuted,
+				"The actions should be executed in the priority order of the regions");
+		assertEquals("Milled", result.getResultState().name(),
+				"The result should report the region with highest priority");
+
+		assertEquals(UpdateAction.END, machineUnderTest.update().getUpdateAction(),
+				"The State Machine should end when all the regions have ended");
+	}
+
+	@Test
+	final void testParallelSelection() {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			machineUnderTest.setRegionPool(pool);
+			machineUnderTest.setEvent("start");
+			assertEquals(UpdateAction.TRANSITION, machineUnderTest.update().getUpdateAction());
+			assertArrayEquals(new int[] {1, 3}, machineUnderTest.getCurrentStates());
+			assertEquals(List.of("mill", "drill"), actionsExecuted,
+					"The actions should keep the priority order when the selection is parallel");
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	final void testSuspendedByHigherRegion() {
+		CompletableFuture<ActionResult> pending = new CompletableFuture<>();
+		StateMachine machine = new StateMachine(
+				Arrays.asList(new State("Milling", 0), new State("Milled"), new State("Drilling", 1), new State("Drilled")),
+				Arrays.asList(
+					Transition.async(Conditions.event(new Event("mill")), (env, events) -> pending, 1),
+					new Transition(Conditions.event(new Event("drill")), (env, events) -> actionsExecuted.add("drill"), 3)
+					),
+				List.of(0, 2));
+		machine.setEventConsumption(StateMachine.EventConsumption.QUEUE);
+		machine.setEvent("mill");
+		machine.setEvent("drill");
+
+		assertEquals(UpdateAction.TRANSITION, machine.update().getUpdateAction());
+		assertTrue(machine.isSuspended());
+		assertTrue(actionsExecuted.isEmpty(),
+				"A region with lower priority should not execute its action once the State Machine is suspended");
+		assertArrayEquals(new int[] {1, 2}, machine.getCurrentStates());
+
+		pending.complete(null);
+		assertEquals(UpdateAction.END, machine.runUntilQuiescent(10, null));
+		assertEquals(List.of("drill"), actionsExecuted,
+				"The region should execute its transition once the State Machine resumes, with its event kept");
+	}
+
+	@Test
+	final void testInvalidRegions() {
+		assertThrows(IllegalArgumentException.class, () -> {
+				new StateMachine(List.of(new State("Start", 0)),
+								 List.of(new Transition(null, null, null, 0)),
+								 List.of(0, 1));
+			}
+			,"A region should not start in a state that does not exist"
+		);
+	}
+}
@@ -0,0 +1,68 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StateMachineAnalysisTest {
+
+	StateMachineAnalysis analysisUnderTest;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Evaluable<Context> a = Conditions.event(new Event("a"));
+		Evaluable<Context> b = Conditions.event(new Event("b"));
+		StateMachineDefinition definition = new StateMachineDefinition(
+				Arrays.asList(
+					new State("Start", 0, 1, 2, 3, 4),
+					new State("Loop", 5),
+					new State("Done"),
+					new State("Unreachable")
+					),
+				Arrays.asList(
+					new Transition(a, null, 1),
+					new Transition(Conditions.guard(new Guard("x", 1)), null, 2),
+					new Transition(Conditions.and(a, Conditions.guard(new Guard("x", 2))), null, 2),
+					new Transition(null, null, 1),
+					new Transition(b, null, 3),
+					new Transition(null, null, 1)
+					),
+				List.of(0));
+		analysisUnderTest = definition.getAnalysis();
+	}
+
+	@Test
+	final void testReachability() {
+		assertEquals(List.of(3), analysisUnderTest.getUnreachableStates(),
+				"A state only targeted by a shadowed transition should not be reachable");
+		assertTrue(analysisUnderTest.canReachEnd(0));
+		assertFalse(analysisUnderTest.canReachEnd(1), "A state looping forever has no path to an END state");
+		assertTrue(analysisUnderTest.canReachEnd(2), "An END state reaches itself");
+		assertTrue(analysisUnderTest.isTerminal(1), "A state whose transitions go back to it can not be left");
+		assertTrue(analysisUnderTest.isTerminal(2), "An END state can not be left");
+		assertFalse(analysisUnderTest.isTerminal(0));
+	}
+
+	@Test
+	final void testShadowedTransitions() {
+		assertTrue(analysisUnderTest.canFire(3), "The unconditional transition itself can be executed");
+		assertFalse(analysisUnderTest.canFire(4),
+				"A transition after an unconditional one in the same state is never executed");
+	}
+
+	@Test
+	final void testOverlaps() {
+		List<StateMachineAnalysis.Overlap> overlaps = analysisUnderTest.getOverlaps();
+		assertEquals(1, overlaps.size(),
+				"Only transitions sharing an event or variable, that are not exclusive, should overlap");
+		assertEquals(0, overlaps.get(0).getState());
+		assertEquals(0, overlaps.get(0).getFirst(), "Both transitions are triggered by event a");
+		assertEquals(2, overlaps.get(0).getSecond());
+		assertEquals(4, analysisUnderTest.getWarnings().size(),
+				"Should warn of the shadowed transition, the two states and the overlap");
+	}
+}
@@ -0,0 +1,124 @@
+package se.ltu.workflow.executor.state_machine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateResult;
+
+/**
+ * Measures {@link StateMachine#update()} on a state with many transitions, with
+ * the conditions interpreted and compiled by {@link ConditionCompiler}.
+ * <p>
+ * The condition of every transition of the state is a guard AND an event, and
+ * only the guard of the last one is satisfied. How the event is used depends on
+ * the {@code triggering} case:
+ * <p><ul>
+ * <li>{@code negated}: the transitions require the event {@code running} to be
+ * absent. A negated event does not trigger a transition, so the state has no
+ * dispatch index and each update evaluates the conditions of all of them, with
+ * the compiled selector of the state when they are compiled
+ * <li>{@code shared}: the transitions are triggered by the event {@code running},
+ * which is active, so the dispatch index selects all of them and each update
+ * evaluates all their conditions, one by one
+ * <li>{@code own}: each transition is triggered by its own event, and only the
+ * event of the last one is active, so the dispatch index selects that
+ * transition and only its condition is evaluated
+ * </ul><p>
+ * As the transitions triggered by an event consume it, the event is set again
+ * before each update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateMachineBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int transitionsPerState;
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    @Param({"negated", "shared", "own"})
+    public String triggering;
+
+    private StateMachine machine;
+
+    private String triggeringEvent;
+
+    @Setup
+    public void setUp() {
+        final Evaluable<Context> running = Conditions.event(new Event("running"));
+        final List<Transition> transitions = new ArrayList<>();
+        final List<Integer> indexes = new ArrayList<>();
+        for (int t = 0; t < transitionsPerState; t++) {
+            final Evaluable<Context> event;
+            switch (triggering) {
+                case "shared":
+                    event = running;
+                    break;
+                case "own":
+                    event = Conditions.event(new Event("step " + t));
+                    break;
+                default:
+                    event = Conditions.not(running);
+            }
+            transitions.add(new Transition(
+                    Conditions.and(Conditions.guard(new Guard("step", t)), event),
+                    null, 0));
+            indexes.add(t);
+        }
+        System.setProperty(ConditionCompiler.COMPILE_PROPERTY, Boolean.toString(compiled));
+        try {
+            machine = new StateMachine(
+                    List.of(new se.ltu.workflow.executor.state_machine.State("Loop", indexes)),
+                    transitions);
+        } finally {
+            System.clearProperty(ConditionCompiler.COMPILE_PROPERTY);
+        }
+        machine.setIntVariable("step", transitionsPerState - 1);
+        triggeringEvent = "own".equals(triggering)
+                ? "step " + (transitionsPerState - 1)
+                : "shared".equals(triggering) ? "running" : null;
+    }
+
+    @Benchmark
+    public UpdateResult update() {
+        if (triggeringEvent != null) {
+            machine.setEvent(triggeringEvent);
+        }
+        return machine.update();
+    }
+
+    /**
+     * Runs the benchmarks comparing the interpreted and compiled conditions
+     *
+     * @param args  Not used
+     * @throws RunnerException if JMH can not run the benchmarks
+     */
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(StateMachineBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
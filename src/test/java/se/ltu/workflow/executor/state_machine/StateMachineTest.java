@@ -0,0 +1,213 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateResult;
+
+class StateMachineTest {
+
+	StateMachine machineUnderTest;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		machineUnderTest = new StateMachine(
+				Arrays.asList(
+					new State("Start", 0),
+					new State("Wait", 1, 2),
+					new State("End")
+					),
+				Arrays.asList(
+					new Transition(null, null, (env, events) -> env.put("started", true), 1),
+					new Transition(
+						new LogicExpression<Event, Set<Event>>(null, List.of(new Event("go"))),
+						new LogicExpression<Guard, Map<String, Object>>(null, List.of(new Guard("started", true))),
+						null,
+						2),
+					new Transition(
+						new LogicExpression<Event, Set<Event>>(null, List.of(new Event("never"))),
+						null,
+						null,
+						0)
+					));
+	}
+
+	@Test
+	final void testUpdate() {
+		UpdateResult result = machineUnderTest.update();
+		assertEquals(UpdateAction.TRANSITION, result.getUpdateAction(),
+				"A transition without events and guards should always be triggered");
+		assertEquals(1, machineUnderTest.getCurrentState());
+		assertEquals(Boolean.TRUE, machineUnderTest.getEnvironment().get("started"),
+				"The action of the transition should have modified the environment");
+
+		result = machineUnderTest.update();
+		assertEquals(UpdateAction.NO_TRANSITION, result.getUpdateAction(),
+				"No transition should be triggered until the event is present");
+		assertEquals(1, machineUnderTest.getCurrentState());
+
+		machineUnderTest.setEvent("go");
+		result = machineUnderTest.update();
+		assertEquals(UpdateAction.TRANSITION, result.getUpdateAction());
+		assertEquals("End", result.getResultState().name());
+		assertTrue(machineUnderTest.getEvents().isEmpty(),
+				"The events should be cleared once a transition is triggered");
+
+		result = machineUnderTest.update();
+		assertEquals(UpdateAction.END, result.getUpdateAction(),
+				"A state without transitions should end the State Machine");
+	}
+
+	@Test
+	final void testStep() {
+		long step = machineUnderTest.step();
+		assertEquals(UpdateAction.TRANSITION, StateMachine.stepAction(step));
+		assertEquals(1, StateMachine.stepState(step));
+		assertEquals(0, StateMachine.stepTransition(step));
+
+		step = machineUnderTest.step();
+		assertEquals(UpdateAction.NO_TRANSITION, StateMachine.stepAction(step));
+		assertEquals(1, StateMachine.stepState(step));
+		assertEquals(-1, StateMachine.stepTransition(step),
+				"No transition should be reported when none is executed");
+
+		UpdateResult first = machineUnderTest.update();
+		assertSame(first, machineUnderTest.update(),
+				"The same result should be reused while nothing changes");
+		assertSame(first, new StateMachine(machineUnderTest).update(),
+				"Copies of the State Machine should share the results");
+	}
+
+	@Test
+	final void testCopyHasIndependentContext() {
+		machineUnderTest.update();
+		StateMachine copy = new StateMachine(machineUnderTest);
+
+		assertEquals(machineUnderTest.getCurrentState(), copy.getCurrentState(),
+				"The copy should start in the same state as the original");
+
+		copy.setEvent("go");
+		copy.update();
+		assertEquals(2, copy.getCurrentState());
+		assertEquals(1, machineUnderTest.getCurrentState(),
+				"Updating the copy should not change the state of the original State Machine");
+		assertTrue(machineUnderTest.getEvents().isEmpty(),
+				"Events added to the copy should not be visible in the original State Machine");
+	}
+
+	@Test
+	final void testInstancesShareDefinition() {
+		machineUnderTest.update();
+		machineUnderTest.setEvent("go");
+		StateMachine instance = new StateMachine(machineUnderTest.getDefinition());
+
+		assertSame(machineUnderTest.getDefinition(), instance.getDefinition(),
+				"The instance should share the definition of the State Machine");
+		assertEquals(0, instance.getCurrentState(), "The instance should start in the initial state");
+		assertTrue(instance.getEvents().isEmpty(), "The instance should have its own empty context");
+		assertTrue(instance.getEnvironment().isEmpty());
+		assertThrows(UnsupportedOperationException.class, () -> {
+				instance.getDefinition().getTransitions().clear();
+			}
+			,"The definition should not be modifiable"
+		);
+	}
+
+	@Test
+	final void testAwaitChange() throws InterruptedException {
+		machineUnderTest.update();
+		long seenChanges = machineUnderTest.getChangeCount();
+		assertEquals(UpdateAction.NO_TRANSITION, machineUnderTest.update().getUpdateAction());
+		assertFalse(machineUnderTest.awaitChange(seenChanges, 10, TimeUnit.MILLISECONDS),
+				"Without changes the wait should end when the timeout expires");
+
+		Thread producer = new Thread(() -> machineUnderTest.setEvent("go"));
+		producer.start();
+		assertTrue(machineUnderTest.awaitChange(seenChanges, 10, TimeUnit.SECONDS),
+				"Setting an event should wake up the waiting thread");
+		producer.join();
+		assertTrue(machineUnderTest.awaitChange(seenChanges, 0, TimeUnit.MILLISECONDS),
+				"A change signaled before waiting should not be missed");
+		assertEquals(UpdateAction.TRANSITION, machineUnderTest.update().getUpdateAction());
+	}
+
+	@Test
+	final void testRunUntilQuiescent() {
+		List<int[]> steps = new ArrayList<>();
+		StepListener listener = (from, transition, to) -> steps.add(new int[] {from, transition, to});
+
+		assertEquals(UpdateAction.NO_TRANSITION, machineUnderTest.runUntilQuiescent(10, listener),
+				"The run should stop when no transition is triggered");
+		assertEquals(1, steps.size());
+		assertArrayEquals(new int[] {0, 0, 1}, steps.get(0));
+
+		machineUnderTest.setEvent("go");
+		assertEquals(UpdateAction.END, machineUnderTest.runUntilQuiescent(10, listener),
+				"The run should stop when the State Machine ends");
+		assertArrayEquals(new int[] {1, 1, 2}, steps.get(1));
+	}
+
+	@Test
+	final void testRunUntilQuiescentMaxSteps() {
+		StateMachine loop = new StateMachine(
+				List.of(new State("Loop", 0)),
+				List.of(new Transition(null, null, null, 0)));
+		int[] count = new int[1];
+
+		assertEquals(UpdateAction.TRANSITION, loop.runUntilQuiescent(5, (from, transition, to) -> count[0]++),
+				"A loop of transitions always triggered should stop at the maximum number of steps");
+		assertEquals(5, count[0]);
+	}
+
+	@Test
+	final void testEventQueue() {
+		// Counts every time the "item" event is consumed, keeping the other events
+		StateMachine queue = new StateMachine(
+				List.of(new State("Counting", 0, 1), new State("Stopped")),
+				List.of(new Transition(Conditions.event(new Event("item")),
+								(env, events) -> env.merge("items", 1, (a, b) -> (int) a + (int) b), 0),
+						new Transition(Conditions.event(new Event("stop")), null, 1)));
+		queue.setEventConsumption(StateMachine.EventConsumption.QUEUE);
+
+		queue.setEvent("item");
+		queue.setEvent("item");
+		queue.setEvent("other");
+		queue.setEvent("item");
+		assertEquals(UpdateAction.NO_TRANSITION, queue.runUntilQuiescent(10, null));
+		assertEquals(3, queue.getEnvironment().get("items"),
+				"Each occurrence of the queued event should trigger the transition once");
+		assertTrue(queue.getEvents().contains(new Event("other")),
+				"The events not referenced by the transition should not be consumed");
+
+		queue.setEvent("stop");
+		assertEquals(UpdateAction.END, queue.runUntilQuiescent(10, null));
+		assertTrue(queue.getEvents().contains(new Event("other")));
+	}
+
+	@Test
+	final void testInvalidStateMachine() {
+		assertThrows(IllegalArgumentException.class, () -> {
+				new StateMachine(List.of(new State("Start", 1)),
+								 List.of(new Transition(null, null, null, 0)));
+			}
+			,"A State should not point to a transition that does not exist"
+		);
+
+		assertThrows(IllegalArgumentException.class, () -> {
+				new StateMachine(List.of(new State("Start", 0)),
+								 List.of(new Transition(null, null, null, 1)));
+			}
+			,"A Transition should not target a state that does not exist"
+		);
+	}
+}
@@ -0,0 +1,94 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import se.ltu.workflow.executor.state_machine.StateMachine.UpdateAction;
+
+class TimingWheelTest {
+
+	TimingWheel wheel;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		// A small wheel, so the timeouts need several turns
+		wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 4);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		wheel.stop();
+	}
+
+	@Test
+	final void testSchedule() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		TimingWheel.Timeout timeout = wheel.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+
+		assertTrue(latch.await(2, TimeUnit.SECONDS), "The task should run once its delay expires");
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20),
+				"The task should not run before its delay expires");
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel(), "A task that has run can not be cancelled");
+	}
+
+	@Test
+	final void testCancel() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		TimingWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+
+		assertTrue(timeout.cancel());
+		Thread.sleep(50);
+		assertEquals(0, runs.get(), "A cancelled task should never run");
+	}
+
+	@Test
+	final void testTransitionTimeout() throws InterruptedException {
+		Event timeout = new Event("timeout");
+		Event leave = new Event("leave");
+		StateMachine machine = new StateMachine(
+				List.of(new State("Waiting", List.of(0, 1)), new State("TimedOut", List.of()),
+						new State("Left", List.of())),
+				List.of(Transition.after(10, TimeUnit.MILLISECONDS, timeout, null, 1),
+						new Transition(Conditions.event(leave), null, 2)));
+		machine.setTimingWheel(wheel);
+
+		long seen = machine.getChangeCount();
+		assertEquals(UpdateAction.NO_TRANSITION, machine.runUntilQuiescent(10, null),
+				"The timeout should not be triggered before it expires");
+		assertTrue(machine.awaitChange(seen, 2, TimeUnit.SECONDS),
+				"The expired timeout should signal a change");
+		assertEquals(UpdateAction.END, machine.runUntilQuiescent(10, null));
+		assertEquals(1, machine.getCurrentState(), "The transition with the timeout should be executed");
+	}
+
+	@Test
+	final void testTimeoutCancelledWhenStateLeft() throws InterruptedException {
+		Event timeout = new Event("timeout");
+		Event leave = new Event("leave");
+		StateMachine machine = new StateMachine(
+				List.of(new State("Waiting", List.of(0, 1)), new State("TimedOut", List.of()),
+						new State("Other", List.of(2)), new State("Left", List.of())),
+				List.of(Transition.after(20, TimeUnit.MILLISECONDS, timeout, null, 1),
+						new Transition(Conditions.event(leave), null, 2),
+						new Transition(Conditions.event(timeout), null, 3)));
+		machine.setTimingWheel(wheel);
+
+		machine.postEvent("leave");
+		machine.update();
+		assertEquals(2, machine.getCurrentState(), "The posted event should be received in the next run");
+		Thread.sleep(60);
+		machine.update();
+		assertEquals(2, machine.getCurrentState(),
+				"The timeout of a state that was left should not post its event");
+	}
+}
@@ -0,0 +1,92 @@
+package se.ltu.workflow.executor.state_machine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TransitionTableTest {
+
+	StateMachine machineUnderTest;
+	TransitionTable tableUnderTest;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Evaluable<Context> a = Conditions.event(new Event("a"));
+		Evaluable<Context> b = Conditions.event(new Event("b"));
+		Evaluable<Context> c = Conditions.event(new Event("c"));
+		Evaluable<Context> ready = Conditions.guard(new Guard("ready", true));
+		machineUnderTest = new StateMachine(
+				Arrays.asList(
+					new State("Dispatcher", 0, 1, 2, 3, 4),
+					new State("End")
+					),
+				Arrays.asList(
+					new Transition(Conditions.and(a, ready), null, 1),
+					new Transition(Conditions.or(b, c), null, 1),
+					new Transition(Conditions.not(a), null, 1),
+					new Transition(Conditions.or(c, ready), null, 1),
+					new Transition(c, null, 1)
+					));
+		tableUnderTest = machineUnderTest.table();
+	}
+
+	@Test
+	final void testDispatchIndex() {
+		int a = tableUnderTest.registry.indexOf("a");
+		int b = tableUnderTest.registry.indexOf("b");
+		int c = tableUnderTest.registry.indexOf("c");
+		long[] byEvent = tableUnderTest.eventTransitions[0];
+
+		assertNotNull(byEvent, "A state with transitions triggered by events should have a dispatch index");
+		assertEquals(0b01100L, tableUnderTest.eventlessTransitions[0],
+				"Transitions with NOT or with an OR including a guard can fire without events");
+		assertEquals(0b00001L, byEvent[a], "An AND should be triggered by the events of its operands");
+		assertEquals(0b00010L, byEvent[b]);
+		assertEquals(0b10010L, byEvent[c], "An OR of events should be triggered by any of them");
+		assertNull(tableUnderTest.eventTransitions[1], "A state without transitions has no dispatch index");
+	}
+
+	@Test
+	final void testDispatchKeepsOrder() {
+		machineUnderTest.setEvent("a");
+		assertEquals(-1, tableUnderTest.select(0, machineUnderTest),
+				"No transition should fire when its guard or event is missing");
+
+		machineUnderTest.setEvent("c");
+		assertEquals(1, tableUnderTest.select(0, machineUnderTest),
+				"The first transition triggered by the active events should be selected");
+
+		machineUnderTest.getEvents().clear();
+		assertEquals(2, tableUnderTest.select(0, machineUnderTest),
+				"Transitions without triggering events should always be evaluated");
+
+		machineUnderTest.setEvent("a");
+		machineUnderTest.setVariable("ready", true);
+		assertEquals(0, tableUnderTest.select(0, machineUnderTest));
+	}
+
+	@Test
+	final void testSkipsTransitionsNeverExecuted() {
+		TransitionTable table = new StateMachine(
+				Arrays.asList(
+					new State("Start", 0, 1, 2, 3),
+					new State("End")
+					),
+				Arrays.asList(
+					new Transition(Conditions.event(new Event("a")), null, 1),
+					new Transition(Conditions.constant(false), null, 1),
+					new Transition(null, null, 1),
+					new Transition(Conditions.event(new Event("b")), null, 1)
+					)).table();
+		assertArrayEquals(new int[] {0, 1, 2, 3}, table.transitionsOf(0));
+		assertArrayEquals(new int[] {0, 2}, table.stateTransitions[0],
+				"Transitions always false, or after one always triggered, should not be evaluated");
+		assertEquals(0b01L, table.eventTransitions[0][table.registry.indexOf("a")]);
+		assertEquals(0b10L, table.eventlessTransitions[0]);
+		assertEquals(0L, table.eventTransitions[0][table.registry.indexOf("b")],
+				"A transition that is not evaluated should not be in the dispatch index");
+	}
+}